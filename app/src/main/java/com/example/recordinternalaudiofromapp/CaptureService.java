@@ -0,0 +1,494 @@
+package com.example.recordinternalaudiofromapp;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Intent;
+import android.content.pm.ServiceInfo;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
+import android.media.AudioAttributes;
+import android.media.MediaPlayer;
+import android.os.Binder;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.ServiceCompat;
+import androidx.core.content.ContextCompat;
+
+import com.example.recordinternalaudiofromapp.audio.AlignedCaptureSource;
+import com.example.recordinternalaudiofromapp.audio.AudioMetrics;
+import com.example.recordinternalaudiofromapp.audio.CaptureSource;
+import com.example.recordinternalaudiofromapp.audio.LoudnessMeter;
+import com.example.recordinternalaudiofromapp.audio.PlaybackClock;
+import com.example.recordinternalaudiofromapp.audio.RecordingCatalog;
+import com.example.recordinternalaudiofromapp.audio.RecordingEngine;
+import com.example.recordinternalaudiofromapp.audio.RecordingRecovery;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Foreground service that plays R.raw.my_song and records it, independently of any Activity.
+ * The MediaPlayer and the Visualizer are created on a {@link HandlerThread} running at
+ * {@link Process#THREAD_PRIORITY_URGENT_AUDIO}, so their callbacks never wait behind UI work and
+ * survive configuration changes; files are written by the {@link RecordingEngine}'s writer
+ * thread and executor.
+ *
+ * <p>Activities bind to it, call the {@link MainThread} methods and receive {@link Callback}s on
+ * the main thread. While idle they can {@link #warmUp} the service so the player, the capture
+ * and the output file are ready before the user taps Record. The service promotes itself to the
+ * foreground while a recording runs and stops itself once it has finished and nothing is bound.
+ */
+public class CaptureService extends Service {
+
+    private static final String TAG = "CaptureService";
+    private static final String CHANNEL_ID = "capture";
+    private static final int NOTIFICATION_ID = 1;
+    // Let the last Visualizer snapshots arrive before the player's completion stops the recording.
+    private static final long STOP_AFTER_COMPLETION_MILLIS = 250;
+
+    /** Receives the service's progress on the main thread. */
+    public interface Callback {
+        void onStateChanged(RecordingEngine.State state);
+
+        /** A recording ended; {@code report} is null if it never got as far as capturing. */
+        void onRecordingFinished(RecordingEngine.Report report);
+
+        void onNotice(String message);
+    }
+
+    /** Returned from {@link #onBind}; hands out the service itself to local clients. */
+    public final class LocalBinder extends Binder {
+        public CaptureService getService() {
+            return CaptureService.this;
+        }
+    }
+
+    private final IBinder binder = new LocalBinder();
+    private final List<Callback> callbacks = new ArrayList<>();
+    private Handler mainThreadHandler;
+    private HandlerThread audioThread;
+    private Handler audioHandler;
+    private RecordingEngine engine;
+
+    // Owned by the audio thread.
+    private MediaPlayer mediaPlayer;
+    // What mediaPlayer, and a PREPARED engine, were set up for.
+    private RecordingEngine.Options warmOptions;
+    // A start request waiting for mediaPlayer to finish preparing.
+    private AudioMetrics pendingStart;
+    private final Runnable stopAfterCompletion = this::stopOnAudioThread;
+
+    private final RecordingEngine.Listener engineListener = new RecordingEngine.Listener() {
+        @Override
+        public void onStateChanged(RecordingEngine.State state) {
+            Log.d(TAG, "Engine state: " + state);
+            mainThreadHandler.post(() -> {
+                for (Callback callback : callbacks) {
+                    callback.onStateChanged(state);
+                }
+            });
+        }
+
+        @Override
+        public void onNotice(String message, Throwable error) {
+            if (error != null) {
+                Log.e(TAG, message + " " + error.getMessage(), error);
+            } else {
+                Log.i(TAG, message);
+            }
+            notice(message);
+        }
+    };
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mainThreadHandler = new Handler(Looper.getMainLooper());
+        audioThread = new HandlerThread("CaptureEngine", Process.THREAD_PRIORITY_URGENT_AUDIO);
+        audioThread.start();
+        audioHandler = new Handler(audioThread.getLooper());
+        File outputDirectory = getExternalFilesDir(null);
+        if (outputDirectory == null) {
+            Log.e(TAG, "External files directory is null. Cannot create recording files.");
+            return;
+        }
+        engine = new RecordingEngine(outputDirectory, engineListener);
+        // Queued before any start request, so no running recording's journal is taken for an orphan.
+        audioHandler.post(this::recoverInterruptedRecordings);
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        // Started only to record; the notification must follow within a few seconds.
+        ServiceCompat.startForeground(this, NOTIFICATION_ID, buildNotification(),
+                Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q ? ServiceInfo.FOREGROUND_SERVICE_TYPE_MEDIA_PLAYBACK : 0);
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        Log.d(TAG, "onDestroy called. Stopping any recording and releasing resources.");
+        audioHandler.post(() -> {
+            stopOnAudioThread();
+            if (engine != null) {
+                engine.release();
+            }
+        });
+        audioThread.quitSafely();
+        super.onDestroy();
+    }
+
+    private Notification buildNotification() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            getSystemService(NotificationManager.class).createNotificationChannel(
+                    new NotificationChannel(CHANNEL_ID, "Recording", NotificationManager.IMPORTANCE_LOW));
+        }
+        PendingIntent openApp = PendingIntent.getActivity(this, 0,
+                new Intent(this, MainActivity.class).addFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP),
+                PendingIntent.FLAG_IMMUTABLE);
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setContentTitle("Recording")
+                .setContentText("Playing MP3 & recording its audio.")
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentIntent(openApp)
+                .setCategory(NotificationCompat.CATEGORY_SERVICE)
+                .setOngoing(true)
+                .setSilent(true)
+                .build();
+    }
+
+    @MainThread
+    public void addCallback(Callback callback) {
+        callbacks.add(callback);
+    }
+
+    @MainThread
+    public void removeCallback(Callback callback) {
+        callbacks.remove(callback);
+    }
+
+    /** False if there is no output directory to record to. */
+    public boolean isAvailable() {
+        return engine != null;
+    }
+
+    public RecordingEngine.State getState() {
+        return engine != null ? engine.getState() : RecordingEngine.State.IDLE;
+    }
+
+    /** The live meter of a single-file recording, or null. */
+    public LoudnessMeter getLoudnessMeter() {
+        return engine != null ? engine.getLoudnessMeter() : null;
+    }
+
+    public boolean isReplayAvailable() {
+        return engine != null && engine.isReplayAvailable();
+    }
+
+    public File getOutputDirectory() {
+        return engine != null ? engine.getOutputDirectory() : null;
+    }
+
+    /** The library of finished recordings, or null; see {@link RecordingEngine#getCatalog()}. */
+    public RecordingCatalog getCatalog() {
+        return engine != null ? engine.getCatalog() : null;
+    }
+
+    /**
+     * Gets the player, the capture and the output file ready for a recording with
+     * {@code options}, so a following {@link #startRecording} with the same options only has to
+     * press play. Does nothing while recording; the standby costs a prepared MediaPlayer, an
+     * attached Visualizer and a preallocated file until {@link #coolDown()}.
+     */
+    @MainThread
+    public void warmUp(RecordingEngine.Options options) {
+        if (engine != null) {
+            audioHandler.post(() -> warmUpOnAudioThread(options));
+        }
+    }
+
+    /** Releases whatever {@link #warmUp} prepared, leaving a running recording alone. */
+    @MainThread
+    public void coolDown() {
+        if (engine != null) {
+            audioHandler.post(this::coolDownOnAudioThread);
+        }
+    }
+
+    /**
+     * Plays the song and records it with {@code options}. Progress arrives through the
+     * {@link Callback}s; a failure ends in {@link Callback#onRecordingFinished} with a null report.
+     */
+    @MainThread
+    public void startRecording(RecordingEngine.Options options) {
+        if (engine == null) {
+            notice("Storage error. Cannot create recording files.");
+            dispatchFinished(null);
+            return;
+        }
+        AudioMetrics metrics = new AudioMetrics();
+        metrics.markRequested();
+        // Keeps the service alive when the Activity unbinds, e.g. when it goes to the background.
+        ContextCompat.startForegroundService(this, new Intent(this, CaptureService.class));
+        audioHandler.post(() -> startOnAudioThread(options, metrics));
+    }
+
+    @MainThread
+    public void stopRecording() {
+        audioHandler.post(this::stopOnAudioThread);
+    }
+
+    @MainThread
+    public void saveReplay() {
+        if (engine != null) {
+            engine.saveReplay();
+        }
+    }
+
+    private void recoverInterruptedRecordings() {
+        try {
+            List<RecordingRecovery.Result> results = engine.recoverInterruptedRecordings();
+            for (RecordingRecovery.Result result : results) {
+                Log.i(TAG, "Recovered interrupted recording " + result.recording.getName() + ": "
+                        + result.recoveredBytes + " bytes (" + result.committedBytes + " bytes checkpointed).");
+            }
+            if (!results.isEmpty()) {
+                notice("Recovered " + results.size() + " interrupted recording(s).");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error recovering interrupted recordings: " + e.getMessage(), e);
+        }
+        // Loads the catalog here, off the main thread, so the first listing is instant.
+        try {
+            long start = System.nanoTime();
+            RecordingCatalog catalog = engine.getCatalog();
+            int count = catalog.size();
+            Log.i(TAG, "Catalog lists " + count + " recording(s), " + (catalog.wasRebuilt() ? "rebuilt" : "loaded")
+                    + " in " + (System.nanoTime() - start) / 1_000_000 + " ms.");
+        } catch (IOException e) {
+            Log.e(TAG, "Error loading the recording catalog: " + e.getMessage(), e);
+        }
+    }
+
+    private boolean isRecording() {
+        RecordingEngine.State state = engine.getState();
+        return pendingStart != null || state == RecordingEngine.State.RECORDING
+                || state == RecordingEngine.State.STOPPING;
+    }
+
+    private void warmUpOnAudioThread(RecordingEngine.Options options) {
+        if (isRecording() || (mediaPlayer != null && options.equals(warmOptions))) {
+            return;
+        }
+        coolDownOnAudioThread();
+        Log.d(TAG, "Warming up for " + options.getMode() + " recording.");
+        openPlayer(options);
+    }
+
+    private void coolDownOnAudioThread() {
+        if (isRecording()) {
+            return;
+        }
+        // Releases the Visualizer source and deletes the standby file.
+        engine.cancel();
+        releaseMediaPlayer();
+    }
+
+    private void startOnAudioThread(RecordingEngine.Options options, AudioMetrics metrics) {
+        if (isRecording()) {
+            Log.d(TAG, "Already playing and recording. Ignoring request.");
+            notice("Already playing and recording.");
+            return;
+        }
+        if (mediaPlayer != null && options.equals(warmOptions)) {
+            if (engine.getState() == RecordingEngine.State.PREPARED) {
+                Log.d(TAG, "Starting warm: player and capture are already prepared.");
+                beginRecording(options, metrics);
+            } else {
+                // Still preparing; the prepared listener starts the recording.
+                pendingStart = metrics;
+            }
+            return;
+        }
+        coolDownOnAudioThread();
+        Log.d(TAG, "Attempting to start playing and recording MP3...");
+        pendingStart = metrics;
+        openPlayer(options);
+    }
+
+    /**
+     * Creates and asynchronously prepares the player for {@code options}. Once it is prepared,
+     * a pending start request begins recording; otherwise capture is prepared and waits.
+     */
+    private void openPlayer(RecordingEngine.Options options) {
+        // Created on this thread, so every MediaPlayer callback runs on it too.
+        mediaPlayer = new MediaPlayer();
+        warmOptions = options;
+        try {
+            mediaPlayer.setAudioAttributes(
+                    new AudioAttributes.Builder()
+                            .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                            .setUsage(AudioAttributes.USAGE_MEDIA)
+                            .build()
+            );
+            try (AssetFileDescriptor afd = getResources().openRawResourceFd(R.raw.my_song)) {
+                if (afd == null) {
+                    throw new IOException("Raw resource R.raw.my_song not found.");
+                }
+                mediaPlayer.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+            }
+
+            mediaPlayer.setOnErrorListener((mp, what, extra) -> {
+                Log.e(TAG, "MediaPlayer Error! What: " + what + ", Extra: " + extra);
+                notice("MediaPlayer error occurred. What: " + what);
+                stopOnAudioThread();
+                return true;
+            });
+
+            mediaPlayer.setOnCompletionListener(mp -> {
+                Log.d(TAG, "MediaPlayer playback completed.");
+                audioHandler.postDelayed(stopAfterCompletion, STOP_AFTER_COMPLETION_MILLIS);
+            });
+
+            mediaPlayer.setOnPreparedListener(mp -> {
+                Log.i(TAG, "MediaPlayer prepared. Audio Session ID: " + mp.getAudioSessionId());
+                try {
+                    // Capture is set up on this thread, so Visualizer callbacks run here as well.
+                    CaptureSource source = openCaptureSource(mp);
+                    if (pendingStart != null) {
+                        mp.start();
+                        Log.i(TAG, "MediaPlayer started.");
+                        engine.start(source, options, pendingStart);
+                        // Cleared only once started: on failure the stop below still reports the request.
+                        pendingStart = null;
+                        Log.i(TAG, "Capture started cold from " + source.getClass().getSimpleName()
+                                + " (" + source.getFormat() + ").");
+                    } else {
+                        engine.prepare(source, options, mp.getDuration());
+                        Log.i(TAG, "Capture prepared from " + source.getClass().getSimpleName()
+                                + " (" + source.getFormat() + ").");
+                    }
+                } catch (IOException | RuntimeException e) {
+                    Log.e(TAG, "Error preparing playback or capture: " + e.getMessage(), e);
+                    notice("Visualizer setup failed.");
+                    stopOnAudioThread();
+                }
+            });
+
+            Log.d(TAG, "MediaPlayer calling prepareAsync()...");
+            mediaPlayer.prepareAsync();
+        } catch (IOException | Resources.NotFoundException | IllegalStateException | IllegalArgumentException e) {
+            Log.e(TAG, "Error setting up MediaPlayer: " + e.getMessage(), e);
+            notice("Audio source error: " + e.getMessage());
+            stopOnAudioThread();
+        }
+    }
+
+    private CaptureSource openCaptureSource(MediaPlayer player) {
+        int audioSessionId = player.getAudioSessionId();
+        Log.d(TAG, "Setting up Visualizer for session ID: " + audioSessionId);
+        if (audioSessionId == 0) { // MediaPlayer.AUDIO_SESSION_ID_GENERATE is 0
+            Log.w(TAG, "Audio session ID is 0. Visualizer might not attach correctly or capture any audio.");
+        }
+        CaptureSource source = new VisualizerCaptureSource(audioSessionId);
+        if (!source.isContinuous()) {
+            // Snapshots are placed on the player's timeline, so the recording keeps the song's length.
+            source = new AlignedCaptureSource(source, new PlaybackClock(player::getCurrentPosition));
+        }
+        return source;
+    }
+
+    /** Starts the warm player and the prepared capture, in the same order as a cold start. */
+    private void beginRecording(RecordingEngine.Options options, AudioMetrics metrics) {
+        try {
+            mediaPlayer.start();
+            engine.start(metrics);
+            Log.i(TAG, "Capture started warm for " + options.getMode() + " recording.");
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Error starting playback or capture: " + e.getMessage(), e);
+            notice("Visualizer setup failed.");
+            // Counts as a recording, so the caller hears that it ended.
+            pendingStart = metrics;
+            stopOnAudioThread();
+        }
+    }
+
+    /**
+     * Stops capture before the player, so the playback clock is never read from a released player.
+     * A warm standby is released as well, but only a recording, or a start request still waiting
+     * for the player, is reported as finished.
+     */
+    private void stopOnAudioThread() {
+        audioHandler.removeCallbacks(stopAfterCompletion);
+        if (engine == null) {
+            return;
+        }
+        boolean active = isRecording();
+        pendingStart = null;
+        RecordingEngine.Report report = engine.stop();
+        if (report != null) {
+            Log.i(TAG, "Recording stopped: " + report);
+            Log.d(TAG, "Session metrics: " + report.metrics.toJson());
+        }
+        engine.cancel();
+        releaseMediaPlayer();
+        if (active) {
+            mainThreadHandler.post(() -> {
+                ServiceCompat.stopForeground(this, ServiceCompat.STOP_FOREGROUND_REMOVE);
+                stopSelf();
+            });
+            dispatchFinished(report);
+        }
+    }
+
+    private void releaseMediaPlayer() {
+        if (mediaPlayer != null) {
+            try {
+                if (mediaPlayer.isPlaying()) {
+                    mediaPlayer.stop();
+                }
+                mediaPlayer.reset();
+                mediaPlayer.release();
+                Log.d(TAG, "MediaPlayer released.");
+            } catch (Exception e) {
+                Log.e(TAG, "Error releasing MediaPlayer: " + e.getMessage());
+            }
+            mediaPlayer = null;
+        }
+        warmOptions = null;
+    }
+
+    private void notice(String message) {
+        mainThreadHandler.post(() -> {
+            for (Callback callback : callbacks) {
+                callback.onNotice(message);
+            }
+        });
+    }
+
+    private void dispatchFinished(RecordingEngine.Report report) {
+        mainThreadHandler.post(() -> {
+            for (Callback callback : callbacks) {
+                callback.onRecordingFinished(report);
+            }
+        });
+    }
+}
@@ -1,20 +1,21 @@
 package com.example.recordinternalaudiofromapp;
 
 import android.Manifest;
+import android.content.ComponentName;
+import android.content.Context;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
 import android.content.res.AssetFileDescriptor;
-import android.content.res.Resources;
-import android.media.AudioAttributes;
-import android.media.MediaPlayer;
-import android.media.audiofx.Visualizer;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.IBinder;
 import android.os.Looper;
 import android.provider.Settings;
 import android.util.Log;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -24,33 +25,85 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
+import com.example.recordinternalaudiofromapp.audio.FileSink;
+import com.example.recordinternalaudiofromapp.audio.LoudnessMeter;
+import com.example.recordinternalaudiofromapp.audio.OfflineRenderer;
+import com.example.recordinternalaudiofromapp.audio.PeakFile;
+import com.example.recordinternalaudiofromapp.audio.PeakSink;
+import com.example.recordinternalaudiofromapp.audio.RecordingCatalog;
+import com.example.recordinternalaudiofromapp.audio.RecordingEngine;
+import com.example.recordinternalaudiofromapp.audio.SyncPolicy;
+
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MainActivity extends AppCompatActivity {
 
     private static final String TAG = "Mp3RecordPlay";
     private static final int REQUEST_RECORD_AUDIO_PERMISSION = 201;
-    private static final int DEFAULT_SAMPLE_RATE = 44100;
-    private static final int DEFAULT_CHANNELS = 1;
-    private static final int DEFAULT_BIT_DEPTH = 8;
+    private static final String RECORDING_NAME = "recorded_mp3_audio";
+    private static final String RENDERED_NAME = "rendered_mp3_audio";
+    // While recording, the status line shows momentary and short-term loudness at this interval.
+    private static final long METER_UPDATE_MILLIS = 500;
 
-    private MediaPlayer mediaPlayer;
-    private Visualizer visualizer;
-    private FileOutputStream recordingOutputStream;
-    private File recordingFile;
-    private File wavFile;
+    // Playback and capture run in CaptureService, so they outlive this Activity's lifecycle.
+    private CaptureService captureService;
+    private File outputDirectory;
 
-    private Button btnPlayAndRecordMp3, btnStopMp3;
+    private Button btnPlayAndRecordMp3, btnRenderMp3, btnSaveReplay, btnStopMp3;
+    private CheckBox cbFlacOutput, cbSkipSilence, cbSegmented, cbReplayMode, cbCleanUp;
     private TextView tvStatusMp3;
 
     private boolean isPlayingAndRecording = false;
     private Handler mainThreadHandler;
-    private int actualCaptureSampleRate = DEFAULT_SAMPLE_RATE;
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
     private boolean permissionRequestedInOnCreate = false;
+    private final Runnable meterUpdater = this::updateLoudnessReadout;
+
+    private final CaptureService.Callback serviceCallback = new CaptureService.Callback() {
+        @Override
+        public void onStateChanged(RecordingEngine.State state) {
+            if (state == RecordingEngine.State.RECORDING) {
+                showRecordingUI();
+            }
+        }
+
+        @Override
+        public void onRecordingFinished(RecordingEngine.Report report) {
+            onRecordingStopped(report);
+        }
+
+        @Override
+        public void onNotice(String message) {
+            Toast.makeText(MainActivity.this, message, Toast.LENGTH_LONG).show();
+        }
+    };
+
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            captureService = ((CaptureService.LocalBinder) binder).getService();
+            captureService.addCallback(serviceCallback);
+            Log.d(TAG, "Bound to CaptureService (" + captureService.getState() + ").");
+            // A recording started before a configuration change or while in the background is still running.
+            RecordingEngine.State state = captureService.getState();
+            if (state == RecordingEngine.State.RECORDING || state == RecordingEngine.State.STOPPING) {
+                showRecordingUI();
+            } else {
+                isPlayingAndRecording = false;
+                resetUI();
+                warmUpIfIdle();
+            }
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            captureService = null;
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -60,7 +113,14 @@ public class MainActivity extends AppCompatActivity {
         mainThreadHandler = new Handler(Looper.getMainLooper());
 
         btnPlayAndRecordMp3 = findViewById(R.id.btnPlayAndRecordMp3);
+        btnRenderMp3 = findViewById(R.id.btnRenderMp3);
+        btnSaveReplay = findViewById(R.id.btnSaveReplay);
         btnStopMp3 = findViewById(R.id.btnStopMp3);
+        cbFlacOutput = findViewById(R.id.cbFlacOutput);
+        cbSkipSilence = findViewById(R.id.cbSkipSilence);
+        cbSegmented = findViewById(R.id.cbSegmented);
+        cbReplayMode = findViewById(R.id.cbReplayMode);
+        cbCleanUp = findViewById(R.id.cbCleanUp);
         tvStatusMp3 = findViewById(R.id.tvStatusMp3);
 
         if (savedInstanceState != null) {
@@ -83,25 +143,42 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
+        btnRenderMp3.setOnClickListener(v -> {
+            Log.d(TAG, "Render button clicked.");
+            renderMp3ToFile();
+        });
+
+        btnSaveReplay.setOnClickListener(v -> {
+            Log.d(TAG, "Save replay button clicked.");
+            if (captureService != null) {
+                captureService.saveReplay();
+            }
+        });
+
         btnStopMp3.setOnClickListener(v -> {
             Log.d(TAG, "Stop button clicked.");
             stopPlayingAndRecordingMp3();
         });
 
-        String pcmFileName = "recorded_mp3_audio.pcm";
-        String finalWavFileName = "recorded_mp3_audio.wav";
         File externalDir = getExternalFilesDir(null);
         if (externalDir != null) {
-            recordingFile = new File(externalDir, pcmFileName);
-            wavFile = new File(externalDir, finalWavFileName);
+            outputDirectory = externalDir;
         } else {
             Log.e(TAG, "External files directory is null. Cannot create recording files.");
             Toast.makeText(this, "Storage error. Cannot create recording files.", Toast.LENGTH_LONG).show();
             // Disable button or handle error appropriately
             btnPlayAndRecordMp3.setEnabled(false);
+            btnRenderMp3.setEnabled(false);
         }
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // Interrupted recordings are recovered by the service when it is first created.
+        bindService(new Intent(this, CaptureService.class), serviceConnection, Context.BIND_AUTO_CREATE);
+    }
+
     @Override
     protected void onSaveInstanceState(@NonNull Bundle outState) {
         super.onSaveInstanceState(outState);
@@ -154,6 +231,7 @@ public class MainActivity extends AppCompatActivity {
             if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
                 Log.i(TAG, "RECORD_AUDIO permission GRANTED by user.");
                 Toast.makeText(this, "Record Audio permission granted!", Toast.LENGTH_SHORT).show();
+                warmUpIfIdle();
             } else {
                 Log.w(TAG, "RECORD_AUDIO permission DENIED by user.");
                 Toast.makeText(this, "RECORD_AUDIO permission denied. Cannot record.", Toast.LENGTH_LONG).show();
@@ -175,6 +253,7 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+
     private void startPlayingAndRecordingMp3() {
         if (isPlayingAndRecording) {
             Log.d(TAG, "Already playing and recording. Ignoring request.");
@@ -187,271 +266,158 @@ public class MainActivity extends AppCompatActivity {
             checkAndRequestAudioPermission();
             return;
         }
-        if (recordingFile == null || wavFile == null) {
+        if (outputDirectory == null) {
             Log.e(TAG, "Recording file paths are not initialized. Cannot start recording.");
             Toast.makeText(this, "Storage error. Cannot initialize recording files.", Toast.LENGTH_LONG).show();
             return;
         }
+        if (captureService == null) {
+            Log.w(TAG, "CaptureService is not bound yet. Ignoring request.");
+            Toast.makeText(this, "Recorder is starting up. Please try again.", Toast.LENGTH_SHORT).show();
+            return;
+        }
 
-        Log.d(TAG, "Attempting to start playing and recording MP3...");
+        isPlayingAndRecording = true;
+        btnPlayAndRecordMp3.setEnabled(false);
+        btnStopMp3.setEnabled(true);
+        tvStatusMp3.setText("Status: Starting...");
+        // Starts warm if warmUpIfIdle() prepared the same options; otherwise the service prepares everything now.
+        captureService.startRecording(currentOptions());
+    }
 
-        // Release previous MediaPlayer instance if it exists
-        releaseMediaPlayer(); // Ensures a clean state
+    private RecordingEngine.Options currentOptions() {
+        RecordingEngine.Mode mode = cbReplayMode.isChecked() ? RecordingEngine.Mode.REPLAY
+                : cbSegmented.isChecked() ? RecordingEngine.Mode.SEGMENTED : RecordingEngine.Mode.SINGLE_FILE;
+        return new RecordingEngine.Options(RECORDING_NAME)
+                .withMode(mode)
+                .withFlac(cbFlacOutput.isChecked())
+                .withSkipSilence(cbSkipSilence.isChecked())
+                .withCleanUp(cbCleanUp.isChecked());
+    }
 
-        mediaPlayer = new MediaPlayer(); // State: Idle
+    /**
+     * Has the service prepare the player, the Visualizer and the output file for the current
+     * options while the user is still deciding, so tapping Record only has to start them.
+     */
+    private void warmUpIfIdle() {
+        if (captureService != null && !isPlayingAndRecording && outputDirectory != null && checkPermission()) {
+            captureService.warmUp(currentOptions());
+        }
+    }
 
-        try {
-            // Prepare recording output stream (PCM)
-            if (recordingFile.exists()) {
-                if (!recordingFile.delete()) {
-                    Log.w(TAG, "Could not delete existing PCM file.");
-                }
-            }
-            recordingOutputStream = new FileOutputStream(recordingFile);
-            Log.d(TAG, "Recording PCM file stream opened: " + recordingFile.getAbsolutePath());
-
-            // Set audio attributes
-            mediaPlayer.setAudioAttributes(
-                    new AudioAttributes.Builder()
-                            .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
-                            .setUsage(AudioAttributes.USAGE_MEDIA)
-                            .build()
-            );
-
-            // Set Data Source (from raw resource)
-            AssetFileDescriptor afd = null;
-            try {
-                afd = getResources().openRawResourceFd(R.raw.my_song); // Ensure R.raw.my_song exists
-                if (afd == null) {
-                    Log.e(TAG, "Raw resource R.raw.my_song not found.");
-                    Toast.makeText(this, "Audio file not found in resources.", Toast.LENGTH_LONG).show();
-                    closeRecordingStream(); // Close stream if opened
-                    releaseMediaPlayer();   // Release player
-                    return;
+    /**
+     * Decodes R.raw.my_song straight to a WAV or FLAC file on the I/O executor, without playing
+     * it. This takes a fraction of the song's duration and needs no capture permission.
+     */
+    private void renderMp3ToFile() {
+        if (outputDirectory == null) {
+            Toast.makeText(this, "Storage error. Cannot create rendered file.", Toast.LENGTH_LONG).show();
+            return;
+        }
+        boolean flac = cbFlacOutput.isChecked();
+        RecordingCatalog catalog = captureService != null ? captureService.getCatalog() : null;
+        btnRenderMp3.setEnabled(false);
+        tvStatusMp3.setText("Status: Rendering MP3 to " + (flac ? "FLAC" : "WAV") + "...");
+        ioExecutor.execute(() -> {
+            String message;
+            try (AssetFileDescriptor afd = getResources().openRawResourceFd(R.raw.my_song)) {
+                MediaCodecDecoder decoder = new MediaCodecDecoder(afd);
+                FileSink writer;
+                try {
+                    writer = RecordingEngine.openOutputFile(outputDirectory, RENDERED_NAME, decoder.getFormat(),
+                            flac, SyncPolicy.NONE);
+                } catch (IOException e) {
+                    decoder.close();
+                    throw e;
                 }
-                mediaPlayer.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
-            } catch (Resources.NotFoundException e) {
-                Log.e(TAG, "Raw resource not found exception: " + R.raw.my_song, e);
-                Toast.makeText(this, "Audio resource error.", Toast.LENGTH_LONG).show();
-                closeRecordingStream();
-                releaseMediaPlayer();
-                return;
-            } finally {
-                if (afd != null) {
+                OfflineRenderer.Result result = OfflineRenderer.render(decoder,
+                        new PeakSink(decoder.getFormat(), PeakFile.fileFor(writer.getFile()), writer));
+                Log.i(TAG, "Rendered " + writer.getFile().getAbsolutePath() + ": " + result);
+                if (catalog != null) {
                     try {
-                        afd.close();
+                        catalog.update(writer.getFile());
                     } catch (IOException e) {
-                        Log.e(TAG, "Error closing AssetFileDescriptor: " + e.getMessage());
+                        Log.w(TAG, "Could not add the rendered file to the catalog: " + e.getMessage(), e);
                     }
                 }
+                message = "Rendered " + writer.getFile().getName() + " at "
+                        + Math.round(result.getRealtimeMultiple()) + "x realtime.";
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Error rendering MP3: " + e.getMessage(), e);
+                message = "Could not render audio file.";
             }
-            // MediaPlayer state: INITIALIZED
-
-            mediaPlayer.setOnErrorListener((mp, what, extra) -> {
-                Log.e(TAG, "MediaPlayer Error! What: " + what + ", Extra: " + extra);
-                Toast.makeText(MainActivity.this, "MediaPlayer error occurred. What: " + what, Toast.LENGTH_LONG).show();
-                stopPlayingAndRecordingMp3(); // Use your existing stop method to clean up everything
-                return true;
-            });
-
-            mediaPlayer.setOnCompletionListener(mp -> {
-                Log.d(TAG, "MediaPlayer playback completed.");
-                mainThreadHandler.postDelayed(this::stopPlayingAndRecordingMp3, 250);
-            });
-
-            mediaPlayer.setOnPreparedListener(mp -> {
-                Log.i(TAG, "MediaPlayer prepared. Audio Session ID: " + mp.getAudioSessionId());
-                try {
-                    mp.start(); // Start actual playback
-                    Log.i(TAG, "MediaPlayer started.");
-
-                    // Setup and enable Visualizer AFTER MediaPlayer has started
-                    if (!setupVisualizerAndEnable(mp.getAudioSessionId())) {
-                        Log.e(TAG, "Visualizer setup/enable failed after MediaPlayer prepared.");
-                        Toast.makeText(MainActivity.this, "Visualizer failed. Recording may not work.", Toast.LENGTH_LONG).show();
-                        // Continue playback but recording might fail, or stop everything:
-                        // stopPlayingAndRecordingMp3();
-                        // return;
-                    } else {
-                        Log.i(TAG, "Visualizer setup and enabled.");
-                    }
-
-                    isPlayingAndRecording = true;
-                    runOnUiThread(() -> {
-                        btnPlayAndRecordMp3.setEnabled(false);
-                        btnStopMp3.setEnabled(true);
-                        tvStatusMp3.setText("Status: Playing MP3 & Recording...");
-                    });
-
-                } catch (IllegalStateException e) {
-                    Log.e(TAG, "IllegalStateException when starting MediaPlayer post-prepare or enabling Visualizer: " + e.getMessage(), e);
-                    Toast.makeText(MainActivity.this, "Error starting playback: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                    stopPlayingAndRecordingMp3(); // Clean up on error
+            String toast = message;
+            mainThreadHandler.post(() -> {
+                btnRenderMp3.setEnabled(true);
+                if (!isPlayingAndRecording) {
+                    tvStatusMp3.setText("Status: Idle");
                 }
+                Toast.makeText(MainActivity.this, toast, Toast.LENGTH_LONG).show();
             });
-
-            Log.d(TAG, "MediaPlayer calling prepareAsync()...");
-            mediaPlayer.prepareAsync(); // State: PREPARING
-
-        } catch (IOException e) {
-            Log.e(TAG, "IOException during MediaPlayer setDataSource or FileOutputStream: " + e.getMessage(), e);
-            Toast.makeText(this, "File or Audio source error: " + e.getMessage(), Toast.LENGTH_LONG).show();
-            closeRecordingStream();
-            releaseMediaPlayer();
-            resetUI();
-        } catch (IllegalStateException e) {
-            Log.e(TAG, "IllegalStateException during MediaPlayer setup (before prepareAsync): " + e.getMessage(), e);
-            Toast.makeText(this, "MediaPlayer state error during setup: " + e.getMessage(), Toast.LENGTH_LONG).show();
-            closeRecordingStream();
-            releaseMediaPlayer();
-            resetUI();
-        } catch (IllegalArgumentException e) {
-            Log.e(TAG, "IllegalArgumentException during MediaPlayer setup: " + e.getMessage(), e);
-            Toast.makeText(this, "Invalid argument for MediaPlayer: " + e.getMessage(), Toast.LENGTH_LONG).show();
-            closeRecordingStream();
-            releaseMediaPlayer();
-            resetUI();
-        }
-    }
-
-    private boolean setupVisualizerAndEnable(int audioSessionId) {
-        Log.d(TAG, "Setting up Visualizer for session ID: " + audioSessionId);
-        try {
-            releaseVisualizer(); // Release previous instance if any
-
-            if (audioSessionId == 0 ) { // MediaPlayer.AUDIO_SESSION_ID_GENERATE is 0
-                Log.w(TAG, "Audio session ID is 0. Visualizer might not attach correctly or capture any audio.");
-                // Depending on strictness, you could return false here.
-                // However, sometimes it might get a valid session later.
-            }
-
-            visualizer = new Visualizer(audioSessionId);
-            visualizer.setCaptureSize(Visualizer.getCaptureSizeRange()[1]);
-            visualizer.setDataCaptureListener(new Visualizer.OnDataCaptureListener() {
-                @Override
-                public void onWaveFormDataCapture(Visualizer viz, byte[] waveform, int samplingRate) {
-                    actualCaptureSampleRate = samplingRate;
-                    if (isPlayingAndRecording && recordingOutputStream != null && waveform != null) {
-                        try {
-                            recordingOutputStream.write(waveform);
-                        } catch (IOException e) {
-                            Log.e(TAG, "Error writing waveform data: " + e.getMessage());
-                        }
-                    }
-                }
-                @Override
-                public void onFftDataCapture(Visualizer viz, byte[] fft, int samplingRate) {}
-            }, Visualizer.getMaxCaptureRate() / 2, true, false);
-
-            int vizInitState = visualizer.setEnabled(true); // Enable it immediately after setup
-            if (vizInitState == Visualizer.SUCCESS) {
-                Log.i(TAG, "Visualizer enabled successfully in setup.");
-                return true;
-            } else {
-                Log.e(TAG, "Failed to enable Visualizer in setup. State: " + vizInitState);
-                releaseVisualizer(); // Clean up if enabling failed
-                return false;
-            }
-        } catch (IllegalStateException e) {
-            Log.e(TAG, "IllegalStateException setting up/enabling Visualizer: " + e.getMessage(), e);
-        } catch (UnsupportedOperationException e) {
-            Log.e(TAG, "Visualizer UNSUPPORTED on this device/session: " + e.getMessage(), e);
-        } catch (RuntimeException e) {
-            Log.e(TAG, "RuntimeException setting up/enabling Visualizer: " + e.getMessage(), e);
-        }
-        Toast.makeText(this, "Visualizer setup failed.", Toast.LENGTH_LONG).show();
-        releaseVisualizer();
-        return false;
+        });
     }
 
     private void stopPlayingAndRecordingMp3() {
-        if (!isPlayingAndRecording && mediaPlayer == null && visualizer == null && recordingOutputStream == null) {
+        if (captureService == null) {
             Log.d(TAG, "Already stopped or not initialized.");
-            // Make sure UI is reset if it wasn't already
-            if (btnPlayAndRecordMp3 != null && !btnPlayAndRecordMp3.isEnabled()) {
-                resetUI();
-            }
+            resetUI();
             return;
         }
         Log.i(TAG, "Stopping playback and recording...");
-        isPlayingAndRecording = false;
-
-        releaseVisualizer();
-        releaseMediaPlayer();
-        closeRecordingStream();
+        btnStopMp3.setEnabled(false);
+        captureService.stopRecording();
+    }
 
-        if (recordingFile != null && recordingFile.exists() && recordingFile.length() > 0 && wavFile != null) {
-            Log.d(TAG, "PCM file exists. Attempting to create WAV file.");
-            try {
-                if (wavFile.exists()) {
-                    if (!wavFile.delete()) {
-                        Log.w(TAG, "Could not delete existing WAV file.");
-                    }
-                }
-                int sampleRateForWav = (actualCaptureSampleRate >= 8000 && actualCaptureSampleRate <= 48000) ? actualCaptureSampleRate : DEFAULT_SAMPLE_RATE;
-                addWavHeader(recordingFile, wavFile, sampleRateForWav, DEFAULT_CHANNELS, DEFAULT_BIT_DEPTH);
-                Log.i(TAG, "WAV file created: " + wavFile.getAbsolutePath() + " with sample rate: " + sampleRateForWav);
-                // recordingFile.delete(); // Optionally delete PCM
-            } catch (IOException e) {
-                Log.e(TAG, "Error creating WAV file: " + e.getMessage(), e);
-                Toast.makeText(this, "Could not create WAV file.", Toast.LENGTH_SHORT).show();
-            }
+    private void onRecordingStopped(RecordingEngine.Report report) {
+        isPlayingAndRecording = false;
+        mainThreadHandler.removeCallbacks(meterUpdater);
+        resetUI();
+        String message;
+        if (report == null) {
+            message = "Stopped. Nothing was recorded.";
+        } else if (report.mode == RecordingEngine.Mode.REPLAY) {
+            message = "Stopped. Unsaved replay audio discarded.";
+        } else if (!report.success) {
+            message = report.mode == RecordingEngine.Mode.SEGMENTED ? "Could not finalize every segment."
+                    : "Could not create recording file.";
+        } else if (report.file == null) {
+            message = "Stopped. No audio was captured.";
         } else {
-            Log.w(TAG, "PCM file is empty or does not exist, or wavFile path is null. Skipping WAV creation.");
+            message = "Stopped. Recording saved to " + report.file.getName() + ".";
         }
-        resetUI();
-        Toast.makeText(this, "Stopped. Recording saved (if successful).", Toast.LENGTH_LONG).show();
-        // In stopPlayingAndRecordingMp3() after successful WAV creation:
-        Log.i(TAG, "WAV file created: " + wavFile.getAbsolutePath() );
-
-    }
-
-
-    private void releaseMediaPlayer() {
-        if (mediaPlayer != null) {
-            try {
-                if (mediaPlayer.isPlaying()) {
-                    mediaPlayer.stop();
-                }
-                mediaPlayer.reset();
-                mediaPlayer.release();
-                Log.d(TAG, "MediaPlayer released.");
-            } catch (Exception e) {
-                Log.e(TAG, "Error releasing MediaPlayer: " + e.getMessage());
-            }
-            mediaPlayer = null;
+        if (report != null && report.getTimeToFirstSampleMillis() >= 0) {
+            message += " First sample after " + report.getTimeToFirstSampleMillis() + " ms.";
         }
+        Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+        warmUpIfIdle();
     }
 
-    private void releaseVisualizer() {
-        if (visualizer != null) {
-            try {
-                visualizer.setEnabled(false); // Ensure it's disabled before release
-                visualizer.release();
-                Log.d(TAG, "Visualizer released.");
-            } catch (Exception e) {
-                Log.e(TAG, "Error releasing Visualizer: " + e.getMessage());
-            }
-            visualizer = null;
-        }
+    private void showRecordingUI() {
+        isPlayingAndRecording = true;
+        btnPlayAndRecordMp3.setEnabled(false);
+        btnSaveReplay.setEnabled(captureService != null && captureService.isReplayAvailable());
+        btnStopMp3.setEnabled(true);
+        tvStatusMp3.setText("Status: Playing MP3 & Recording...");
+        mainThreadHandler.removeCallbacks(meterUpdater);
+        mainThreadHandler.postDelayed(meterUpdater, METER_UPDATE_MILLIS);
     }
 
-    private void closeRecordingStream() {
-        if (recordingOutputStream != null) {
-            try {
-                recordingOutputStream.flush();
-                recordingOutputStream.close();
-                Log.d(TAG, "Recording PCM output stream flushed and closed.");
-            } catch (IOException e) {
-                Log.e(TAG, "Error closing recording PCM stream: " + e.getMessage());
-            }
-            recordingOutputStream = null;
+    /** Shows the live loudness in the status line and reschedules itself while recording. */
+    private void updateLoudnessReadout() {
+        CaptureService service = captureService;
+        LoudnessMeter meter = service != null ? service.getLoudnessMeter() : null;
+        if (meter == null || !isPlayingAndRecording) {
+            return;
         }
+        tvStatusMp3.setText(String.format(Locale.US, "Status: Recording... M %.1f / S %.1f LUFS",
+                meter.getMomentaryLufs(), meter.getShortTermLufs()));
+        mainThreadHandler.postDelayed(meterUpdater, METER_UPDATE_MILLIS);
     }
 
     private void resetUI() {
         runOnUiThread(() -> {
-            if (btnPlayAndRecordMp3 != null) btnPlayAndRecordMp3.setEnabled(true);
+            if (btnPlayAndRecordMp3 != null) btnPlayAndRecordMp3.setEnabled(outputDirectory != null);
+            if (btnSaveReplay != null) btnSaveReplay.setEnabled(false);
             if (btnStopMp3 != null) btnStopMp3.setEnabled(false);
             if (tvStatusMp3 != null) tvStatusMp3.setText("Status: Idle");
             Log.d(TAG, "UI reset to Idle state.");
@@ -461,69 +427,23 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onStop() {
         super.onStop();
-        Log.d(TAG, "onStop called. If playing, stopping and releasing resources.");
-        // If the app is stopped and was playing, ensure cleanup.
-        if (isPlayingAndRecording || mediaPlayer != null) {
-            stopPlayingAndRecordingMp3(); // This will handle release of all components
+        Log.d(TAG, "onStop called. Unbinding; a running recording continues in CaptureService.");
+        mainThreadHandler.removeCallbacks(meterUpdater);
+        if (captureService != null) {
+            captureService.removeCallback(serviceCallback);
+            if (!isPlayingAndRecording) {
+                // Nobody can tap Record now; don't hold the player, Visualizer and standby file.
+                captureService.coolDown();
+            }
+            captureService = null;
         }
+        unbindService(serviceConnection);
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
         Log.d(TAG, "onDestroy called. Ensuring all resources are released.");
-        // Should have been handled by onStop if activity was visible then stopped
-        // But this is a final safeguard.
-        releaseVisualizer();
-        releaseMediaPlayer();
-        closeRecordingStream();
-    }
-
-    private void addWavHeader(File pcmFile, File wavFileOutput, int sampleRate, int channels, int bitDepth) throws IOException {
-        long audioDataLength = pcmFile.length();
-        if (audioDataLength == 0) throw new IOException("PCM file is empty.");
-
-        long overallDataLength = audioDataLength + 36;
-        int bytesPerSample = bitDepth / 8;
-        long byteRate = (long) sampleRate * channels * bytesPerSample;
-        int blockAlign = channels * bytesPerSample;
-        byte[] header = new byte[44];
-
-        header[0] = 'R'; header[1] = 'I'; header[2] = 'F'; header[3] = 'F';
-        header[4] = (byte) (overallDataLength & 0xff);
-        header[5] = (byte) ((overallDataLength >> 8) & 0xff);
-        header[6] = (byte) ((overallDataLength >> 16) & 0xff);
-        header[7] = (byte) ((overallDataLength >> 24) & 0xff);
-        header[8] = 'W'; header[9] = 'A'; header[10] = 'V'; header[11] = 'E';
-        header[12] = 'f'; header[13] = 'm'; header[14] = 't'; header[15] = ' ';
-        header[16] = 16; header[17] = 0; header[18] = 0; header[19] = 0;
-        header[20] = 1; header[21] = 0;
-        header[22] = (byte) channels; header[23] = 0;
-        header[24] = (byte) (sampleRate & 0xff);
-        header[25] = (byte) ((sampleRate >> 8) & 0xff);
-        header[26] = (byte) ((sampleRate >> 16) & 0xff);
-        header[27] = (byte) ((sampleRate >> 24) & 0xff);
-        header[28] = (byte) (byteRate & 0xff);
-        header[29] = (byte) ((byteRate >> 8) & 0xff);
-        header[30] = (byte) ((byteRate >> 16) & 0xff);
-        header[31] = (byte) ((byteRate >> 24) & 0xff);
-        header[32] = (byte) blockAlign; header[33] = 0;
-        header[34] = (byte) bitDepth; header[35] = 0;
-        header[36] = 'd'; header[37] = 'a'; header[38] = 't'; header[39] = 'a';
-        header[40] = (byte) (audioDataLength & 0xff);
-        header[41] = (byte) ((audioDataLength >> 8) & 0xff);
-        header[42] = (byte) ((audioDataLength >> 16) & 0xff);
-        header[43] = (byte) ((audioDataLength >> 24) & 0xff);
-
-        try (FileOutputStream fos = new FileOutputStream(wavFileOutput);
-             FileInputStream fis = new FileInputStream(pcmFile)) {
-            fos.write(header, 0, 44);
-            byte[] buffer = new byte[4096];
-            int bytesRead;
-            while ((bytesRead = fis.read(buffer)) != -1) {
-                fos.write(buffer, 0, bytesRead);
-            }
-        }
-        Log.d(TAG, "WAV header added. Output: " + wavFileOutput.getAbsolutePath());
+        ioExecutor.shutdown();
     }
 }
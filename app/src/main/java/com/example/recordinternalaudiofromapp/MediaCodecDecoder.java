@@ -0,0 +1,182 @@
+package com.example.recordinternalaudiofromapp;
+
+import android.content.res.AssetFileDescriptor;
+import android.media.AudioFormat;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import com.example.recordinternalaudiofromapp.audio.PcmDecoder;
+import com.example.recordinternalaudiofromapp.audio.PcmFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes the first audio track of a compressed file (such as {@code R.raw.my_song}) to 16-bit
+ * PCM with {@link MediaExtractor} and {@link MediaCodec}, without playing it. The constructor
+ * decodes up to the first output buffer so {@link #getFormat()} reflects what the codec really
+ * produces (HE-AAC, for example, can report half the output rate in the track format).
+ */
+final class MediaCodecDecoder implements PcmDecoder {
+
+    private static final long DEQUEUE_TIMEOUT_US = 10_000;
+
+    private final MediaExtractor extractor = new MediaExtractor();
+    private MediaCodec codec;
+    private final MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+    private PcmFormat format;
+    private final long durationFrames;
+
+    private ByteBuffer pendingOutput;
+    private int pendingOutputIndex = -1;
+    private boolean inputDone;
+    private boolean outputDone;
+    private long bytesDelivered;
+
+    MediaCodecDecoder(AssetFileDescriptor afd) throws IOException {
+        MediaCodec createdCodec = null;
+        try {
+            extractor.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+            MediaFormat trackFormat = null;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat candidate = extractor.getTrackFormat(i);
+                String mime = candidate.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/")) {
+                    extractor.selectTrack(i);
+                    trackFormat = candidate;
+                    break;
+                }
+            }
+            if (trackFormat == null) {
+                throw new IOException("No audio track found.");
+            }
+            int sampleRate = trackFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            format = new PcmFormat(sampleRate, trackFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT), 16);
+            durationFrames = trackFormat.containsKey(MediaFormat.KEY_DURATION)
+                    ? trackFormat.getLong(MediaFormat.KEY_DURATION) * sampleRate / 1_000_000
+                    : -1;
+            createdCodec = MediaCodec.createDecoderByType(trackFormat.getString(MediaFormat.KEY_MIME));
+            createdCodec.configure(trackFormat, null, null, 0);
+            createdCodec.start();
+            codec = createdCodec;
+            while (pendingOutput == null && !outputDone) {
+                feedInput();
+                drainOutput();
+            }
+        } catch (IOException | RuntimeException e) {
+            if (createdCodec != null) {
+                createdCodec.release();
+            }
+            extractor.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public PcmFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public long getDurationFrames() {
+        return durationFrames;
+    }
+
+    @Override
+    public int read(byte[] dst, int offset, int length) throws IOException {
+        while (pendingOutput == null || !pendingOutput.hasRemaining()) {
+            releasePendingOutput();
+            if (outputDone) {
+                return -1;
+            }
+            feedInput();
+            drainOutput();
+        }
+        int frameSize = format.getFrameSize();
+        int count = Math.min(pendingOutput.remaining(), length - length % frameSize);
+        pendingOutput.get(dst, offset, count);
+        bytesDelivered += count;
+        return count;
+    }
+
+    private void feedInput() {
+        if (inputDone) {
+            return;
+        }
+        int index = codec.dequeueInputBuffer(DEQUEUE_TIMEOUT_US);
+        if (index < 0) {
+            return;
+        }
+        ByteBuffer input = codec.getInputBuffer(index);
+        int size = input != null ? extractor.readSampleData(input, 0) : -1;
+        if (size < 0) {
+            codec.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+            inputDone = true;
+        } else {
+            codec.queueInputBuffer(index, 0, size, extractor.getSampleTime(), 0);
+            extractor.advance();
+        }
+    }
+
+    private void drainOutput() throws IOException {
+        int index = codec.dequeueOutputBuffer(bufferInfo, DEQUEUE_TIMEOUT_US);
+        if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+            updateOutputFormat(codec.getOutputFormat());
+            return;
+        }
+        if (index < 0) {
+            return;
+        }
+        if ((bufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+            outputDone = true;
+        }
+        ByteBuffer output = codec.getOutputBuffer(index);
+        if (output == null || bufferInfo.size == 0) {
+            codec.releaseOutputBuffer(index, false);
+            return;
+        }
+        output.position(bufferInfo.offset);
+        output.limit(bufferInfo.offset + bufferInfo.size);
+        pendingOutput = output;
+        pendingOutputIndex = index;
+    }
+
+    private void updateOutputFormat(MediaFormat outputFormat) throws IOException {
+        boolean is16Bit = !outputFormat.containsKey(MediaFormat.KEY_PCM_ENCODING)
+                || outputFormat.getInteger(MediaFormat.KEY_PCM_ENCODING) == AudioFormat.ENCODING_PCM_16BIT;
+        if (!is16Bit) {
+            throw new IOException("Unsupported decoder output encoding: " + outputFormat);
+        }
+        PcmFormat updated = new PcmFormat(outputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE),
+                outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT), 16);
+        if (updated.equals(format)) {
+            return;
+        }
+        if (pendingOutput != null || bytesDelivered > 0) {
+            // Callers already sized their output for the old format.
+            throw new IOException("Decoder output format changed mid-stream: " + outputFormat);
+        }
+        format = updated;
+    }
+
+    private void releasePendingOutput() {
+        if (pendingOutputIndex >= 0) {
+            codec.releaseOutputBuffer(pendingOutputIndex, false);
+            pendingOutputIndex = -1;
+        }
+        pendingOutput = null;
+    }
+
+    @Override
+    public void close() {
+        releasePendingOutput();
+        try {
+            codec.stop();
+        } catch (IllegalStateException ignored) {
+            // Already stopped or in an error state; release() below still frees it.
+        }
+        codec.release();
+        extractor.release();
+    }
+}
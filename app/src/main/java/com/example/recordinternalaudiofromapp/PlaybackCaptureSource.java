@@ -0,0 +1,118 @@
+package com.example.recordinternalaudiofromapp;
+
+import android.Manifest;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioPlaybackCaptureConfiguration;
+import android.media.AudioRecord;
+import android.media.projection.MediaProjection;
+import android.os.Build;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.RequiresApi;
+import androidx.annotation.RequiresPermission;
+
+import com.example.recordinternalaudiofromapp.audio.BaseCaptureSource;
+import com.example.recordinternalaudiofromapp.audio.PcmFormat;
+
+/**
+ * Gap-free 16-bit capture of this app's own media playback through {@link AudioRecord} and
+ * {@link AudioPlaybackCaptureConfiguration} (API 29+). Needs a {@link MediaProjection} granted by
+ * the user and the RECORD_AUDIO permission.
+ */
+@RequiresApi(Build.VERSION_CODES.Q)
+final class PlaybackCaptureSource extends BaseCaptureSource {
+
+    private static final String TAG = "PlaybackCapture";
+    private static final int SAMPLE_RATE = 48000;
+    private static final int CHANNELS = 2;
+    // Read in ~10 ms chunks; the AudioRecord buffer itself holds several of them.
+    private static final int READ_FRAMES = SAMPLE_RATE / 100;
+
+    private final AudioRecord audioRecord;
+    private final PcmFormat format;
+    private final byte[] readBuffer;
+    private volatile boolean running;
+    private Thread readThread;
+
+    @RequiresPermission(Manifest.permission.RECORD_AUDIO)
+    PlaybackCaptureSource(MediaProjection mediaProjection) {
+        AudioPlaybackCaptureConfiguration config = new AudioPlaybackCaptureConfiguration.Builder(mediaProjection)
+                .addMatchingUsage(AudioAttributes.USAGE_MEDIA)
+                .addMatchingUid(Process.myUid())
+                .build();
+        AudioFormat audioFormat = new AudioFormat.Builder()
+                .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                .setSampleRate(SAMPLE_RATE)
+                .setChannelMask(AudioFormat.CHANNEL_IN_STEREO)
+                .build();
+        int minBufferSize = AudioRecord.getMinBufferSize(SAMPLE_RATE, AudioFormat.CHANNEL_IN_STEREO,
+                AudioFormat.ENCODING_PCM_16BIT);
+        format = new PcmFormat(SAMPLE_RATE, CHANNELS, 16);
+        readBuffer = new byte[READ_FRAMES * format.getFrameSize()];
+        audioRecord = new AudioRecord.Builder()
+                .setAudioFormat(audioFormat)
+                .setBufferSizeInBytes(Math.max(minBufferSize, readBuffer.length) * 4)
+                .setAudioPlaybackCaptureConfig(config)
+                .build();
+        if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
+            audioRecord.release();
+            throw new IllegalStateException("AudioRecord for playback capture failed to initialize.");
+        }
+    }
+
+    @Override
+    public PcmFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public boolean isContinuous() {
+        return true;
+    }
+
+    @Override
+    protected void onStart() {
+        audioRecord.startRecording();
+        running = true;
+        readThread = new Thread(this::readLoop, "PlaybackCapture");
+        readThread.start();
+    }
+
+    private void readLoop() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        while (running) {
+            int read = audioRecord.read(readBuffer, 0, readBuffer.length);
+            if (read > 0) {
+                deliver(readBuffer, 0, read);
+            } else if (read < 0) {
+                Log.e(TAG, "AudioRecord read failed: " + read);
+                break;
+            }
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        running = false;
+        try {
+            audioRecord.stop(); // Unblocks a pending read().
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "Error stopping AudioRecord: " + e.getMessage());
+        }
+        if (readThread != null) {
+            try {
+                readThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            readThread = null;
+        }
+    }
+
+    @Override
+    public void release() {
+        audioRecord.release();
+    }
+}
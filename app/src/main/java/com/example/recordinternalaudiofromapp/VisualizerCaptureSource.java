@@ -0,0 +1,77 @@
+package com.example.recordinternalaudiofromapp;
+
+import android.media.audiofx.Visualizer;
+
+import com.example.recordinternalaudiofromapp.audio.BaseCaptureSource;
+import com.example.recordinternalaudiofromapp.audio.PcmFormat;
+
+/**
+ * Captures through {@link Visualizer} waveform snapshots: unsigned 8-bit mono blocks of
+ * {@code getCaptureSizeRange()[1]} samples, delivered at {@code getMaxCaptureRate() / 2}. The
+ * snapshots are not contiguous, so far fewer frames arrive per second than the nominal rate.
+ */
+final class VisualizerCaptureSource extends BaseCaptureSource {
+
+    private final Visualizer visualizer;
+    private final PcmFormat format;
+
+    /**
+     * @throws RuntimeException if the Visualizer cannot attach to the session (see {@link Visualizer})
+     */
+    VisualizerCaptureSource(int audioSessionId) {
+        visualizer = new Visualizer(audioSessionId);
+        try {
+            visualizer.setCaptureSize(Visualizer.getCaptureSizeRange()[1]);
+            // getSamplingRate() is in milliHertz.
+            format = new PcmFormat(visualizer.getSamplingRate() / 1000, 1, 8);
+        } catch (RuntimeException e) {
+            visualizer.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public PcmFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public boolean isContinuous() {
+        return false;
+    }
+
+    /** Snapshot size in samples. */
+    int getCaptureSize() {
+        return visualizer.getCaptureSize();
+    }
+
+    @Override
+    protected void onStart() {
+        visualizer.setDataCaptureListener(new Visualizer.OnDataCaptureListener() {
+            @Override
+            public void onWaveFormDataCapture(Visualizer viz, byte[] waveform, int samplingRate) {
+                if (waveform != null) {
+                    deliver(waveform, 0, waveform.length);
+                }
+            }
+
+            @Override
+            public void onFftDataCapture(Visualizer viz, byte[] fft, int samplingRate) {}
+        }, Visualizer.getMaxCaptureRate() / 2, true, false);
+
+        int status = visualizer.setEnabled(true);
+        if (status != Visualizer.SUCCESS) {
+            throw new IllegalStateException("Failed to enable Visualizer. State: " + status);
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        visualizer.setEnabled(false);
+    }
+
+    @Override
+    public void release() {
+        visualizer.release();
+    }
+}
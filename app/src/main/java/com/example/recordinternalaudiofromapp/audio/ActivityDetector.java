@@ -0,0 +1,136 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+/**
+ * Decides per block whether audio is active, from its RMS level and zero-crossing rate.
+ *
+ * <p>Hysteresis keeps the decision from chattering: audio becomes active when a block reaches
+ * {@code openDb}, and only becomes inactive once blocks have stayed "quiet" for the hangover
+ * time. A block is quiet when it falls below {@code closeDb}, or when it is below {@code openDb}
+ * and crosses zero so often that it looks like broadband hiss rather than signal.
+ *
+ * <p>Allocation-free after construction and not thread-safe.
+ */
+public final class ActivityDetector {
+
+    public static final float DEFAULT_OPEN_DB = -45f;
+    public static final float DEFAULT_CLOSE_DB = -55f;
+    public static final float DEFAULT_NOISE_ZERO_CROSSING_RATE = 0.35f;
+    public static final int DEFAULT_HANGOVER_MILLIS = 300;
+
+    private static final int DECODE_FRAMES = 1024;
+
+    private final PcmFormat format;
+    private final int channels;
+    private final double openPower;
+    private final double closePower;
+    private final float noiseZeroCrossingRate;
+    private final long hangoverFrames;
+    private final float[] decoded;
+
+    private boolean active;
+    private long quietFrames;
+    private boolean lastPositive;
+    private double lastRmsDb = Double.NEGATIVE_INFINITY;
+    private float lastZeroCrossingRate;
+
+    public ActivityDetector(PcmFormat format) {
+        this(format, DEFAULT_OPEN_DB, DEFAULT_CLOSE_DB, DEFAULT_NOISE_ZERO_CROSSING_RATE, DEFAULT_HANGOVER_MILLIS);
+    }
+
+    /**
+     * @param openDb                block level (dBFS RMS) that makes audio active
+     * @param closeDb               level below which a block counts as quiet; at most {@code openDb}
+     * @param noiseZeroCrossingRate zero crossings per sample above which a block under
+     *                              {@code openDb} counts as quiet
+     * @param hangoverMillis        how long blocks must stay quiet before audio becomes inactive
+     */
+    public ActivityDetector(PcmFormat format, float openDb, float closeDb, float noiseZeroCrossingRate,
+                            int hangoverMillis) {
+        if (closeDb > openDb) {
+            throw new IllegalArgumentException("closeDb " + closeDb + " above openDb " + openDb);
+        }
+        this.format = format;
+        this.channels = format.getChannels();
+        this.openPower = Math.pow(10, openDb / 10);
+        this.closePower = Math.pow(10, closeDb / 10);
+        this.noiseZeroCrossingRate = noiseZeroCrossingRate;
+        this.hangoverFrames = (long) format.getSampleRate() * hangoverMillis / 1000;
+        this.decoded = new float[DECODE_FRAMES * channels];
+    }
+
+    /**
+     * Analyzes {@code frames} whole frames starting at {@code offset} and returns whether audio is
+     * active after this block.
+     */
+    public boolean process(byte[] data, int offset, int frames) {
+        int frameSize = format.getFrameSize();
+        double squares = 0;
+        int crossings = 0;
+        boolean positive = lastPositive;
+        for (int done = 0; done < frames; ) {
+            int chunk = Math.min(frames - done, DECODE_FRAMES);
+            SampleConverter.decode(format, data, offset + done * frameSize, decoded, chunk * channels);
+            for (int i = 0, n = chunk * channels; i < n; i++) {
+                float sample = decoded[i];
+                squares += sample * sample;
+            }
+            // Crossings are counted on the first channel only.
+            for (int i = 0, n = chunk * channels; i < n; i += channels) {
+                float sample = decoded[i];
+                if (sample > 0 && !positive) {
+                    positive = true;
+                    crossings++;
+                } else if (sample < 0 && positive) {
+                    positive = false;
+                    crossings++;
+                }
+            }
+            done += chunk;
+        }
+        lastPositive = positive;
+        if (frames == 0) {
+            return active;
+        }
+
+        double power = squares / ((long) frames * channels);
+        float zeroCrossingRate = (float) crossings / frames;
+        lastRmsDb = 10 * Math.log10(power);
+        lastZeroCrossingRate = zeroCrossingRate;
+        boolean loud = power >= openPower;
+        boolean quiet = power < closePower || (!loud && zeroCrossingRate > noiseZeroCrossingRate);
+        if (loud) {
+            active = true;
+            quietFrames = 0;
+        } else if (active && quiet) {
+            quietFrames += frames;
+            if (quietFrames >= hangoverFrames) {
+                active = false;
+                quietFrames = 0;
+            }
+        } else if (active) {
+            quietFrames = 0;
+        }
+        return active;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /** RMS level of the last non-empty block in dBFS; negative infinity for digital silence. */
+    public double getLastRmsDb() {
+        return lastRmsDb;
+    }
+
+    public float getLastZeroCrossingRate() {
+        return lastZeroCrossingRate;
+    }
+
+    public void reset() {
+        active = false;
+        quietFrames = 0;
+        lastPositive = false;
+        lastRmsDb = Double.NEGATIVE_INFINITY;
+        lastZeroCrossingRate = 0;
+    }
+}
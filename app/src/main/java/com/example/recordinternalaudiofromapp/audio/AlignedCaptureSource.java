@@ -0,0 +1,62 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+/**
+ * Turns a snapshot-based source into a continuous one. Each block from the wrapped source is
+ * stamped with the player's position from a {@link PlaybackClock} and placed on the sample
+ * timeline by a {@link TimelineAligner}, so the recording keeps the length and timing of the
+ * playback even though the wrapped source skips audio between snapshots.
+ *
+ * <p>A block is taken to end at the moment it is delivered, which is how Visualizer snapshots
+ * behave: each one holds the most recent samples. A constant capture latency only shifts the
+ * whole timeline and does not affect the alignment.
+ */
+public final class AlignedCaptureSource extends BaseCaptureSource {
+
+    private final CaptureSource source;
+    private final PlaybackClock clock;
+    private final TimelineAligner aligner;
+
+    public AlignedCaptureSource(CaptureSource source, PlaybackClock clock) {
+        this.source = source;
+        this.clock = clock;
+        this.aligner = new TimelineAligner(source.getFormat(), this::deliver);
+    }
+
+    @Override
+    public PcmFormat getFormat() {
+        return source.getFormat();
+    }
+
+    @Override
+    public boolean isContinuous() {
+        return true;
+    }
+
+    public PlaybackClock getClock() {
+        return clock;
+    }
+
+    /** Gap, overlap and drift statistics for the session. */
+    public TimelineAligner getAligner() {
+        return aligner;
+    }
+
+    @Override
+    protected void onStart() {
+        PcmFormat format = source.getFormat();
+        source.start((data, offset, length) -> {
+            long durationNanos = (length / format.getFrameSize()) * 1_000_000_000L / format.getSampleRate();
+            aligner.add(data, offset, length, clock.getPositionNanos() - durationNanos);
+        });
+    }
+
+    @Override
+    protected void onStop() {
+        source.stop();
+    }
+
+    @Override
+    public void release() {
+        source.release();
+    }
+}
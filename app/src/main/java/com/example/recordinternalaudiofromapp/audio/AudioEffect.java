@@ -0,0 +1,57 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+/**
+ * One stage of an {@link EffectsChain}. Samples are interleaved floats in [-1, 1), and each
+ * {@link Processor} works on one contiguous run of frames on one thread.
+ *
+ * <p>The chain processes a file in independent chunks, so an effect must give the same result
+ * wherever the chunk boundaries fall:
+ * <ul>
+ * <li>An effect with memory declares {@link #getHistoryFrames()}. Its state must be completely
+ * determined by that many preceding input frames (and the absolute frame index), because a
+ * fresh processor is primed with them at every chunk boundary.</li>
+ * <li>An effect that needs the whole recording first, such as normalization, returns a
+ * {@link Measurement}. Per-chunk measurements are merged in stream order and must be exact
+ * under any split (maxima, integer sums), so the total does not depend on the chunk size.</li>
+ * </ul>
+ */
+public interface AudioEffect {
+
+    /** Applies the effect to a contiguous run of frames. */
+    interface Processor {
+        /**
+         * Processes {@code frames} frames of {@code samples} in place.
+         *
+         * @param firstFrame index of the first frame in the whole recording
+         */
+        void process(float[] samples, int frames, long firstFrame);
+    }
+
+    /** Gathers a value over the whole recording before any audio is processed. */
+    interface Measurement {
+        /** Measures {@code frames} frames starting at sample {@code offset}. */
+        void accumulate(float[] samples, int offset, int frames);
+
+        /** Folds in the measurement of the audio that directly follows this one. */
+        void merge(Measurement next);
+    }
+
+    /** Preceding input frames a fresh processor needs to rebuild its state; 0 if it has none. */
+    default int getHistoryFrames() {
+        return 0;
+    }
+
+    /** A new, empty measurement, or null if this effect needs none. */
+    default Measurement newMeasurement(PcmFormat format) {
+        return null;
+    }
+
+    /**
+     * Called once per run before processing, with the merged measurement (null if the effect
+     * needs none) and the length of the recording.
+     */
+    default void prepare(Measurement measurement, long totalFrames) {
+    }
+
+    Processor newProcessor(PcmFormat format);
+}
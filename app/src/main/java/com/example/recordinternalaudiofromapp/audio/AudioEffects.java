@@ -0,0 +1,230 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+/**
+ * The effects used to clean up finished recordings. Effects that are prepared per run (DC
+ * removal, normalization, fade-out) hold the values of the run in progress, so an instance
+ * belongs to one {@link EffectsChain} run at a time.
+ */
+public final class AudioEffects {
+
+    /** Fixed-point scale that makes every sample of up to 24 bits an exact integer. */
+    private static final double QUANTUM = 1 << 23;
+
+    private AudioEffects() {
+    }
+
+    /** Multiplies every sample by a fixed gain. */
+    public static AudioEffect gain(float decibels) {
+        float factor = (float) Math.pow(10, decibels / 20);
+        return format -> (samples, frames, firstFrame) -> {
+            int count = frames * format.getChannels();
+            for (int i = 0; i < count; i++) {
+                samples[i] *= factor;
+            }
+        };
+    }
+
+    /**
+     * Subtracts each channel's mean over the whole recording, e.g. the offset of 8-bit
+     * Visualizer data that was not centered on 128.
+     */
+    public static AudioEffect removeDcOffset() {
+        return new AudioEffect() {
+            private float[] offsets;
+
+            @Override
+            public Measurement newMeasurement(PcmFormat format) {
+                return new SumMeasurement(format.getChannels());
+            }
+
+            @Override
+            public void prepare(Measurement measurement, long totalFrames) {
+                SumMeasurement sums = (SumMeasurement) measurement;
+                offsets = new float[sums.sums.length];
+                for (int c = 0; c < offsets.length && totalFrames > 0; c++) {
+                    offsets[c] = (float) (sums.sums[c] / QUANTUM / totalFrames);
+                }
+            }
+
+            @Override
+            public Processor newProcessor(PcmFormat format) {
+                float[] offsets = this.offsets;
+                int channels = format.getChannels();
+                return (samples, frames, firstFrame) -> {
+                    for (int f = 0, i = 0; f < frames; f++) {
+                        for (int c = 0; c < channels; c++, i++) {
+                            samples[i] -= offsets[c];
+                        }
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Subtracts each channel's moving average over the last {@code windowFrames} frames, which
+     * follows a DC offset that drifts during the recording. The average is kept as an integer
+     * sum, so a processor primed with the previous window reproduces it exactly.
+     */
+    public static AudioEffect trackDcOffset(int windowFrames) {
+        if (windowFrames <= 0) {
+            throw new IllegalArgumentException("windowFrames must be positive: " + windowFrames);
+        }
+        return new AudioEffect() {
+            @Override
+            public int getHistoryFrames() {
+                return windowFrames - 1;
+            }
+
+            @Override
+            public Processor newProcessor(PcmFormat format) {
+                int channels = format.getChannels();
+                long[] window = new long[windowFrames * channels];
+                long[] sums = new long[channels];
+                return (samples, frames, firstFrame) -> {
+                    for (int f = 0, i = 0; f < frames; f++) {
+                        long frame = firstFrame + f;
+                        // Slots follow the absolute frame index, so any processor reaching this
+                        // frame holds the same window.
+                        int slot = (int) (frame % windowFrames) * channels;
+                        double count = Math.min(frame + 1, windowFrames) * QUANTUM;
+                        for (int c = 0; c < channels; c++, i++) {
+                            long value = (long) (samples[i] * QUANTUM);
+                            sums[c] += value - window[slot + c];
+                            window[slot + c] = value;
+                            samples[i] -= (float) (sums[c] / count);
+                        }
+                    }
+                };
+            }
+        };
+    }
+
+    /** Scales the recording so that its loudest sample peaks at {@code peakDecibels} dBFS. */
+    public static AudioEffect normalize(float peakDecibels) {
+        float target = (float) Math.pow(10, peakDecibels / 20);
+        return new AudioEffect() {
+            private float factor = 1f;
+
+            @Override
+            public Measurement newMeasurement(PcmFormat format) {
+                return new PeakMeasurement(format.getChannels());
+            }
+
+            @Override
+            public void prepare(Measurement measurement, long totalFrames) {
+                float peak = ((PeakMeasurement) measurement).peak;
+                factor = peak > 0 ? target / peak : 1f;
+            }
+
+            @Override
+            public Processor newProcessor(PcmFormat format) {
+                float factor = this.factor;
+                return (samples, frames, firstFrame) -> {
+                    int count = frames * format.getChannels();
+                    for (int i = 0; i < count; i++) {
+                        samples[i] *= factor;
+                    }
+                };
+            }
+        };
+    }
+
+    /** Ramps the first {@code fadeFrames} frames up from silence. */
+    public static AudioEffect fadeIn(long fadeFrames) {
+        return format -> (samples, frames, firstFrame) ->
+                fade(samples, format.getChannels(), frames, firstFrame, 0, fadeFrames);
+    }
+
+    /** Ramps the last {@code fadeFrames} frames down to silence. */
+    public static AudioEffect fadeOut(long fadeFrames) {
+        return new AudioEffect() {
+            private long totalFrames;
+
+            @Override
+            public void prepare(Measurement measurement, long totalFrames) {
+                this.totalFrames = totalFrames;
+            }
+
+            @Override
+            public Processor newProcessor(PcmFormat format) {
+                long end = totalFrames;
+                return (samples, frames, firstFrame) ->
+                        fade(samples, format.getChannels(), frames, firstFrame, end, -fadeFrames);
+            }
+        };
+    }
+
+    /**
+     * Applies a linear ramp that is silent at frame {@code silentFrame} and reaches full level
+     * {@code |length|} frames later (or earlier, for a negative length).
+     */
+    private static void fade(float[] samples, int channels, int frames, long firstFrame,
+                             long silentFrame, long length) {
+        if (length == 0) {
+            return;
+        }
+        for (int f = 0, i = 0; f < frames; f++, i += channels) {
+            long distance = length > 0 ? firstFrame + f - silentFrame : silentFrame - 1 - (firstFrame + f);
+            long span = Math.abs(length);
+            if (distance >= span || distance < 0) {
+                continue;
+            }
+            float level = (float) distance / span;
+            for (int c = 0; c < channels; c++) {
+                samples[i + c] *= level;
+            }
+        }
+    }
+
+    /** Per-channel sums of fixed-point samples; integer addition makes merging exact. */
+    private static final class SumMeasurement implements AudioEffect.Measurement {
+        final long[] sums;
+
+        SumMeasurement(int channels) {
+            sums = new long[channels];
+        }
+
+        @Override
+        public void accumulate(float[] samples, int offset, int frames) {
+            int channels = sums.length;
+            for (int f = 0, i = offset; f < frames; f++) {
+                for (int c = 0; c < channels; c++, i++) {
+                    sums[c] += (long) (samples[i] * QUANTUM);
+                }
+            }
+        }
+
+        @Override
+        public void merge(AudioEffect.Measurement next) {
+            long[] other = ((SumMeasurement) next).sums;
+            for (int c = 0; c < sums.length; c++) {
+                sums[c] += other[c];
+            }
+        }
+    }
+
+    /** Largest absolute sample value. */
+    private static final class PeakMeasurement implements AudioEffect.Measurement {
+        private final int channels;
+        float peak;
+
+        PeakMeasurement(int channels) {
+            this.channels = channels;
+        }
+
+        @Override
+        public void accumulate(float[] samples, int offset, int frames) {
+            float max = peak;
+            for (int i = offset, end = offset + frames * channels; i < end; i++) {
+                max = Math.max(max, Math.abs(samples[i]));
+            }
+            peak = max;
+        }
+
+        @Override
+        public void merge(AudioEffect.Measurement next) {
+            peak = Math.max(peak, ((PeakMeasurement) next).peak);
+        }
+    }
+}
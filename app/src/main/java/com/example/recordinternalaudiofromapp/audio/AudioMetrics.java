@@ -0,0 +1,166 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and histograms for one recording session. The capture callback and the writer thread
+ * record into it without locks or allocation; {@link #snapshot()} copies everything out for
+ * logging or for a {@code .metrics} file next to the recording.
+ *
+ * <p>Tracked: callback inter-arrival time and jitter (the change between consecutive intervals),
+ * ring buffer occupancy seen by each callback, blocks and bytes captured and dropped, batches and
+ * bytes written with per-batch write latency, and the time from the user's request to the first
+ * captured sample.
+ */
+public final class AudioMetrics {
+
+    public static final String SUFFIX = ".metrics";
+
+    private static final long UNSET = -1;
+
+    private final AtomicLong callbacks = new AtomicLong();
+    private final AtomicLong capturedBytes = new AtomicLong();
+    private final AtomicLong droppedBlocks = new AtomicLong();
+    private final AtomicLong droppedBytes = new AtomicLong();
+    private final AtomicLong writtenBatches = new AtomicLong();
+    private final AtomicLong writtenBytes = new AtomicLong();
+    private final AtomicLong requestedNanos = new AtomicLong(UNSET);
+    private final AtomicLong firstSampleNanos = new AtomicLong(UNSET);
+    private final Histogram callbackInterval = new Histogram();
+    private final Histogram callbackJitter = new Histogram();
+    private final Histogram bufferOccupancy = new Histogram();
+    private final Histogram writeLatency = new Histogram();
+
+    // Only touched by the capture callback thread.
+    private long lastCallbackNanos = UNSET;
+    private long lastIntervalNanos = UNSET;
+
+    /** Returns the metrics file that belongs to a recording. */
+    public static File fileFor(File recording) {
+        return new File(recording.getParentFile(), recording.getName() + SUFFIX);
+    }
+
+    /** Marks the moment the user asked to record; time to first sample is measured from here. */
+    public void markRequested() {
+        requestedNanos.set(System.nanoTime());
+    }
+
+    /** Like {@link #markRequested()}, for a request made at {@code nanos} on the {@link System#nanoTime()} clock. */
+    public void markRequested(long nanos) {
+        requestedNanos.set(nanos);
+    }
+
+    /** Marks the request time unless {@link #markRequested()} already did. */
+    void markRequestedIfUnset() {
+        requestedNanos.compareAndSet(UNSET, System.nanoTime());
+    }
+
+    /**
+     * Records one capture callback. Call from the capture thread only.
+     *
+     * @param bufferedBytes ring buffer occupancy after the block was offered
+     * @param accepted      false if the block was dropped
+     */
+    public void onCaptured(int length, int bufferedBytes, boolean accepted) {
+        long now = System.nanoTime();
+        if (lastCallbackNanos != UNSET) {
+            long interval = now - lastCallbackNanos;
+            callbackInterval.record(interval);
+            if (lastIntervalNanos != UNSET) {
+                callbackJitter.record(Math.abs(interval - lastIntervalNanos));
+            }
+            lastIntervalNanos = interval;
+        }
+        lastCallbackNanos = now;
+        if (length > 0 && firstSampleNanos.get() == UNSET) {
+            firstSampleNanos.compareAndSet(UNSET, now);
+        }
+        callbacks.incrementAndGet();
+        capturedBytes.addAndGet(length);
+        if (!accepted) {
+            droppedBlocks.incrementAndGet();
+            droppedBytes.addAndGet(length);
+        }
+        bufferOccupancy.record(bufferedBytes);
+    }
+
+    /** Records one batch handed to the sink and how long the write took. */
+    public void onBatchWritten(int length, long elapsedNanos) {
+        writtenBatches.incrementAndGet();
+        writtenBytes.addAndGet(length);
+        writeLatency.record(elapsedNanos);
+    }
+
+    public Snapshot snapshot() {
+        long requested = requestedNanos.get();
+        long first = firstSampleNanos.get();
+        return new Snapshot(callbacks.get(), capturedBytes.get(), droppedBlocks.get(), droppedBytes.get(),
+                writtenBatches.get(), writtenBytes.get(),
+                requested != UNSET && first != UNSET ? first - requested : UNSET,
+                callbackInterval.snapshot(), callbackJitter.snapshot(), bufferOccupancy.snapshot(),
+                writeLatency.snapshot());
+    }
+
+    /** Point-in-time copy of every metric. */
+    public static final class Snapshot {
+        public final long callbacks;
+        public final long capturedBytes;
+        public final long droppedBlocks;
+        public final long droppedBytes;
+        public final long writtenBatches;
+        public final long writtenBytes;
+        /** Nanoseconds from the request to the first captured sample, or -1 if none arrived. */
+        public final long timeToFirstSampleNanos;
+        public final Histogram.Snapshot callbackIntervalNanos;
+        public final Histogram.Snapshot callbackJitterNanos;
+        public final Histogram.Snapshot bufferOccupancyBytes;
+        public final Histogram.Snapshot writeLatencyNanos;
+
+        Snapshot(long callbacks, long capturedBytes, long droppedBlocks, long droppedBytes,
+                 long writtenBatches, long writtenBytes, long timeToFirstSampleNanos,
+                 Histogram.Snapshot callbackIntervalNanos, Histogram.Snapshot callbackJitterNanos,
+                 Histogram.Snapshot bufferOccupancyBytes, Histogram.Snapshot writeLatencyNanos) {
+            this.callbacks = callbacks;
+            this.capturedBytes = capturedBytes;
+            this.droppedBlocks = droppedBlocks;
+            this.droppedBytes = droppedBytes;
+            this.writtenBatches = writtenBatches;
+            this.writtenBytes = writtenBytes;
+            this.timeToFirstSampleNanos = timeToFirstSampleNanos;
+            this.callbackIntervalNanos = callbackIntervalNanos;
+            this.callbackJitterNanos = callbackJitterNanos;
+            this.bufferOccupancyBytes = bufferOccupancyBytes;
+            this.writeLatencyNanos = writeLatencyNanos;
+        }
+
+        /** One-line JSON; times are in microseconds. */
+        public String toJson() {
+            return String.format(Locale.US, "{\"callbacks\":%d,\"capturedBytes\":%d,\"droppedBlocks\":%d,"
+                            + "\"droppedBytes\":%d,\"writtenBatches\":%d,\"writtenBytes\":%d,\"timeToFirstSampleUs\":%d,"
+                            + "\"callbackIntervalUs\":%s,\"callbackJitterUs\":%s,\"bufferOccupancyBytes\":%s,"
+                            + "\"writeLatencyUs\":%s}",
+                    callbacks, capturedBytes, droppedBlocks, droppedBytes, writtenBatches, writtenBytes,
+                    timeToFirstSampleNanos < 0 ? -1 : timeToFirstSampleNanos / 1000,
+                    callbackIntervalNanos.toJson(1000), callbackJitterNanos.toJson(1000),
+                    bufferOccupancyBytes.toJson(1), writeLatencyNanos.toJson(1000));
+        }
+
+        /** Writes {@link #toJson()} to {@code file}, replacing it. */
+        public void writeTo(File file) throws IOException {
+            try (OutputStream out = new FileOutputStream(file)) {
+                out.write((toJson() + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        @Override
+        public String toString() {
+            return toJson();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination for interleaved PCM blocks coming out of the capture pipeline. Closing a sink
+ * finalizes its output (headers, trailers) and releases its resources.
+ */
+public interface AudioSink extends Closeable {
+
+    void write(byte[] data, int offset, int length) throws IOException;
+}
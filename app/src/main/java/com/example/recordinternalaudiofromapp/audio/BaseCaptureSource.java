@@ -0,0 +1,56 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+/**
+ * Shared bookkeeping for {@link CaptureSource} implementations: forwards blocks to the listener
+ * and measures the delivered sample rate.
+ */
+public abstract class BaseCaptureSource implements CaptureSource {
+
+    private volatile Listener listener;
+    private volatile long startNanos;
+    private volatile long deliveredFrames;
+
+    @Override
+    public void start(Listener listener) {
+        this.deliveredFrames = 0;
+        this.startNanos = System.nanoTime();
+        this.listener = listener;
+        onStart();
+    }
+
+    @Override
+    public void stop() {
+        onStop();
+        listener = null;
+    }
+
+    /** Starts the underlying capture; called after the listener is installed. */
+    protected abstract void onStart();
+
+    /** Stops the underlying capture; must not return while a delivery is still in progress. */
+    protected abstract void onStop();
+
+    /** Hands a captured block to the listener. Called from the capture thread only. */
+    protected final void deliver(byte[] data, int offset, int length) {
+        Listener current = listener;
+        if (current == null) {
+            return;
+        }
+        deliveredFrames += length / getFormat().getFrameSize();
+        current.onCaptured(data, offset, length);
+    }
+
+    public long getDeliveredFrames() {
+        return deliveredFrames;
+    }
+
+    @Override
+    public double getDeliveredSampleRate() {
+        long elapsed = System.nanoTime() - startNanos;
+        long frames = deliveredFrames;
+        if (frames == 0 || elapsed <= 0) {
+            return 0;
+        }
+        return frames * 1e9 / elapsed;
+    }
+}
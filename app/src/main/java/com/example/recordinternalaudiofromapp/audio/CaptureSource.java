@@ -0,0 +1,35 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+/**
+ * A producer of captured PCM blocks. Implementations wrap one capture mechanism (the Visualizer
+ * snapshot API, AudioPlaybackCapture, a synthetic generator for tests) and report what they
+ * really deliver, which is not always what a file header would suggest.
+ */
+public interface CaptureSource {
+
+    /** Receives captured blocks on the source's own thread. Must not block. */
+    interface Listener {
+        void onCaptured(byte[] data, int offset, int length);
+    }
+
+    /** Format of the bytes handed to the listener. */
+    PcmFormat getFormat();
+
+    /**
+     * Whether consecutive blocks are contiguous. Snapshot-based sources such as the Visualizer
+     * deliver blocks with gaps between them.
+     */
+    boolean isContinuous();
+
+    /** Starts delivering blocks to {@code listener}. */
+    void start(Listener listener);
+
+    /** Stops delivery; no listener call starts after this returns. */
+    void stop();
+
+    /** Frames per second actually delivered since {@link #start}, 0 before the first block. */
+    double getDeliveredSampleRate();
+
+    /** Releases the underlying capture resources. The source cannot be restarted afterwards. */
+    void release();
+}
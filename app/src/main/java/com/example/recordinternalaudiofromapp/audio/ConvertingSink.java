@@ -0,0 +1,78 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.io.IOException;
+
+/**
+ * Converts blocks to another sample encoding or channel layout on the way into a downstream
+ * sink. Writes need not be frame-aligned: a trailing partial frame is carried over to the next
+ * write. No memory is allocated after construction.
+ */
+public final class ConvertingSink implements AudioSink {
+
+    public static final int DEFAULT_BLOCK_FRAMES = 4096;
+
+    private final SampleConverter converter;
+    private final AudioSink downstream;
+    private final int inputFrameSize;
+    private final int outputFrameSize;
+    private final byte[] converted;
+    private final byte[] carry;
+    private int carryLength;
+
+    public ConvertingSink(PcmFormat input, PcmFormat output, AudioSink downstream) {
+        this(new SampleConverter(input, output, DEFAULT_BLOCK_FRAMES), downstream);
+    }
+
+    public ConvertingSink(SampleConverter converter, AudioSink downstream) {
+        this.converter = converter;
+        this.downstream = downstream;
+        this.inputFrameSize = converter.getInputFormat().getFrameSize();
+        this.outputFrameSize = converter.getOutputFormat().getFrameSize();
+        this.converted = new byte[converter.getMaxFrames() * outputFrameSize];
+        this.carry = new byte[inputFrameSize];
+    }
+
+    public PcmFormat getOutputFormat() {
+        return converter.getOutputFormat();
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        if (carryLength > 0) {
+            int needed = Math.min(inputFrameSize - carryLength, length);
+            System.arraycopy(data, offset, carry, carryLength, needed);
+            carryLength += needed;
+            offset += needed;
+            length -= needed;
+            if (carryLength < inputFrameSize) {
+                return;
+            }
+            convertFrames(carry, 0, 1);
+            carryLength = 0;
+        }
+        int frames = length / inputFrameSize;
+        int maxFrames = converter.getMaxFrames();
+        while (frames > 0) {
+            int chunk = Math.min(frames, maxFrames);
+            convertFrames(data, offset, chunk);
+            offset += chunk * inputFrameSize;
+            length -= chunk * inputFrameSize;
+            frames -= chunk;
+        }
+        if (length > 0) {
+            System.arraycopy(data, offset, carry, 0, length);
+            carryLength = length;
+        }
+    }
+
+    private void convertFrames(byte[] src, int offset, int frames) throws IOException {
+        converter.convert(src, offset, converted, 0, frames);
+        downstream.write(converted, 0, frames * outputFrameSize);
+    }
+
+    /** Closes the downstream sink; a dangling partial frame is dropped. */
+    @Override
+    public void close() throws IOException {
+        downstream.close();
+    }
+}
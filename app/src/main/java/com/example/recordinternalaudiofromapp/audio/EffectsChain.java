@@ -0,0 +1,247 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Applies a list of {@link AudioEffect}s to a finished WAV recording, writing a new WAV in the
+ * same format.
+ *
+ * <p>{@link #apply} maps the input and splits it into fixed chunks processed on a
+ * {@link ForkJoinPool}. Each chunk starts fresh processors primed with the preceding
+ * {@link AudioEffect#getHistoryFrames() history} and writes its frames straight to their place
+ * in the output. Effects that need a measurement of the whole recording get a parallel pass of
+ * their own first, over the output of the effects before them. Chunk results and measurements
+ * never depend on which thread ran them, so the output is bit-identical to
+ * {@link #applySequential}, which streams the file through one set of processors.
+ */
+public final class EffectsChain {
+
+    static final int DEFAULT_CHUNK_FRAMES = 1 << 16;
+
+    private static final int SEQUENTIAL_BLOCK_FRAMES = 4096;
+
+    private final List<AudioEffect> effects;
+    private final int chunkFrames;
+    private final int historyFrames;
+
+    public EffectsChain(AudioEffect... effects) {
+        this(DEFAULT_CHUNK_FRAMES, effects);
+    }
+
+    EffectsChain(int chunkFrames, AudioEffect... effects) {
+        if (chunkFrames <= 0) {
+            throw new IllegalArgumentException("chunkFrames must be positive: " + chunkFrames);
+        }
+        this.effects = new ArrayList<>(Arrays.asList(effects));
+        this.chunkFrames = chunkFrames;
+        // Each effect's output is exact once the effects before it have seen their own history.
+        long history = 0;
+        for (AudioEffect effect : effects) {
+            history += effect.getHistoryFrames();
+        }
+        if (history > Integer.MAX_VALUE - chunkFrames) {
+            throw new IllegalArgumentException("Effect history too long: " + history + " frames");
+        }
+        this.historyFrames = (int) history;
+    }
+
+    /** Processes {@code input} into {@code output} on the common pool. */
+    public OfflineRenderer.Result apply(File input, File output) throws IOException {
+        return apply(input, output, ForkJoinPool.commonPool());
+    }
+
+    public OfflineRenderer.Result apply(File input, File output, ForkJoinPool pool) throws IOException {
+        long start = System.nanoTime();
+        try (WavReader reader = new WavReader(input);
+             RandomAccessFile out = new RandomAccessFile(output, "rw")) {
+            PcmFormat format = reader.getFormat();
+            long totalFrames = reader.getDurationFrames();
+            int chunks = (int) ((totalFrames + chunkFrames - 1) / chunkFrames);
+            for (int i = 0; i < effects.size(); i++) {
+                AudioEffect.Measurement[] measurements = new AudioEffect.Measurement[chunks];
+                if (effects.get(i).newMeasurement(format) != null) {
+                    invoke(pool, new ChunkTask(reader, format, totalFrames, i, measurements, null, 0, chunks));
+                }
+                effects.get(i).prepare(merge(effects.get(i), format, measurements), totalFrames);
+            }
+            FileChannel target = openOutput(out, format, reader.getDataBytes());
+            invoke(pool, new ChunkTask(reader, format, totalFrames, effects.size(), null, target, 0, chunks));
+            return result(format, totalFrames, start);
+        }
+    }
+
+    private static void invoke(ForkJoinPool pool, ChunkTask task) throws IOException {
+        try {
+            pool.invoke(task);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static AudioEffect.Measurement merge(AudioEffect effect, PcmFormat format,
+                                                 AudioEffect.Measurement[] measurements) {
+        AudioEffect.Measurement total = effect.newMeasurement(format);
+        if (total != null) {
+            for (AudioEffect.Measurement measurement : measurements) {
+                total.merge(measurement);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * The reference implementation: one processor per effect sees the whole file in order, and
+     * each measurement sees the whole file in one piece.
+     */
+    public OfflineRenderer.Result applySequential(File input, File output) throws IOException {
+        long start = System.nanoTime();
+        try (WavReader reader = new WavReader(input);
+             RandomAccessFile out = new RandomAccessFile(output, "rw")) {
+            PcmFormat format = reader.getFormat();
+            long totalFrames = reader.getDurationFrames();
+            byte[] bytes = new byte[SEQUENTIAL_BLOCK_FRAMES * format.getFrameSize()];
+            float[] samples = new float[SEQUENTIAL_BLOCK_FRAMES * format.getChannels()];
+            for (int i = 0; i < effects.size(); i++) {
+                AudioEffect.Measurement measurement = effects.get(i).newMeasurement(format);
+                if (measurement != null) {
+                    AudioEffect.Processor[] processors = newProcessors(format, i);
+                    for (long frame = 0; frame < totalFrames; frame += SEQUENTIAL_BLOCK_FRAMES) {
+                        int frames = reader.read(frame, bytes, 0, SEQUENTIAL_BLOCK_FRAMES);
+                        run(processors, format, bytes, samples, frames, frame);
+                        measurement.accumulate(samples, 0, frames);
+                    }
+                }
+                effects.get(i).prepare(measurement, totalFrames);
+            }
+            FileChannel target = openOutput(out, format, reader.getDataBytes());
+            AudioEffect.Processor[] processors = newProcessors(format, effects.size());
+            SampleConverter encoder = new SampleConverter(format, format, SEQUENTIAL_BLOCK_FRAMES, false);
+            for (long frame = 0; frame < totalFrames; frame += SEQUENTIAL_BLOCK_FRAMES) {
+                int frames = reader.read(frame, bytes, 0, SEQUENTIAL_BLOCK_FRAMES);
+                run(processors, format, bytes, samples, frames, frame);
+                encoder.convert(samples, bytes, 0, frames);
+                writeFully(target, ByteBuffer.wrap(bytes, 0, frames * format.getFrameSize()),
+                        WavHeader.SIZE + frame * format.getFrameSize());
+            }
+            return result(format, totalFrames, start);
+        }
+    }
+
+    private AudioEffect.Processor[] newProcessors(PcmFormat format, int count) {
+        AudioEffect.Processor[] processors = new AudioEffect.Processor[count];
+        for (int i = 0; i < count; i++) {
+            processors[i] = effects.get(i).newProcessor(format);
+        }
+        return processors;
+    }
+
+    private static void run(AudioEffect.Processor[] processors, PcmFormat format, byte[] bytes,
+                            float[] samples, int frames, long firstFrame) {
+        SampleConverter.decode(format, bytes, 0, samples, frames * format.getChannels());
+        for (AudioEffect.Processor processor : processors) {
+            processor.process(samples, frames, firstFrame);
+        }
+    }
+
+    private static FileChannel openOutput(RandomAccessFile out, PcmFormat format, long dataBytes) throws IOException {
+        FileChannel channel = out.getChannel();
+        channel.truncate(0);
+        writeFully(channel, ByteBuffer.wrap(WavHeader.create(format, dataBytes)), 0);
+        if ((dataBytes & 1) != 0) {
+            writeFully(channel, ByteBuffer.allocate(1), WavHeader.SIZE + dataBytes);
+        }
+        return channel;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer src, long position) throws IOException {
+        while (src.hasRemaining()) {
+            position += channel.write(src, position);
+        }
+    }
+
+    private static OfflineRenderer.Result result(PcmFormat format, long frames, long start) {
+        return new OfflineRenderer.Result(frames, System.nanoTime() - start, (double) frames / format.getSampleRate());
+    }
+
+    /**
+     * Runs the first {@code effectCount} effects over chunks {@code [from, to)}, splitting the
+     * range in half until one chunk is left. With {@code measurements} set, the effect at
+     * {@code effectCount} measures each chunk; otherwise the chunk is encoded and written.
+     */
+    private final class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final WavReader reader;
+        private final PcmFormat format;
+        private final long totalFrames;
+        private final int effectCount;
+        private final AudioEffect.Measurement[] measurements;
+        private final FileChannel target;
+        private final int from;
+        private final int to;
+
+        ChunkTask(WavReader reader, PcmFormat format, long totalFrames, int effectCount,
+                  AudioEffect.Measurement[] measurements, FileChannel target, int from, int to) {
+            this.reader = reader;
+            this.format = format;
+            this.totalFrames = totalFrames;
+            this.effectCount = effectCount;
+            this.measurements = measurements;
+            this.target = target;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ChunkTask(reader, format, totalFrames, effectCount, measurements, target, from, middle),
+                        new ChunkTask(reader, format, totalFrames, effectCount, measurements, target, middle, to));
+            } else if (to > from) {
+                try {
+                    processChunk(from);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        private void processChunk(int chunk) throws IOException {
+            int frameSize = format.getFrameSize();
+            long chunkStart = (long) chunk * chunkFrames;
+            int frames = (int) Math.min(chunkFrames, totalFrames - chunkStart);
+            long first = Math.max(0, chunkStart - historyFrames);
+            int primed = (int) (chunkStart - first);
+            int total = primed + frames;
+
+            MappedByteBuffer mapped = reader.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    reader.getDataOffset() + first * frameSize, (long) total * frameSize);
+            byte[] bytes = new byte[total * frameSize];
+            mapped.get(bytes);
+            float[] samples = new float[total * format.getChannels()];
+            run(newProcessors(format, effectCount), format, bytes, samples, total, first);
+
+            if (measurements != null) {
+                AudioEffect.Measurement measurement = effects.get(effectCount).newMeasurement(format);
+                measurement.accumulate(samples, primed * format.getChannels(), frames);
+                measurements[chunk] = measurement;
+            } else {
+                new SampleConverter(format, format, total, false).convert(samples, bytes, 0, total);
+                writeFully(target, ByteBuffer.wrap(bytes, primed * frameSize, frames * frameSize),
+                        WavHeader.SIZE + chunkStart * frameSize);
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.io.File;
+
+/**
+ * An {@link AudioSink} that writes one audio file, such as {@link WavWriter} or
+ * {@link FlacWriter}. Closing it finalizes the file.
+ */
+public interface FileSink extends AudioSink {
+
+    File getFile();
+
+    /** Format of the PCM accepted by {@link #write}. */
+    PcmFormat getFormat();
+
+    /** PCM bytes accepted so far, before any compression. */
+    long getDataBytes();
+}
@@ -0,0 +1,127 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+/**
+ * MSB-first bit writer into a fixed byte array, plus the CRC-8 and CRC-16 used by FLAC frames.
+ * The caller sizes the array for the largest frame it can produce; nothing grows.
+ */
+final class FlacBitWriter {
+
+    private static final int[] CRC8_TABLE = new int[256];
+    private static final int[] CRC16_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc8 = i;
+            int crc16 = i << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc8 = (crc8 & 0x80) != 0 ? (crc8 << 1) ^ 0x07 : crc8 << 1;
+                crc16 = (crc16 & 0x8000) != 0 ? (crc16 << 1) ^ 0x8005 : crc16 << 1;
+            }
+            CRC8_TABLE[i] = crc8 & 0xFF;
+            CRC16_TABLE[i] = crc16 & 0xFFFF;
+        }
+    }
+
+    private final byte[] buffer;
+    private int position;
+    private long accumulator;
+    private int pendingBits;
+
+    FlacBitWriter(int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    void reset() {
+        position = 0;
+        accumulator = 0;
+        pendingBits = 0;
+    }
+
+    byte[] getBuffer() {
+        return buffer;
+    }
+
+    /** Bytes written so far; only meaningful when byte-aligned. */
+    int getBytePosition() {
+        return position;
+    }
+
+    /** Writes the low {@code count} bits of {@code value}, 0 <= count <= 32. */
+    void writeBits(long value, int count) {
+        if (count == 0) {
+            return;
+        }
+        accumulator = (accumulator << count) | (value & (0xFFFFFFFFL >>> (32 - count)));
+        pendingBits += count;
+        while (pendingBits >= 8) {
+            pendingBits -= 8;
+            buffer[position++] = (byte) (accumulator >>> pendingBits);
+        }
+        accumulator &= (1L << pendingBits) - 1;
+    }
+
+    /** Writes {@code zeros} zero bits followed by a one. */
+    void writeUnary(int zeros) {
+        while (zeros >= 32) {
+            writeBits(0, 32);
+            zeros -= 32;
+        }
+        writeBits(1, zeros + 1);
+    }
+
+    /** Writes a Rice code with parameter {@code k} for a signed value folded to unsigned. */
+    void writeRice(int value, int k) {
+        long folded = ((long) value << 1) ^ (value >> 31);
+        writeUnary((int) (folded >>> k));
+        writeBits(folded, k);
+    }
+
+    /** Writes a frame or sample number in FLAC's extended UTF-8 coding (up to 36 bits). */
+    void writeUtf8(long value) {
+        if (value < 0x80) {
+            writeBits(value, 8);
+            return;
+        }
+        int continuation = 1;
+        while (continuation < 6 && value >= 1L << (5 * continuation + 6)) {
+            continuation++;
+        }
+        int leadBits = 6 - continuation;
+        int lead = (0xFF00 >> (continuation + 1)) & 0xFF;
+        writeBits(lead | (value >>> (6 * continuation)) & ((1 << leadBits) - 1), 8);
+        for (int i = continuation - 1; i >= 0; i--) {
+            writeBits(0x80 | ((value >>> (6 * i)) & 0x3F), 8);
+        }
+    }
+
+    /** Pads with zero bits up to the next byte boundary. */
+    void alignToByte() {
+        if (pendingBits > 0) {
+            writeBits(0, 8 - pendingBits);
+        }
+    }
+
+    static int crc8(byte[] data, int offset, int length) {
+        int crc = 0;
+        for (int i = offset; i < offset + length; i++) {
+            crc = CRC8_TABLE[(crc ^ data[i]) & 0xFF];
+        }
+        return crc;
+    }
+
+    static int crc16(byte[] data, int offset, int length) {
+        int crc = 0;
+        for (int i = offset; i < offset + length; i++) {
+            crc = ((crc << 8) ^ CRC16_TABLE[((crc >>> 8) ^ data[i]) & 0xFF]) & 0xFFFF;
+        }
+        return crc;
+    }
+
+    static int updateCrc8(int crc, int value) {
+        return CRC8_TABLE[(crc ^ value) & 0xFF];
+    }
+
+    static int updateCrc16(int crc, int value) {
+        return ((crc << 8) ^ CRC16_TABLE[((crc >>> 8) ^ value) & 0xFF]) & 0xFFFF;
+    }
+}
@@ -0,0 +1,389 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes a FLAC stream to interleaved integer PCM. Supports every subframe type, both Rice
+ * codings with escaped partitions, wasted bits and all stereo decorrelation modes, and checks each
+ * frame's CRC-8 and CRC-16. Used to read back {@link FlacWriter} output, and as a
+ * {@link PcmDecoder} for offline rendering.
+ */
+public final class FlacFileDecoder implements PcmDecoder {
+
+    private final InputStream in;
+    private final PcmFormat format;
+    private final long totalFrames;
+    private final int maxBlockSize;
+    private final int[][] block;
+    private final long[] coefficients = new long[32];
+    private int blockFrames;
+    private int blockPosition;
+    private boolean finished;
+
+    // Bit reader state; every byte consumed is folded into the running frame CRCs.
+    private int cache;
+    private int cacheBits;
+    private int crc8;
+    private int crc16;
+
+    public FlacFileDecoder(File file) throws IOException {
+        this(new FileInputStream(file));
+    }
+
+    public FlacFileDecoder(InputStream stream) throws IOException {
+        in = new BufferedInputStream(stream, 64 * 1024);
+        try {
+            if (readBits(32) != 0x664C6143) {
+                throw new IOException("Not a FLAC stream.");
+            }
+            PcmFormat parsedFormat = null;
+            long parsedFrames = 0;
+            int parsedMaxBlock = 0;
+            boolean last;
+            do {
+                last = readBits(1) == 1;
+                int type = readBits(7);
+                int length = readBits(24);
+                if (type == 0) {
+                    readBits(16); // Minimum block size.
+                    parsedMaxBlock = readBits(16);
+                    readBits(24); // Minimum frame size.
+                    readBits(24); // Maximum frame size.
+                    int sampleRate = readBits(20);
+                    int channels = readBits(3) + 1;
+                    int bitsPerSample = readBits(5) + 1;
+                    parsedFrames = (long) readBits(4) << 32 | (readBits(32) & 0xFFFFFFFFL);
+                    skipBytes(16 + length - 34);
+                    try {
+                        parsedFormat = new PcmFormat(sampleRate, channels, bitsPerSample);
+                    } catch (IllegalArgumentException e) {
+                        throw new IOException("Unsupported FLAC format: " + e.getMessage(), e);
+                    }
+                } else {
+                    skipBytes(length);
+                }
+            } while (!last);
+            if (parsedFormat == null) {
+                throw new IOException("FLAC stream has no STREAMINFO block.");
+            }
+            format = parsedFormat;
+            totalFrames = parsedFrames;
+            maxBlockSize = parsedMaxBlock;
+            block = new int[format.getChannels()][maxBlockSize];
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public PcmFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public long getDurationFrames() {
+        return totalFrames > 0 ? totalFrames : -1;
+    }
+
+    @Override
+    public int read(byte[] dst, int offset, int length) throws IOException {
+        int frameSize = format.getFrameSize();
+        int channels = format.getChannels();
+        int bytesPerSample = format.getBytesPerSample();
+        int total = 0;
+        while (length - total >= frameSize) {
+            if (blockPosition == blockFrames) {
+                if (finished || !decodeFrame()) {
+                    finished = true;
+                    break;
+                }
+            }
+            int frames = Math.min(blockFrames - blockPosition, (length - total) / frameSize);
+            int position = offset + total;
+            for (int f = blockPosition; f < blockPosition + frames; f++) {
+                for (int c = 0; c < channels; c++) {
+                    int value = block[c][f];
+                    if (bytesPerSample == 1) {
+                        dst[position++] = (byte) (value + 128);
+                    } else {
+                        for (int b = 0; b < bytesPerSample; b++) {
+                            dst[position++] = (byte) (value >> (8 * b));
+                        }
+                    }
+                }
+            }
+            blockPosition += frames;
+            total += frames * frameSize;
+        }
+        return total > 0 || !finished ? total : -1;
+    }
+
+    /** Decodes the next frame into {@link #block}; returns false at the end of the stream. */
+    private boolean decodeFrame() throws IOException {
+        int first = in.read();
+        if (first < 0) {
+            return false;
+        }
+        crc8 = FlacBitWriter.updateCrc8(0, first);
+        crc16 = FlacBitWriter.updateCrc16(0, first);
+        int sync = first << 6 | readBits(6);
+        if (sync != 0x3FFE) {
+            throw new IOException("Lost FLAC frame sync.");
+        }
+        readBits(2); // Reserved bit and blocking strategy.
+        int blockSizeCode = readBits(4);
+        int sampleRateCode = readBits(4);
+        int assignment = readBits(4);
+        int sampleSizeCode = readBits(3);
+        readBits(1);
+        readUtf8();
+        int frames;
+        if (blockSizeCode == 1) {
+            frames = 192;
+        } else if (blockSizeCode >= 2 && blockSizeCode <= 5) {
+            frames = 576 << (blockSizeCode - 2);
+        } else if (blockSizeCode == 6) {
+            frames = readBits(8) + 1;
+        } else if (blockSizeCode == 7) {
+            frames = readBits(16) + 1;
+        } else if (blockSizeCode >= 8) {
+            frames = 256 << (blockSizeCode - 8);
+        } else {
+            throw new IOException("Reserved FLAC block size code.");
+        }
+        if (frames > maxBlockSize) {
+            throw new IOException("FLAC frame of " + frames + " samples exceeds STREAMINFO maximum " + maxBlockSize);
+        }
+        if (sampleRateCode == 12) {
+            readBits(8);
+        } else if (sampleRateCode == 13 || sampleRateCode == 14) {
+            readBits(16);
+        }
+        int expectedCrc8 = crc8;
+        if (readBits(8) != expectedCrc8) {
+            throw new IOException("FLAC frame header CRC mismatch.");
+        }
+        int bitsPerSample = sampleSizeBits(sampleSizeCode);
+
+        int channels = format.getChannels();
+        if (assignment < 8) {
+            if (assignment + 1 != channels) {
+                throw new IOException("FLAC frame channel count does not match STREAMINFO.");
+            }
+            for (int c = 0; c < channels; c++) {
+                decodeSubframe(block[c], frames, bitsPerSample);
+            }
+        } else {
+            if (channels != 2 || assignment > 10) {
+                throw new IOException("Invalid FLAC channel assignment " + assignment);
+            }
+            decodeSubframe(block[0], frames, bitsPerSample + (assignment == 9 ? 1 : 0));
+            decodeSubframe(block[1], frames, bitsPerSample + (assignment == 9 ? 0 : 1));
+            int[] a = block[0];
+            int[] b = block[1];
+            for (int i = 0; i < frames; i++) {
+                if (assignment == 8) {
+                    b[i] = a[i] - b[i];
+                } else if (assignment == 9) {
+                    a[i] += b[i];
+                } else {
+                    int mid = a[i] << 1 | (b[i] & 1);
+                    a[i] = (mid + b[i]) >> 1;
+                    b[i] = (mid - b[i]) >> 1;
+                }
+            }
+        }
+        cacheBits = 0; // Zero padding up to the byte boundary.
+        int expectedCrc16 = crc16;
+        if (readBits(16) != expectedCrc16) {
+            throw new IOException("FLAC frame CRC mismatch.");
+        }
+        blockFrames = frames;
+        blockPosition = 0;
+        return true;
+    }
+
+    private int sampleSizeBits(int code) throws IOException {
+        switch (code) {
+            case 0: return format.getBitsPerSample();
+            case 1: return 8;
+            case 2: return 12;
+            case 4: return 16;
+            case 5: return 20;
+            case 6: return 24;
+            case 7: return 32;
+            default: throw new IOException("Reserved FLAC sample size code.");
+        }
+    }
+
+    private void decodeSubframe(int[] x, int frames, int bitsPerSample) throws IOException {
+        readBits(1);
+        int type = readBits(6);
+        int wasted = 0;
+        if (readBits(1) == 1) {
+            wasted = 1;
+            while (readBits(1) == 0) {
+                wasted++;
+            }
+        }
+        bitsPerSample -= wasted;
+        if (type == 0) {
+            int value = readSigned(bitsPerSample);
+            for (int i = 0; i < frames; i++) {
+                x[i] = value;
+            }
+        } else if (type == 1) {
+            for (int i = 0; i < frames; i++) {
+                x[i] = readSigned(bitsPerSample);
+            }
+        } else if (type >= 8 && type <= 12) {
+            int order = type - 8;
+            for (int i = 0; i < order; i++) {
+                x[i] = readSigned(bitsPerSample);
+            }
+            readResidual(x, frames, order);
+            for (int i = order; i < frames; i++) {
+                switch (order) {
+                    case 0: break;
+                    case 1: x[i] += x[i - 1]; break;
+                    case 2: x[i] += 2 * x[i - 1] - x[i - 2]; break;
+                    case 3: x[i] += 3 * x[i - 1] - 3 * x[i - 2] + x[i - 3]; break;
+                    default: x[i] += 4 * x[i - 1] - 6 * x[i - 2] + 4 * x[i - 3] - x[i - 4]; break;
+                }
+            }
+        } else if (type >= 32) {
+            int order = type - 31;
+            for (int i = 0; i < order; i++) {
+                x[i] = readSigned(bitsPerSample);
+            }
+            int precision = readBits(4) + 1;
+            if (precision == 16) {
+                throw new IOException("Invalid FLAC LPC precision.");
+            }
+            int shift = readSigned(5);
+            if (shift < 0) {
+                throw new IOException("Negative FLAC LPC shift.");
+            }
+            for (int j = 0; j < order; j++) {
+                coefficients[j] = readSigned(precision);
+            }
+            readResidual(x, frames, order);
+            for (int i = order; i < frames; i++) {
+                long prediction = 0;
+                for (int j = 0; j < order; j++) {
+                    prediction += coefficients[j] * x[i - 1 - j];
+                }
+                x[i] += (int) (prediction >> shift);
+            }
+        } else {
+            throw new IOException("Reserved FLAC subframe type " + type);
+        }
+        if (wasted > 0) {
+            for (int i = 0; i < frames; i++) {
+                x[i] <<= wasted;
+            }
+        }
+    }
+
+    private void readResidual(int[] x, int frames, int order) throws IOException {
+        int method = readBits(2);
+        if (method > 1) {
+            throw new IOException("Reserved FLAC residual coding method.");
+        }
+        int parameterBits = method == 0 ? 4 : 5;
+        int escape = (1 << parameterBits) - 1;
+        int partitionOrder = readBits(4);
+        int partitions = 1 << partitionOrder;
+        int size = frames >> partitionOrder;
+        if (size << partitionOrder != frames || size < order) {
+            throw new IOException("Invalid FLAC partition order " + partitionOrder);
+        }
+        int index = order;
+        for (int p = 0; p < partitions; p++) {
+            int parameter = readBits(parameterBits);
+            int end = (p + 1) * size;
+            if (parameter == escape) {
+                int rawBits = readBits(5);
+                for (; index < end; index++) {
+                    x[index] = rawBits == 0 ? 0 : readSigned(rawBits);
+                }
+            } else {
+                for (; index < end; index++) {
+                    int quotient = 0;
+                    while (readBits(1) == 0) {
+                        quotient++;
+                    }
+                    long folded = (long) quotient << parameter | (parameter == 0 ? 0 : readBits(parameter) & 0xFFFFFFFFL);
+                    x[index] = (int) ((folded >>> 1) ^ -(folded & 1));
+                }
+            }
+        }
+    }
+
+    private long readUtf8() throws IOException {
+        int lead = readBits(8);
+        if (lead < 0x80) {
+            return lead;
+        }
+        int continuation = Integer.numberOfLeadingZeros(~lead << 24) - 1;
+        if (continuation < 1 || continuation > 6) {
+            throw new IOException("Invalid FLAC frame number coding.");
+        }
+        long value = lead & (0x3F >> continuation);
+        for (int i = 0; i < continuation; i++) {
+            value = value << 6 | (readBits(8) & 0x3F);
+        }
+        return value;
+    }
+
+    private int readSigned(int count) throws IOException {
+        return readBits(count) << (32 - count) >> (32 - count);
+    }
+
+    /** Reads {@code count} bits MSB-first, 1 <= count <= 32. */
+    private int readBits(int count) throws IOException {
+        long value = 0;
+        while (count > 0) {
+            if (cacheBits == 0) {
+                int next = in.read();
+                if (next < 0) {
+                    throw new EOFException("Unexpected end of FLAC stream.");
+                }
+                crc8 = FlacBitWriter.updateCrc8(crc8, next);
+                crc16 = FlacBitWriter.updateCrc16(crc16, next);
+                cache = next;
+                cacheBits = 8;
+            }
+            int take = Math.min(count, cacheBits);
+            int shift = cacheBits - take;
+            value = value << take | ((cache >> shift) & ((1 << take) - 1));
+            cacheBits -= take;
+            count -= take;
+        }
+        return (int) value;
+    }
+
+    private void skipBytes(long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException("Unexpected end of FLAC stream.");
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,577 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+/**
+ * Encodes one block of deinterleaved integer samples into one FLAC frame.
+ *
+ * <p>Every channel is tried as a constant, verbatim, fixed-predictor (orders 0-4) and, from level
+ * 3 up, LPC subframe; the smallest wins. Residuals are Rice coded with the partition order and
+ * parameters chosen from bit-count estimates. Stereo input also tries left/side, side/right and
+ * mid/side. All scratch memory is allocated for the level's block size up front.
+ */
+final class FlacFrameEncoder {
+
+    static final int MIN_LEVEL = 0;
+    static final int MAX_LEVEL = 8;
+
+    // Per level: block size, max LPC order, max Rice partition order, stereo decorrelation,
+    // exhaustive LPC order search. Loosely follows the reference encoder's presets.
+    private static final int[] BLOCK_SIZE = {1152, 1152, 1152, 4096, 4096, 4096, 4096, 4096, 4096};
+    private static final int[] MAX_LPC_ORDER = {0, 0, 0, 6, 8, 8, 8, 12, 12};
+    private static final int[] MAX_PARTITION_ORDER = {3, 3, 4, 4, 4, 5, 6, 6, 6};
+    private static final boolean[] DECORRELATE_STEREO = {false, true, true, false, true, true, true, true, true};
+    private static final boolean[] EXHAUSTIVE_ORDER = {false, false, false, false, false, false, false, false, true};
+
+    private static final int MAX_FIXED_ORDER = 4;
+    private static final int SUBFRAME_HEADER_BITS = 8;
+    private static final int TYPE_CONSTANT = 0;
+    private static final int TYPE_VERBATIM = 1;
+    private static final int TYPE_FIXED = 8;
+    private static final int TYPE_LPC = 32;
+    private static final int CHANNEL_LEFT_SIDE = 8;
+    private static final int CHANNEL_SIDE_RIGHT = 9;
+    private static final int CHANNEL_MID_SIDE = 10;
+    // Largest Rice parameter for the 4-bit and 5-bit parameter codings.
+    private static final int MAX_RICE_PARAMETER = 14;
+    private static final int MAX_RICE2_PARAMETER = 30;
+    // Residuals beyond this could not be coded compactly; such candidates are skipped.
+    private static final long MAX_RESIDUAL = 1L << 30;
+
+    /** One analysed subframe, kept so the winner can be written without recomputation. */
+    private static final class Subframe {
+        final int[] residual;
+        final int[] riceParameters;
+        final int[] coefficients;
+        int[] samples;
+        int bitsPerSample;
+        int type;
+        int order;
+        int precision;
+        int shift;
+        int partitionOrder;
+        boolean rice2;
+        long bits;
+
+        Subframe(int blockSize, int maxPartitionOrder, int maxLpcOrder) {
+            residual = new int[blockSize];
+            riceParameters = new int[1 << maxPartitionOrder];
+            coefficients = new int[Math.max(1, maxLpcOrder)];
+        }
+    }
+
+    private final PcmFormat format;
+    private final int level;
+    private final int blockSize;
+    private final int maxLpcOrder;
+    private final int maxPartitionOrder;
+    private final boolean decorrelateStereo;
+    private final boolean exhaustiveOrder;
+    private final FlacBitWriter writer;
+    private final Subframe[] best;
+    private Subframe candidate;
+    private final int[] mid;
+    private final int[] side;
+    private final long[] partitionSums;
+    private final double[] windowed;
+    private final double[] autocorrelation;
+    private final double[][] lpc;
+    private final double[] lpcError;
+
+    FlacFrameEncoder(PcmFormat format, int level) {
+        if (level < MIN_LEVEL || level > MAX_LEVEL) {
+            throw new IllegalArgumentException("FLAC level must be " + MIN_LEVEL + ".." + MAX_LEVEL + ": " + level);
+        }
+        if (format.isFloat() || format.getBitsPerSample() > 24) {
+            throw new IllegalArgumentException("FLAC needs 8, 16 or 24-bit integer PCM: " + format);
+        }
+        this.format = format;
+        this.level = level;
+        this.blockSize = BLOCK_SIZE[level];
+        this.maxLpcOrder = MAX_LPC_ORDER[level];
+        this.maxPartitionOrder = MAX_PARTITION_ORDER[level];
+        this.decorrelateStereo = DECORRELATE_STEREO[level] && format.getChannels() == 2;
+        this.exhaustiveOrder = EXHAUSTIVE_ORDER[level];
+        // A frame never exceeds verbatim coding of every channel (side gets one extra bit) plus headers.
+        int channels = format.getChannels();
+        int maxFrameBits = channels * (SUBFRAME_HEADER_BITS + blockSize * (format.getBitsPerSample() + 1));
+        this.writer = new FlacBitWriter(maxFrameBits / 8 + 64);
+        int analysed = decorrelateStereo ? 4 : channels;
+        this.best = new Subframe[analysed];
+        for (int i = 0; i < analysed; i++) {
+            best[i] = new Subframe(blockSize, maxPartitionOrder, maxLpcOrder);
+        }
+        this.candidate = new Subframe(blockSize, maxPartitionOrder, maxLpcOrder);
+        this.mid = decorrelateStereo ? new int[blockSize] : null;
+        this.side = decorrelateStereo ? new int[blockSize] : null;
+        this.partitionSums = new long[1 << maxPartitionOrder];
+        this.windowed = new double[blockSize];
+        this.autocorrelation = new double[maxLpcOrder + 1];
+        this.lpc = new double[maxLpcOrder + 1][maxLpcOrder + 1];
+        this.lpcError = new double[maxLpcOrder + 1];
+    }
+
+    /** Samples per full frame at this level. */
+    static int blockSizeFor(int level) {
+        return BLOCK_SIZE[level];
+    }
+
+    int getBlockSize() {
+        return blockSize;
+    }
+
+    int getLevel() {
+        return level;
+    }
+
+    /** Largest frame this encoder can produce, in bytes. */
+    int getMaxFrameSize() {
+        return writer.getBuffer().length;
+    }
+
+    byte[] getBuffer() {
+        return writer.getBuffer();
+    }
+
+    /**
+     * Encodes {@code frames} samples per channel (at most the block size; only the last frame of a
+     * stream may be shorter) into {@link #getBuffer()}.
+     *
+     * @return encoded frame length in bytes
+     */
+    int encode(int[][] samples, int frames, long frameNumber) {
+        int bitsPerSample = format.getBitsPerSample();
+        int channels = format.getChannels();
+        for (int c = 0; c < channels; c++) {
+            analyse(samples[c], frames, bitsPerSample, c);
+        }
+        int assignment = channels - 1;
+        Subframe first = best[0];
+        Subframe second = channels > 1 ? best[1] : null;
+        if (decorrelateStereo) {
+            for (int i = 0; i < frames; i++) {
+                int left = samples[0][i];
+                int right = samples[1][i];
+                side[i] = left - right;
+                mid[i] = (left + right) >> 1;
+            }
+            analyse(mid, frames, bitsPerSample, 2);
+            analyse(side, frames, bitsPerSample + 1, 3);
+            long independent = best[0].bits + best[1].bits;
+            long leftSide = best[0].bits + best[3].bits;
+            long sideRight = best[3].bits + best[1].bits;
+            long midSide = best[2].bits + best[3].bits;
+            long smallest = Math.min(Math.min(independent, leftSide), Math.min(sideRight, midSide));
+            if (smallest == midSide) {
+                assignment = CHANNEL_MID_SIDE;
+                first = best[2];
+                second = best[3];
+            } else if (smallest == leftSide) {
+                assignment = CHANNEL_LEFT_SIDE;
+                second = best[3];
+            } else if (smallest == sideRight) {
+                assignment = CHANNEL_SIDE_RIGHT;
+                first = best[3];
+            }
+        }
+
+        writer.reset();
+        writeFrameHeader(frames, assignment, frameNumber);
+        writeSubframe(first, frames);
+        if (second != null) {
+            writeSubframe(second, frames);
+        }
+        for (int c = 2; c < channels; c++) {
+            writeSubframe(best[c], frames);
+        }
+        writer.alignToByte();
+        int length = writer.getBytePosition();
+        writer.writeBits(FlacBitWriter.crc16(writer.getBuffer(), 0, length), 16);
+        return length + 2;
+    }
+
+    private void writeFrameHeader(int frames, int assignment, long frameNumber) {
+        writer.writeBits(0x3FFE, 14);
+        writer.writeBits(0, 1);
+        writer.writeBits(0, 1); // Fixed block size; the header carries the frame number.
+        int blockSizeCode = blockSizeCode(frames);
+        int sampleRate = format.getSampleRate();
+        int sampleRateCode = sampleRateCode(sampleRate);
+        writer.writeBits(blockSizeCode, 4);
+        writer.writeBits(sampleRateCode, 4);
+        writer.writeBits(assignment, 4);
+        writer.writeBits(sampleSizeCode(format.getBitsPerSample()), 3);
+        writer.writeBits(0, 1);
+        writer.writeUtf8(frameNumber);
+        if (blockSizeCode == 6) {
+            writer.writeBits(frames - 1, 8);
+        } else if (blockSizeCode == 7) {
+            writer.writeBits(frames - 1, 16);
+        }
+        if (sampleRateCode == 12) {
+            writer.writeBits(sampleRate / 1000, 8);
+        } else if (sampleRateCode == 13) {
+            writer.writeBits(sampleRate, 16);
+        } else if (sampleRateCode == 14) {
+            writer.writeBits(sampleRate / 10, 16);
+        }
+        writer.writeBits(FlacBitWriter.crc8(writer.getBuffer(), 0, writer.getBytePosition()), 8);
+    }
+
+    private static int blockSizeCode(int frames) {
+        if (frames == 192) {
+            return 1;
+        }
+        for (int code = 2; code <= 5; code++) {
+            if (frames == 576 << (code - 2)) {
+                return code;
+            }
+        }
+        for (int code = 8; code <= 15; code++) {
+            if (frames == 256 << (code - 8)) {
+                return code;
+            }
+        }
+        return frames <= 256 ? 6 : 7;
+    }
+
+    private static int sampleRateCode(int sampleRate) {
+        switch (sampleRate) {
+            case 88200: return 1;
+            case 176400: return 2;
+            case 192000: return 3;
+            case 8000: return 4;
+            case 16000: return 5;
+            case 22050: return 6;
+            case 24000: return 7;
+            case 32000: return 8;
+            case 44100: return 9;
+            case 48000: return 10;
+            case 96000: return 11;
+            default:
+                if (sampleRate % 1000 == 0 && sampleRate / 1000 <= 255) {
+                    return 12;
+                } else if (sampleRate <= 0xFFFF) {
+                    return 13;
+                } else if (sampleRate % 10 == 0 && sampleRate / 10 <= 0xFFFF) {
+                    return 14;
+                }
+                return 0; // Only in STREAMINFO.
+        }
+    }
+
+    private static int sampleSizeCode(int bitsPerSample) {
+        switch (bitsPerSample) {
+            case 8: return 1;
+            case 16: return 4;
+            default: return 6;
+        }
+    }
+
+    /** Finds the smallest coding of one channel and stores it in {@code best[slot]}. */
+    private void analyse(int[] x, int frames, int bitsPerSample, int slot) {
+        Subframe winner = best[slot];
+        winner.samples = x;
+        winner.bitsPerSample = bitsPerSample;
+        winner.type = TYPE_VERBATIM;
+        winner.order = 0;
+        winner.bits = SUBFRAME_HEADER_BITS + (long) frames * bitsPerSample;
+
+        boolean constant = true;
+        for (int i = 1; i < frames && constant; i++) {
+            constant = x[i] == x[0];
+        }
+        if (constant) {
+            winner.type = TYPE_CONSTANT;
+            winner.bits = SUBFRAME_HEADER_BITS + bitsPerSample;
+            return;
+        }
+
+        for (int order = 0; order <= MAX_FIXED_ORDER && order < frames; order++) {
+            candidate.type = TYPE_FIXED;
+            candidate.order = order;
+            if (fixedResidual(x, frames, order, candidate.residual)) {
+                winner = keepSmaller(winner, slot, frames, bitsPerSample, 0);
+            }
+        }
+
+        if (maxLpcOrder > 0 && frames > maxLpcOrder * 2) {
+            int maxOrder = computeLpc(x, frames);
+            int precision = bitsPerSample <= 16 ? 12 : 15;
+            if (exhaustiveOrder) {
+                for (int order = 1; order <= maxOrder; order++) {
+                    if (quantizedResidual(x, frames, order, precision)) {
+                        winner = keepSmaller(winner, slot, frames, bitsPerSample, order * precision + 9);
+                    }
+                }
+            } else if (maxOrder > 0) {
+                int order = estimateBestOrder(frames, maxOrder, bitsPerSample + precision);
+                if (quantizedResidual(x, frames, order, precision)) {
+                    winner = keepSmaller(winner, slot, frames, bitsPerSample, order * precision + 9);
+                }
+            }
+        }
+    }
+
+    /**
+     * Prices {@link #candidate} and, if it beats {@code current}, swaps it into {@code best[slot]}
+     * so its residual is kept without copying. Returns the subframe now holding the best coding.
+     */
+    private Subframe keepSmaller(Subframe current, int slot, int frames, int bitsPerSample, int extraBits) {
+        Subframe trial = candidate;
+        trial.samples = current.samples;
+        trial.bitsPerSample = bitsPerSample;
+        long residualBits = chooseRiceParameters(trial, frames);
+        trial.bits = SUBFRAME_HEADER_BITS + (long) trial.order * bitsPerSample + extraBits + residualBits;
+        if (trial.bits >= current.bits) {
+            return current;
+        }
+        best[slot] = trial;
+        candidate = current;
+        return trial;
+    }
+
+    private static boolean fixedResidual(int[] x, int frames, int order, int[] residual) {
+        for (int i = order; i < frames; i++) {
+            long value;
+            switch (order) {
+                case 0: value = x[i]; break;
+                case 1: value = (long) x[i] - x[i - 1]; break;
+                case 2: value = (long) x[i] - 2L * x[i - 1] + x[i - 2]; break;
+                case 3: value = (long) x[i] - 3L * x[i - 1] + 3L * x[i - 2] - x[i - 3]; break;
+                default: value = (long) x[i] - 4L * x[i - 1] + 6L * x[i - 2] - 4L * x[i - 3] + x[i - 4]; break;
+            }
+            if (value >= MAX_RESIDUAL || value <= -MAX_RESIDUAL) {
+                return false;
+            }
+            residual[i] = (int) value;
+        }
+        return true;
+    }
+
+    /**
+     * Windows the block, autocorrelates it and runs Levinson-Durbin, filling {@link #lpc} and
+     * {@link #lpcError} for orders 1..max. Returns the highest usable order (0 for silence).
+     */
+    private int computeLpc(int[] x, int frames) {
+        // Tukey(0.5) window: flat in the middle, raised-cosine tapers over the outer quarters.
+        int taper = Math.max(1, frames / 4);
+        for (int i = 0; i < frames; i++) {
+            double w = 1;
+            if (i < taper) {
+                w = 0.5 - 0.5 * Math.cos(Math.PI * i / taper);
+            } else if (i >= frames - taper) {
+                w = 0.5 - 0.5 * Math.cos(Math.PI * (frames - 1 - i) / taper);
+            }
+            windowed[i] = x[i] * w;
+        }
+        for (int lag = 0; lag <= maxLpcOrder; lag++) {
+            double sum = 0;
+            for (int i = lag; i < frames; i++) {
+                sum += windowed[i] * windowed[i - lag];
+            }
+            autocorrelation[lag] = sum;
+        }
+        if (autocorrelation[0] == 0) {
+            return 0;
+        }
+        double error = autocorrelation[0];
+        for (int order = 1; order <= maxLpcOrder; order++) {
+            double reflection = autocorrelation[order];
+            for (int j = 1; j < order; j++) {
+                reflection -= lpc[order - 1][j] * autocorrelation[order - j];
+            }
+            reflection /= error;
+            for (int j = 1; j < order; j++) {
+                lpc[order][j] = lpc[order - 1][j] - reflection * lpc[order - 1][order - j];
+            }
+            lpc[order][order] = reflection;
+            error *= 1 - reflection * reflection;
+            lpcError[order] = error;
+            if (error <= 0) {
+                return order;
+            }
+        }
+        return maxLpcOrder;
+    }
+
+    /** Picks the order with the lowest estimated coded size from the Levinson-Durbin errors. */
+    private int estimateBestOrder(int frames, int maxOrder, int bitsPerCoefficient) {
+        int bestOrder = 1;
+        double bestBits = Double.MAX_VALUE;
+        for (int order = 1; order <= maxOrder; order++) {
+            double perSample = Math.max(0, 0.5 * Math.log(lpcError[order] / frames) / Math.log(2));
+            double bits = perSample * (frames - order) + order * bitsPerCoefficient;
+            if (bits < bestBits) {
+                bestBits = bits;
+                bestOrder = order;
+            }
+        }
+        return bestOrder;
+    }
+
+    /** Quantizes the order-{@code order} predictor into {@link #candidate} and computes its residual. */
+    private boolean quantizedResidual(int[] x, int frames, int order, int precision) {
+        double[] coefficients = lpc[order];
+        double maxMagnitude = 0;
+        for (int j = 1; j <= order; j++) {
+            maxMagnitude = Math.max(maxMagnitude, Math.abs(coefficients[j]));
+        }
+        if (maxMagnitude == 0 || Double.isNaN(maxMagnitude)) {
+            return false;
+        }
+        // Scale so the largest coefficient uses all precision bits; FLAC allows shifts of 0..15.
+        int shift = precision - 1 - (Math.getExponent(maxMagnitude) + 1);
+        if (shift < 0) {
+            return false;
+        }
+        shift = Math.min(shift, 15);
+        int limit = 1 << (precision - 1);
+        double carried = 0;
+        Subframe target = candidate;
+        for (int j = 0; j < order; j++) {
+            carried += coefficients[j + 1] * (1 << shift);
+            long quantized = Math.round(carried);
+            quantized = Math.max(-limit, Math.min(limit - 1, quantized));
+            target.coefficients[j] = (int) quantized;
+            carried -= quantized;
+        }
+        int[] q = target.coefficients;
+        int[] residual = target.residual;
+        for (int i = order; i < frames; i++) {
+            long prediction = 0;
+            for (int j = 0; j < order; j++) {
+                prediction += (long) q[j] * x[i - 1 - j];
+            }
+            long value = x[i] - (prediction >> shift);
+            if (value >= MAX_RESIDUAL || value <= -MAX_RESIDUAL) {
+                return false;
+            }
+            residual[i] = (int) value;
+        }
+        target.type = TYPE_LPC;
+        target.order = order;
+        target.precision = precision;
+        target.shift = shift;
+        return true;
+    }
+
+    /**
+     * Chooses the partition order and Rice parameters for {@code subframe}'s residual.
+     *
+     * @return estimated residual size in bits (an upper bound on what is written)
+     */
+    private long chooseRiceParameters(Subframe subframe, int frames) {
+        int order = subframe.order;
+        int[] residual = subframe.residual;
+        int topOrder = 0;
+        while (topOrder < maxPartitionOrder && (frames & (1 << (topOrder + 1)) - 1) == 0
+                && (frames >> (topOrder + 1)) > order) {
+            topOrder++;
+        }
+        // Sum folded residuals over the finest partitions, then merge pairs for coarser orders.
+        int partitions = 1 << topOrder;
+        int partitionSize = frames >> topOrder;
+        for (int p = 0; p < partitions; p++) {
+            int start = p == 0 ? order : p * partitionSize;
+            int end = (p + 1) * partitionSize;
+            long sum = 0;
+            for (int i = start; i < end; i++) {
+                int value = residual[i];
+                sum += ((long) value << 1) ^ (value >> 31);
+            }
+            partitionSums[p] = sum;
+        }
+        long bestBits = Long.MAX_VALUE;
+        for (int partitionOrder = topOrder; partitionOrder >= 0; partitionOrder--) {
+            int count = 1 << partitionOrder;
+            int size = frames >> partitionOrder;
+            long bits = 0;
+            boolean needsRice2 = false;
+            for (int p = 0; p < count; p++) {
+                int samples = p == 0 ? size - order : size;
+                int parameter = riceParameter(partitionSums[p], samples);
+                needsRice2 |= parameter > MAX_RICE_PARAMETER;
+                bits += (long) samples * (parameter + 1) + (partitionSums[p] >>> parameter);
+            }
+            bits += 6 + (long) count * (needsRice2 ? 5 : 4);
+            if (bits < bestBits) {
+                bestBits = bits;
+                subframe.partitionOrder = partitionOrder;
+                subframe.rice2 = needsRice2;
+                for (int p = 0; p < count; p++) {
+                    subframe.riceParameters[p] = riceParameter(partitionSums[p], p == 0 ? size - order : size);
+                }
+            }
+            for (int p = 0; p < count / 2; p++) {
+                partitionSums[p] = partitionSums[2 * p] + partitionSums[2 * p + 1];
+            }
+        }
+        return bestBits;
+    }
+
+    /** Rice parameter that minimizes the estimated size of {@code samples} values summing to {@code sum}. */
+    private static int riceParameter(long sum, int samples) {
+        if (samples <= 0 || sum <= samples) {
+            return 0;
+        }
+        int parameter = 63 - Long.numberOfLeadingZeros(sum / samples);
+        return Math.min(parameter, MAX_RICE2_PARAMETER);
+    }
+
+    private void writeSubframe(Subframe subframe, int frames) {
+        int[] x = subframe.samples;
+        int bitsPerSample = subframe.bitsPerSample;
+        writer.writeBits(0, 1);
+        switch (subframe.type) {
+            case TYPE_CONSTANT:
+                writer.writeBits(TYPE_CONSTANT, 6);
+                writer.writeBits(0, 1);
+                writer.writeBits(x[0], bitsPerSample);
+                return;
+            case TYPE_VERBATIM:
+                writer.writeBits(TYPE_VERBATIM, 6);
+                writer.writeBits(0, 1);
+                for (int i = 0; i < frames; i++) {
+                    writer.writeBits(x[i], bitsPerSample);
+                }
+                return;
+            case TYPE_FIXED:
+                writer.writeBits(TYPE_FIXED | subframe.order, 6);
+                writer.writeBits(0, 1);
+                for (int i = 0; i < subframe.order; i++) {
+                    writer.writeBits(x[i], bitsPerSample);
+                }
+                break;
+            default:
+                writer.writeBits(TYPE_LPC | (subframe.order - 1), 6);
+                writer.writeBits(0, 1);
+                for (int i = 0; i < subframe.order; i++) {
+                    writer.writeBits(x[i], bitsPerSample);
+                }
+                writer.writeBits(subframe.precision - 1, 4);
+                writer.writeBits(subframe.shift, 5);
+                for (int j = 0; j < subframe.order; j++) {
+                    writer.writeBits(subframe.coefficients[j], subframe.precision);
+                }
+                break;
+        }
+        writeResidual(subframe, frames);
+    }
+
+    private void writeResidual(Subframe subframe, int frames) {
+        int[] residual = subframe.residual;
+        int parameterBits = subframe.rice2 ? 5 : 4;
+        writer.writeBits(subframe.rice2 ? 1 : 0, 2);
+        writer.writeBits(subframe.partitionOrder, 4);
+        int count = 1 << subframe.partitionOrder;
+        int size = frames >> subframe.partitionOrder;
+        int index = subframe.order;
+        for (int p = 0; p < count; p++) {
+            int parameter = subframe.riceParameters[p];
+            writer.writeBits(parameter, parameterBits);
+            int end = (p + 1) * size;
+            for (; index < end; index++) {
+                writer.writeRice(residual[index], parameter);
+            }
+        }
+    }
+}
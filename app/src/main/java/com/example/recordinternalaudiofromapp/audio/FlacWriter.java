@@ -0,0 +1,314 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Streams integer PCM into a FLAC file. {@link #write} only deinterleaves samples into a block;
+ * full blocks are handed to a dedicated encoder thread through a small pool, so the caller never
+ * waits on prediction or entropy coding unless the encoder falls a whole pool behind.
+ *
+ * <p>The STREAMINFO block is written up front with an unknown length and patched on
+ * {@link #close()} with the sample count, frame sizes and MD5 signature, so a file cut short by a
+ * crash still decodes up to its last complete frame.
+ */
+public final class FlacWriter implements FileSink {
+
+    public static final int MIN_LEVEL = FlacFrameEncoder.MIN_LEVEL;
+    public static final int MAX_LEVEL = FlacFrameEncoder.MAX_LEVEL;
+    public static final int DEFAULT_LEVEL = 5;
+
+    private static final int STREAMINFO_OFFSET = 8;
+    private static final int STREAMINFO_SIZE = 34;
+    static final int HEADER_SIZE = STREAMINFO_OFFSET + STREAMINFO_SIZE;
+    private static final int POOL_SIZE = 4;
+
+    /** Deinterleaved samples for one frame, recycled between the caller and the encoder thread. */
+    private static final class Block {
+        final int[][] samples;
+        int frames;
+        boolean last;
+
+        Block(int channels, int blockSize) {
+            samples = new int[channels][blockSize];
+        }
+    }
+
+    private final File file;
+    private final PcmFormat format;
+    private final FlacFrameEncoder encoder;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final BlockingQueue<Block> free = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final BlockingQueue<Block> filled = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final Thread encoderThread;
+    private final MessageDigest md5;
+    private final byte[] md5Buffer;
+    private final int frameSize;
+    private final int blockSize;
+    private final byte[] carry;
+    private int carryLength;
+    private Block current;
+    private long dataBytes;
+    private volatile long encodedBytes;
+    private volatile Throwable failure;
+    private long totalFrames;
+    private int minFrameBytes = Integer.MAX_VALUE;
+    private int maxFrameBytes;
+    private boolean closed;
+
+    public FlacWriter(File file, PcmFormat format) throws IOException {
+        this(file, format, DEFAULT_LEVEL);
+    }
+
+    /**
+     * @param level compression level from {@link #MIN_LEVEL} (fastest) to {@link #MAX_LEVEL}
+     *              (smallest); chosen per recording
+     */
+    public FlacWriter(File file, PcmFormat format, int level) throws IOException {
+        this.file = file;
+        this.format = format;
+        this.encoder = new FlacFrameEncoder(format, level);
+        this.frameSize = format.getFrameSize();
+        this.blockSize = encoder.getBlockSize();
+        this.carry = new byte[frameSize];
+        this.md5Buffer = new byte[blockSize * frameSize];
+        try {
+            this.md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available.", e);
+        }
+        for (int i = 0; i < POOL_SIZE; i++) {
+            free.add(new Block(format.getChannels(), blockSize));
+        }
+        current = free.poll();
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        this.channel = randomAccessFile.getChannel();
+        try {
+            channel.truncate(0);
+            writeFully(ByteBuffer.wrap(createHeader(0, new byte[16])), 0);
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+        encoderThread = new Thread(this::encodeLoop, "FlacEncoder");
+        encoderThread.start();
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("FlacWriter is closed: " + file);
+        }
+        checkFailure();
+        dataBytes += length;
+        if (carryLength > 0) {
+            int needed = Math.min(frameSize - carryLength, length);
+            System.arraycopy(data, offset, carry, carryLength, needed);
+            carryLength += needed;
+            offset += needed;
+            length -= needed;
+            if (carryLength < frameSize) {
+                return;
+            }
+            append(carry, 0, 1);
+            carryLength = 0;
+        }
+        int frames = length / frameSize;
+        while (frames > 0) {
+            int chunk = Math.min(frames, blockSize - current.frames);
+            append(data, offset, chunk);
+            offset += chunk * frameSize;
+            length -= chunk * frameSize;
+            frames -= chunk;
+        }
+        if (length > 0) {
+            System.arraycopy(data, offset, carry, 0, length);
+            carryLength = length;
+        }
+    }
+
+    /** Deinterleaves {@code frames} frames into the current block and submits it once full. */
+    private void append(byte[] src, int offset, int frames) throws IOException {
+        int channels = format.getChannels();
+        int[][] samples = current.samples;
+        int start = current.frames;
+        switch (format.getBitsPerSample()) {
+            case 8:
+                for (int f = 0; f < frames; f++) {
+                    for (int c = 0; c < channels; c++) {
+                        samples[c][start + f] = (src[offset++] & 0xFF) - 128;
+                    }
+                }
+                break;
+            case 16:
+                for (int f = 0; f < frames; f++) {
+                    for (int c = 0; c < channels; c++, offset += 2) {
+                        samples[c][start + f] = (src[offset] & 0xFF) | src[offset + 1] << 8;
+                    }
+                }
+                break;
+            default:
+                for (int f = 0; f < frames; f++) {
+                    for (int c = 0; c < channels; c++, offset += 3) {
+                        samples[c][start + f] = (src[offset] & 0xFF) | (src[offset + 1] & 0xFF) << 8 | src[offset + 2] << 16;
+                    }
+                }
+                break;
+        }
+        current.frames += frames;
+        if (current.frames == blockSize) {
+            submit(false);
+        }
+    }
+
+    private void submit(boolean last) throws IOException {
+        current.last = last;
+        try {
+            filled.put(current);
+            current = last ? null : free.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while handing a block to the FLAC encoder.");
+        }
+    }
+
+    private void encodeLoop() {
+        long frameNumber = 0;
+        while (true) {
+            Block block;
+            try {
+                block = filled.take();
+            } catch (InterruptedException e) {
+                failure = e;
+                return;
+            }
+            // After a failure keep recycling blocks so the caller is never stuck waiting on the pool.
+            if (failure == null && block.frames > 0) {
+                try {
+                    updateMd5(block);
+                    int length = encoder.encode(block.samples, block.frames, frameNumber++);
+                    writeFully(ByteBuffer.wrap(encoder.getBuffer(), 0, length), HEADER_SIZE + encodedBytes);
+                    encodedBytes += length;
+                    totalFrames += block.frames;
+                    minFrameBytes = Math.min(minFrameBytes, length);
+                    maxFrameBytes = Math.max(maxFrameBytes, length);
+                } catch (IOException | RuntimeException e) {
+                    failure = e;
+                }
+            }
+            if (block.last) {
+                return;
+            }
+            block.frames = 0;
+            free.add(block);
+        }
+    }
+
+    /** The STREAMINFO signature covers samples as signed little-endian integers. */
+    private void updateMd5(Block block) {
+        int channels = format.getChannels();
+        int bytesPerSample = format.getBytesPerSample();
+        int position = 0;
+        for (int f = 0; f < block.frames; f++) {
+            for (int c = 0; c < channels; c++) {
+                int value = block.samples[c][f];
+                for (int b = 0; b < bytesPerSample; b++) {
+                    md5Buffer[position++] = (byte) (value >> (8 * b));
+                }
+            }
+        }
+        md5.update(md5Buffer, 0, position);
+    }
+
+    private byte[] createHeader(long samples, byte[] signature) {
+        FlacBitWriter header = new FlacBitWriter(HEADER_SIZE);
+        header.writeBits(0x664C6143, 32); // "fLaC"
+        header.writeBits(1, 1); // Last metadata block.
+        header.writeBits(0, 7); // STREAMINFO.
+        header.writeBits(STREAMINFO_SIZE, 24);
+        header.writeBits(blockSize, 16);
+        header.writeBits(blockSize, 16);
+        header.writeBits(samples > 0 ? minFrameBytes : 0, 24);
+        header.writeBits(samples > 0 ? maxFrameBytes : 0, 24);
+        header.writeBits(format.getSampleRate(), 20);
+        header.writeBits(format.getChannels() - 1, 3);
+        header.writeBits(format.getBitsPerSample() - 1, 5);
+        header.writeBits(samples >>> 32, 4);
+        header.writeBits(samples, 32);
+        for (byte b : signature) {
+            header.writeBits(b, 8);
+        }
+        return header.getBuffer();
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable cause = failure;
+        if (cause != null) {
+            throw new IOException("FLAC encoding failed: " + file, cause);
+        }
+    }
+
+    /** PCM bytes accepted so far, including samples still waiting for the encoder. */
+    @Override
+    public long getDataBytes() {
+        return dataBytes;
+    }
+
+    /** Compressed frame bytes written to the file so far. */
+    public long getEncodedBytes() {
+        return encodedBytes;
+    }
+
+    public int getLevel() {
+        return encoder.getLevel();
+    }
+
+    @Override
+    public PcmFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Encodes the final partial block, waits for the encoder thread and patches STREAMINFO. A
+     * dangling partial frame is dropped.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            submit(true);
+            encoderThread.join();
+            checkFailure();
+            writeFully(ByteBuffer.wrap(createHeader(totalFrames, md5.digest())), 0);
+            channel.truncate(HEADER_SIZE + encodedBytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while finishing " + file);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+}
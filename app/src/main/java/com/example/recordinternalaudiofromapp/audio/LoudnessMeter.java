@@ -0,0 +1,338 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Locale;
+
+/**
+ * Incremental loudness meter after ITU-R BS.1770-4 / EBU R 128: momentary (400 ms), short-term
+ * (3 s) and gated integrated loudness in LUFS, plus true peak in dBTP.
+ *
+ * <p>Samples pass through the two-stage K-weighting filter and are summed into 100 ms
+ * sub-blocks; the last 30 sub-block energies give the momentary and short-term windows. Every
+ * 400 ms gating block (75 % overlap) lands in a histogram of 0.01 LU bins from the absolute gate
+ * at -70 LUFS up to +10 LUFS, so the relative gate can be applied at any time without keeping
+ * the blocks. True peak takes the largest magnitude of the signal upsampled four times through a
+ * 49-tap windowed-sinc interpolator.
+ *
+ * <p>All buffers are allocated up front. {@link #add} is called by one thread; the momentary and
+ * short-term readings may be read from any thread while audio is added.
+ */
+public final class LoudnessMeter {
+
+    public static final double ABSOLUTE_GATE_LUFS = -70;
+    public static final double RELATIVE_GATE_LU = -10;
+
+    private static final int DECODE_FRAMES = 1024;
+    private static final int MOMENTARY_BLOCKS = 4;
+    private static final int SHORT_TERM_BLOCKS = 30;
+    private static final double BIN_LU = 0.01;
+    private static final int BINS = (int) Math.round((10 - ABSOLUTE_GATE_LUFS) / BIN_LU);
+    private static final int OVERSAMPLING = 4;
+    private static final int PHASE_TAPS = 13;
+
+    private final PcmFormat format;
+    private final int channels;
+    private final double[] weights;
+    private final int subBlockFrames;
+
+    // K-weighting: high-shelf pre-filter, then the RLB high-pass. Transposed direct form II.
+    private final double shelfB0, shelfB1, shelfB2, shelfA1, shelfA2;
+    private final double highPassB0, highPassB1, highPassB2, highPassA1, highPassA2;
+    private final double[] filterState;
+
+    private final double[] channelSquares;
+    private int subBlockFill;
+    private final double[] subBlockEnergies = new double[SHORT_TERM_BLOCKS];
+    private long subBlocks;
+    private final double[] binEnergy = new double[BINS];
+    private final long[] binCount = new long[BINS];
+
+    private static final float[][] PHASES = interpolatorPhases();
+    private final float[] peakHistory;
+    private int peakPosition;
+    private float truePeak;
+
+    private final float[] decoded;
+    private final byte[] carry;
+    private int carryLength;
+    private long frames;
+
+    private volatile double momentaryLufs = Double.NEGATIVE_INFINITY;
+    private volatile double shortTermLufs = Double.NEGATIVE_INFINITY;
+    private double maxMomentaryLufs = Double.NEGATIVE_INFINITY;
+    private double maxShortTermLufs = Double.NEGATIVE_INFINITY;
+
+    public LoudnessMeter(PcmFormat format) {
+        this.format = format;
+        this.channels = format.getChannels();
+        this.weights = new double[channels];
+        for (int c = 0; c < channels; c++) {
+            // 5.1 order (L, R, C, LFE, Ls, Rs): the LFE is ignored and surrounds count +1.5 dB.
+            weights[c] = channels < 6 ? 1.0 : c == 3 ? 0.0 : c >= 4 ? 1.41 : 1.0;
+        }
+        this.subBlockFrames = format.getSampleRate() / 10;
+
+        double rate = format.getSampleRate();
+        double k = Math.tan(Math.PI * 1681.974450955533 / rate);
+        double q = 0.7071752369554196;
+        double vh = Math.pow(10, 3.999843853973347 / 20);
+        double vb = Math.pow(vh, 0.4996667741545416);
+        double a0 = 1 + k / q + k * k;
+        shelfB0 = (vh + vb * k / q + k * k) / a0;
+        shelfB1 = 2 * (k * k - vh) / a0;
+        shelfB2 = (vh - vb * k / q + k * k) / a0;
+        shelfA1 = 2 * (k * k - 1) / a0;
+        shelfA2 = (1 - k / q + k * k) / a0;
+        k = Math.tan(Math.PI * 38.13547087602444 / rate);
+        q = 0.5003270373238773;
+        a0 = 1 + k / q + k * k;
+        highPassB0 = 1;
+        highPassB1 = -2;
+        highPassB2 = 1;
+        highPassA1 = 2 * (k * k - 1) / a0;
+        highPassA2 = (1 - k / q + k * k) / a0;
+        this.filterState = new double[channels * 4];
+
+        this.channelSquares = new double[channels];
+        this.peakHistory = new float[channels * PHASE_TAPS * 2];
+        this.decoded = new float[DECODE_FRAMES * channels];
+        this.carry = new byte[format.getFrameSize()];
+    }
+
+    /** Polyphase split of a 4x windowed-sinc interpolator; phase 0 passes samples through exactly. */
+    private static float[][] interpolatorPhases() {
+        int taps = OVERSAMPLING * (PHASE_TAPS - 1) + 1;
+        int center = taps / 2;
+        float[][] phases = new float[OVERSAMPLING][PHASE_TAPS];
+        for (int i = 0; i < taps; i++) {
+            double t = (double) (i - center) / OVERSAMPLING;
+            double sinc = t == 0 ? 1 : Math.sin(Math.PI * t) / (Math.PI * t);
+            double window = 0.42 - 0.5 * Math.cos(2 * Math.PI * i / (taps - 1))
+                    + 0.08 * Math.cos(4 * Math.PI * i / (taps - 1));
+            phases[i % OVERSAMPLING][i / OVERSAMPLING] = (float) (sinc * window);
+        }
+        return phases;
+    }
+
+    public PcmFormat getFormat() {
+        return format;
+    }
+
+    /** Meters {@code length} bytes of PCM; a partial frame at the end is kept for the next call. */
+    public void add(byte[] data, int offset, int length) {
+        int frameSize = carry.length;
+        if (carryLength > 0) {
+            int needed = Math.min(frameSize - carryLength, length);
+            System.arraycopy(data, offset, carry, carryLength, needed);
+            carryLength += needed;
+            offset += needed;
+            length -= needed;
+            if (carryLength < frameSize) {
+                return;
+            }
+            SampleConverter.decode(format, carry, 0, decoded, channels);
+            addFrames(decoded, 1);
+            carryLength = 0;
+        }
+        int whole = length / frameSize;
+        while (whole > 0) {
+            int chunk = Math.min(whole, DECODE_FRAMES);
+            SampleConverter.decode(format, data, offset, decoded, chunk * channels);
+            addFrames(decoded, chunk);
+            offset += chunk * frameSize;
+            length -= chunk * frameSize;
+            whole -= chunk;
+        }
+        if (length > 0) {
+            System.arraycopy(data, offset, carry, 0, length);
+            carryLength = length;
+        }
+    }
+
+    /** Meters {@code count} interleaved frames of decoded samples. */
+    public void addFrames(float[] samples, int count) {
+        for (int f = 0, i = 0; f < count; f++) {
+            for (int c = 0; c < channels; c++, i++) {
+                float sample = samples[i];
+                trackPeak(c, sample);
+                int s = c * 4;
+                double shelved = shelfB0 * sample + filterState[s];
+                filterState[s] = shelfB1 * sample - shelfA1 * shelved + filterState[s + 1];
+                filterState[s + 1] = shelfB2 * sample - shelfA2 * shelved;
+                double weighted = highPassB0 * shelved + filterState[s + 2];
+                filterState[s + 2] = highPassB1 * shelved - highPassA1 * weighted + filterState[s + 3];
+                filterState[s + 3] = highPassB2 * shelved - highPassA2 * weighted;
+                channelSquares[c] += weighted * weighted;
+            }
+            peakPosition = peakPosition == 0 ? PHASE_TAPS - 1 : peakPosition - 1;
+            if (++subBlockFill == subBlockFrames) {
+                finishSubBlock();
+            }
+        }
+        frames += count;
+    }
+
+    private void trackPeak(int channel, float sample) {
+        // Each history is stored twice so the newest PHASE_TAPS samples are always contiguous.
+        int base = channel * PHASE_TAPS * 2;
+        peakHistory[base + peakPosition] = sample;
+        peakHistory[base + peakPosition + PHASE_TAPS] = sample;
+        float peak = Math.max(truePeak, Math.abs(sample));
+        for (float[] phase : PHASES) {
+            float sum = 0;
+            for (int k = 0, j = base + peakPosition; k < PHASE_TAPS; k++, j++) {
+                sum += phase[k] * peakHistory[j];
+            }
+            peak = Math.max(peak, Math.abs(sum));
+        }
+        truePeak = peak;
+    }
+
+    private void finishSubBlock() {
+        double energy = 0;
+        for (int c = 0; c < channels; c++) {
+            energy += weights[c] * channelSquares[c] / subBlockFrames;
+            channelSquares[c] = 0;
+        }
+        subBlockFill = 0;
+        subBlockEnergies[(int) (subBlocks % SHORT_TERM_BLOCKS)] = energy;
+        subBlocks++;
+        if (subBlocks >= MOMENTARY_BLOCKS) {
+            double momentary = toLufs(meanOfLast(MOMENTARY_BLOCKS));
+            momentaryLufs = momentary;
+            maxMomentaryLufs = Math.max(maxMomentaryLufs, momentary);
+            if (momentary >= ABSOLUTE_GATE_LUFS) {
+                int bin = Math.min(BINS - 1, (int) ((momentary - ABSOLUTE_GATE_LUFS) / BIN_LU));
+                binEnergy[bin] += meanOfLast(MOMENTARY_BLOCKS);
+                binCount[bin]++;
+            }
+        }
+        if (subBlocks >= SHORT_TERM_BLOCKS) {
+            double shortTerm = toLufs(meanOfLast(SHORT_TERM_BLOCKS));
+            shortTermLufs = shortTerm;
+            maxShortTermLufs = Math.max(maxShortTermLufs, shortTerm);
+        }
+    }
+
+    private double meanOfLast(int blocks) {
+        double sum = 0;
+        for (int i = 1; i <= blocks; i++) {
+            sum += subBlockEnergies[(int) ((subBlocks - i) % SHORT_TERM_BLOCKS)];
+        }
+        return sum / blocks;
+    }
+
+    private static double toLufs(double energy) {
+        return -0.691 + 10 * Math.log10(energy);
+    }
+
+    /** Frames metered so far. */
+    public long getFrames() {
+        return frames;
+    }
+
+    /** Loudness of the last 400 ms; negative infinity until that much audio was metered. */
+    public double getMomentaryLufs() {
+        return momentaryLufs;
+    }
+
+    /** Loudness of the last 3 s; negative infinity until that much audio was metered. */
+    public double getShortTermLufs() {
+        return shortTermLufs;
+    }
+
+    public double getMaxMomentaryLufs() {
+        return maxMomentaryLufs;
+    }
+
+    public double getMaxShortTermLufs() {
+        return maxShortTermLufs;
+    }
+
+    /**
+     * Gated loudness of everything metered so far: the mean of the gating blocks above -70 LUFS
+     * that are also within 10 LU of the mean of those blocks. Negative infinity if no block
+     * passed the absolute gate.
+     */
+    public double getIntegratedLufs() {
+        double energy = 0;
+        long count = 0;
+        for (int bin = 0; bin < BINS; bin++) {
+            energy += binEnergy[bin];
+            count += binCount[bin];
+        }
+        if (count == 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        double relativeGate = toLufs(energy / count) + RELATIVE_GATE_LU;
+        // Bins are kept whole, on which side of the gate their middle falls.
+        int first = (int) Math.max(0, Math.round((relativeGate - ABSOLUTE_GATE_LUFS) / BIN_LU));
+        energy = 0;
+        count = 0;
+        for (int bin = first; bin < BINS; bin++) {
+            energy += binEnergy[bin];
+            count += binCount[bin];
+        }
+        return count > 0 ? toLufs(energy / count) : Double.NEGATIVE_INFINITY;
+    }
+
+    /** Largest inter-sample peak so far in dBTP. */
+    public double getTruePeakDb() {
+        return 20 * Math.log10(truePeak);
+    }
+
+    public Result getResult() {
+        return new Result(getIntegratedLufs(), maxMomentaryLufs, maxShortTermLufs, getTruePeakDb(), frames);
+    }
+
+    /** The loudness of a finished recording, as stored in its {@value #CHUNK_ID} chunk. */
+    public static final class Result {
+        /** RIFF chunk that {@link WavWriter#addChunk} appends after the audio. */
+        public static final String CHUNK_ID = "lufs";
+        private static final int VERSION = 1;
+        static final int CHUNK_SIZE = 28;
+
+        public final double integratedLufs;
+        public final double maxMomentaryLufs;
+        public final double maxShortTermLufs;
+        public final double truePeakDb;
+        public final long frames;
+
+        Result(double integratedLufs, double maxMomentaryLufs, double maxShortTermLufs, double truePeakDb,
+               long frames) {
+            this.integratedLufs = integratedLufs;
+            this.maxMomentaryLufs = maxMomentaryLufs;
+            this.maxShortTermLufs = maxShortTermLufs;
+            this.truePeakDb = truePeakDb;
+            this.frames = frames;
+        }
+
+        /** Chunk payload: version, the four values as little-endian floats, then the frame count. */
+        public byte[] toChunk() {
+            ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            chunk.putInt(VERSION)
+                    .putFloat((float) integratedLufs)
+                    .putFloat((float) maxMomentaryLufs)
+                    .putFloat((float) maxShortTermLufs)
+                    .putFloat((float) truePeakDb)
+                    .putLong(frames);
+            return chunk.array();
+        }
+
+        /** Parses a {@link #toChunk()} payload; returns null for an unknown version. */
+        public static Result fromChunk(ByteBuffer chunk) {
+            ByteBuffer in = chunk.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            if (in.remaining() < CHUNK_SIZE || in.getInt() != VERSION) {
+                return null;
+            }
+            return new Result(in.getFloat(), in.getFloat(), in.getFloat(), in.getFloat(), in.getLong());
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "I %.1f LUFS, max M %.1f LUFS, max S %.1f LUFS, TP %.1f dBTP",
+                    integratedLufs, maxMomentaryLufs, maxShortTermLufs, truePeakDb);
+        }
+    }
+}
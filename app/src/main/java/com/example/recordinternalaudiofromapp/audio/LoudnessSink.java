@@ -0,0 +1,49 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.io.IOException;
+
+/**
+ * Passes every block through to a downstream sink while metering it with a
+ * {@link LoudnessMeter}. When the downstream sink is a {@link WavWriter}, closing stores the
+ * result in the file's {@value LoudnessMeter.Result#CHUNK_ID} chunk, so the recording's loudness
+ * is known without reading it again.
+ */
+public final class LoudnessSink implements AudioSink {
+
+    private final LoudnessMeter meter;
+    private final AudioSink downstream;
+    private LoudnessMeter.Result result;
+
+    /** @param format format of the blocks written to this sink, as seen by {@code downstream} */
+    public LoudnessSink(PcmFormat format, AudioSink downstream) {
+        this.meter = new LoudnessMeter(format);
+        this.downstream = downstream;
+    }
+
+    /** The live meter; its momentary and short-term readings may be polled from any thread. */
+    public LoudnessMeter getMeter() {
+        return meter;
+    }
+
+    /** The final measurement, or null before {@link #close()}. */
+    public LoudnessMeter.Result getResult() {
+        return result;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        downstream.write(data, offset, length);
+        meter.add(data, offset, length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (result == null) {
+            result = meter.getResult();
+            if (downstream instanceof WavWriter) {
+                ((WavWriter) downstream).addChunk(LoudnessMeter.Result.CHUNK_ID, result.toChunk());
+            }
+        }
+        downstream.close();
+    }
+}
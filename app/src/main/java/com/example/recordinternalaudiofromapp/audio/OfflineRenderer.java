@@ -0,0 +1,60 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Renders a {@link PcmDecoder} into an {@link AudioSink} as fast as the decoder produces data,
+ * using the same output writers as live capture.
+ */
+public final class OfflineRenderer {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private OfflineRenderer() {
+    }
+
+    /** Throughput of one render. */
+    public static final class Result {
+        public final long frames;
+        public final long elapsedNanos;
+        public final double audioSeconds;
+
+        Result(long frames, long elapsedNanos, double audioSeconds) {
+            this.frames = frames;
+            this.elapsedNanos = elapsedNanos;
+            this.audioSeconds = audioSeconds;
+        }
+
+        /** Seconds of audio rendered per second of wall time. */
+        public double getRealtimeMultiple() {
+            return elapsedNanos > 0 ? audioSeconds * 1e9 / elapsedNanos : Double.POSITIVE_INFINITY;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%.1f s of audio in %d ms (%.1fx realtime)",
+                    audioSeconds, elapsedNanos / 1_000_000, getRealtimeMultiple());
+        }
+    }
+
+    /**
+     * Pumps the whole decoder into {@code sink}, then closes both. Closing the sink is timed too,
+     * since that is where writers finalize their output.
+     */
+    public static Result render(PcmDecoder decoder, AudioSink sink) throws IOException {
+        PcmFormat format = decoder.getFormat();
+        byte[] buffer = new byte[BUFFER_SIZE - BUFFER_SIZE % format.getFrameSize()];
+        long bytes = 0;
+        long start = System.nanoTime();
+        try (PcmDecoder input = decoder; AudioSink output = sink) {
+            int count;
+            while ((count = input.read(buffer, 0, buffer.length)) >= 0) {
+                output.write(buffer, 0, count);
+                bytes += count;
+            }
+        }
+        long frames = bytes / format.getFrameSize();
+        return new Result(frames, System.nanoTime() - start, (double) frames / format.getSampleRate());
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Pull-style source of decoded interleaved PCM, used to render audio offline as fast as the CPU
+ * allows instead of capturing it in realtime.
+ */
+public interface PcmDecoder extends Closeable {
+
+    /** Format of the bytes returned by {@link #read}. */
+    PcmFormat getFormat();
+
+    /** Total length in frames, or -1 if unknown up front. */
+    long getDurationFrames();
+
+    /**
+     * Reads up to {@code length} bytes of whole frames.
+     *
+     * @return number of bytes read, or -1 at the end of the stream
+     */
+    int read(byte[] dst, int offset, int length) throws IOException;
+}
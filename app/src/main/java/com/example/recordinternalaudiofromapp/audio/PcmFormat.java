@@ -0,0 +1,100 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+/**
+ * Immutable description of interleaved PCM: sample rate, channel count and bit depth. Integer
+ * 8-bit samples are unsigned, wider integer samples are signed little-endian, as in WAV files.
+ * Float formats hold 32-bit IEEE samples in [-1, 1] (WAV format tag 3).
+ */
+public final class PcmFormat {
+
+    private final int sampleRate;
+    private final int channels;
+    private final int bitsPerSample;
+    private final boolean floatingPoint;
+
+    public PcmFormat(int sampleRate, int channels, int bitsPerSample) {
+        this(sampleRate, channels, bitsPerSample, false);
+    }
+
+    /** 32-bit float samples. */
+    public static PcmFormat floatFormat(int sampleRate, int channels) {
+        return new PcmFormat(sampleRate, channels, 32, true);
+    }
+
+    private PcmFormat(int sampleRate, int channels, int bitsPerSample, boolean floatingPoint) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("Invalid sample rate: " + sampleRate);
+        }
+        if (channels <= 0 || channels > 8) {
+            throw new IllegalArgumentException("Invalid channel count: " + channels);
+        }
+        if (bitsPerSample != 8 && bitsPerSample != 16 && bitsPerSample != 24 && bitsPerSample != 32) {
+            throw new IllegalArgumentException("Unsupported bit depth: " + bitsPerSample);
+        }
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.bitsPerSample = bitsPerSample;
+        this.floatingPoint = floatingPoint;
+    }
+
+    /** Returns the same layout with 32-bit float or {@code bits}-bit integer samples. */
+    public PcmFormat withEncoding(int bits, boolean floatSamples) {
+        return floatSamples ? floatFormat(sampleRate, channels) : new PcmFormat(sampleRate, channels, bits);
+    }
+
+    public PcmFormat withChannels(int channelCount) {
+        return new PcmFormat(sampleRate, channelCount, bitsPerSample, floatingPoint);
+    }
+
+    public PcmFormat withSampleRate(int rate) {
+        return new PcmFormat(rate, channels, bitsPerSample, floatingPoint);
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getBitsPerSample() {
+        return bitsPerSample;
+    }
+
+    public boolean isFloat() {
+        return floatingPoint;
+    }
+
+    public int getBytesPerSample() {
+        return bitsPerSample / 8;
+    }
+
+    /** Bytes per interleaved frame (one sample for every channel). */
+    public int getFrameSize() {
+        return channels * getBytesPerSample();
+    }
+
+    public long getByteRate() {
+        return (long) sampleRate * getFrameSize();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PcmFormat)) return false;
+        PcmFormat other = (PcmFormat) o;
+        return sampleRate == other.sampleRate && channels == other.channels
+                && bitsPerSample == other.bitsPerSample && floatingPoint == other.floatingPoint;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((sampleRate * 31 + channels) * 31 + bitsPerSample) * 2 + (floatingPoint ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return sampleRate + " Hz, " + channels + " ch, " + bitsPerSample + (floatingPoint ? " bit float" : " bit");
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer/single-consumer byte ring buffer for captured PCM.
+ *
+ * <p>The producer (the capture callback) only copies into a preallocated array and never blocks
+ * or allocates. A block that does not fit is dropped whole and counted as an overrun, so the
+ * consumer never sees a torn block.
+ */
+public final class PcmRingBuffer {
+
+    private final byte[] buffer;
+    private final int capacity;
+    private final int mask;
+
+    // Each position is only ever advanced by one side; lazySet publishes it to the other side.
+    private final AtomicLong writePosition = new AtomicLong();
+    private final AtomicLong readPosition = new AtomicLong();
+
+    // Producer-owned statistics, volatile so the consumer or UI can read them at any time.
+    private volatile long overrunCount;
+    private volatile long droppedBytes;
+    private volatile long acceptedBlocks;
+    private volatile int highWaterMark;
+
+    /**
+     * @param minCapacity minimum number of bytes the buffer must hold; rounded up to a power of two
+     */
+    public PcmRingBuffer(int minCapacity) {
+        if (minCapacity <= 0 || minCapacity > (1 << 30)) {
+            throw new IllegalArgumentException("Invalid ring buffer capacity: " + minCapacity);
+        }
+        capacity = roundUpToPowerOfTwo(minCapacity);
+        mask = capacity - 1;
+        buffer = new byte[capacity];
+    }
+
+    private static int roundUpToPowerOfTwo(int value) {
+        int highest = Integer.highestOneBit(value);
+        return highest == value ? value : highest << 1;
+    }
+
+    /**
+     * Copies a whole block into the buffer. Producer thread only.
+     *
+     * @return false if the block did not fit and was dropped
+     */
+    public boolean write(byte[] src, int offset, int length) {
+        long write = writePosition.get();
+        int used = (int) (write - readPosition.get());
+        if (length > capacity - used) {
+            overrunCount++;
+            droppedBytes += length;
+            return false;
+        }
+        int index = (int) write & mask;
+        int first = Math.min(length, capacity - index);
+        System.arraycopy(src, offset, buffer, index, first);
+        if (first < length) {
+            System.arraycopy(src, offset + first, buffer, 0, length - first);
+        }
+        writePosition.lazySet(write + length);
+        acceptedBlocks++;
+        if (used + length > highWaterMark) {
+            highWaterMark = used + length;
+        }
+        return true;
+    }
+
+    /**
+     * Copies up to {@code length} buffered bytes into {@code dst}. Consumer thread only.
+     *
+     * @return number of bytes copied, 0 if the buffer was empty
+     */
+    public int read(byte[] dst, int offset, int length) {
+        long read = readPosition.get();
+        int available = (int) (writePosition.get() - read);
+        int count = Math.min(available, length);
+        if (count == 0) {
+            return 0;
+        }
+        int index = (int) read & mask;
+        int first = Math.min(count, capacity - index);
+        System.arraycopy(buffer, index, dst, offset, first);
+        if (first < count) {
+            System.arraycopy(buffer, 0, dst, offset + first, count - first);
+        }
+        readPosition.lazySet(read + count);
+        return count;
+    }
+
+    /** Bytes currently buffered and not yet consumed. */
+    public int available() {
+        return (int) (writePosition.get() - readPosition.get());
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /** Number of blocks dropped because the buffer was full. */
+    public long getOverrunCount() {
+        return overrunCount;
+    }
+
+    public long getDroppedBytes() {
+        return droppedBytes;
+    }
+
+    public long getAcceptedBlocks() {
+        return acceptedBlocks;
+    }
+
+    /** Highest occupancy in bytes observed right after a successful write. */
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /** Total bytes ever accepted by the buffer. */
+    public long getTotalWritten() {
+        return writePosition.get();
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Dedicated thread that drains a {@link PcmRingBuffer} into an {@link AudioSink} in large
+ * batches, so the capture callback never waits on storage.
+ */
+public final class PcmWriterThread {
+
+    public static final int DEFAULT_BATCH_SIZE = 64 * 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final PcmRingBuffer ringBuffer;
+    private final AudioSink output;
+    private final byte[] batch;
+    private final Thread thread;
+    private final AudioMetrics metrics;
+
+    private volatile boolean stopRequested;
+    private volatile long bytesWritten;
+    private volatile long batchesWritten;
+    private volatile IOException error;
+
+    public PcmWriterThread(PcmRingBuffer ringBuffer, AudioSink output) {
+        this(ringBuffer, output, DEFAULT_BATCH_SIZE);
+    }
+
+    public PcmWriterThread(PcmRingBuffer ringBuffer, AudioSink output, int batchSize) {
+        this(ringBuffer, output, batchSize, null);
+    }
+
+    /** @param metrics receives the size and latency of every batch write; may be null */
+    public PcmWriterThread(PcmRingBuffer ringBuffer, AudioSink output, int batchSize, AudioMetrics metrics) {
+        this.ringBuffer = ringBuffer;
+        this.metrics = metrics;
+        this.output = output;
+        this.batch = new byte[batchSize];
+        this.thread = new Thread(this::drainLoop, "PcmWriter");
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    private void drainLoop() {
+        try {
+            while (true) {
+                // Read the flag before draining so nothing written before stop() is left behind.
+                boolean stopping = stopRequested;
+                int count = ringBuffer.read(batch, 0, batch.length);
+                if (count > 0) {
+                    long writeStart = System.nanoTime();
+                    output.write(batch, 0, count);
+                    if (metrics != null) {
+                        metrics.onBatchWritten(count, System.nanoTime() - writeStart);
+                    }
+                    bytesWritten += count;
+                    batchesWritten++;
+                } else if (stopping) {
+                    break;
+                } else {
+                    // Sleeping lets the next batch accumulate instead of issuing many small writes.
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+            }
+        } catch (IOException e) {
+            error = e;
+        } catch (RuntimeException e) {
+            // Reported by finish() like a write error, instead of killing the process.
+            error = new IOException("Sink failed: " + e, e);
+        }
+    }
+
+    /**
+     * Drains whatever is still buffered, then stops the thread. Call after the producer has
+     * stopped writing. Does not close the sink.
+     *
+     * @throws IOException the first write error hit by the writer thread, if any
+     */
+    public void finish() throws IOException {
+        stopRequested = true;
+        LockSupport.unpark(thread);
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getBatchesWritten() {
+        return batchesWritten;
+    }
+}
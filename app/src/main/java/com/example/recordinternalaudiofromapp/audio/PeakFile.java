@@ -0,0 +1,167 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Memory-mapped reader for the {@code .peaks} sidecar written by {@link PeakPyramidBuilder}.
+ *
+ * <p>{@link #read} picks the coarsest level that still has at least one entry per output column,
+ * so each column merges at most {@link PeakPyramidBuilder#FANOUT} + 1 entries and the cost of
+ * drawing a waveform depends on the number of columns, not on the length of the recording. Only
+ * the pages under the requested range are touched.
+ *
+ * <p>Layout (little-endian): magic {@code "PEAK"}, version, sample rate, base frames, fanout,
+ * level count, total frames (long), then per level its entry count and byte offset (longs),
+ * then the levels back to back as {@code short} min, max, RMS triples.
+ */
+public final class PeakFile implements Closeable {
+
+    public static final String SUFFIX = ".peaks";
+
+    static final int MAGIC = 0x4B414550; // "PEAK"
+    static final int VERSION = 1;
+    private static final int FIXED_HEADER_SIZE = 32;
+    private static final int LEVEL_RECORD_SIZE = 16;
+
+    private final RandomAccessFile file;
+    private final ShortBuffer[] levels;
+    private final long[] entryCounts;
+    private final int sampleRate;
+    private final int baseFrames;
+    private final int fanout;
+    private final long totalFrames;
+
+    public PeakFile(File peakFile) throws IOException {
+        file = new RandomAccessFile(peakFile, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            if (map.remaining() < FIXED_HEADER_SIZE || map.getInt(0) != MAGIC) {
+                throw new IOException("Not a peak file: " + peakFile);
+            }
+            if (map.getInt(4) != VERSION) {
+                throw new IOException("Unsupported peak file version " + map.getInt(4));
+            }
+            sampleRate = map.getInt(8);
+            baseFrames = map.getInt(12);
+            fanout = map.getInt(16);
+            int levelCount = map.getInt(20);
+            totalFrames = map.getLong(24);
+            if (levelCount < 0 || headerSize(levelCount) > map.capacity()) {
+                throw new IOException("Corrupt peak file header");
+            }
+            levels = new ShortBuffer[levelCount];
+            entryCounts = new long[levelCount];
+            for (int level = 0; level < levelCount; level++) {
+                int record = FIXED_HEADER_SIZE + level * LEVEL_RECORD_SIZE;
+                long count = map.getLong(record);
+                long offset = map.getLong(record + 8);
+                long bytes = count * PeakPyramidBuilder.ENTRY_SHORTS * 2;
+                if (count < 0 || offset < 0 || offset + bytes > map.capacity()) {
+                    throw new IOException("Corrupt peak file level " + level);
+                }
+                map.limit((int) (offset + bytes));
+                map.position((int) offset);
+                levels[level] = map.slice().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+                map.clear();
+                entryCounts[level] = count;
+            }
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /** Returns the peak sidecar that belongs to a recording. */
+    public static File fileFor(File recording) {
+        return new File(recording.getParentFile(), recording.getName() + SUFFIX);
+    }
+
+    static int headerSize(int levels) {
+        return FIXED_HEADER_SIZE + levels * LEVEL_RECORD_SIZE;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public long getTotalFrames() {
+        return totalFrames;
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    public long getEntryCount(int level) {
+        return entryCounts[level];
+    }
+
+    public long getFramesPerEntry(int level) {
+        long frames = baseFrames;
+        for (int i = 0; i < level; i++) {
+            frames *= fanout;
+        }
+        return frames;
+    }
+
+    /**
+     * Summarizes frames {@code [startFrame, endFrame)} into {@code columns} columns of min, max
+     * and RMS, each scaled so 32767 is full scale. Columns past the end of the recording are
+     * left untouched.
+     *
+     * @return the number of columns filled
+     */
+    public int read(long startFrame, long endFrame, int columns, short[] min, short[] max, short[] rms) {
+        if (levels.length == 0 || columns <= 0 || endFrame <= startFrame) {
+            return 0;
+        }
+        double framesPerColumn = (double) (endFrame - startFrame) / columns;
+        int level = 0;
+        while (level + 1 < levels.length && getFramesPerEntry(level + 1) <= framesPerColumn) {
+            level++;
+        }
+        ShortBuffer entries = levels[level];
+        long framesPerEntry = getFramesPerEntry(level);
+        long entryCount = entryCounts[level];
+        int filled = 0;
+        for (int column = 0; column < columns; column++) {
+            long from = startFrame + (long) (column * framesPerColumn);
+            long to = Math.max(from + 1, startFrame + (long) ((column + 1) * framesPerColumn));
+            long first = from / framesPerEntry;
+            long last = Math.min((to - 1) / framesPerEntry, entryCount - 1);
+            if (first > last) {
+                break;
+            }
+            int lo = Short.MAX_VALUE;
+            int hi = Short.MIN_VALUE;
+            double squares = 0;
+            for (long entry = first; entry <= last; entry++) {
+                int at = (int) entry * PeakPyramidBuilder.ENTRY_SHORTS;
+                lo = Math.min(lo, entries.get(at));
+                hi = Math.max(hi, entries.get(at + 1));
+                double entryRms = entries.get(at + 2);
+                squares += entryRms * entryRms;
+            }
+            min[column] = (short) lo;
+            max[column] = (short) hi;
+            rms[column] = (short) Math.round(Math.sqrt(squares / (last - first + 1)));
+            filled++;
+        }
+        return filled;
+    }
+
+    /** Unmapping is left to the garbage collector; closing releases the file descriptor. */
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
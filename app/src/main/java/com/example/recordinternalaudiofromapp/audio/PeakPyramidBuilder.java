@@ -0,0 +1,248 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Builds a multi-resolution min/max/RMS summary of a recording while it is being written, so a
+ * waveform of any length can later be drawn from a few kilobytes (see {@link PeakFile}).
+ *
+ * <p>Level 0 holds one entry per {@value #BASE_FRAMES} frames; each level above merges
+ * {@value #FANOUT} entries of the one below, up to a single entry for the whole recording. All
+ * channels are folded into one entry. Min and max are exact; RMS is computed from unquantized
+ * sums at every level. Entries are stored as three signed 16-bit values (full scale = 32767).
+ *
+ * <p>Not thread-safe; feed it from one thread, typically the writer thread via {@link PeakSink}.
+ */
+public final class PeakPyramidBuilder {
+
+    public static final int BASE_FRAMES = 256;
+    public static final int FANOUT = 4;
+
+    /** Enough levels for 256 * 4^15 frames, over two months at 48 kHz. */
+    static final int MAX_LEVELS = 16;
+    static final int ENTRY_SHORTS = 3;
+
+    private static final int DECODE_FRAMES = 1024;
+
+    private final PcmFormat format;
+    private final int channels;
+    private final float[] decoded;
+    private final byte[] carry;
+    private int carryLength;
+
+    private final short[][] entries = new short[MAX_LEVELS][];
+    private final int[] entryCounts = new int[MAX_LEVELS];
+    // In-progress entry for every level.
+    private final float[] pendingMin = new float[MAX_LEVELS];
+    private final float[] pendingMax = new float[MAX_LEVELS];
+    private final double[] pendingSquares = new double[MAX_LEVELS];
+    private final long[] pendingFrames = new long[MAX_LEVELS];
+    private long totalFrames;
+    private boolean finished;
+
+    public PeakPyramidBuilder(PcmFormat format) {
+        this.format = format;
+        this.channels = format.getChannels();
+        this.decoded = new float[DECODE_FRAMES * channels];
+        this.carry = new byte[format.getFrameSize()];
+        for (int level = 0; level < MAX_LEVELS; level++) {
+            resetPending(level);
+        }
+        entries[0] = new short[1024 * ENTRY_SHORTS];
+    }
+
+    public PcmFormat getFormat() {
+        return format;
+    }
+
+    public long getTotalFrames() {
+        return totalFrames;
+    }
+
+    /** Adds PCM bytes in this builder's format; a trailing partial frame is kept for the next call. */
+    public void add(byte[] data, int offset, int length) {
+        int frameSize = carry.length;
+        if (carryLength > 0) {
+            int needed = Math.min(frameSize - carryLength, length);
+            System.arraycopy(data, offset, carry, carryLength, needed);
+            carryLength += needed;
+            offset += needed;
+            length -= needed;
+            if (carryLength < frameSize) {
+                return;
+            }
+            SampleConverter.decode(format, carry, 0, decoded, channels);
+            addFrames(decoded, 1);
+            carryLength = 0;
+        }
+        int frames = length / frameSize;
+        while (frames > 0) {
+            int chunk = Math.min(frames, DECODE_FRAMES);
+            SampleConverter.decode(format, data, offset, decoded, chunk * channels);
+            addFrames(decoded, chunk);
+            offset += chunk * frameSize;
+            length -= chunk * frameSize;
+            frames -= chunk;
+        }
+        if (length > 0) {
+            System.arraycopy(data, offset, carry, 0, length);
+            carryLength = length;
+        }
+    }
+
+    /** Adds {@code frames} interleaved frames of samples in [-1, 1]. */
+    public void addFrames(float[] samples, int frames) {
+        if (finished) {
+            throw new IllegalStateException("Pyramid already finished");
+        }
+        int i = 0;
+        for (int frame = 0; frame < frames; frame++) {
+            float min = pendingMin[0];
+            float max = pendingMax[0];
+            double squares = 0;
+            for (int c = 0; c < channels; c++, i++) {
+                float sample = samples[i];
+                if (sample < min) {
+                    min = sample;
+                }
+                if (sample > max) {
+                    max = sample;
+                }
+                squares += sample * sample;
+            }
+            pendingMin[0] = min;
+            pendingMax[0] = max;
+            pendingSquares[0] += squares / channels;
+            if (++pendingFrames[0] == BASE_FRAMES) {
+                emit(0);
+            }
+        }
+        totalFrames += frames;
+    }
+
+    /** Closes the in-progress entry at every level. No more audio can be added afterwards. */
+    public void finish() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        // Emitting a partial entry folds it into the level above, so walk upwards until one
+        // entry covers everything.
+        for (int level = 0; level < MAX_LEVELS; level++) {
+            if (pendingFrames[level] > 0) {
+                emit(level);
+            }
+            if (entryCounts[level] <= 1) {
+                break;
+            }
+        }
+    }
+
+    /** Number of levels holding at least one finished entry. */
+    public int getLevelCount() {
+        int levels = 0;
+        while (levels < MAX_LEVELS && entryCounts[levels] > 0) {
+            levels++;
+        }
+        return levels;
+    }
+
+    public int getEntryCount(int level) {
+        return entryCounts[level];
+    }
+
+    public static long framesPerEntry(int level) {
+        return (long) BASE_FRAMES << (2 * level);
+    }
+
+    /** Copies the finished entries of {@code level}: min, max and RMS per entry. */
+    public short[] getEntries(int level) {
+        return Arrays.copyOf(entries[level], entryCounts[level] * ENTRY_SHORTS);
+    }
+
+    /**
+     * Finishes the pyramid and writes it as a sidecar file, replacing {@code file}. The levels
+     * are stored back to back so any zoom range is one contiguous region.
+     */
+    public void writeTo(File file) throws IOException {
+        finish();
+        int levels = getLevelCount();
+        int headerSize = PeakFile.headerSize(levels);
+        long size = headerSize;
+        for (int level = 0; level < levels; level++) {
+            size += (long) entryCounts[level] * ENTRY_SHORTS * 2;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(PeakFile.MAGIC);
+        buffer.putInt(PeakFile.VERSION);
+        buffer.putInt(format.getSampleRate());
+        buffer.putInt(BASE_FRAMES);
+        buffer.putInt(FANOUT);
+        buffer.putInt(levels);
+        buffer.putLong(totalFrames);
+        long offset = headerSize;
+        for (int level = 0; level < levels; level++) {
+            buffer.putLong(entryCounts[level]);
+            buffer.putLong(offset);
+            offset += (long) entryCounts[level] * ENTRY_SHORTS * 2;
+        }
+        for (int level = 0; level < levels; level++) {
+            buffer.asShortBuffer().put(entries[level], 0, entryCounts[level] * ENTRY_SHORTS);
+            buffer.position(buffer.position() + entryCounts[level] * ENTRY_SHORTS * 2);
+        }
+        buffer.flip();
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = out.getChannel();
+            channel.truncate(0);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /** Appends the pending entry of {@code level} and folds it into the level above. */
+    private void emit(int level) {
+        short[] levelEntries = entries[level];
+        if (levelEntries == null) {
+            levelEntries = entries[level] = new short[64 * ENTRY_SHORTS];
+        } else if (entryCounts[level] * ENTRY_SHORTS == levelEntries.length) {
+            levelEntries = entries[level] = Arrays.copyOf(levelEntries, levelEntries.length * 2);
+        }
+        long frames = pendingFrames[level];
+        double meanSquare = pendingSquares[level] / frames;
+        int at = entryCounts[level]++ * ENTRY_SHORTS;
+        levelEntries[at] = quantize(pendingMin[level]);
+        levelEntries[at + 1] = quantize(pendingMax[level]);
+        levelEntries[at + 2] = quantize((float) Math.sqrt(meanSquare));
+
+        int up = level + 1;
+        if (up < MAX_LEVELS) {
+            pendingMin[up] = Math.min(pendingMin[up], pendingMin[level]);
+            pendingMax[up] = Math.max(pendingMax[up], pendingMax[level]);
+            pendingSquares[up] += pendingSquares[level];
+            pendingFrames[up] += frames;
+            if (pendingFrames[up] == framesPerEntry(up)) {
+                emit(up);
+            }
+        }
+        resetPending(level);
+    }
+
+    private void resetPending(int level) {
+        pendingMin[level] = Float.POSITIVE_INFINITY;
+        pendingMax[level] = Float.NEGATIVE_INFINITY;
+        pendingSquares[level] = 0;
+        pendingFrames[level] = 0;
+    }
+
+    static short quantize(float sample) {
+        int value = Math.round(sample * 32767f);
+        return (short) Math.max(-32768, Math.min(32767, value));
+    }
+}
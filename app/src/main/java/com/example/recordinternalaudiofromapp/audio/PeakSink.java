@@ -0,0 +1,61 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Passes every block through to a downstream sink while feeding it to a
+ * {@link PeakPyramidBuilder}. Closing writes the {@code .peaks} sidecar, then closes the
+ * downstream sink.
+ */
+public final class PeakSink implements AudioSink {
+
+    private final PeakPyramidBuilder builder;
+    private final File peakFile;
+    private final AudioSink downstream;
+
+    /** @param format format of the blocks written to this sink, as seen by {@code downstream} */
+    public PeakSink(PcmFormat format, File peakFile, AudioSink downstream) {
+        this.builder = new PeakPyramidBuilder(format);
+        this.peakFile = peakFile;
+        this.downstream = downstream;
+    }
+
+    public PeakPyramidBuilder getBuilder() {
+        return builder;
+    }
+
+    public File getPeakFile() {
+        return peakFile;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        downstream.write(data, offset, length);
+        builder.add(data, offset, length);
+    }
+
+    /**
+     * Writes the sidecar and closes the downstream sink. The sink is closed even if the sidecar
+     * cannot be written; the first error is rethrown.
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        try {
+            builder.writeTo(peakFile);
+        } catch (IOException e) {
+            failure = e;
+        }
+        try {
+            downstream.close();
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
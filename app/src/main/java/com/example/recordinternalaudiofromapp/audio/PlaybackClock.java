@@ -0,0 +1,70 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Estimates the current media position of a player with sub-millisecond resolution from a
+ * coarse position source, such as {@code MediaPlayer.getCurrentPosition()}, and the monotonic
+ * clock.
+ *
+ * <p>The reported position is polled at most every {@code refreshNanos} and extrapolated with
+ * {@link System#nanoTime()} in between. Because reported positions are truncated to whole
+ * milliseconds and arrive late, never early, the estimator keeps the largest offset between
+ * media time and monotonic time it has seen, letting it slip back by at most 1 ms per second so
+ * a media clock that runs slightly slow is still followed. A reading that disagrees with the
+ * estimate by more than {@link #JUMP_NANOS} (seek, pause, underrun) resets it.
+ *
+ * <p>Thread-safe; typically called from the capture thread.
+ */
+public final class PlaybackClock {
+
+    public static final long DEFAULT_REFRESH_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    public static final long JUMP_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final long SLEW_DIVISOR = 1000;
+
+    private final LongSupplier positionMillis;
+    private final LongSupplier nanoTime;
+    private final long refreshNanos;
+    private boolean anchored;
+    private long offsetNanos;
+    private long lastRefreshNanos;
+    private long jumps;
+
+    public PlaybackClock(LongSupplier positionMillis) {
+        this(positionMillis, System::nanoTime, DEFAULT_REFRESH_NANOS);
+    }
+
+    /** For tests: {@code nanoTime} stands in for {@link System#nanoTime()}. */
+    PlaybackClock(LongSupplier positionMillis, LongSupplier nanoTime, long refreshNanos) {
+        this.positionMillis = positionMillis;
+        this.nanoTime = nanoTime;
+        this.refreshNanos = refreshNanos;
+    }
+
+    /** The estimated media position right now, in nanoseconds. */
+    public synchronized long getPositionNanos() {
+        long now = nanoTime.getAsLong();
+        if (!anchored || now - lastRefreshNanos >= refreshNanos) {
+            long observed = TimeUnit.MILLISECONDS.toNanos(positionMillis.getAsLong()) - now;
+            if (!anchored || Math.abs(observed - offsetNanos) > JUMP_NANOS) {
+                if (anchored) {
+                    jumps++;
+                }
+                offsetNanos = observed;
+                anchored = true;
+            } else {
+                long slewed = offsetNanos - (now - lastRefreshNanos) / SLEW_DIVISOR;
+                offsetNanos = Math.max(observed, slewed);
+            }
+            lastRefreshNanos = now;
+        }
+        return now + offsetNanos;
+    }
+
+    /** How often the estimate was reset by a jump in the reported position. */
+    public synchronized long getJumpCount() {
+        return jumps;
+    }
+}
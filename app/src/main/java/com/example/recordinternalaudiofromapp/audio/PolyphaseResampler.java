@@ -0,0 +1,260 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.util.Arrays;
+
+/**
+ * Streaming windowed-sinc polyphase resampler for interleaved float samples.
+ *
+ * <p>The filter bank holds {@code phases + 1} Kaiser-windowed sinc kernels; the kernel for an
+ * output sample is interpolated between the two nearest phases. The read position advances by an
+ * exact rational step ({@code inRate / outRate} reduced by their gcd), so arbitrary ratios such as
+ * 44.1 kHz to 48 kHz never drift. Memory is fixed at construction: one kernel table and a history
+ * buffer of {@code maxInputFrames} plus one kernel length. Latency is half a kernel.
+ */
+public final class PolyphaseResampler {
+
+    /** Quality/CPU trade-offs; cost grows linearly with the number of taps. */
+    public enum Quality {
+        FAST(8, 64, 5.0, 0.85),
+        BALANCED(16, 128, 7.0, 0.90),
+        HIGH(32, 256, 9.0, 0.94);
+
+        final int taps;
+        final int phases;
+        final double kaiserBeta;
+        final double rolloff;
+
+        Quality(int taps, int phases, double kaiserBeta, double rolloff) {
+            this.taps = taps;
+            this.phases = phases;
+            this.kaiserBeta = kaiserBeta;
+            this.rolloff = rolloff;
+        }
+    }
+
+    private final int inRate;
+    private final int outRate;
+    private final int channels;
+    private final int maxInputFrames;
+    private final int taps;
+    private final int halfTaps;
+    private final int phases;
+    private final float[] kernels;
+    private final float[] history;
+    private final int step;
+    private final int denominator;
+
+    private int buffered;
+    private int position;
+    private int fraction;
+    private long inputFrames;
+    private long outputFrames;
+    private long processingNanos;
+
+    public PolyphaseResampler(int inRate, int outRate, int channels, Quality quality, int maxInputFrames) {
+        if (inRate <= 0 || outRate <= 0 || channels <= 0 || maxInputFrames <= 0) {
+            throw new IllegalArgumentException("Invalid resampler configuration.");
+        }
+        int divisor = gcd(inRate, outRate);
+        this.inRate = inRate;
+        this.outRate = outRate;
+        this.step = inRate / divisor;
+        this.denominator = outRate / divisor;
+        this.channels = channels;
+        this.maxInputFrames = maxInputFrames;
+        this.phases = quality.phases;
+
+        // Downsampling narrows the passband, so widen the kernel to keep the same zero crossings.
+        double bandwidth = Math.min(1.0, (double) outRate / inRate);
+        int scaledTaps = (int) Math.ceil(quality.taps / bandwidth);
+        this.taps = scaledTaps + (scaledTaps & 1);
+        this.halfTaps = taps / 2;
+        this.kernels = buildKernels(taps, phases, bandwidth * quality.rolloff, quality.kaiserBeta);
+        this.history = new float[(maxInputFrames + taps) * channels];
+        reset();
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /**
+     * Kernel for phase p weights input frame {@code floor(t) - halfTaps + 1 + k} when the output
+     * instant t has fractional part {@code p / phases}.
+     */
+    private static float[] buildKernels(int taps, int phases, double cutoff, double beta) {
+        float[] table = new float[(phases + 1) * taps];
+        int half = taps / 2;
+        double i0Beta = besselI0(beta);
+        for (int p = 0; p <= phases; p++) {
+            double frac = (double) p / phases;
+            double sum = 0;
+            double[] row = new double[taps];
+            for (int k = 0; k < taps; k++) {
+                double distance = frac + (half - 1 - k);
+                double x = distance / half;
+                double window = Math.abs(x) >= 1 ? 0 : besselI0(beta * Math.sqrt(1 - x * x)) / i0Beta;
+                double argument = Math.PI * cutoff * distance;
+                double sinc = argument == 0 ? 1 : Math.sin(argument) / argument;
+                row[k] = cutoff * sinc * window;
+                sum += row[k];
+            }
+            for (int k = 0; k < taps; k++) {
+                table[p * taps + k] = (float) (row[k] / sum);
+            }
+        }
+        return table;
+    }
+
+    private static double besselI0(double x) {
+        double sum = 1;
+        double term = 1;
+        double halfX = x / 2;
+        for (int k = 1; k < 50; k++) {
+            term *= (halfX / k) * (halfX / k);
+            sum += term;
+            if (term < sum * 1e-12) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    /** Clears the history, as if the stream restarted. */
+    public void reset() {
+        // Half a kernel of silence stands in for the samples before the stream started.
+        Arrays.fill(history, 0);
+        buffered = halfTaps - 1;
+        position = halfTaps - 1;
+        fraction = 0;
+    }
+
+    /** Upper bound on the output frames produced for {@code inputFrames} input frames. */
+    public int maxOutputFrames(int inputFrames) {
+        return (int) (((long) inputFrames + halfTaps) * denominator / step) + 2;
+    }
+
+    public int getMaxInputFrames() {
+        return maxInputFrames;
+    }
+
+    /** Input frames of delay introduced by the filter. */
+    public int getLatencyFrames() {
+        return halfTaps;
+    }
+
+    /**
+     * Resamples {@code frames} frames (at most {@link #getMaxInputFrames()}) from {@code input}.
+     *
+     * @param output receives at most {@link #maxOutputFrames}({@code frames}) frames
+     * @return number of output frames written
+     */
+    public int process(float[] input, int inputOffset, int frames, float[] output) {
+        if (frames > maxInputFrames) {
+            throw new IllegalArgumentException("Block of " + frames + " frames exceeds " + maxInputFrames);
+        }
+        long start = System.nanoTime();
+        System.arraycopy(input, inputOffset, history, buffered * channels, frames * channels);
+        buffered += frames;
+        inputFrames += frames;
+        int produced = drain(output);
+        processingNanos += System.nanoTime() - start;
+        return produced;
+    }
+
+    /**
+     * Feeds half a kernel of silence so the last input samples come out, then resets.
+     *
+     * @param output receives at most {@link #maxOutputFrames}(0) frames
+     * @return number of output frames written
+     */
+    public int flush(float[] output) {
+        long start = System.nanoTime();
+        Arrays.fill(history, buffered * channels, (buffered + halfTaps) * channels, 0);
+        buffered += halfTaps;
+        int produced = drain(output);
+        // Output k sits at input instant k * inRate / outRate; drop those past the last input frame.
+        long expected = (inputFrames * denominator + step - 1) / step;
+        if (outputFrames > expected) {
+            int extra = (int) Math.min(produced, outputFrames - expected);
+            produced -= extra;
+            outputFrames -= extra;
+        }
+        processingNanos += System.nanoTime() - start;
+        reset();
+        return produced;
+    }
+
+    private int drain(float[] output) {
+        int produced = 0;
+        int out = 0;
+        while (position + halfTaps < buffered) {
+            // Interpolate the kernel between the two phases around the exact fractional position.
+            long scaled = (long) fraction * phases;
+            int phase = (int) (scaled / denominator);
+            float alpha = (float) (scaled - (long) phase * denominator) / denominator;
+            int first = (position - halfTaps + 1) * channels;
+            int kernelA = phase * taps;
+            int kernelB = kernelA + taps;
+            for (int c = 0; c < channels; c++) {
+                float sumA = 0;
+                float sumB = 0;
+                for (int k = 0, index = first + c; k < taps; k++, index += channels) {
+                    float sample = history[index];
+                    sumA += kernels[kernelA + k] * sample;
+                    sumB += kernels[kernelB + k] * sample;
+                }
+                output[out + c] = sumA + (sumB - sumA) * alpha;
+            }
+            out += channels;
+            produced++;
+            fraction += step;
+            position += fraction / denominator;
+            fraction %= denominator;
+        }
+        outputFrames += produced;
+        // Keep only the frames the next output still needs.
+        int drop = Math.min(position - halfTaps + 1, buffered);
+        if (drop > 0) {
+            System.arraycopy(history, drop * channels, history, 0, (buffered - drop) * channels);
+            buffered -= drop;
+            position -= drop;
+        }
+        return produced;
+    }
+
+    public int getInputRate() {
+        return inRate;
+    }
+
+    public int getOutputRate() {
+        return outRate;
+    }
+
+    public int getTaps() {
+        return taps;
+    }
+
+    public long getInputFrames() {
+        return inputFrames;
+    }
+
+    public long getOutputFrames() {
+        return outputFrames;
+    }
+
+    /** CPU time spent per second of input audio so far, in nanoseconds. */
+    public double getNanosPerAudioSecond() {
+        return inputFrames == 0 ? 0 : processingNanos * (double) inRate / inputFrames;
+    }
+
+    /** Fraction of one core needed to keep up in realtime (0.01 means 1%). */
+    public double getRealtimeCpuLoad() {
+        return getNanosPerAudioSecond() / 1e9;
+    }
+}
@@ -0,0 +1,370 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records any number of capture sources at once, each into its own output, on a fixed pool of
+ * writer threads. Every {@link Session} has its own {@link PcmRingBuffer}, so a session that
+ * falls behind only overruns or blocks itself (see {@link Backpressure}), never the others.
+ *
+ * <p>Writers visit the sessions round-robin from a shared cursor and take at most one batch per
+ * visit, so a session with a large backlog cannot starve one that has just a little. A session
+ * is only written once it has {@link #MIN_BATCH_BYTES} buffered or has waited
+ * {@link #MAX_HOLD_MILLIS}, which keeps writes large when many slow sessions share the pool.
+ * Aggregate throughput grows with the number of sessions until the pool or the storage is
+ * saturated.
+ */
+public final class RecorderManager {
+
+    public static final int DEFAULT_RING_CAPACITY = RecordingSession.DEFAULT_RING_CAPACITY;
+    // A session with less than this buffered waits for more, up to MAX_HOLD_MILLIS.
+    public static final int MIN_BATCH_BYTES = 16 * 1024;
+    public static final long MAX_HOLD_MILLIS = 50;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long BLOCKED_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /** What a session's capture callback does when its ring buffer is full. */
+    public enum Backpressure {
+        /** Drop the block and count an overrun. For live capture, whose callback must never wait. */
+        DROP,
+        /** Wait until the writers make room. For sources that can be paused, such as decoders. */
+        BLOCK
+    }
+
+    private final File directory;
+    private final SyncPolicy syncPolicy;
+    private final int batchSize;
+    private final Thread[] writers;
+    private final List<Session> sessions = new CopyOnWriteArrayList<>();
+    private final AtomicInteger cursor = new AtomicInteger();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private boolean closed;
+    private volatile boolean shutdown;
+
+    public RecorderManager(File directory, int writerThreads) {
+        this(directory, writerThreads, PcmWriterThread.DEFAULT_BATCH_SIZE, RecordingEngine.RECORDING_SYNC_POLICY);
+    }
+
+    /**
+     * @param writerThreads size of the writer pool, independent of the number of sessions
+     * @param batchSize     most bytes a writer takes from one session per visit
+     */
+    public RecorderManager(File directory, int writerThreads, int batchSize, SyncPolicy syncPolicy) {
+        if (writerThreads <= 0) {
+            throw new IllegalArgumentException("Need at least one writer thread: " + writerThreads);
+        }
+        this.directory = directory;
+        this.syncPolicy = syncPolicy;
+        this.batchSize = batchSize;
+        this.writers = new Thread[writerThreads];
+        for (int i = 0; i < writerThreads; i++) {
+            writers[i] = new Thread(this::writerLoop, "RecorderWriter-" + i);
+            writers[i].start();
+        }
+    }
+
+    /**
+     * Creates {@code <baseName>-NNN<extension>} with the lowest free number. Creation is atomic,
+     * so concurrent sessions and earlier runs never share or overwrite a file.
+     */
+    public static File reserveFile(File directory, String baseName, String extension) throws IOException {
+        for (int n = 1; ; n++) {
+            File file = new File(directory, String.format(Locale.US, "%s-%03d%s", baseName, n, extension));
+            if (file.createNewFile()) {
+                return file;
+            }
+        }
+    }
+
+    /** Records {@code source} into a new WAV file named after {@code baseName}; see {@link #reserveFile}. */
+    public Session start(CaptureSource source, String baseName, Backpressure backpressure) throws IOException {
+        File file = reserveFile(directory, baseName, ".wav");
+        WavWriter writer;
+        try {
+            writer = new WavWriter(file, source.getFormat(), syncPolicy);
+        } catch (IOException e) {
+            file.delete();
+            throw e;
+        }
+        try {
+            return start(source, writer, file, backpressure, DEFAULT_RING_CAPACITY);
+        } catch (RuntimeException e) {
+            try {
+                writer.close();
+            } catch (IOException ignored) {
+                // Nothing was recorded; the file is deleted below.
+            }
+            file.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Records {@code source} into {@code sink}, which is closed when the session stops.
+     *
+     * @param file what {@link Session#getFile()} reports; may be null
+     * @throws IllegalStateException if the manager has been shut down
+     */
+    public synchronized Session start(CaptureSource source, AudioSink sink, File file, Backpressure backpressure,
+                                      int ringCapacity) {
+        if (closed) {
+            throw new IllegalStateException("RecorderManager is shut down");
+        }
+        Session session = new Session(source, sink, file, backpressure, ringCapacity);
+        sessions.add(session);
+        try {
+            session.start();
+        } catch (RuntimeException e) {
+            sessions.remove(session);
+            throw e;
+        }
+        return session;
+    }
+
+    /** Sessions started and not yet stopped. */
+    public List<Session> getSessions() {
+        return new ArrayList<>(sessions);
+    }
+
+    /** Audio bytes written by the pool across all sessions. */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    public int getWriterThreads() {
+        return writers.length;
+    }
+
+    /**
+     * Stops every running session, then the writer threads. Blocks until both are done.
+     *
+     * @throws IOException the first error from stopping a session; every session is stopped either way
+     */
+    public void shutdown() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            // No session can start after this, so every one is stopped before the writers exit.
+            closed = true;
+        }
+        IOException failure = null;
+        for (Session session : sessions) {
+            try {
+                session.stop();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        shutdown = true;
+        for (Thread writer : writers) {
+            LockSupport.unpark(writer);
+        }
+        boolean interrupted = false;
+        for (Thread writer : writers) {
+            while (writer.isAlive()) {
+                try {
+                    writer.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void writerLoop() {
+        byte[] batch = new byte[batchSize];
+        while (!shutdown) {
+            Session[] snapshot = sessions.toArray(new Session[0]);
+            boolean worked = false;
+            for (int i = 0; i < snapshot.length; i++) {
+                Session session = snapshot[Math.floorMod(cursor.getAndIncrement(), snapshot.length)];
+                // Each ring has a single consumer, so only one writer may serve a session at a time.
+                if (session.busy.compareAndSet(false, true)) {
+                    try {
+                        worked |= session.drainOnce(batch);
+                    } finally {
+                        session.busy.set(false);
+                    }
+                }
+            }
+            if (!worked) {
+                // Sleeping lets the next batches accumulate instead of issuing many small writes.
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    /** One capture source recorded into one sink, served by the manager's writer pool. */
+    public final class Session {
+
+        private final CaptureSource source;
+        private final AudioSink sink;
+        private final File file;
+        private final Backpressure backpressure;
+        private final PcmRingBuffer ringBuffer;
+        private final AudioMetrics metrics = new AudioMetrics();
+        private final AtomicBoolean busy = new AtomicBoolean();
+        private final CountDownLatch drained = new CountDownLatch(1);
+        private volatile boolean capturing;
+        private volatile boolean finishing;
+        private volatile Thread blockedProducer;
+        private volatile IOException error;
+        // Guarded by the session's lock in stop().
+        private boolean stopped;
+        // Writer-owned: only touched by the writer holding busy.
+        private long lastWriteNanos = System.nanoTime();
+
+        private Session(CaptureSource source, AudioSink sink, File file, Backpressure backpressure, int ringCapacity) {
+            this.source = source;
+            this.sink = sink;
+            this.file = file;
+            this.backpressure = backpressure;
+            this.ringBuffer = new PcmRingBuffer(ringCapacity);
+        }
+
+        private void start() {
+            metrics.markRequestedIfUnset();
+            capturing = true;
+            source.start(this::onCaptured);
+        }
+
+        private void onCaptured(byte[] data, int offset, int length) {
+            if (!capturing) {
+                return;
+            }
+            if (backpressure == Backpressure.BLOCK && length <= ringBuffer.capacity()) {
+                // Only this thread adds data, so room seen here stays available for the write below.
+                while (ringBuffer.capacity() - ringBuffer.available() < length && capturing && error == null) {
+                    blockedProducer = Thread.currentThread();
+                    if (ringBuffer.capacity() - ringBuffer.available() < length) {
+                        LockSupport.parkNanos(this, BLOCKED_PARK_NANOS);
+                    }
+                    blockedProducer = null;
+                }
+            }
+            boolean accepted = ringBuffer.write(data, offset, length);
+            metrics.onCaptured(length, ringBuffer.available(), accepted);
+        }
+
+        /** Writes at most one batch. Called by a writer holding {@link #busy}. */
+        private boolean drainOnce(byte[] batch) {
+            // Read the flag before draining so nothing captured before stop() is left behind.
+            boolean last = finishing;
+            int available = ringBuffer.available();
+            long now = System.nanoTime();
+            if (available == 0 || (available < MIN_BATCH_BYTES && !last
+                    && now - lastWriteNanos < TimeUnit.MILLISECONDS.toNanos(MAX_HOLD_MILLIS))) {
+                if (last && available == 0) {
+                    drained.countDown();
+                }
+                return false;
+            }
+            int count = ringBuffer.read(batch, 0, batch.length);
+            Thread producer = blockedProducer;
+            if (producer != null) {
+                LockSupport.unpark(producer);
+            }
+            lastWriteNanos = now;
+            if (error != null) {
+                // The output is broken; keep draining so a blocked source can finish.
+                return true;
+            }
+            try {
+                sink.write(batch, 0, count);
+                metrics.onBatchWritten(count, System.nanoTime() - now);
+                bytesWritten.addAndGet(count);
+            } catch (IOException e) {
+                error = e;
+            } catch (RuntimeException e) {
+                // A failing sink must not kill a writer shared with the other sessions.
+                error = new IOException("Sink failed: " + e, e);
+            }
+            return true;
+        }
+
+        /**
+         * Stops the source, waits for the pool to write everything already captured and closes
+         * the sink. Does not release the source.
+         *
+         * @throws IOException the first write or close error; the sink is closed either way
+         */
+        public synchronized void stop() throws IOException {
+            if (stopped) {
+                return;
+            }
+            stopped = true;
+            capturing = false;
+            Thread producer = blockedProducer;
+            if (producer != null) {
+                LockSupport.unpark(producer);
+            }
+            source.stop();
+            finishing = true;
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    drained.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            sessions.remove(this);
+            IOException failure = error;
+            try {
+                sink.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        public CaptureSource getSource() {
+            return source;
+        }
+
+        /** The output file, or null if the session was started with a plain sink. */
+        public File getFile() {
+            return file;
+        }
+
+        public Backpressure getBackpressure() {
+            return backpressure;
+        }
+
+        public PcmRingBuffer getRingBuffer() {
+            return ringBuffer;
+        }
+
+        public AudioMetrics getMetrics() {
+            return metrics;
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ * What is known about every finished recording in a directory, so a library can be listed
+ * without opening each file. Changes are appended to {@value #FILE_NAME} as fixed-size,
+ * checksummed records; the newest record for a name wins and a tombstone removes it. The file
+ * is mapped and indexed in memory on first use.
+ *
+ * <p>Layout (little-endian): a {@value #HEADER_SIZE}-byte header with magic {@code "RCAT"},
+ * version and record size, then {@value #RECORD_SIZE}-byte records: kind, flags, name length,
+ * sample rate, channels, bits per sample, frames, file size, last-modified time, the four
+ * loudness values as floats, the UTF-8 name padded to {@value #MAX_NAME_BYTES} bytes and a CRC32.
+ *
+ * <p>A torn last record, from a crash while appending, is ignored and overwritten by the next
+ * append. Any other damage, or a missing catalog, rebuilds it by probing the directory's WAV
+ * and FLAC files in parallel. Once superseded records outnumber live ones the catalog is
+ * compacted. Rebuilds and compactions write a new file and rename it over the old one, so a
+ * crash leaves either the old or the new catalog, never a mix.
+ */
+public final class RecordingCatalog {
+
+    public static final String FILE_NAME = "recordings.catalog";
+    public static final int MAX_NAME_BYTES = 72;
+
+    private static final int MAGIC = 0x54414352; // "RCAT"
+    private static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 128;
+    private static final byte KIND_ENTRY = 1;
+    private static final byte KIND_REMOVED = 2;
+    private static final int FLAG_FLOAT = 1;
+    private static final int FLAG_LOUDNESS = 2;
+    // Compaction waits until it would reclaim at least this many records.
+    private static final int COMPACT_MIN_DEAD = 64;
+
+    private final File directory;
+    private final File file;
+    private final File tempFile;
+    // Null until first use; keyed by file name, least recently added or replaced first.
+    private Map<String, Entry> index;
+    private long validEnd;
+    private int deadRecords;
+    private boolean rebuilt;
+
+    public RecordingCatalog(File directory) {
+        this.directory = directory;
+        this.file = new File(directory, FILE_NAME);
+        this.tempFile = new File(directory, FILE_NAME + ".tmp");
+    }
+
+    /** Everything known about one recording file. */
+    public static final class Entry {
+        public final String name;
+        public final PcmFormat format;
+        public final long frames;
+        public final long sizeBytes;
+        public final long lastModifiedMillis;
+        /** Null for FLAC files and WAV files written without a loudness chunk. */
+        public final LoudnessMeter.Result loudness;
+
+        public Entry(String name, PcmFormat format, long frames, long sizeBytes, long lastModifiedMillis,
+                     LoudnessMeter.Result loudness) {
+            if (name.getBytes(StandardCharsets.UTF_8).length > MAX_NAME_BYTES) {
+                throw new IllegalArgumentException("Name longer than " + MAX_NAME_BYTES + " bytes: " + name);
+            }
+            this.name = name;
+            this.format = format;
+            this.frames = frames;
+            this.sizeBytes = sizeBytes;
+            this.lastModifiedMillis = lastModifiedMillis;
+            this.loudness = loudness;
+        }
+
+        /**
+         * Reads the format, length and loudness of a finished WAV or FLAC file.
+         *
+         * @return null for other files, unreadable files and recordings still being written
+         */
+        public static Entry probe(File recording) {
+            String name = recording.getName();
+            boolean wav = name.endsWith(".wav");
+            if ((!wav && !name.endsWith(".flac")) || name.getBytes(StandardCharsets.UTF_8).length > MAX_NAME_BYTES
+                    || !recording.isFile() || RecordingJournal.fileFor(recording).exists()) {
+                return null;
+            }
+            try {
+                if (wav) {
+                    try (WavReader reader = new WavReader(recording)) {
+                        ByteBuffer chunk = reader.readChunk(LoudnessMeter.Result.CHUNK_ID);
+                        return new Entry(name, reader.getFormat(), reader.getDurationFrames(), recording.length(),
+                                recording.lastModified(), chunk != null ? LoudnessMeter.Result.fromChunk(chunk) : null);
+                    }
+                }
+                try (FlacFileDecoder decoder = new FlacFileDecoder(recording)) {
+                    return new Entry(name, decoder.getFormat(), decoder.getDurationFrames(), recording.length(),
+                            recording.lastModified(), null);
+                }
+            } catch (IOException | RuntimeException e) {
+                return null;
+            }
+        }
+
+        public long getDurationMillis() {
+            return frames * 1000 / format.getSampleRate();
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + format + ", " + getDurationMillis() + " ms, " + sizeBytes + " bytes"
+                    + (loudness != null ? ", " + loudness : "") + ")";
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /** All entries, least recently added or replaced first. Loads the catalog if needed. */
+    public synchronized List<Entry> getEntries() throws IOException {
+        ensureLoaded();
+        return new ArrayList<>(index.values());
+    }
+
+    /** The entry for a file name, or null. */
+    public synchronized Entry get(String name) throws IOException {
+        ensureLoaded();
+        return index.get(name);
+    }
+
+    public synchronized int size() throws IOException {
+        ensureLoaded();
+        return index.size();
+    }
+
+    /** True once the catalog has been rebuilt from the directory, on request or because it was missing or damaged. */
+    public synchronized boolean wasRebuilt() {
+        return rebuilt;
+    }
+
+    /**
+     * Probes {@code recording} and records it, or removes its entry if it no longer holds a
+     * finished recording (for example because an empty take was deleted).
+     *
+     * @return the new entry, or null if it was removed
+     */
+    public Entry update(File recording) throws IOException {
+        Entry entry = Entry.probe(recording);
+        if (entry != null) {
+            add(entry);
+        } else {
+            remove(recording.getName());
+        }
+        return entry;
+    }
+
+    /** Adds or replaces one entry. */
+    public void add(Entry entry) throws IOException {
+        addAll(Collections.singletonList(entry));
+    }
+
+    /** Adds or replaces entries with a single append and one sync. */
+    public synchronized void addAll(Collection<Entry> entries) throws IOException {
+        ensureLoaded();
+        ByteBuffer records = ByteBuffer.allocate(entries.size() * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        for (Entry entry : entries) {
+            putRecord(records, KIND_ENTRY, entry.name, entry);
+        }
+        append(records);
+        for (Entry entry : entries) {
+            if (index.remove(entry.name) != null) {
+                deadRecords++;
+            }
+            index.put(entry.name, entry);
+        }
+        compactIfWorthwhile();
+    }
+
+    /** Removes the entry for a file name, if there is one. */
+    public synchronized void remove(String name) throws IOException {
+        ensureLoaded();
+        if (!index.containsKey(name)) {
+            return;
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        putRecord(record, KIND_REMOVED, name, null);
+        append(record);
+        index.remove(name);
+        // Both the old entry and the tombstone are now dead weight.
+        deadRecords += 2;
+        compactIfWorthwhile();
+    }
+
+    /** Rewrites the catalog from the files in the directory, probed in parallel. */
+    public synchronized void rebuild() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".wav") || name.endsWith(".flac"));
+        List<Entry> entries = files == null ? Collections.emptyList() : Arrays.stream(files)
+                .parallel()
+                .map(Entry::probe)
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparing(entry -> entry.name))
+                .collect(Collectors.toList());
+        writeCompacted(entries);
+        rebuilt = true;
+    }
+
+    /** Rewrites the catalog with only its live entries. */
+    public synchronized void compact() throws IOException {
+        ensureLoaded();
+        writeCompacted(new ArrayList<>(index.values()));
+    }
+
+    private void ensureLoaded() throws IOException {
+        if (index != null) {
+            return;
+        }
+        // Left by a rebuild or compaction that did not get as far as the rename.
+        if (tempFile.exists() && !tempFile.delete()) {
+            throw new IOException("Could not delete " + tempFile);
+        }
+        index = new LinkedHashMap<>();
+        if (!load()) {
+            rebuild();
+        }
+    }
+
+    /** Indexes the catalog file; false if it is missing or damaged and must be rebuilt. */
+    private boolean load() {
+        if (!file.isFile()) {
+            return false;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r"); FileChannel channel = in.getChannel()) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                return false;
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION || map.getInt(8) != RECORD_SIZE) {
+                return false;
+            }
+            long records = (size - HEADER_SIZE) / RECORD_SIZE;
+            byte[] record = new byte[RECORD_SIZE];
+            CRC32 crc = new CRC32();
+            int total = 0;
+            validEnd = HEADER_SIZE;
+            for (long i = 0; i < records; i++) {
+                map.position((int) (HEADER_SIZE + i * RECORD_SIZE));
+                map.get(record);
+                crc.reset();
+                crc.update(record, 0, RECORD_SIZE - 4);
+                ByteBuffer buffer = ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN);
+                if (buffer.getInt(RECORD_SIZE - 4) != (int) crc.getValue() || !applyRecord(buffer)) {
+                    if (i == records - 1) {
+                        // A torn append; the next one overwrites it.
+                        break;
+                    }
+                    index.clear();
+                    return false;
+                }
+                total++;
+                validEnd += RECORD_SIZE;
+            }
+            deadRecords = total - index.size();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            index.clear();
+            return false;
+        }
+    }
+
+    private boolean applyRecord(ByteBuffer record) {
+        byte kind = record.get(0);
+        int flags = record.get(1);
+        int nameLength = record.getShort(2);
+        if (nameLength <= 0 || nameLength > MAX_NAME_BYTES) {
+            return false;
+        }
+        String name = new String(record.array(), 52, nameLength, StandardCharsets.UTF_8);
+        if (kind == KIND_REMOVED) {
+            index.remove(name);
+            return true;
+        }
+        if (kind != KIND_ENTRY) {
+            return false;
+        }
+        int sampleRate = record.getInt(4);
+        int channels = record.getShort(8);
+        int bitsPerSample = record.getShort(10);
+        PcmFormat format = (flags & FLAG_FLOAT) != 0
+                ? PcmFormat.floatFormat(sampleRate, channels)
+                : new PcmFormat(sampleRate, channels, bitsPerSample);
+        long frames = record.getLong(12);
+        LoudnessMeter.Result loudness = (flags & FLAG_LOUDNESS) == 0 ? null : new LoudnessMeter.Result(
+                record.getFloat(36), record.getFloat(40), record.getFloat(44), record.getFloat(48), frames);
+        // A newer record for a name moves it to the end, as addAll does.
+        index.remove(name);
+        index.put(name, new Entry(name, format, frames, record.getLong(20), record.getLong(28), loudness));
+        return true;
+    }
+
+    private static void putRecord(ByteBuffer out, byte kind, String name, Entry entry) {
+        int start = out.position();
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int flags = entry == null ? 0 : (entry.format.isFloat() ? FLAG_FLOAT : 0)
+                | (entry.loudness != null ? FLAG_LOUDNESS : 0);
+        out.put(kind).put((byte) flags).putShort((short) nameBytes.length);
+        if (entry != null) {
+            out.putInt(entry.format.getSampleRate())
+                    .putShort((short) entry.format.getChannels())
+                    .putShort((short) entry.format.getBitsPerSample())
+                    .putLong(entry.frames)
+                    .putLong(entry.sizeBytes)
+                    .putLong(entry.lastModifiedMillis);
+            LoudnessMeter.Result loudness = entry.loudness;
+            out.putFloat(loudness != null ? (float) loudness.integratedLufs : 0f)
+                    .putFloat(loudness != null ? (float) loudness.maxMomentaryLufs : 0f)
+                    .putFloat(loudness != null ? (float) loudness.maxShortTermLufs : 0f)
+                    .putFloat(loudness != null ? (float) loudness.truePeakDb : 0f);
+        }
+        out.position(start + 52);
+        out.put(nameBytes);
+        out.position(start + RECORD_SIZE - 4);
+        CRC32 crc = new CRC32();
+        crc.update(out.array(), start, RECORD_SIZE - 4);
+        out.putInt((int) crc.getValue());
+    }
+
+    private static ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putInt(0);
+        header.flip();
+        return header;
+    }
+
+    /** Appends whole records after the last valid one and syncs them. */
+    private void append(ByteBuffer records) throws IOException {
+        records.flip();
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw"); FileChannel channel = out.getChannel()) {
+            if (channel.size() < HEADER_SIZE) {
+                channel.truncate(0);
+                writeFully(channel, header(), 0);
+                validEnd = HEADER_SIZE;
+            } else if (channel.size() > validEnd) {
+                channel.truncate(validEnd);
+            }
+            writeFully(channel, records, validEnd);
+            channel.force(false);
+        }
+        validEnd += records.limit();
+    }
+
+    private void compactIfWorthwhile() throws IOException {
+        if (deadRecords >= COMPACT_MIN_DEAD && deadRecords > index.size()) {
+            compact();
+        }
+    }
+
+    /** Writes {@code entries} to a new file and renames it over the catalog. */
+    private void writeCompacted(List<Entry> entries) throws IOException {
+        ByteBuffer records = ByteBuffer.allocate(entries.size() * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        for (Entry entry : entries) {
+            putRecord(records, KIND_ENTRY, entry.name, entry);
+        }
+        records.flip();
+        try (RandomAccessFile out = new RandomAccessFile(tempFile, "rw"); FileChannel channel = out.getChannel()) {
+            channel.truncate(0);
+            writeFully(channel, header(), 0);
+            writeFully(channel, records, HEADER_SIZE);
+            channel.force(true);
+        }
+        // rename(2) replaces the old catalog atomically, so readers see one version or the other.
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Could not replace " + file);
+        }
+        index = new LinkedHashMap<>();
+        for (Entry entry : entries) {
+            index.put(entry.name, entry);
+        }
+        validEnd = HEADER_SIZE + (long) entries.size() * RECORD_SIZE;
+        deadRecords = 0;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
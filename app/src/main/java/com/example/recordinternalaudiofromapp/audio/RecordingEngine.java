@@ -0,0 +1,660 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs one recording at a time from a {@link CaptureSource} to the output directory: builds the
+ * sink chain for the chosen {@link Mode}, drives the {@link RecordingSession}, finalizes the
+ * files when stopped and runs follow-up work (replay saves, clean-up copies, metrics dumps) on
+ * its own writer executor.
+ *
+ * <p>For a quick start, {@link #prepare} does the slow part ahead of time: it takes the source,
+ * allocates the replay buffer or preallocates the output file, and leaves the engine
+ * {@link State#PREPARED} until {@link #start(AudioMetrics)} or {@link #cancel()}.
+ *
+ * <p>The engine uses no Android types, so the whole recording path can be driven from JVM
+ * tests; the app runs it inside {@code CaptureService}. {@link #start} and {@link #stop} may be
+ * called from any thread. Listener calls are made while the engine's lock is held and must not
+ * block; post them elsewhere.
+ */
+public final class RecordingEngine {
+
+    public static final int RING_BUFFER_CAPACITY = 1 << 20;
+    public static final PolyphaseResampler.Quality RESAMPLER_QUALITY = PolyphaseResampler.Quality.BALANCED;
+    public static final int FLAC_LEVEL = FlacWriter.DEFAULT_LEVEL;
+    // In replay mode only the last REPLAY_SECONDS are kept in memory, until they are saved.
+    public static final int REPLAY_SECONDS = 30;
+    public static final String REPLAY_NAME = "replay";
+    // A single WAV is preallocated under this suffix while prepared and moved into place on start.
+    public static final String STANDBY_SUFFIX = ".standby";
+    // In segmented mode a new file starts every 10 minutes or 512 MB of PCM.
+    public static final long SEGMENT_MAX_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    public static final long SEGMENT_MAX_BYTES = 512L << 20;
+    // Clean-up writes <recording>_clean.wav: DC removed, peaks at -1 dBFS, 10 ms fades.
+    public static final String CLEAN_SUFFIX = "_clean";
+    public static final float CLEAN_PEAK_DB = -1f;
+    public static final int CLEAN_FADE_MILLIS = 10;
+    // Checkpoint at least every 4 MB or 5 seconds; at most a few seconds of audio is lost on a crash.
+    public static final SyncPolicy RECORDING_SYNC_POLICY = SyncPolicy.of(4L << 20, 5, TimeUnit.SECONDS);
+
+    public enum State { IDLE, PREPARED, RECORDING, STOPPING }
+
+    public enum Mode {
+        /** One WAV or FLAC file with a peak sidecar and, for WAV, its loudness. */
+        SINGLE_FILE,
+        /** A new file every {@link #SEGMENT_MAX_MILLIS}, listed in a manifest. */
+        SEGMENTED,
+        /** Nothing is written until {@link #saveReplay()}; only the last {@link #REPLAY_SECONDS} are kept. */
+        REPLAY
+    }
+
+    public interface Listener {
+        void onStateChanged(State state);
+
+        /**
+         * Reports the outcome of background work, such as a saved replay or a cleaned-up copy,
+         * in words fit for the user.
+         *
+         * @param error the failure, or null on success
+         */
+        void onNotice(String message, Throwable error);
+    }
+
+    /** Per-recording choices. Immutable; the {@code with} methods return modified copies. */
+    public static final class Options {
+        public static final int DEFAULT_SAMPLE_RATE = 48000;
+        public static final int DEFAULT_BIT_DEPTH = 16;
+
+        final String baseName;
+        final Mode mode;
+        final boolean flac;
+        final boolean skipSilence;
+        final boolean cleanUp;
+        final boolean dumpMetrics;
+        final int sampleRate;
+        final int bitDepth;
+
+        /** A single 48 kHz 16-bit WAV named {@code baseName}.wav, with metrics. */
+        public Options(String baseName) {
+            this(baseName, Mode.SINGLE_FILE, false, false, false, true, DEFAULT_SAMPLE_RATE, DEFAULT_BIT_DEPTH);
+        }
+
+        private Options(String baseName, Mode mode, boolean flac, boolean skipSilence, boolean cleanUp,
+                        boolean dumpMetrics, int sampleRate, int bitDepth) {
+            this.baseName = baseName;
+            this.mode = mode;
+            this.flac = flac;
+            this.skipSilence = skipSilence;
+            this.cleanUp = cleanUp;
+            this.dumpMetrics = dumpMetrics;
+            this.sampleRate = sampleRate;
+            this.bitDepth = bitDepth;
+        }
+
+        public Options withMode(Mode mode) {
+            return new Options(baseName, mode, flac, skipSilence, cleanUp, dumpMetrics, sampleRate, bitDepth);
+        }
+
+        /** Writes FLAC instead of WAV; FLAC files have no recovery journal and no loudness chunk. */
+        public Options withFlac(boolean flac) {
+            return new Options(baseName, mode, flac, skipSilence, cleanUp, dumpMetrics, sampleRate, bitDepth);
+        }
+
+        /** Leaves long silences out of the file, keeping the timeline in a {@code .segments} index. */
+        public Options withSkipSilence(boolean skipSilence) {
+            return new Options(baseName, mode, flac, skipSilence, cleanUp, dumpMetrics, sampleRate, bitDepth);
+        }
+
+        /** Writes a cleaned-up copy of a finished single WAV file. */
+        public Options withCleanUp(boolean cleanUp) {
+            return new Options(baseName, mode, flac, skipSilence, cleanUp, dumpMetrics, sampleRate, bitDepth);
+        }
+
+        /** Writes {@code <recording>.metrics} with capture jitter, write latency and drop counts. */
+        public Options withMetrics(boolean dumpMetrics) {
+            return new Options(baseName, mode, flac, skipSilence, cleanUp, dumpMetrics, sampleRate, bitDepth);
+        }
+
+        /** Every recording is converted to this rate and integer bit depth, whatever the source delivers. */
+        public Options withOutputFormat(int sampleRate, int bitDepth) {
+            return new Options(baseName, mode, flac, skipSilence, cleanUp, dumpMetrics, sampleRate, bitDepth);
+        }
+
+        public Mode getMode() {
+            return mode;
+        }
+
+        PcmFormat outputFormatFor(PcmFormat captureFormat) {
+            return captureFormat.withEncoding(bitDepth, false).withSampleRate(sampleRate);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Options)) return false;
+            Options other = (Options) o;
+            return baseName.equals(other.baseName) && mode == other.mode && flac == other.flac
+                    && skipSilence == other.skipSilence && cleanUp == other.cleanUp
+                    && dumpMetrics == other.dumpMetrics && sampleRate == other.sampleRate
+                    && bitDepth == other.bitDepth;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(baseName, mode, flac, skipSilence, cleanUp, dumpMetrics, sampleRate, bitDepth);
+        }
+    }
+
+    /** What a stopped recording produced. */
+    public static final class Report {
+        /** False if the output could not be finalized completely. */
+        public final boolean success;
+        public final Mode mode;
+        /** The recording, or the manifest in segmented mode; null in replay mode or if nothing was kept. */
+        public final File file;
+        public final long frames;
+        public final int segments;
+        /** Null unless a single WAV or FLAC file was metered. */
+        public final LoudnessMeter.Result loudness;
+        /** Null unless the source was an {@link AlignedCaptureSource}. */
+        public final TimelineAligner.Stats alignment;
+        public final AudioMetrics.Snapshot metrics;
+        /** Whether the recording was {@link RecordingEngine#prepare prepared} before it was asked to start. */
+        public final boolean warmStart;
+        /** Ring and writer counters and the delivered sample rate, for the log. */
+        public final String pipeline;
+
+        Report(boolean success, Mode mode, File file, long frames, int segments, LoudnessMeter.Result loudness,
+               TimelineAligner.Stats alignment, AudioMetrics.Snapshot metrics, boolean warmStart, String pipeline) {
+            this.success = success;
+            this.mode = mode;
+            this.file = file;
+            this.frames = frames;
+            this.segments = segments;
+            this.loudness = loudness;
+            this.alignment = alignment;
+            this.metrics = metrics;
+            this.warmStart = warmStart;
+            this.pipeline = pipeline;
+        }
+
+        /** From the start request to the first captured block, or -1 if nothing was captured. */
+        public long getTimeToFirstSampleMillis() {
+            return metrics.timeToFirstSampleNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(metrics.timeToFirstSampleNanos);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(String.format(Locale.US, "%s %s: %d frames",
+                    mode, success ? "finished" : "FAILED", frames));
+            if (file != null) {
+                text.append(" in ").append(file.getAbsolutePath());
+            }
+            if (mode == Mode.SEGMENTED) {
+                text.append(" (").append(segments).append(" segments)");
+            }
+            text.append(String.format(Locale.US, ". %s start, first sample after %d ms. ",
+                    warmStart ? "Warm" : "Cold", getTimeToFirstSampleMillis()));
+            text.append(pipeline);
+            if (alignment != null) {
+                text.append(" Alignment: ").append(alignment).append('.');
+            }
+            if (loudness != null) {
+                text.append(" Loudness: ").append(loudness).append('.');
+            }
+            return text.toString();
+        }
+    }
+
+    private final File outputDirectory;
+    private final Listener listener;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> new Thread(r, "RecordingIO"));
+    private final RecordingCatalog catalog;
+
+    // Written under the lock, read without it so the UI thread never waits on a stop in progress.
+    private volatile State state = State.IDLE;
+    private Options options;
+    private CaptureSource source;
+    private RecordingSession session;
+    private FileSink recordingWriter;
+    private SegmentedSink segmentedSink;
+    private ResamplingSink resamplingSink;
+    private SilenceGatingSink silenceGatingSink;
+    private File standbyFile;
+    private boolean warmStart;
+    private volatile LoudnessSink loudnessSink;
+    private volatile ReplayBuffer replayBuffer;
+
+    public RecordingEngine(File outputDirectory, Listener listener) {
+        this.outputDirectory = outputDirectory;
+        this.listener = listener;
+        this.catalog = new RecordingCatalog(outputDirectory);
+    }
+
+    /**
+     * Opens {@code baseName}.flac or {@code baseName}.wav in {@code directory}. FLAC files are
+     * smaller but have no recovery journal, so {@code syncPolicy} only applies to WAV.
+     */
+    public static FileSink openOutputFile(File directory, String baseName, PcmFormat format, boolean flac,
+                                          SyncPolicy syncPolicy) throws IOException {
+        if (flac) {
+            return new FlacWriter(new File(directory, baseName + ".flac"), format, FLAC_LEVEL);
+        }
+        return new WavWriter(new File(directory, baseName + ".wav"), format, syncPolicy);
+    }
+
+    public File getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /** The live meter of a single-file recording, or null. Its readings may be polled from any thread. */
+    public LoudnessMeter getLoudnessMeter() {
+        LoudnessSink sink = loudnessSink;
+        return sink != null ? sink.getMeter() : null;
+    }
+
+    public boolean isReplayAvailable() {
+        return replayBuffer != null;
+    }
+
+    /**
+     * The library of finished recordings in the output directory. Every file the engine finishes
+     * is recorded in it on the writer executor; load it off the main thread, as a missing catalog
+     * is rebuilt by probing every recording.
+     */
+    public RecordingCatalog getCatalog() {
+        return catalog;
+    }
+
+    /** Returns the preallocated file that {@link #prepare} keeps for a recording named {@code baseName}. */
+    public static File standbyFileFor(File directory, String baseName) {
+        return new File(directory, baseName + ".wav" + STANDBY_SUFFIX);
+    }
+
+    /**
+     * Finalizes recordings interrupted by a crash and removes standby files left behind. Call
+     * before the first {@link #prepare}, never while recording, or the running recording's
+     * journal would be taken for an orphan.
+     */
+    public synchronized List<RecordingRecovery.Result> recoverInterruptedRecordings() throws IOException {
+        if (state != State.IDLE) {
+            throw new IllegalStateException("Cannot recover while " + state);
+        }
+        File[] standby = outputDirectory.listFiles((dir, name) -> name.endsWith(STANDBY_SUFFIX));
+        if (standby != null) {
+            for (File file : standby) {
+                if (!file.delete()) {
+                    throw new IOException("Could not delete " + file);
+                }
+            }
+        }
+        List<RecordingRecovery.Result> results = RecordingRecovery.recoverAll(outputDirectory);
+        for (RecordingRecovery.Result result : results) {
+            catalog.update(result.recording);
+        }
+        return results;
+    }
+
+    /**
+     * Gets ready to record {@code source} without starting it: the replay buffer is allocated
+     * or, for a single WAV file, {@code expectedMillis} of output are preallocated (0 skips
+     * this). Existing recordings are not touched until {@link #start(AudioMetrics)}. The engine
+     * owns the source from here on and releases it when the recording stops or is cancelled, or
+     * right away if preparing fails.
+     *
+     * @throws IllegalStateException if the engine is not idle
+     */
+    public synchronized void prepare(CaptureSource source, Options options, long expectedMillis) throws IOException {
+        prepareSource(source, options, expectedMillis);
+        warmStart = true;
+    }
+
+    private void prepareSource(CaptureSource source, Options options, long expectedMillis) throws IOException {
+        if (state != State.IDLE) {
+            source.release();
+            throw new IllegalStateException("Cannot prepare while " + state);
+        }
+        this.source = source;
+        this.options = options;
+        try {
+            PcmFormat outputFormat = options.outputFormatFor(source.getFormat());
+            if (options.mode == Mode.REPLAY) {
+                replayBuffer = new ReplayBuffer(outputFormat, REPLAY_SECONDS);
+            } else if (options.mode == Mode.SINGLE_FILE && !options.flac && expectedMillis > 0) {
+                long expectedFrames = expectedMillis * outputFormat.getSampleRate() / 1000;
+                standbyFile = standbyFileFor(outputDirectory, options.baseName);
+                WavWriter.preallocate(standbyFile, expectedFrames * outputFormat.getFrameSize());
+            }
+        } catch (IOException | RuntimeException e) {
+            closeQuietly();
+            throw e;
+        }
+        setState(State.PREPARED);
+    }
+
+    /** Prepares and starts in one step; see {@link #prepare} for who owns {@code source}. */
+    public synchronized void start(CaptureSource source, Options options, AudioMetrics metrics) throws IOException {
+        prepareSource(source, options, 0);
+        warmStart = false;
+        start(metrics);
+    }
+
+    /**
+     * Starts the prepared recording: opens the remaining sinks and starts capture.
+     *
+     * @param metrics receives capture and write metrics; mark the moment the user asked to record
+     *                on it to measure the time to the first sample
+     * @throws IllegalStateException if the engine is not {@link State#PREPARED}
+     */
+    public synchronized void start(AudioMetrics metrics) throws IOException {
+        if (state != State.PREPARED) {
+            throw new IllegalStateException("Cannot start while " + state);
+        }
+        try {
+            PcmFormat captureFormat = source.getFormat();
+            PcmFormat outputFormat = options.outputFormatFor(captureFormat);
+            AudioSink fileSink = openSinks(outputFormat, options);
+            AudioSink sink;
+            if (captureFormat.getSampleRate() != outputFormat.getSampleRate()) {
+                resamplingSink = new ResamplingSink(captureFormat, outputFormat, RESAMPLER_QUALITY, fileSink);
+                sink = resamplingSink;
+            } else if (!captureFormat.equals(outputFormat)) {
+                sink = new ConvertingSink(captureFormat, outputFormat, fileSink);
+            } else {
+                sink = fileSink;
+            }
+            // The capture callback only copies into the ring buffer; the writer thread does the I/O.
+            session = new RecordingSession(source, sink, RING_BUFFER_CAPACITY, metrics);
+            session.start();
+        } catch (IOException | RuntimeException e) {
+            closeQuietly();
+            setState(State.IDLE);
+            throw e;
+        }
+        setState(State.RECORDING);
+    }
+
+    /**
+     * Releases a prepared recording that was never started, with its source and standby file.
+     *
+     * @return false if the engine was not prepared
+     */
+    public synchronized boolean cancel() {
+        if (state != State.PREPARED) {
+            return false;
+        }
+        closeQuietly();
+        setState(State.IDLE);
+        return true;
+    }
+
+    private AudioSink openSinks(PcmFormat format, Options options) throws IOException {
+        switch (options.mode) {
+            case REPLAY:
+                // Nothing touches the disk until the replay is saved; the buffer was allocated in prepare.
+                return replayBuffer;
+            case SEGMENTED: {
+                // Full segments are finalized on the writer executor while capture moves on to the next file.
+                File manifest = SegmentedSink.manifestFor(outputDirectory, options.baseName);
+                segmentedSink = new SegmentedSink(format,
+                        SegmentedSink.framesFor(format, SEGMENT_MAX_MILLIS, SEGMENT_MAX_BYTES),
+                        index -> openOutputFile(outputDirectory,
+                                String.format(Locale.US, "%s_%03d", options.baseName, index),
+                                format, options.flac, RECORDING_SYNC_POLICY),
+                        manifest, writer);
+                if (options.skipSilence) {
+                    silenceGatingSink = new SilenceGatingSink(format, SegmentIndex.fileFor(manifest), segmentedSink);
+                    return silenceGatingSink;
+                }
+                return segmentedSink;
+            }
+            default: {
+                // Samples stream straight into the file; its header is patched when recording stops.
+                if (options.flac) {
+                    recordingWriter = openOutputFile(outputDirectory, options.baseName, format, true,
+                            RECORDING_SYNC_POLICY);
+                } else {
+                    // Takes over the preallocated standby file, if prepare made one.
+                    recordingWriter = new WavWriter(new File(outputDirectory, options.baseName + ".wav"), format,
+                            RECORDING_SYNC_POLICY, standbyFile);
+                    standbyFile = null;
+                }
+                // The waveform peak sidecar is built from the final samples as they are written, and
+                // loudness is metered on the way in so a WAV can store it when it is finalized.
+                loudnessSink = new LoudnessSink(format, recordingWriter);
+                AudioSink sink = new PeakSink(format, PeakFile.fileFor(recordingWriter.getFile()), loudnessSink);
+                if (options.skipSilence) {
+                    // Long silent stretches are left out; the .segments index keeps the original timeline.
+                    silenceGatingSink = new SilenceGatingSink(format, SegmentIndex.fileFor(recordingWriter.getFile()),
+                            sink);
+                    return silenceGatingSink;
+                }
+                return sink;
+            }
+        }
+    }
+
+    /**
+     * Stops capture, drains the writer thread, finalizes the output and releases the source.
+     * Follow-up work requested in the options runs on the writer executor afterwards.
+     *
+     * @return what was recorded, or null if no recording was running
+     */
+    public synchronized Report stop() {
+        if (state != State.RECORDING) {
+            return null;
+        }
+        setState(State.STOPPING);
+        boolean success = true;
+        try {
+            session.stop();
+        } catch (IOException e) {
+            listener.onNotice("Could not finalize the recording.", e);
+            success = false;
+        }
+        Report report = report(success);
+        // Includes a single file deleted for being empty, so a stale entry for an earlier take goes too.
+        List<File> finished = recordingWriter != null ? Collections.singletonList(recordingWriter.getFile())
+                : segmentedSink != null ? segmentedSink.getSegmentFiles() : Collections.emptyList();
+        closeQuietly();
+        if (!finished.isEmpty()) {
+            writer.execute(() -> updateCatalog(finished));
+        }
+        if (report.success && report.file != null) {
+            if (options.dumpMetrics) {
+                File metricsFile = AudioMetrics.fileFor(report.file);
+                AudioMetrics.Snapshot metrics = report.metrics;
+                writer.execute(() -> {
+                    try {
+                        metrics.writeTo(metricsFile);
+                    } catch (IOException e) {
+                        listener.onNotice("Could not write session metrics.", e);
+                    }
+                });
+            }
+            if (options.cleanUp && options.mode == Mode.SINGLE_FILE && !options.flac) {
+                cleanUp(report.file);
+            }
+        }
+        setState(State.IDLE);
+        return report;
+    }
+
+    private Report report(boolean success) {
+        PcmWriterThread writerThread = session.getWriter();
+        PcmRingBuffer ringBuffer = session.getRingBuffer();
+        String pipeline = "Writer thread drained " + writerThread.getBytesWritten() + " bytes in "
+                + writerThread.getBatchesWritten() + " batches. Overruns: "
+                + ringBuffer.getOverrunCount() + " (" + ringBuffer.getDroppedBytes()
+                + " bytes), high-water mark: " + ringBuffer.getHighWaterMark()
+                + "/" + ringBuffer.capacity() + ". Delivered sample rate: "
+                + Math.round(source.getDeliveredSampleRate()) + " Hz of "
+                + source.getFormat().getSampleRate() + " Hz nominal.";
+        if (resamplingSink != null) {
+            PolyphaseResampler resampler = resamplingSink.getResampler();
+            pipeline += " Resampled " + resampler.getInputRate() + " Hz to " + resampler.getOutputRate()
+                    + " Hz with " + resampler.getTaps() + " taps: "
+                    + Math.round(resampler.getNanosPerAudioSecond() / 1000) + " us CPU per second of audio.";
+        }
+        if (silenceGatingSink != null) {
+            SegmentIndex index = silenceGatingSink.getIndex();
+            pipeline += " Silence gating skipped " + index.getSkippedFrames() + " of " + index.getOriginalFrames()
+                    + " frames in " + index.getGapCount() + " gaps.";
+        }
+        TimelineAligner.Stats alignment = source instanceof AlignedCaptureSource
+                ? ((AlignedCaptureSource) source).getAligner().getStats() : null;
+        AudioMetrics.Snapshot metrics = session.getMetrics().snapshot();
+
+        File file = null;
+        long frames = 0;
+        int segments = 0;
+        LoudnessMeter.Result loudness = null;
+        if (segmentedSink != null) {
+            file = segmentedSink.getManifest();
+            frames = segmentedSink.getTotalFrames();
+            segments = segmentedSink.getSegmentCount();
+        } else if (recordingWriter != null) {
+            file = recordingWriter.getFile();
+            frames = recordingWriter.getDataBytes() / recordingWriter.getFormat().getFrameSize();
+            loudness = loudnessSink.getResult();
+            if (success && recordingWriter.getDataBytes() == 0) {
+                // Nothing was captured; leave no empty file behind.
+                for (File empty : new File[]{file, PeakFile.fileFor(file), SegmentIndex.fileFor(file)}) {
+                    if (empty.exists() && !empty.delete()) {
+                        listener.onNotice("Could not delete " + empty.getName() + ".", null);
+                    }
+                }
+                file = null;
+            }
+        } else if (replayBuffer != null) {
+            frames = replayBuffer.getWrittenBytes() / replayBuffer.getFormat().getFrameSize();
+        }
+        return new Report(success, options.mode, file, frames, segments, loudness, alignment, metrics, warmStart,
+                pipeline);
+    }
+
+    /** Releases everything a recording held, without finalizing anything that was not stopped. */
+    private void closeQuietly() {
+        if (session == null) {
+            // The session was never created; only the files were opened.
+            try {
+                if (silenceGatingSink != null) {
+                    silenceGatingSink.close();
+                } else if (segmentedSink != null) {
+                    segmentedSink.close();
+                } else if (recordingWriter != null) {
+                    recordingWriter.close();
+                }
+            } catch (IOException e) {
+                listener.onNotice("Could not close the recording file.", e);
+            }
+        }
+        if (standbyFile != null && standbyFile.exists() && !standbyFile.delete()) {
+            listener.onNotice("Could not delete " + standbyFile.getName() + ".", null);
+        }
+        try {
+            source.release();
+        } catch (RuntimeException e) {
+            listener.onNotice("Could not release the capture source.", e);
+        }
+        source = null;
+        standbyFile = null;
+        session = null;
+        recordingWriter = null;
+        segmentedSink = null;
+        resamplingSink = null;
+        silenceGatingSink = null;
+        loudnessSink = null;
+        replayBuffer = null;
+    }
+
+    private void setState(State state) {
+        this.state = state;
+        listener.onStateChanged(state);
+    }
+
+    /**
+     * Writes the replay buffer's last {@link #REPLAY_SECONDS} to a new WAV on the writer
+     * executor. Capture keeps filling the buffer while the copy runs.
+     */
+    public void saveReplay() {
+        ReplayBuffer buffer = replayBuffer;
+        if (buffer == null) {
+            listener.onNotice("Replay buffer is not running.", null);
+            return;
+        }
+        File file = new File(outputDirectory, REPLAY_NAME + "_" + System.currentTimeMillis() + ".wav");
+        writer.execute(() -> {
+            try {
+                ReplayBuffer.SaveResult result = buffer.saveTo(file);
+                updateCatalog(Collections.singletonList(file));
+                listener.onNotice("Saved last " + Math.round((double) result.frames / buffer.getFormat().getSampleRate())
+                        + " s to " + file.getName() + ".", null);
+            } catch (IOException e) {
+                listener.onNotice("Could not save replay.", e);
+            }
+        });
+    }
+
+    /**
+     * Writes a cleaned-up copy of a finished WAV recording on the writer executor. The effects
+     * run in parallel on the common fork/join pool; the original and its sidecars are left as
+     * they are.
+     */
+    private void cleanUp(File recordedFile) {
+        String name = recordedFile.getName();
+        File cleanFile = new File(recordedFile.getParentFile(),
+                name.substring(0, name.lastIndexOf('.')) + CLEAN_SUFFIX + ".wav");
+        long fadeFrames = (long) options.sampleRate * CLEAN_FADE_MILLIS / 1000;
+        writer.execute(() -> {
+            try {
+                EffectsChain chain = new EffectsChain(AudioEffects.removeDcOffset(),
+                        AudioEffects.normalize(CLEAN_PEAK_DB), AudioEffects.fadeIn(fadeFrames),
+                        AudioEffects.fadeOut(fadeFrames));
+                OfflineRenderer.Result result = chain.apply(recordedFile, cleanFile);
+                updateCatalog(Collections.singletonList(cleanFile));
+                listener.onNotice("Cleaned-up copy saved to " + cleanFile.getName() + " (" + result + ").", null);
+            } catch (IOException e) {
+                listener.onNotice("Could not clean up recording.", e);
+            }
+        });
+    }
+
+    /** Records finished files in the catalog. Runs on the writer executor. */
+    private void updateCatalog(List<File> files) {
+        try {
+            for (File file : files) {
+                catalog.update(file);
+            }
+        } catch (IOException e) {
+            listener.onNotice("Could not update the recording catalog.", e);
+        }
+    }
+
+    /**
+     * Stops any running recording, cancels a prepared one and shuts the writer executor down
+     * after the work already queued on it.
+     */
+    public synchronized void release() {
+        stop();
+        cancel();
+        writer.shutdown();
+    }
+
+    /** Waits for queued background work after {@link #release()}; for tests. */
+    boolean awaitReleased(long timeout, TimeUnit unit) throws InterruptedException {
+        return writer.awaitTermination(timeout, unit);
+    }
+}
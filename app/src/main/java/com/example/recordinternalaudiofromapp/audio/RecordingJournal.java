@@ -0,0 +1,175 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Small sidecar file that lives next to a recording while it is open. Each checkpoint overwrites
+ * one fixed-size, checksummed record holding the format, the header size and how many audio bytes
+ * are known to be on storage, and whether the file was preallocated. A journal that survives a
+ * restart marks an interrupted recording; see {@link RecordingRecovery}.
+ */
+public final class RecordingJournal implements Closeable {
+
+    public static final String SUFFIX = ".journal";
+
+    private static final int MAGIC = 0x4C4E4A52; // "RJNL"
+    private static final int VERSION = 1;
+    static final int RECORD_SIZE = 48;
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32 crc = new CRC32();
+    private final PcmFormat format;
+    private final int headerSize;
+    private final boolean preallocated;
+
+    private RecordingJournal(File file, PcmFormat format, int headerSize, boolean preallocated) throws IOException {
+        this.file = file;
+        this.format = format;
+        this.headerSize = headerSize;
+        this.preallocated = preallocated;
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        this.channel = randomAccessFile.getChannel();
+    }
+
+    /** Returns the journal file that belongs to a recording. */
+    public static File fileFor(File recording) {
+        return new File(recording.getParentFile(), recording.getName() + SUFFIX);
+    }
+
+    /** Returns the recording a journal file belongs to. */
+    public static File recordingFor(File journal) {
+        String name = journal.getName();
+        return new File(journal.getParentFile(), name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    /** Creates (or replaces) the journal for a recording and writes an initial empty checkpoint. */
+    public static RecordingJournal create(File recording, PcmFormat format, int headerSize) throws IOException {
+        return create(recording, format, headerSize, false);
+    }
+
+    /**
+     * Like {@link #create(File, PcmFormat, int)} for a recording written into preallocated space,
+     * whose length on disk says nothing about how much audio it holds.
+     */
+    public static RecordingJournal create(File recording, PcmFormat format, int headerSize, boolean preallocated)
+            throws IOException {
+        RecordingJournal journal = new RecordingJournal(fileFor(recording), format, headerSize, preallocated);
+        try {
+            journal.channel.truncate(0);
+            journal.checkpoint(0);
+        } catch (IOException e) {
+            journal.randomAccessFile.close();
+            throw e;
+        }
+        return journal;
+    }
+
+    /**
+     * Records that {@code committedBytes} of audio are durable. Call only after the recording
+     * itself has been forced to storage.
+     */
+    public void checkpoint(long committedBytes) throws IOException {
+        record.clear();
+        record.putInt(MAGIC);
+        record.putInt(VERSION);
+        record.putInt(format.getSampleRate());
+        record.putShort((short) format.getChannels());
+        record.putShort((short) format.getBitsPerSample());
+        record.putInt(headerSize);
+        record.putLong(committedBytes);
+        record.putLong(System.currentTimeMillis());
+        record.put((byte) (format.isFloat() ? 1 : 0));
+        record.put((byte) (preallocated ? 1 : 0));
+        while (record.position() < RECORD_SIZE - 4) {
+            record.put((byte) 0);
+        }
+        crc.reset();
+        crc.update(record.array(), 0, RECORD_SIZE - 4);
+        record.putInt((int) crc.getValue());
+        record.flip();
+        while (record.hasRemaining()) {
+            channel.write(record, record.position());
+        }
+        channel.force(false);
+    }
+
+    /** Closes and removes the journal once the recording has been finalized. */
+    public void delete() throws IOException {
+        close();
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not delete journal " + file);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        randomAccessFile.close();
+    }
+
+    /**
+     * Parses a journal file.
+     *
+     * @return the last checkpoint, or null if the record is missing, torn or from another version
+     */
+    public static Checkpoint read(File journal) throws IOException {
+        byte[] bytes = new byte[RECORD_SIZE];
+        try (RandomAccessFile in = new RandomAccessFile(journal, "r")) {
+            if (in.length() < RECORD_SIZE) {
+                return null;
+            }
+            in.readFully(bytes);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        CRC32 check = new CRC32();
+        check.update(bytes, 0, RECORD_SIZE - 4);
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                || buffer.getInt(RECORD_SIZE - 4) != (int) check.getValue()) {
+            return null;
+        }
+        buffer.position(8);
+        int sampleRate = buffer.getInt();
+        int channels = buffer.getShort();
+        int bitsPerSample = buffer.getShort();
+        int headerSize = buffer.getInt();
+        long committedBytes = buffer.getLong();
+        long lastSyncMillis = buffer.getLong();
+        boolean floatSamples = buffer.get() != 0;
+        boolean preallocated = buffer.get() != 0;
+        try {
+            PcmFormat format = floatSamples
+                    ? PcmFormat.floatFormat(sampleRate, channels)
+                    : new PcmFormat(sampleRate, channels, bitsPerSample);
+            return new Checkpoint(format, headerSize, committedBytes, lastSyncMillis, preallocated);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /** Contents of one journal record. */
+    public static final class Checkpoint {
+        public final PcmFormat format;
+        public final int headerSize;
+        public final long committedBytes;
+        public final long lastSyncMillis;
+        /** The file was filled to its expected length up front; only committed bytes are audio. */
+        public final boolean preallocated;
+
+        Checkpoint(PcmFormat format, int headerSize, long committedBytes, long lastSyncMillis, boolean preallocated) {
+            this.format = format;
+            this.headerSize = headerSize;
+            this.committedBytes = committedBytes;
+            this.lastSyncMillis = lastSyncMillis;
+            this.preallocated = preallocated;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Repairs recordings that were left open by a crash or a killed process.
+ *
+ * <p>Every recording with a leftover {@link RecordingJournal} gets its header rewritten in place
+ * for the whole frames present on disk; the audio data itself is never read or copied, so
+ * recovery takes the same time for a few seconds of audio as for hundreds of megabytes.
+ */
+public final class RecordingRecovery {
+
+    private RecordingRecovery() {
+    }
+
+    /** Outcome of repairing a single recording. */
+    public static final class Result {
+        public final File recording;
+        public final long recoveredBytes;
+        public final long committedBytes;
+
+        Result(File recording, long recoveredBytes, long committedBytes) {
+            this.recording = recording;
+            this.recoveredBytes = recoveredBytes;
+            this.committedBytes = committedBytes;
+        }
+    }
+
+    /**
+     * Repairs every interrupted recording in {@code directory}.
+     *
+     * @return one result per repaired recording; journals without a recording are just removed
+     */
+    public static List<Result> recoverAll(File directory) throws IOException {
+        List<Result> results = new ArrayList<>();
+        File[] journals = directory.listFiles((dir, name) -> name.endsWith(RecordingJournal.SUFFIX));
+        if (journals == null) {
+            return results;
+        }
+        for (File journal : journals) {
+            Result result = recover(journal);
+            if (result != null) {
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    /** Repairs the recording that belongs to {@code journal} and deletes the journal. */
+    public static Result recover(File journal) throws IOException {
+        File recording = RecordingJournal.recordingFor(journal);
+        RecordingJournal.Checkpoint checkpoint = RecordingJournal.read(journal);
+        Result result = null;
+        // Only the layout written by WavWriter can be patched in place.
+        if (checkpoint != null && checkpoint.headerSize == WavHeader.SIZE && recording.isFile()) {
+            result = repair(recording, checkpoint);
+        }
+        if (!journal.delete()) {
+            throw new IOException("Could not delete journal " + journal);
+        }
+        return result;
+    }
+
+    private static Result repair(File recording, RecordingJournal.Checkpoint checkpoint) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(recording, "rw")) {
+            FileChannel channel = file.getChannel();
+            // Bytes past the last checkpoint are usually intact after a process crash, so keep
+            // every whole frame the file holds; only a torn trailing frame is dropped. A
+            // preallocated file is full of zeros past the audio, so only checkpoints count there.
+            long available = checkpoint.preallocated ? checkpoint.committedBytes
+                    : Math.max(0, channel.size() - checkpoint.headerSize);
+            int frameSize = checkpoint.format.getFrameSize();
+            long dataBytes = available - available % frameSize;
+            WavWriter.finalizeHeader(channel, checkpoint.format, dataBytes);
+            channel.force(true);
+            return new Result(recording, dataBytes, checkpoint.committedBytes);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.io.IOException;
+
+/**
+ * Wires a {@link CaptureSource} to an {@link AudioSink}: the source's callback copies each block
+ * into a {@link PcmRingBuffer} and a {@link PcmWriterThread} drains it into the sink. Both sides
+ * record into the session's {@link AudioMetrics}.
+ */
+public final class RecordingSession {
+
+    public static final int DEFAULT_RING_CAPACITY = 1 << 20;
+
+    private final CaptureSource source;
+    private final AudioSink sink;
+    private final PcmRingBuffer ringBuffer;
+    private final PcmWriterThread writer;
+    private final AudioMetrics metrics;
+    private volatile boolean capturing;
+    private boolean stopped;
+
+    public RecordingSession(CaptureSource source, AudioSink sink) {
+        this(source, sink, DEFAULT_RING_CAPACITY);
+    }
+
+    public RecordingSession(CaptureSource source, AudioSink sink, int ringCapacity) {
+        this(source, sink, ringCapacity, new AudioMetrics());
+    }
+
+    /**
+     * @param metrics receives capture and write metrics; call {@link AudioMetrics#markRequested()}
+     *                on it when the user asks to record to measure time to the first sample
+     */
+    public RecordingSession(CaptureSource source, AudioSink sink, int ringCapacity, AudioMetrics metrics) {
+        this.source = source;
+        this.sink = sink;
+        this.metrics = metrics;
+        this.ringBuffer = new PcmRingBuffer(ringCapacity);
+        this.writer = new PcmWriterThread(ringBuffer, sink, PcmWriterThread.DEFAULT_BATCH_SIZE, metrics);
+    }
+
+    public void start() {
+        metrics.markRequestedIfUnset();
+        writer.start();
+        capturing = true;
+        source.start(this::onCaptured);
+    }
+
+    private void onCaptured(byte[] data, int offset, int length) {
+        if (capturing) {
+            boolean accepted = ringBuffer.write(data, offset, length);
+            metrics.onCaptured(length, ringBuffer.available(), accepted);
+        }
+    }
+
+    /**
+     * Stops the source, drains everything already captured into the sink and closes the sink.
+     * Does not release the source.
+     *
+     * @throws IOException the first write or close error; the sink is closed either way
+     */
+    public void stop() throws IOException {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+        capturing = false;
+        source.stop();
+        IOException failure = null;
+        try {
+            writer.finish();
+        } catch (IOException e) {
+            failure = e;
+        }
+        try {
+            sink.close();
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    public CaptureSource getSource() {
+        return source;
+    }
+
+    public PcmRingBuffer getRingBuffer() {
+        return ringBuffer;
+    }
+
+    public PcmWriterThread getWriter() {
+        return writer;
+    }
+
+    public AudioMetrics getMetrics() {
+        return metrics;
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Keeps the most recent audio in a fixed circular array instead of writing it to disk, so the
+ * moments before the user asks for them can be saved after the fact.
+ *
+ * <p>Memory is allocated once: {@link #bytesFor} of the format, the replay length and the save
+ * headroom. {@link #write} is called by one producer (the session's writer thread) and never
+ * blocks. {@link #saveTo} may run concurrently on another thread: it captures the end of the
+ * stream and copies the replay window out chunk by chunk while new audio keeps arriving in the
+ * headroom. Should a save fall so far behind that the producer laps it, the overwritten audio
+ * is skipped rather than written torn.
+ */
+public final class ReplayBuffer implements AudioSink {
+
+    public static final int DEFAULT_HEADROOM_SECONDS = 2;
+
+    private static final int SAVE_CHUNK_BYTES = 64 * 1024;
+
+    private final PcmFormat format;
+    private final byte[] buffer;
+    private final long windowBytes;
+    // A seqlock in two counters: reservedBytes moves ahead before a write copies, writtenBytes
+    // after. Audio below reservedBytes - capacity may be overwritten at any moment.
+    private volatile long reservedBytes;
+    private volatile long writtenBytes;
+
+    /** Result of one {@link #saveTo} call. */
+    public static final class SaveResult {
+        public final File file;
+        public final long frames;
+        /** Frames skipped because they were overwritten before they could be saved. */
+        public final long lostFrames;
+        public final long elapsedNanos;
+
+        SaveResult(File file, long frames, long lostFrames, long elapsedNanos) {
+            this.file = file;
+            this.frames = frames;
+            this.lostFrames = lostFrames;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d frames to %s in %d ms (%d frames lost)",
+                    frames, file.getName(), elapsedNanos / 1_000_000, lostFrames);
+        }
+    }
+
+    public ReplayBuffer(PcmFormat format, int seconds) {
+        this(format, seconds, DEFAULT_HEADROOM_SECONDS);
+    }
+
+    /**
+     * @param seconds         how much audio a save covers
+     * @param headroomSeconds how much audio can arrive during a save before its start is lost
+     */
+    public ReplayBuffer(PcmFormat format, int seconds, int headroomSeconds) {
+        if (seconds <= 0 || headroomSeconds < 0) {
+            throw new IllegalArgumentException("Invalid replay length " + seconds + " s + " + headroomSeconds + " s");
+        }
+        long capacity = bytesFor(format, seconds, headroomSeconds);
+        if (capacity > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Replay buffer of " + capacity + " bytes is too large");
+        }
+        this.format = format;
+        this.windowBytes = (long) seconds * format.getSampleRate() * format.getFrameSize();
+        this.buffer = new byte[(int) capacity];
+    }
+
+    /** Heap memory a buffer with these parameters allocates. */
+    public static long bytesFor(PcmFormat format, int seconds, int headroomSeconds) {
+        return (long) (seconds + headroomSeconds) * format.getSampleRate() * format.getFrameSize();
+    }
+
+    public PcmFormat getFormat() {
+        return format;
+    }
+
+    public int getCapacityBytes() {
+        return buffer.length;
+    }
+
+    public long getWindowFrames() {
+        return windowBytes / format.getFrameSize();
+    }
+
+    /** Frames currently available to save, at most {@link #getWindowFrames()}. */
+    public long getBufferedFrames() {
+        return Math.min(writtenBytes, windowBytes) / format.getFrameSize();
+    }
+
+    public long getWrittenBytes() {
+        return writtenBytes;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) {
+        long written = writtenBytes;
+        // Announced before the copy, so a save checking afterwards sees what this write may have torn.
+        reservedBytes = written + length;
+        int position = (int) (written % buffer.length);
+        while (length > 0) {
+            int chunk = Math.min(length, buffer.length - position);
+            System.arraycopy(data, offset, buffer, position, chunk);
+            offset += chunk;
+            length -= chunk;
+            position = 0;
+            written += chunk;
+        }
+        // Publishing after the copy makes the bytes visible to a concurrent save.
+        writtenBytes = written;
+    }
+
+    /**
+     * Writes the last {@link #getWindowFrames()} frames (or fewer, if less was captured) to a
+     * WAV file. Safe to call from any thread while audio is still being written, but not
+     * concurrently with another save.
+     */
+    public SaveResult saveTo(File file) throws IOException {
+        long start = System.nanoTime();
+        int frameSize = format.getFrameSize();
+        long end = writtenBytes;
+        end -= end % frameSize;
+        long from = Math.max(0, end - windowBytes);
+        long lostBytes = 0;
+        byte[] chunk = new byte[SAVE_CHUNK_BYTES - SAVE_CHUNK_BYTES % frameSize];
+        try (WavWriter writer = new WavWriter(file, format, SyncPolicy.NONE)) {
+            long position = from;
+            while (position < end) {
+                int length = (int) Math.min(chunk.length, end - position);
+                copyOut(position, chunk, length);
+                // Checked against the reservation, not writtenBytes, to catch a write still in progress.
+                long oldest = reservedBytes - buffer.length;
+                if (oldest > position) {
+                    // Overwritten while (or before) it was copied; skip to data that is still intact.
+                    // A chunk of margin keeps the next copy ahead of the producer.
+                    long resume = oldest + chunk.length;
+                    resume = Math.min(end, resume + (frameSize - resume % frameSize) % frameSize);
+                    lostBytes += resume - position;
+                    position = resume;
+                    continue;
+                }
+                writer.write(chunk, 0, length);
+                position += length;
+            }
+        }
+        return new SaveResult(file, (end - from - lostBytes) / frameSize, lostBytes / frameSize,
+                System.nanoTime() - start);
+    }
+
+    private void copyOut(long position, byte[] dst, int length) {
+        int at = (int) (position % buffer.length);
+        int first = Math.min(length, buffer.length - at);
+        System.arraycopy(buffer, at, dst, 0, first);
+        System.arraycopy(buffer, 0, dst, first, length - first);
+    }
+
+    /** Nothing to finalize; the buffered audio stays available to {@link #saveTo}. */
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.io.IOException;
+
+/**
+ * Resamples blocks to another sample rate, and optionally another encoding and channel layout,
+ * on the way into a downstream sink. Like {@link ConvertingSink}, writes need not be
+ * frame-aligned and nothing is allocated after construction. Closing flushes the resampler tail
+ * before closing the downstream sink.
+ */
+public final class ResamplingSink implements AudioSink {
+
+    private final PcmFormat input;
+    private final PolyphaseResampler resampler;
+    private final SampleConverter encoder;
+    private final AudioSink downstream;
+    private final int inputFrameSize;
+    private final int outputFrameSize;
+    private final int blockFrames;
+    private final float[] decoded;
+    private final float[] resampled;
+    private final byte[] converted;
+    private final byte[] carry;
+    private int carryLength;
+
+    public ResamplingSink(PcmFormat input, PcmFormat output, PolyphaseResampler.Quality quality, AudioSink downstream) {
+        this(input, output, quality, ConvertingSink.DEFAULT_BLOCK_FRAMES, downstream);
+    }
+
+    public ResamplingSink(PcmFormat input, PcmFormat output, PolyphaseResampler.Quality quality,
+                          int blockFrames, AudioSink downstream) {
+        this.input = input;
+        this.downstream = downstream;
+        this.blockFrames = blockFrames;
+        this.resampler = new PolyphaseResampler(input.getSampleRate(), output.getSampleRate(),
+                input.getChannels(), quality, blockFrames);
+        int maxOutputFrames = resampler.maxOutputFrames(blockFrames);
+        this.encoder = new SampleConverter(PcmFormat.floatFormat(output.getSampleRate(), input.getChannels()),
+                output, maxOutputFrames, SampleConverter.isNarrowing(input, output));
+        this.inputFrameSize = input.getFrameSize();
+        this.outputFrameSize = output.getFrameSize();
+        this.decoded = new float[blockFrames * input.getChannels()];
+        this.resampled = new float[maxOutputFrames * input.getChannels()];
+        this.converted = new byte[maxOutputFrames * outputFrameSize];
+        this.carry = new byte[inputFrameSize];
+    }
+
+    public PcmFormat getOutputFormat() {
+        return encoder.getOutputFormat();
+    }
+
+    public PolyphaseResampler getResampler() {
+        return resampler;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        if (carryLength > 0) {
+            int needed = Math.min(inputFrameSize - carryLength, length);
+            System.arraycopy(data, offset, carry, carryLength, needed);
+            carryLength += needed;
+            offset += needed;
+            length -= needed;
+            if (carryLength < inputFrameSize) {
+                return;
+            }
+            resampleFrames(carry, 0, 1);
+            carryLength = 0;
+        }
+        int frames = length / inputFrameSize;
+        while (frames > 0) {
+            int chunk = Math.min(frames, blockFrames);
+            resampleFrames(data, offset, chunk);
+            offset += chunk * inputFrameSize;
+            length -= chunk * inputFrameSize;
+            frames -= chunk;
+        }
+        if (length > 0) {
+            System.arraycopy(data, offset, carry, 0, length);
+            carryLength = length;
+        }
+    }
+
+    private void resampleFrames(byte[] src, int offset, int frames) throws IOException {
+        SampleConverter.decode(input, src, offset, decoded, frames * input.getChannels());
+        emit(resampler.process(decoded, 0, frames, resampled));
+    }
+
+    private void emit(int frames) throws IOException {
+        if (frames > 0) {
+            encoder.convert(resampled, converted, 0, frames);
+            downstream.write(converted, 0, frames * outputFrameSize);
+        }
+    }
+
+    /** Writes the resampler tail and closes the downstream sink; a dangling partial frame is dropped. */
+    @Override
+    public void close() throws IOException {
+        try {
+            emit(resampler.flush(resampled));
+        } finally {
+            downstream.close();
+        }
+    }
+}
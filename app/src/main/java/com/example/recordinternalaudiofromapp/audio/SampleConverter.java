@@ -0,0 +1,233 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+/**
+ * Converts interleaved PCM between sample encodings (8-bit unsigned, 16/24/32-bit signed,
+ * 32-bit float) and channel layouts at a fixed sample rate.
+ *
+ * <p>All work happens in arrays allocated up front, one block of at most {@code maxFrames}
+ * frames at a time. Each stage is a flat loop over primitive arrays so the JIT can unroll and
+ * vectorize it. Narrowing to a lower integer resolution adds TPDF dither unless disabled.
+ */
+public final class SampleConverter {
+
+    private final PcmFormat input;
+    private final PcmFormat output;
+    private final int maxFrames;
+    private final boolean dither;
+    private final float[] decoded;
+    private final float[] mixed;
+    private int ditherState = 0x2545F491;
+
+    public SampleConverter(PcmFormat input, PcmFormat output, int maxFrames) {
+        this(input, output, maxFrames, isNarrowing(input, output));
+    }
+
+    public SampleConverter(PcmFormat input, PcmFormat output, int maxFrames, boolean dither) {
+        if (input.getSampleRate() != output.getSampleRate()) {
+            throw new IllegalArgumentException("Sample rate conversion is not supported: " + input + " -> " + output);
+        }
+        this.input = input;
+        this.output = output;
+        this.maxFrames = maxFrames;
+        this.dither = dither && !output.isFloat();
+        this.decoded = new float[maxFrames * input.getChannels()];
+        this.mixed = input.getChannels() == output.getChannels() ? decoded : new float[maxFrames * output.getChannels()];
+    }
+
+    /** True if {@code output} has fewer integer bits of resolution than {@code input}. */
+    public static boolean isNarrowing(PcmFormat input, PcmFormat output) {
+        int inputBits = input.isFloat() ? 25 : input.getBitsPerSample();
+        return !output.isFloat() && output.getBitsPerSample() < inputBits;
+    }
+
+    public PcmFormat getInputFormat() {
+        return input;
+    }
+
+    public PcmFormat getOutputFormat() {
+        return output;
+    }
+
+    public int getMaxFrames() {
+        return maxFrames;
+    }
+
+    /**
+     * Converts {@code frames} frames (at most {@link #getMaxFrames()}) from {@code src} into
+     * {@code dst}, which must hold {@code frames * output frame size} bytes from {@code dstOffset}.
+     */
+    public void convert(byte[] src, int srcOffset, byte[] dst, int dstOffset, int frames) {
+        if (frames > maxFrames) {
+            throw new IllegalArgumentException("Block of " + frames + " frames exceeds " + maxFrames);
+        }
+        decode(input, src, srcOffset, decoded, frames * input.getChannels());
+        mixChannels(decoded, input.getChannels(), mixed, output.getChannels(), frames);
+        encode(mixed, dst, dstOffset, frames * output.getChannels());
+    }
+
+    /**
+     * Like {@link #convert(byte[], int, byte[], int, int)} for samples that are already decoded:
+     * {@code src} holds {@code frames} frames of floats in the input channel layout.
+     */
+    public void convert(float[] src, byte[] dst, int dstOffset, int frames) {
+        if (frames > maxFrames) {
+            throw new IllegalArgumentException("Block of " + frames + " frames exceeds " + maxFrames);
+        }
+        if (mixed == decoded) {
+            // encode() scales in place, so never hand it the caller's array.
+            System.arraycopy(src, 0, mixed, 0, frames * output.getChannels());
+        } else {
+            mixChannels(src, input.getChannels(), mixed, output.getChannels(), frames);
+        }
+        encode(mixed, dst, dstOffset, frames * output.getChannels());
+    }
+
+    /** Decodes {@code samples} samples of {@code format} into floats in [-1, 1). */
+    public static void decode(PcmFormat format, byte[] src, int offset, float[] dst, int samples) {
+        if (format.isFloat()) {
+            for (int i = 0, j = offset; i < samples; i++, j += 4) {
+                dst[i] = Float.intBitsToFloat((src[j] & 0xFF) | (src[j + 1] & 0xFF) << 8
+                        | (src[j + 2] & 0xFF) << 16 | src[j + 3] << 24);
+            }
+            return;
+        }
+        switch (format.getBitsPerSample()) {
+            case 8:
+                for (int i = 0; i < samples; i++) {
+                    dst[i] = ((src[offset + i] & 0xFF) - 128) * (1f / 128);
+                }
+                break;
+            case 16:
+                for (int i = 0, j = offset; i < samples; i++, j += 2) {
+                    dst[i] = ((src[j] & 0xFF) | src[j + 1] << 8) * (1f / 32768);
+                }
+                break;
+            case 24:
+                for (int i = 0, j = offset; i < samples; i++, j += 3) {
+                    dst[i] = ((src[j] & 0xFF) | (src[j + 1] & 0xFF) << 8 | src[j + 2] << 16) * (1f / 8388608);
+                }
+                break;
+            default:
+                for (int i = 0, j = offset; i < samples; i++, j += 4) {
+                    dst[i] = ((src[j] & 0xFF) | (src[j + 1] & 0xFF) << 8
+                            | (src[j + 2] & 0xFF) << 16 | src[j + 3] << 24) * (1f / 2147483648f);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Up-mixes by repeating input channels and down-mixes by averaging every input channel onto
+     * output channel {@code inputChannel % outputChannels}; mono to stereo duplicates and stereo
+     * to mono averages.
+     */
+    static void mixChannels(float[] src, int inChannels, float[] dst, int outChannels, int frames) {
+        if (src == dst) {
+            return;
+        }
+        if (inChannels == 1) {
+            for (int f = 0; f < frames; f++) {
+                float value = src[f];
+                for (int c = 0; c < outChannels; c++) {
+                    dst[f * outChannels + c] = value;
+                }
+            }
+        } else if (outChannels == 1) {
+            float scale = 1f / inChannels;
+            for (int f = 0; f < frames; f++) {
+                float sum = 0;
+                for (int c = 0; c < inChannels; c++) {
+                    sum += src[f * inChannels + c];
+                }
+                dst[f] = sum * scale;
+            }
+        } else if (outChannels > inChannels) {
+            for (int f = 0; f < frames; f++) {
+                for (int c = 0; c < outChannels; c++) {
+                    dst[f * outChannels + c] = src[f * inChannels + c % inChannels];
+                }
+            }
+        } else {
+            for (int f = 0; f < frames; f++) {
+                for (int c = 0; c < outChannels; c++) {
+                    float sum = 0;
+                    int count = 0;
+                    for (int i = c; i < inChannels; i += outChannels) {
+                        sum += src[f * inChannels + i];
+                        count++;
+                    }
+                    dst[f * outChannels + c] = sum / count;
+                }
+            }
+        }
+    }
+
+    private void encode(float[] src, byte[] dst, int offset, int samples) {
+        if (output.isFloat()) {
+            for (int i = 0, j = offset; i < samples; i++, j += 4) {
+                int bits = Float.floatToRawIntBits(src[i]);
+                dst[j] = (byte) bits;
+                dst[j + 1] = (byte) (bits >> 8);
+                dst[j + 2] = (byte) (bits >> 16);
+                dst[j + 3] = (byte) (bits >> 24);
+            }
+            return;
+        }
+        int bits = output.getBitsPerSample();
+        if (bits == 32) {
+            // Float cannot represent every 32-bit value; scale in double precision instead.
+            for (int i = 0, j = offset; i < samples; i++, j += 4) {
+                long sample = Math.round(src[i] * 2147483648.0);
+                int value = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, sample));
+                dst[j] = (byte) value;
+                dst[j + 1] = (byte) (value >> 8);
+                dst[j + 2] = (byte) (value >> 16);
+                dst[j + 3] = (byte) (value >> 24);
+            }
+            return;
+        }
+        float scale = 1 << (bits - 1);
+        float max = scale - 1;
+        float min = -scale;
+        for (int i = 0; i < samples; i++) {
+            src[i] *= scale;
+        }
+        if (dither) {
+            addTriangularDither(src, samples);
+        }
+        switch (bits) {
+            case 8:
+                for (int i = 0; i < samples; i++) {
+                    dst[offset + i] = (byte) (Math.round(Math.max(min, Math.min(max, src[i]))) + 128);
+                }
+                break;
+            case 16:
+                for (int i = 0, j = offset; i < samples; i++, j += 2) {
+                    int value = Math.round(Math.max(min, Math.min(max, src[i])));
+                    dst[j] = (byte) value;
+                    dst[j + 1] = (byte) (value >> 8);
+                }
+                break;
+            default:
+                for (int i = 0, j = offset; i < samples; i++, j += 3) {
+                    int value = Math.round(Math.max(min, Math.min(max, src[i])));
+                    dst[j] = (byte) value;
+                    dst[j + 1] = (byte) (value >> 8);
+                    dst[j + 2] = (byte) (value >> 16);
+                }
+                break;
+        }
+    }
+
+    /** Adds TPDF dither of +-1 LSB: the difference of two uniform values from an xorshift32. */
+    private void addTriangularDither(float[] samples, int count) {
+        int state = ditherState;
+        for (int i = 0; i < count; i++) {
+            state ^= state << 13;
+            state ^= state >>> 17;
+            state ^= state << 5;
+            samples[i] += ((state >>> 16) - (state & 0xFFFF)) * (1f / 65536);
+        }
+        ditherState = state;
+    }
+}
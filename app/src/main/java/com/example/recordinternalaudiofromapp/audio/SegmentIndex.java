@@ -0,0 +1,213 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Where {@link SilenceGatingSink} left silence out of a recording. Each gap is stored with its
+ * position in the original capture and in the written file, so the original timeline can be
+ * rebuilt exactly.
+ *
+ * <p>Sidecar layout (little-endian): magic {@code "SEGS"}, version, sample rate, gap count, the
+ * original and written lengths in frames (longs), then per gap its original start, written
+ * position and length in frames (longs).
+ */
+public final class SegmentIndex {
+
+    public static final String SUFFIX = ".segments";
+
+    private static final int MAGIC = 0x53474553; // "SEGS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int GAP_SIZE = 24;
+
+    private final int sampleRate;
+    private long[] originalStarts = new long[16];
+    private long[] outputStarts = new long[16];
+    private long[] lengths = new long[16];
+    private int gapCount;
+    private long originalFrames;
+    private long outputFrames;
+
+    public SegmentIndex(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    /** Returns the segment index that belongs to a recording. */
+    public static File fileFor(File recording) {
+        return new File(recording.getParentFile(), recording.getName() + SUFFIX);
+    }
+
+    /** Appends {@code frames} kept frames. */
+    void addKept(long frames) {
+        originalFrames += frames;
+        outputFrames += frames;
+    }
+
+    /** Appends {@code frames} elided frames, extending the previous gap if they are adjacent. */
+    void addSkipped(long frames) {
+        if (frames == 0) {
+            return;
+        }
+        if (gapCount > 0 && originalStarts[gapCount - 1] + lengths[gapCount - 1] == originalFrames) {
+            lengths[gapCount - 1] += frames;
+        } else {
+            if (gapCount == lengths.length) {
+                originalStarts = Arrays.copyOf(originalStarts, gapCount * 2);
+                outputStarts = Arrays.copyOf(outputStarts, gapCount * 2);
+                lengths = Arrays.copyOf(lengths, gapCount * 2);
+            }
+            originalStarts[gapCount] = originalFrames;
+            outputStarts[gapCount] = outputFrames;
+            lengths[gapCount] = frames;
+            gapCount++;
+        }
+        originalFrames += frames;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getGapCount() {
+        return gapCount;
+    }
+
+    public long getGapOriginalStart(int gap) {
+        return originalStarts[gap];
+    }
+
+    /** Frame of the written file at which the gap was left out. */
+    public long getGapOutputStart(int gap) {
+        return outputStarts[gap];
+    }
+
+    public long getGapLength(int gap) {
+        return lengths[gap];
+    }
+
+    public long getOriginalFrames() {
+        return originalFrames;
+    }
+
+    public long getOutputFrames() {
+        return outputFrames;
+    }
+
+    public long getSkippedFrames() {
+        return originalFrames - outputFrames;
+    }
+
+    /** Maps a frame of the written file to its frame in the original capture. */
+    public long toOriginalFrame(long outputFrame) {
+        int gap = lastGapAtOrBefore(outputStarts, outputFrame);
+        long skipped = 0;
+        if (gap >= 0) {
+            skipped = originalStarts[gap] + lengths[gap] - outputStarts[gap];
+        }
+        return outputFrame + skipped;
+    }
+
+    /**
+     * Maps a frame of the original capture to the written file. Frames inside a gap map to the
+     * written frame right after it.
+     */
+    public long toOutputFrame(long originalFrame) {
+        int gap = lastGapAtOrBefore(originalStarts, originalFrame);
+        if (gap < 0) {
+            return originalFrame;
+        }
+        long gapEnd = originalStarts[gap] + lengths[gap];
+        if (originalFrame < gapEnd) {
+            return outputStarts[gap];
+        }
+        return outputStarts[gap] + originalFrame - gapEnd;
+    }
+
+    /** Index of the last gap whose start is at most {@code frame}, or -1. */
+    private int lastGapAtOrBefore(long[] starts, long frame) {
+        int low = 0;
+        int high = gapCount - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] <= frame) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /** Writes the index to {@code file}, replacing it. */
+    public void writeTo(File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + gapCount * GAP_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(sampleRate);
+        buffer.putInt(gapCount);
+        buffer.putLong(originalFrames);
+        buffer.putLong(outputFrames);
+        for (int i = 0; i < gapCount; i++) {
+            buffer.putLong(originalStarts[i]);
+            buffer.putLong(outputStarts[i]);
+            buffer.putLong(lengths[i]);
+        }
+        buffer.flip();
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = out.getChannel();
+            channel.truncate(0);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    public static SegmentIndex read(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            long size = in.length();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Not a segment index: " + file);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size, Integer.MAX_VALUE)).order(ByteOrder.LITTLE_ENDIAN);
+            FileChannel channel = in.getChannel();
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Keep reading until the buffer is full.
+            }
+            buffer.flip();
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a segment index: " + file);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported segment index version " + version);
+            }
+            SegmentIndex index = new SegmentIndex(buffer.getInt());
+            int gaps = buffer.getInt();
+            long originalFrames = buffer.getLong();
+            long outputFrames = buffer.getLong();
+            if (gaps < 0 || buffer.remaining() < (long) gaps * GAP_SIZE) {
+                throw new IOException("Truncated segment index: " + file);
+            }
+            index.originalStarts = new long[Math.max(gaps, 1)];
+            index.outputStarts = new long[Math.max(gaps, 1)];
+            index.lengths = new long[Math.max(gaps, 1)];
+            for (int i = 0; i < gaps; i++) {
+                index.originalStarts[i] = buffer.getLong();
+                index.outputStarts[i] = buffer.getLong();
+                index.lengths[i] = buffer.getLong();
+            }
+            index.gapCount = gaps;
+            index.originalFrames = originalFrames;
+            index.outputFrames = outputFrames;
+            return index;
+        }
+    }
+}
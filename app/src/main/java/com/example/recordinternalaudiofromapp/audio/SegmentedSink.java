@@ -0,0 +1,292 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Splits one stream into consecutive segment files of at most {@code maxSegmentFrames} frames
+ * each, every one a complete WAV or FLAC file of its own.
+ *
+ * <p>Boundaries fall exactly on the frame limit, so concatenating the segments gives back the
+ * stream without gaps or duplicates. A full segment is handed to a background executor to be
+ * closed (header patching, fsync, FLAC's last frames) while writes continue into the next one,
+ * which is opened lazily so a session never ends with an empty segment.
+ *
+ * <p>A JSON manifest lists every segment in order with its first frame, length and state
+ * ({@code open}, {@code finalizing}, {@code complete} or {@code failed}). It is replaced
+ * atomically whenever a segment changes state, so other components can pick up completed
+ * segments while the session is still running.
+ */
+public final class SegmentedSink implements AudioSink {
+
+    public static final String MANIFEST_SUFFIX = ".manifest";
+
+    /** Opens the file for segment {@code index} (0-based). */
+    public interface SegmentFactory {
+        FileSink open(int index) throws IOException;
+    }
+
+    private static final String OPEN = "open";
+    private static final String FINALIZING = "finalizing";
+    private static final String COMPLETE = "complete";
+    private static final String FAILED = "failed";
+
+    private static final class Segment {
+        final int index;
+        final File file;
+        final long startFrame;
+        long frames;
+        volatile String state = OPEN;
+
+        Segment(int index, File file, long startFrame) {
+            this.index = index;
+            this.file = file;
+            this.startFrame = startFrame;
+        }
+    }
+
+    private final PcmFormat format;
+    private final SegmentFactory factory;
+    private final File manifest;
+    private final ExecutorService finalizer;
+    private final boolean ownsFinalizer;
+    private final long segmentBytes;
+    private final List<Segment> segments = new ArrayList<>();
+    private final List<Future<?>> pending = new ArrayList<>();
+    private FileSink current;
+    private long currentBytes;
+    private long totalFrames;
+    private volatile boolean finished;
+    private volatile IOException finalizeFailure;
+
+    /** Closes segments on a private background thread. */
+    public SegmentedSink(PcmFormat format, long maxSegmentFrames, SegmentFactory factory, File manifest) {
+        this(format, maxSegmentFrames, factory, manifest, Executors.newSingleThreadExecutor(), true);
+    }
+
+    /** Closes segments on {@code finalizer}, which is not shut down by this sink. */
+    public SegmentedSink(PcmFormat format, long maxSegmentFrames, SegmentFactory factory, File manifest,
+                         ExecutorService finalizer) {
+        this(format, maxSegmentFrames, factory, manifest, finalizer, false);
+    }
+
+    private SegmentedSink(PcmFormat format, long maxSegmentFrames, SegmentFactory factory, File manifest,
+                          ExecutorService finalizer, boolean ownsFinalizer) {
+        if (maxSegmentFrames <= 0) {
+            throw new IllegalArgumentException("maxSegmentFrames must be positive: " + maxSegmentFrames);
+        }
+        this.format = format;
+        this.factory = factory;
+        this.manifest = manifest;
+        this.finalizer = finalizer;
+        this.ownsFinalizer = ownsFinalizer;
+        this.segmentBytes = maxSegmentFrames * format.getFrameSize();
+    }
+
+    /**
+     * Segment length for a duration limit and a PCM size limit, whichever is reached first. A
+     * limit of 0 is ignored; at least one must be set.
+     */
+    public static long framesFor(PcmFormat format, long maxMillis, long maxBytes) {
+        long byTime = maxMillis > 0 ? maxMillis * format.getSampleRate() / 1000 : Long.MAX_VALUE;
+        long bySize = maxBytes > 0 ? maxBytes / format.getFrameSize() : Long.MAX_VALUE;
+        long frames = Math.min(byTime, bySize);
+        if (frames == Long.MAX_VALUE || frames <= 0) {
+            throw new IllegalArgumentException("No usable segment limit: " + maxMillis + " ms, " + maxBytes + " bytes");
+        }
+        return frames;
+    }
+
+    /** Returns the manifest file that belongs to a session named after {@code base}. */
+    public static File manifestFor(File directory, String base) {
+        return new File(directory, base + MANIFEST_SUFFIX);
+    }
+
+    public File getManifest() {
+        return manifest;
+    }
+
+    public long getMaxSegmentFrames() {
+        return segmentBytes / format.getFrameSize();
+    }
+
+    /** Segments opened so far. */
+    public int getSegmentCount() {
+        synchronized (segments) {
+            return segments.size();
+        }
+    }
+
+    /** Files of the segments opened so far, in order. */
+    public List<File> getSegmentFiles() {
+        synchronized (segments) {
+            List<File> files = new ArrayList<>(segments.size());
+            for (Segment segment : segments) {
+                files.add(segment.file);
+            }
+            return files;
+        }
+    }
+
+    public long getTotalFrames() {
+        return totalFrames + currentBytes / format.getFrameSize();
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (current == null) {
+                openNext();
+            }
+            int chunk = (int) Math.min(length, segmentBytes - currentBytes);
+            current.write(data, offset, chunk);
+            currentBytes += chunk;
+            offset += chunk;
+            length -= chunk;
+            if (currentBytes == segmentBytes) {
+                finalizeCurrent();
+            }
+        }
+    }
+
+    private void openNext() throws IOException {
+        int index;
+        synchronized (segments) {
+            index = segments.size();
+        }
+        current = factory.open(index);
+        currentBytes = 0;
+        synchronized (segments) {
+            segments.add(new Segment(index, current.getFile(), totalFrames));
+        }
+        writeManifest();
+    }
+
+    /** Hands the full segment to the finalizer; capture continues into a new one on the next write. */
+    private void finalizeCurrent() throws IOException {
+        FileSink sink = current;
+        Segment segment;
+        synchronized (segments) {
+            segment = segments.get(segments.size() - 1);
+        }
+        segment.frames = currentBytes / format.getFrameSize();
+        segment.state = FINALIZING;
+        totalFrames += segment.frames;
+        current = null;
+        currentBytes = 0;
+        pending.add(finalizer.submit(() -> {
+            try {
+                sink.close();
+                segment.state = COMPLETE;
+            } catch (IOException e) {
+                segment.state = FAILED;
+                if (finalizeFailure == null) {
+                    finalizeFailure = e;
+                }
+            }
+            try {
+                writeManifest();
+            } catch (IOException e) {
+                if (finalizeFailure == null) {
+                    finalizeFailure = e;
+                }
+            }
+        }));
+        // Forget finished work so the list stays short over long sessions.
+        pending.removeIf(Future::isDone);
+        writeManifest();
+    }
+
+    /**
+     * Finalizes the last segment, waits for every background finalization and writes the final
+     * manifest.
+     *
+     * @throws IOException the first error closing any segment or writing the manifest
+     */
+    @Override
+    public void close() throws IOException {
+        if (finished) {
+            return;
+        }
+        IOException failure = null;
+        try {
+            if (current != null) {
+                finalizeCurrent();
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+        boolean interrupted = false;
+        for (Future<?> future : pending) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = new IOException("Segment finalization failed", e.getCause());
+                    }
+                    break;
+                }
+            }
+        }
+        pending.clear();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (ownsFinalizer) {
+            finalizer.shutdown();
+        }
+        finished = true;
+        try {
+            writeManifest();
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+        if (failure == null) {
+            failure = finalizeFailure;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /** Rewrites the manifest through a temporary file and a rename, so readers never see it torn. */
+    private void writeManifest() throws IOException {
+        synchronized (segments) {
+            StringBuilder json = new StringBuilder(128 + segments.size() * 112);
+            json.append(String.format(Locale.US, "{\"sampleRate\":%d,\"channels\":%d,\"bitsPerSample\":%d,"
+                            + "\"float\":%b,\"finished\":%b,\"segments\":[",
+                    format.getSampleRate(), format.getChannels(), format.getBitsPerSample(), format.isFloat(), finished));
+            for (int i = 0; i < segments.size(); i++) {
+                Segment segment = segments.get(i);
+                json.append(i == 0 ? "" : ",").append(String.format(Locale.US,
+                        "{\"index\":%d,\"file\":\"%s\",\"startFrame\":%d,\"frames\":%d,\"state\":\"%s\"}",
+                        segment.index, segment.file.getName(), segment.startFrame,
+                        segment.state.equals(OPEN) ? -1 : segment.frames, segment.state));
+            }
+            json.append("]}\n");
+            File temp = new File(manifest.getParentFile(), manifest.getName() + ".tmp");
+            try (OutputStream out = new FileOutputStream(temp)) {
+                out.write(json.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            if (!temp.renameTo(manifest)) {
+                throw new IOException("Could not replace " + manifest);
+            }
+        }
+    }
+}
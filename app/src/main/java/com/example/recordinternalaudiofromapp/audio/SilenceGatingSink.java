@@ -0,0 +1,147 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Leaves long silent stretches out of the stream written to a downstream sink and records them
+ * in a {@link SegmentIndex}.
+ *
+ * <p>Audio is split into fixed analysis blocks and run through an {@link ActivityDetector}. The
+ * first {@code keepSilenceFrames} of every inactive run are still written, so short pauses and
+ * decays stay intact; the rest of the run is skipped. Contiguous kept blocks go downstream as one
+ * write. Allocation-free after construction, except when the index grows.
+ */
+public final class SilenceGatingSink implements AudioSink {
+
+    public static final int DEFAULT_BLOCK_MILLIS = 20;
+    public static final int DEFAULT_KEEP_SILENCE_MILLIS = 1000;
+
+    private final ActivityDetector detector;
+    private final AudioSink downstream;
+    private final SegmentIndex index;
+    private final File indexFile;
+    private final int frameSize;
+    private final int blockFrames;
+    private final long keepSilenceFrames;
+    private final byte[] carry;
+    private int carryLength;
+    private long silentFrames;
+
+    /** @param indexFile where {@link #close()} writes the segment index; may be null */
+    public SilenceGatingSink(PcmFormat format, File indexFile, AudioSink downstream) {
+        this(new ActivityDetector(format), format, DEFAULT_BLOCK_MILLIS, DEFAULT_KEEP_SILENCE_MILLIS, indexFile, downstream);
+    }
+
+    public SilenceGatingSink(ActivityDetector detector, PcmFormat format, int blockMillis, int keepSilenceMillis,
+                             File indexFile, AudioSink downstream) {
+        this.detector = detector;
+        this.downstream = downstream;
+        this.index = new SegmentIndex(format.getSampleRate());
+        this.indexFile = indexFile;
+        this.frameSize = format.getFrameSize();
+        this.blockFrames = Math.max(1, format.getSampleRate() * blockMillis / 1000);
+        this.keepSilenceFrames = (long) format.getSampleRate() * keepSilenceMillis / 1000;
+        this.carry = new byte[blockFrames * frameSize];
+    }
+
+    public SegmentIndex getIndex() {
+        return index;
+    }
+
+    public ActivityDetector getDetector() {
+        return detector;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        if (carryLength > 0) {
+            int needed = Math.min(carry.length - carryLength, length);
+            System.arraycopy(data, offset, carry, carryLength, needed);
+            carryLength += needed;
+            offset += needed;
+            length -= needed;
+            if (carryLength < carry.length) {
+                return;
+            }
+            if (gate(carry, 0, blockFrames)) {
+                downstream.write(carry, 0, carry.length);
+            }
+            carryLength = 0;
+        }
+        int blockBytes = blockFrames * frameSize;
+        int runStart = offset;
+        while (length >= blockBytes) {
+            if (!gate(data, offset, blockFrames)) {
+                if (offset > runStart) {
+                    downstream.write(data, runStart, offset - runStart);
+                }
+                runStart = offset + blockBytes;
+            }
+            offset += blockBytes;
+            length -= blockBytes;
+        }
+        if (offset > runStart) {
+            downstream.write(data, runStart, offset - runStart);
+        }
+        if (length > 0) {
+            System.arraycopy(data, offset, carry, 0, length);
+            carryLength = length;
+        }
+    }
+
+    /** Runs the detector over one block, updates the index and returns whether to keep it. */
+    private boolean gate(byte[] block, int offset, int frames) {
+        if (detector.process(block, offset, frames)) {
+            silentFrames = 0;
+        } else {
+            // Blocks are kept or skipped whole; a block straddling the limit is kept.
+            boolean keep = silentFrames < keepSilenceFrames;
+            silentFrames += frames;
+            if (!keep) {
+                index.addSkipped(frames);
+                return false;
+            }
+        }
+        index.addKept(frames);
+        return true;
+    }
+
+    /**
+     * Writes the partial last block, which is never skipped, then the segment index, and closes
+     * the downstream sink. The first error is rethrown after everything was attempted.
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        int frames = carryLength / frameSize;
+        if (frames > 0) {
+            try {
+                downstream.write(carry, 0, frames * frameSize);
+                index.addKept(frames);
+            } catch (IOException e) {
+                failure = e;
+            }
+            carryLength = 0;
+        }
+        if (indexFile != null) {
+            try {
+                index.writeTo(indexFile);
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        try {
+            downstream.close();
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
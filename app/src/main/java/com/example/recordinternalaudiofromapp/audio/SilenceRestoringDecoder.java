@@ -0,0 +1,92 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Plays back a silence-gated recording on its original timeline: wraps a decoder of the written
+ * file and puts digital silence back wherever the {@link SegmentIndex} says audio was skipped.
+ */
+public final class SilenceRestoringDecoder implements PcmDecoder {
+
+    private final PcmDecoder source;
+    private final SegmentIndex index;
+    private final int frameSize;
+    private final byte silence;
+    private long outputFrame;
+    private int nextGap;
+    private long gapRemaining;
+
+    public SilenceRestoringDecoder(PcmDecoder source, SegmentIndex index) {
+        this.source = source;
+        this.index = index;
+        PcmFormat format = source.getFormat();
+        this.frameSize = format.getFrameSize();
+        // 8-bit WAV is unsigned, so its zero level is 0x80.
+        this.silence = !format.isFloat() && format.getBitsPerSample() == 8 ? (byte) 0x80 : 0;
+    }
+
+    /**
+     * Writes a plain WAV of the original timeline from a gated recording and its index.
+     *
+     * @return the render throughput, with the restored duration
+     */
+    public static OfflineRenderer.Result exportWav(File gatedRecording, SegmentIndex index, File output)
+            throws IOException {
+        PcmDecoder decoder = gatedRecording.getName().endsWith(".flac")
+                ? new FlacFileDecoder(gatedRecording) : new WavFileDecoder(gatedRecording);
+        SilenceRestoringDecoder restoring = new SilenceRestoringDecoder(decoder, index);
+        WavWriter writer;
+        try {
+            writer = new WavWriter(output, decoder.getFormat(), SyncPolicy.NONE);
+        } catch (IOException e) {
+            restoring.close();
+            throw e;
+        }
+        return OfflineRenderer.render(restoring, writer);
+    }
+
+    @Override
+    public PcmFormat getFormat() {
+        return source.getFormat();
+    }
+
+    @Override
+    public long getDurationFrames() {
+        long written = source.getDurationFrames();
+        return written < 0 ? -1 : written + index.getSkippedFrames();
+    }
+
+    @Override
+    public int read(byte[] dst, int offset, int length) throws IOException {
+        int maxFrames = length / frameSize;
+        if (maxFrames == 0) {
+            return 0;
+        }
+        if (gapRemaining == 0 && nextGap < index.getGapCount() && index.getGapOutputStart(nextGap) == outputFrame) {
+            gapRemaining = index.getGapLength(nextGap++);
+        }
+        if (gapRemaining > 0) {
+            int frames = (int) Math.min(maxFrames, gapRemaining);
+            Arrays.fill(dst, offset, offset + frames * frameSize, silence);
+            gapRemaining -= frames;
+            return frames * frameSize;
+        }
+        if (nextGap < index.getGapCount()) {
+            maxFrames = (int) Math.min(maxFrames, index.getGapOutputStart(nextGap) - outputFrame);
+        }
+        int count = source.read(dst, offset, maxFrames * frameSize);
+        if (count < 0) {
+            // Gaps past the end of a truncated file cannot be placed.
+            return -1;
+        }
+        outputFrame += count / frameSize;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how often a recording is forced to storage and checkpointed in its
+ * {@link RecordingJournal}. Syncing more often loses less audio on a crash but costs extra
+ * write amplification and flash wear.
+ */
+public final class SyncPolicy {
+
+    /** Never fsync before close; a crash can lose whatever the kernel had not written back. */
+    public static final SyncPolicy NONE = new SyncPolicy(0, 0);
+
+    private final long bytesBetweenSyncs;
+    private final long nanosBetweenSyncs;
+
+    private SyncPolicy(long bytesBetweenSyncs, long nanosBetweenSyncs) {
+        this.bytesBetweenSyncs = bytesBetweenSyncs;
+        this.nanosBetweenSyncs = nanosBetweenSyncs;
+    }
+
+    public static SyncPolicy everyMegabytes(int megabytes) {
+        return of((long) megabytes << 20, 0, TimeUnit.MILLISECONDS);
+    }
+
+    public static SyncPolicy everySeconds(int seconds) {
+        return of(0, seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Syncs when either limit is reached; a limit of 0 disables that trigger.
+     */
+    public static SyncPolicy of(long bytes, long interval, TimeUnit unit) {
+        if (bytes < 0 || interval < 0) {
+            throw new IllegalArgumentException("Sync limits must not be negative.");
+        }
+        return new SyncPolicy(bytes, unit.toNanos(interval));
+    }
+
+    public boolean isEnabled() {
+        return bytesBetweenSyncs > 0 || nanosBetweenSyncs > 0;
+    }
+
+    boolean shouldSync(long bytesSinceSync, long nanosSinceSync) {
+        return (bytesBetweenSyncs > 0 && bytesSinceSync >= bytesBetweenSyncs)
+                || (nanosBetweenSyncs > 0 && nanosSinceSync >= nanosBetweenSyncs);
+    }
+
+    @Override
+    public String toString() {
+        if (!isEnabled()) {
+            return "SyncPolicy[none]";
+        }
+        return "SyncPolicy[bytes=" + bytesBetweenSyncs + ", ms="
+                + TimeUnit.NANOSECONDS.toMillis(nanosBetweenSyncs) + "]";
+    }
+}
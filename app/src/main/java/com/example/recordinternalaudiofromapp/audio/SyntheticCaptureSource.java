@@ -0,0 +1,120 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Generates a deterministic sine tone so the capture pipeline can run in JVM tests, optionally
+ * much faster than realtime. Every sample is a pure function of its frame index, so tests can
+ * check exactly what reached the output with {@link #sampleAt}.
+ */
+public final class SyntheticCaptureSource extends BaseCaptureSource {
+
+    private final PcmFormat format;
+    private final int framesPerBlock;
+    private final double frequencyHz;
+    private final double speed;
+    private final long totalFrames;
+    private final byte[] block;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * @param speed       playback speed as a multiple of realtime; 0 generates as fast as possible
+     * @param totalFrames frames to generate before going idle, or -1 to run until stopped
+     */
+    public SyntheticCaptureSource(PcmFormat format, int framesPerBlock, double frequencyHz,
+                                  double speed, long totalFrames) {
+        this.format = format;
+        this.framesPerBlock = framesPerBlock;
+        this.frequencyHz = frequencyHz;
+        this.speed = speed;
+        this.totalFrames = totalFrames;
+        this.block = new byte[framesPerBlock * format.getFrameSize()];
+    }
+
+    @Override
+    public PcmFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public boolean isContinuous() {
+        return true;
+    }
+
+    @Override
+    protected void onStart() {
+        running = true;
+        thread = new Thread(this::generateLoop, "SyntheticCapture");
+        thread.start();
+    }
+
+    @Override
+    protected void onStop() {
+        running = false;
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    /** Blocks until every requested frame has been delivered. Only valid with a frame limit. */
+    public void awaitCompletion() throws InterruptedException {
+        Thread current = thread;
+        if (current != null) {
+            current.join();
+        }
+    }
+
+    @Override
+    public void release() {
+        stop();
+    }
+
+    private void generateLoop() {
+        long startNanos = System.nanoTime();
+        long frame = 0;
+        while (running && (totalFrames < 0 || frame < totalFrames)) {
+            int frames = totalFrames < 0 ? framesPerBlock : (int) Math.min(framesPerBlock, totalFrames - frame);
+            fill(block, frame, frames);
+            deliver(block, 0, frames * format.getFrameSize());
+            frame += frames;
+            if (speed > 0) {
+                long due = startNanos + (long) (frame * 1e9 / (format.getSampleRate() * speed));
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(Math.min(wait, TimeUnit.MILLISECONDS.toNanos(100)));
+                }
+            }
+        }
+    }
+
+    /** Writes {@code frames} frames starting at {@code firstFrame} into {@code dst}. */
+    public void fill(byte[] dst, long firstFrame, int frames) {
+        int bytesPerSample = format.getBytesPerSample();
+        int index = 0;
+        for (int i = 0; i < frames; i++) {
+            for (int channel = 0; channel < format.getChannels(); channel++) {
+                int sample = sampleAt(firstFrame + i, channel);
+                for (int b = 0; b < bytesPerSample; b++) {
+                    dst[index++] = (byte) (sample >> (8 * b));
+                }
+            }
+        }
+    }
+
+    /** The encoded sample value (unsigned for 8-bit) at a frame and channel. */
+    public int sampleAt(long frame, int channel) {
+        int bits = format.getBitsPerSample();
+        double phase = 2 * Math.PI * frequencyHz * frame / format.getSampleRate() + channel * 0.5;
+        long peak = (1L << (bits - 1)) - 1;
+        int value = (int) Math.round(Math.sin(phase) * peak * 0.5);
+        return bits == 8 ? value + 128 : value;
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.util.Locale;
+
+/**
+ * Places timestamped capture blocks on a continuous sample timeline, so a recording made from
+ * snapshots lasts exactly as long as the playback it captured.
+ *
+ * <p>Each block carries the media time of its first frame. The first block defines frame 0;
+ * every later block is compared with the end of the output so far:
+ * <ul>
+ * <li>within the tolerance, it is appended as is, absorbing timestamp jitter;</li>
+ * <li>later than that, the gap is filled first: linearly interpolated from the last written
+ * frame to the block's first frame for gaps up to {@code maxInterpolatedMillis}, digital silence
+ * beyond;</li>
+ * <li>earlier than that, its leading frames duplicate audio already written and are dropped.</li>
+ * </ul>
+ * Because every block is placed against its own timestamp, errors never accumulate.
+ *
+ * <p>The output depends only on the blocks and their timestamps, so the aligner behaves the same
+ * in tests as on a device. A partial frame at the end of a block is ignored. Not allocating
+ * after construction.
+ */
+public final class TimelineAligner {
+
+    public static final int DEFAULT_TOLERANCE_MILLIS = 5;
+    public static final int DEFAULT_MAX_INTERPOLATED_MILLIS = 100;
+
+    private static final int FILL_FRAMES = 512;
+
+    private final PcmFormat format;
+    private final CaptureSource.Listener output;
+    private final int frameSize;
+    private final int channels;
+    private final long toleranceFrames;
+    private final long maxInterpolatedFrames;
+    private final SampleConverter encoder;
+    private final float[] fillSamples;
+    private final byte[] fill;
+    private final float[] lastFrame;
+    private final float[] nextFrame;
+
+    private boolean started;
+    private long originFrame;
+    private long outputFrames;
+
+    private long blocks;
+    private long gaps;
+    private long gapFrames;
+    private long maxGapFrames;
+    private long overlaps;
+    private long droppedFrames;
+    private long driftSum;
+    private long maxDriftFrames;
+    private long lastDriftFrames;
+
+    /** Snapshot of the aligner's counters. Frame counts are at the stream's sample rate. */
+    public static final class Stats {
+        public final int sampleRate;
+        public final long blocks;
+        public final long outputFrames;
+        public final long gaps;
+        public final long gapFrames;
+        public final long maxGapFrames;
+        public final long overlaps;
+        public final long droppedFrames;
+        /** Mean and largest distance between a block's timestamp and the end of the output. */
+        public final double meanDriftFrames;
+        public final long maxDriftFrames;
+        /** Signed distance for the last block; positive when it arrived after the output's end. */
+        public final long lastDriftFrames;
+
+        Stats(TimelineAligner aligner) {
+            sampleRate = aligner.format.getSampleRate();
+            blocks = aligner.blocks;
+            outputFrames = aligner.outputFrames;
+            gaps = aligner.gaps;
+            gapFrames = aligner.gapFrames;
+            maxGapFrames = aligner.maxGapFrames;
+            overlaps = aligner.overlaps;
+            droppedFrames = aligner.droppedFrames;
+            meanDriftFrames = aligner.blocks > 0 ? (double) aligner.driftSum / aligner.blocks : 0;
+            maxDriftFrames = aligner.maxDriftFrames;
+            lastDriftFrames = aligner.lastDriftFrames;
+        }
+
+        private double millis(double frames) {
+            return frames * 1000 / sampleRate;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d blocks -> %.1f s; %d gaps filled (%.1f ms, max %.1f ms), "
+                            + "%d overlaps dropped (%.1f ms); drift mean %.2f ms, max %.2f ms, last %.2f ms",
+                    blocks, outputFrames / (double) sampleRate, gaps, millis(gapFrames), millis(maxGapFrames),
+                    overlaps, millis(droppedFrames), millis(meanDriftFrames), millis(maxDriftFrames),
+                    millis(lastDriftFrames));
+        }
+    }
+
+    public TimelineAligner(PcmFormat format, CaptureSource.Listener output) {
+        this(format, output, DEFAULT_TOLERANCE_MILLIS, DEFAULT_MAX_INTERPOLATED_MILLIS);
+    }
+
+    /**
+     * @param toleranceMillis       timestamp error below which blocks are appended unchanged
+     * @param maxInterpolatedMillis longest gap bridged by interpolation rather than silence
+     */
+    public TimelineAligner(PcmFormat format, CaptureSource.Listener output, int toleranceMillis,
+                           int maxInterpolatedMillis) {
+        this.format = format;
+        this.output = output;
+        this.frameSize = format.getFrameSize();
+        this.channels = format.getChannels();
+        this.toleranceFrames = (long) format.getSampleRate() * toleranceMillis / 1000;
+        this.maxInterpolatedFrames = (long) format.getSampleRate() * maxInterpolatedMillis / 1000;
+        this.encoder = new SampleConverter(format, format, FILL_FRAMES, false);
+        this.fillSamples = new float[FILL_FRAMES * channels];
+        this.fill = new byte[FILL_FRAMES * frameSize];
+        this.lastFrame = new float[channels];
+        this.nextFrame = new float[channels];
+    }
+
+    public PcmFormat getFormat() {
+        return format;
+    }
+
+    /** Frame of the output timeline that the next block is expected to start at. */
+    public synchronized long getOutputFrames() {
+        return outputFrames;
+    }
+
+    /**
+     * Places one block.
+     *
+     * @param startNanos media time of the block's first frame
+     */
+    public synchronized void add(byte[] data, int offset, int length, long startNanos) {
+        int frames = length / frameSize;
+        if (frames == 0) {
+            return;
+        }
+        long rate = format.getSampleRate();
+        long target = Math.floorDiv(startNanos * rate + 500_000_000L, 1_000_000_000L);
+        if (!started) {
+            originFrame = target;
+            started = true;
+        }
+        target -= originFrame;
+        long drift = target - outputFrames;
+        blocks++;
+        lastDriftFrames = drift;
+        driftSum += Math.abs(drift);
+        maxDriftFrames = Math.max(maxDriftFrames, Math.abs(drift));
+
+        if (drift > toleranceFrames) {
+            fillGap(drift, data, offset);
+        } else if (drift < -toleranceFrames) {
+            long overlap = -drift;
+            overlaps++;
+            if (overlap >= frames) {
+                droppedFrames += frames;
+                return;
+            }
+            droppedFrames += overlap;
+            offset += (int) overlap * frameSize;
+            frames -= (int) overlap;
+        }
+        output.onCaptured(data, offset, frames * frameSize);
+        SampleConverter.decode(format, data, offset + (frames - 1) * frameSize, lastFrame, channels);
+        outputFrames += frames;
+    }
+
+    private void fillGap(long frames, byte[] next, int nextOffset) {
+        gaps++;
+        gapFrames += frames;
+        maxGapFrames = Math.max(maxGapFrames, frames);
+        boolean interpolate = frames <= maxInterpolatedFrames && outputFrames > 0;
+        if (interpolate) {
+            SampleConverter.decode(format, next, nextOffset, nextFrame, channels);
+        }
+        for (long done = 0; done < frames; ) {
+            int chunk = (int) Math.min(FILL_FRAMES, frames - done);
+            for (int f = 0, i = 0; f < chunk; f++) {
+                float position = (float) (done + f + 1) / (frames + 1);
+                for (int c = 0; c < channels; c++, i++) {
+                    fillSamples[i] = interpolate ? lastFrame[c] + (nextFrame[c] - lastFrame[c]) * position : 0f;
+                }
+            }
+            encoder.convert(fillSamples, fill, 0, chunk);
+            output.onCaptured(fill, 0, chunk * frameSize);
+            done += chunk;
+        }
+        outputFrames += frames;
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(this);
+    }
+}
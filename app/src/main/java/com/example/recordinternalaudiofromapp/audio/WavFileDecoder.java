@@ -0,0 +1,151 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streams integer or float PCM out of a WAV file. Skips any chunk other than {@code fmt } and
+ * {@code data}, so it reads both canonical 44-byte files and the ones written by {@link WavWriter}.
+ */
+public final class WavFileDecoder implements PcmDecoder {
+
+    private static final int FORMAT_EXTENSIBLE = 0xFFFE;
+
+    private final DataInputStream in;
+    private final PcmFormat format;
+    private final long dataBytes;
+    private long remaining;
+
+    public WavFileDecoder(File file) throws IOException {
+        this(new FileInputStream(file));
+    }
+
+    public WavFileDecoder(InputStream stream) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(stream, 64 * 1024));
+        try {
+            if (readTag() != tag("RIFF")) {
+                throw new IOException("Not a RIFF file.");
+            }
+            readLittleEndianInt();
+            if (readTag() != tag("WAVE")) {
+                throw new IOException("Not a WAVE file.");
+            }
+            PcmFormat parsedFormat = null;
+            while (true) {
+                int id = readTag();
+                long size = readLittleEndianInt() & 0xFFFFFFFFL;
+                if (id == tag("fmt ")) {
+                    parsedFormat = readFormat(size);
+                } else if (id == tag("data")) {
+                    if (parsedFormat == null) {
+                        throw new IOException("data chunk before fmt chunk.");
+                    }
+                    dataBytes = size - size % parsedFormat.getFrameSize();
+                    break;
+                } else {
+                    skipFully(size + (size & 1));
+                }
+            }
+            format = parsedFormat;
+            remaining = dataBytes;
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private PcmFormat readFormat(long size) throws IOException {
+        if (size < 16) {
+            throw new IOException("fmt chunk too small: " + size);
+        }
+        int formatTag = readLittleEndianShort();
+        int channels = readLittleEndianShort();
+        int sampleRate = readLittleEndianInt();
+        readLittleEndianInt(); // Byte rate.
+        readLittleEndianShort(); // Block align.
+        int bitsPerSample = readLittleEndianShort();
+        skipFully(size - 16 + (size & 1));
+        try {
+            if (formatTag == WavHeader.FORMAT_IEEE_FLOAT && bitsPerSample == 32) {
+                return PcmFormat.floatFormat(sampleRate, channels);
+            }
+            if (formatTag != WavHeader.FORMAT_PCM && formatTag != FORMAT_EXTENSIBLE) {
+                throw new IOException("Unsupported WAV format tag: " + formatTag);
+            }
+            return new PcmFormat(sampleRate, channels, bitsPerSample);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unsupported WAV format: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public PcmFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public long getDurationFrames() {
+        return dataBytes / format.getFrameSize();
+    }
+
+    @Override
+    public int read(byte[] dst, int offset, int length) throws IOException {
+        if (remaining == 0) {
+            return -1;
+        }
+        int frameSize = format.getFrameSize();
+        int wanted = (int) Math.min(remaining, length - length % frameSize);
+        int total = 0;
+        while (total < wanted) {
+            int count = in.read(dst, offset + total, wanted - total);
+            if (count < 0) {
+                // Truncated file: hand out the whole frames that did arrive.
+                remaining = 0;
+                total -= total % frameSize;
+                return total > 0 ? total : -1;
+            }
+            total += count;
+        }
+        remaining -= total;
+        return total;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private static int tag(String tag) {
+        return tag.charAt(0) | tag.charAt(1) << 8 | tag.charAt(2) << 16 | tag.charAt(3) << 24;
+    }
+
+    private int readTag() throws IOException {
+        return readLittleEndianInt();
+    }
+
+    private int readLittleEndianInt() throws IOException {
+        return Integer.reverseBytes(in.readInt());
+    }
+
+    private int readLittleEndianShort() throws IOException {
+        return Short.reverseBytes(in.readShort()) & 0xFFFF;
+    }
+
+    private void skipFully(long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException("Unexpected end of WAV file.");
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Fixed-size WAV header layout used by {@link WavWriter}.
+ *
+ * <p>The header is the canonical 44-byte RIFF/fmt/data layout plus a 36-byte {@code JUNK} chunk
+ * right after the RIFF preamble. Readers skip the JUNK chunk; when the data outgrows the 32-bit
+ * RIFF size fields it is rewritten in place as the {@code ds64} chunk of an RF64 file (EBU Tech
+ * 3306), so switching formats never moves the audio data.
+ */
+public final class WavHeader {
+
+    /** Offset of the first audio byte. */
+    public static final int SIZE = 80;
+
+    /** Above this many RIFF bytes the header is written as RF64. */
+    public static final long RF64_THRESHOLD = 0x7FFFFFFFL;
+
+    private static final int DS64_PAYLOAD_SIZE = 28;
+    private static final int FMT_PAYLOAD_SIZE = 16;
+    static final int FORMAT_PCM = 1;
+    static final int FORMAT_IEEE_FLOAT = 3;
+    private static final long SIZE_PLACEHOLDER = 0xFFFFFFFFL;
+
+    private WavHeader() {
+    }
+
+    /** Size of the RIFF chunk payload for a given data length, including the pad byte. */
+    public static long riffSize(long dataBytes) {
+        return riffSize(dataBytes, 0);
+    }
+
+    /** Like {@link #riffSize(long)}, with {@code trailingBytes} of chunks after the audio. */
+    public static long riffSize(long dataBytes, long trailingBytes) {
+        return SIZE - 8 + dataBytes + (dataBytes & 1) + trailingBytes;
+    }
+
+    public static boolean needsRf64(long dataBytes) {
+        return riffSize(dataBytes) > RF64_THRESHOLD;
+    }
+
+    /** Returns a new {@link #SIZE}-byte header. */
+    public static byte[] create(PcmFormat format, long dataBytes) {
+        return create(format, dataBytes, 0);
+    }
+
+    /** Returns a header for a file with {@code trailingBytes} of chunks after the audio. */
+    public static byte[] create(PcmFormat format, long dataBytes, long trailingBytes) {
+        byte[] header = new byte[SIZE];
+        write(ByteBuffer.wrap(header), format, dataBytes, trailingBytes);
+        return header;
+    }
+
+    /** Writes the header at the buffer's current position and advances it by {@link #SIZE}. */
+    public static void write(ByteBuffer dst, PcmFormat format, long dataBytes) {
+        write(dst, format, dataBytes, 0);
+    }
+
+    public static void write(ByteBuffer dst, PcmFormat format, long dataBytes, long trailingBytes) {
+        ByteOrder order = dst.order();
+        dst.order(ByteOrder.LITTLE_ENDIAN);
+        long riffSize = riffSize(dataBytes, trailingBytes);
+        boolean rf64 = riffSize > RF64_THRESHOLD;
+
+        putTag(dst, rf64 ? "RF64" : "RIFF");
+        dst.putInt((int) (rf64 ? SIZE_PLACEHOLDER : riffSize));
+        putTag(dst, "WAVE");
+
+        putTag(dst, rf64 ? "ds64" : "JUNK");
+        dst.putInt(DS64_PAYLOAD_SIZE);
+        if (rf64) {
+            dst.putLong(riffSize);
+            dst.putLong(dataBytes);
+            dst.putLong(dataBytes / format.getFrameSize());
+            dst.putInt(0); // No table entries.
+        } else {
+            for (int i = 0; i < DS64_PAYLOAD_SIZE; i++) {
+                dst.put((byte) 0);
+            }
+        }
+
+        putTag(dst, "fmt ");
+        dst.putInt(FMT_PAYLOAD_SIZE);
+        dst.putShort((short) (format.isFloat() ? FORMAT_IEEE_FLOAT : FORMAT_PCM));
+        dst.putShort((short) format.getChannels());
+        dst.putInt(format.getSampleRate());
+        dst.putInt((int) format.getByteRate());
+        dst.putShort((short) format.getFrameSize());
+        dst.putShort((short) format.getBitsPerSample());
+
+        putTag(dst, "data");
+        dst.putInt((int) (rf64 ? SIZE_PLACEHOLDER : dataBytes));
+        dst.order(order);
+    }
+
+    private static void putTag(ByteBuffer dst, String tag) {
+        for (int i = 0; i < 4; i++) {
+            dst.put((byte) tag.charAt(i));
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Random-access reader for WAV and RF64 files. The header is parsed once (unknown chunks such as
+ * {@code JUNK} or {@code LIST} are skipped, {@code ds64} supplies 64-bit sizes); audio is then
+ * read through memory-mapped windows of the data chunk, so seeking anywhere in a multi-gigabyte
+ * file costs nothing.
+ *
+ * <p>{@link #exportClip} writes a frame range to a new WAV with {@link FileChannel#transferTo},
+ * letting the kernel copy the audio without it passing through the Java heap.
+ *
+ * <p>As a {@link PcmDecoder} it also reads sequentially from the position set by {@link #seek}.
+ * Not thread-safe.
+ */
+public final class WavReader implements PcmDecoder {
+
+    /** Mapped windows are aligned to, and at most, this many bytes. */
+    static final int DEFAULT_WINDOW_BYTES = 64 << 20;
+
+    private static final int FORMAT_EXTENSIBLE = 0xFFFE;
+    private static final long SIZE_PLACEHOLDER = 0xFFFFFFFFL;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final PcmFormat format;
+    private final long dataOffset;
+    private final long dataBytes;
+    private final long dataChunkEnd;
+    private final boolean rf64;
+    private final int windowBytes;
+    private MappedByteBuffer window;
+    private long windowStart = -1;
+    private long position;
+
+    public WavReader(File wav) throws IOException {
+        this(wav, DEFAULT_WINDOW_BYTES);
+    }
+
+    WavReader(File wav, int windowBytes) throws IOException {
+        file = new RandomAccessFile(wav, "r");
+        channel = file.getChannel();
+        try {
+            ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(header, 0);
+            int riff = header.getInt(0);
+            rf64 = riff == tag("RF64");
+            if ((riff != tag("RIFF") && !rf64) || header.getInt(8) != tag("WAVE")) {
+                throw new IOException("Not a WAV file: " + wav);
+            }
+            long fileSize = channel.size();
+            long ds64DataBytes = -1;
+            PcmFormat parsedFormat = null;
+            long parsedOffset;
+            long parsedBytes;
+            long parsedEnd;
+            ByteBuffer chunkHeader = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            long at = 12;
+            while (true) {
+                chunkHeader.clear();
+                readFully(chunkHeader, at);
+                int id = chunkHeader.getInt(0);
+                long size = chunkHeader.getInt(4) & 0xFFFFFFFFL;
+                long body = at + 8;
+                if (id == tag("ds64")) {
+                    ByteBuffer ds64 = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+                    readFully(ds64, body);
+                    ds64DataBytes = ds64.getLong(8);
+                } else if (id == tag("fmt ")) {
+                    parsedFormat = readFormat(body, size);
+                } else if (id == tag("data")) {
+                    if (parsedFormat == null) {
+                        throw new IOException("data chunk before fmt chunk.");
+                    }
+                    if (rf64 && size == SIZE_PLACEHOLDER && ds64DataBytes >= 0) {
+                        size = ds64DataBytes;
+                    }
+                    // A crashed writer may leave a zero or stale size; trust the file length then.
+                    long available = fileSize - body;
+                    if (size == 0 || size > available) {
+                        size = available;
+                    }
+                    parsedOffset = body;
+                    parsedBytes = size - size % parsedFormat.getFrameSize();
+                    parsedEnd = body + size;
+                    break;
+                }
+                at = body + size + (size & 1);
+            }
+            format = parsedFormat;
+            dataOffset = parsedOffset;
+            dataBytes = parsedBytes;
+            dataChunkEnd = parsedEnd;
+            // Whole frames per window, so a slice never has to straddle two mappings.
+            this.windowBytes = windowBytes - windowBytes % format.getFrameSize();
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private PcmFormat readFormat(long at, long size) throws IOException {
+        if (size < 16) {
+            throw new IOException("fmt chunk too small: " + size);
+        }
+        ByteBuffer fmt = ByteBuffer.allocate((int) Math.min(size, 40)).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(fmt, at);
+        int formatTag = fmt.getShort(0) & 0xFFFF;
+        int channels = fmt.getShort(2) & 0xFFFF;
+        int sampleRate = fmt.getInt(4);
+        int bitsPerSample = fmt.getShort(14) & 0xFFFF;
+        if (formatTag == FORMAT_EXTENSIBLE && size >= 26) {
+            // The first two bytes of the sub-format GUID carry the real format tag.
+            formatTag = fmt.getShort(24) & 0xFFFF;
+        }
+        try {
+            if (formatTag == WavHeader.FORMAT_IEEE_FLOAT && bitsPerSample == 32) {
+                return PcmFormat.floatFormat(sampleRate, channels);
+            }
+            if (formatTag != WavHeader.FORMAT_PCM) {
+                throw new IOException("Unsupported WAV format tag: " + formatTag);
+            }
+            return new PcmFormat(sampleRate, channels, bitsPerSample);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unsupported WAV format: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the payload of the first chunk with this id, before or after the audio, or null if
+     * there is none.
+     */
+    public ByteBuffer readChunk(String id) throws IOException {
+        int wanted = tag(id);
+        long fileSize = channel.size();
+        ByteBuffer chunkHeader = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        long at = 12;
+        while (at + 8 <= fileSize) {
+            chunkHeader.clear();
+            readFully(chunkHeader, at);
+            int chunkId = chunkHeader.getInt(0);
+            long size = chunkHeader.getInt(4) & 0xFFFFFFFFL;
+            long body = at + 8;
+            if (chunkId == tag("data")) {
+                size = dataChunkEnd - body;
+            } else if (chunkId == wanted) {
+                if (size > fileSize - body) {
+                    throw new EOFException("Chunk " + id + " runs past the end of the file.");
+                }
+                ByteBuffer payload = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(payload, body);
+                payload.flip();
+                return payload;
+            }
+            at = body + size + (size & 1);
+        }
+        return null;
+    }
+
+    private void readFully(ByteBuffer dst, long at) throws IOException {
+        while (dst.hasRemaining()) {
+            int count = channel.read(dst, at + dst.position());
+            if (count < 0) {
+                throw new EOFException("Unexpected end of WAV file.");
+            }
+        }
+    }
+
+    private static int tag(String tag) {
+        return tag.charAt(0) | tag.charAt(1) << 8 | tag.charAt(2) << 16 | tag.charAt(3) << 24;
+    }
+
+    @Override
+    public PcmFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public long getDurationFrames() {
+        return dataBytes / format.getFrameSize();
+    }
+
+    public boolean isRf64() {
+        return rf64;
+    }
+
+    /** File offset of the first audio byte. */
+    public long getDataOffset() {
+        return dataOffset;
+    }
+
+    public long getDataBytes() {
+        return dataBytes;
+    }
+
+    /** The underlying channel, for callers that map or transfer ranges from several threads. */
+    FileChannel getChannel() {
+        return channel;
+    }
+
+    /** Frame that the next {@link #read(byte[], int, int)} starts at. */
+    public long getPosition() {
+        return position;
+    }
+
+    /** Moves the sequential read position to {@code frame}, clamped to the end of the audio. */
+    public void seek(long frame) {
+        if (frame < 0) {
+            throw new IllegalArgumentException("Negative frame " + frame);
+        }
+        position = Math.min(frame, getDurationFrames());
+    }
+
+    @Override
+    public int read(byte[] dst, int offset, int length) throws IOException {
+        int frameSize = format.getFrameSize();
+        int frames = read(position, dst, offset, length / frameSize);
+        if (frames < 0) {
+            return -1;
+        }
+        position += frames;
+        return frames * frameSize;
+    }
+
+    /**
+     * Copies up to {@code frames} frames starting at {@code startFrame} into {@code dst}. Does not
+     * move the sequential position.
+     *
+     * @return frames copied, or -1 if {@code startFrame} is at or past the end
+     */
+    public int read(long startFrame, byte[] dst, int offset, int frames) throws IOException {
+        long total = getDurationFrames();
+        if (startFrame >= total) {
+            return -1;
+        }
+        int frameSize = format.getFrameSize();
+        int count = (int) Math.min(frames, total - startFrame);
+        long from = startFrame * frameSize;
+        int remaining = count * frameSize;
+        while (remaining > 0) {
+            ByteBuffer view = map(from, remaining);
+            int chunk = view.remaining();
+            view.get(dst, offset, chunk);
+            from += chunk;
+            offset += chunk;
+            remaining -= chunk;
+        }
+        return count;
+    }
+
+    /**
+     * Returns a read-only view of up to {@code frames} frames starting at {@code startFrame},
+     * straight from the mapped file. The view may hold fewer frames than asked for when the
+     * range crosses a window boundary; it stays valid until the next call on this reader.
+     */
+    public ByteBuffer slice(long startFrame, int frames) throws IOException {
+        long total = getDurationFrames();
+        if (startFrame < 0 || startFrame >= total) {
+            throw new IllegalArgumentException("Frame " + startFrame + " outside 0.." + total);
+        }
+        int frameSize = format.getFrameSize();
+        int bytes = (int) Math.min((long) frames * frameSize, (total - startFrame) * frameSize);
+        ByteBuffer view = map(startFrame * frameSize, bytes);
+        view.limit(view.limit() - view.remaining() % frameSize);
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /** Positions a view of the mapped window over data bytes {@code [from, from + length)}. */
+    private ByteBuffer map(long from, int length) throws IOException {
+        long start = from - from % windowBytes;
+        if (start != windowStart) {
+            long size = Math.min(windowBytes, dataBytes - start);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + start, size);
+            windowStart = start;
+        }
+        ByteBuffer view = window.duplicate();
+        int at = (int) (from - start);
+        view.position(at);
+        view.limit((int) Math.min(window.capacity(), at + (long) length));
+        return view;
+    }
+
+    /**
+     * Writes frames {@code [startFrame, startFrame + frames)} to a new WAV file. Only the header
+     * passes through the heap; the audio is moved with {@link FileChannel#transferTo}.
+     *
+     * @return the number of frames written, fewer than asked for at the end of the recording
+     */
+    public long exportClip(long startFrame, long frames, File output) throws IOException {
+        long total = getDurationFrames();
+        if (startFrame < 0 || frames < 0) {
+            throw new IllegalArgumentException("Invalid clip " + startFrame + "+" + frames);
+        }
+        long clipFrames = Math.max(0, Math.min(frames, total - startFrame));
+        long bytes = clipFrames * format.getFrameSize();
+        try (RandomAccessFile out = new RandomAccessFile(output, "rw")) {
+            FileChannel target = out.getChannel();
+            target.truncate(0);
+            ByteBuffer header = ByteBuffer.wrap(WavHeader.create(format, bytes));
+            while (header.hasRemaining()) {
+                target.write(header);
+            }
+            long from = dataOffset + startFrame * format.getFrameSize();
+            long done = 0;
+            while (done < bytes) {
+                long count = channel.transferTo(from + done, bytes - done, target);
+                if (count <= 0) {
+                    throw new EOFException("WAV data ended early at byte " + (from + done));
+                }
+                done += count;
+            }
+            if ((bytes & 1) != 0) {
+                target.write(ByteBuffer.allocate(1), WavHeader.SIZE + bytes);
+            }
+        }
+        return clipFrames;
+    }
+
+    /** Mapped windows are released by the garbage collector; this closes the file. */
+    @Override
+    public void close() throws IOException {
+        window = null;
+        file.close();
+    }
+}
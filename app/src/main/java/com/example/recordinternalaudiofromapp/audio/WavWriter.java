@@ -0,0 +1,230 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Streams PCM straight into a WAV file. A placeholder header is written when the file is opened
+ * and patched in place through the {@link FileChannel} on {@link #close()}, so finishing a
+ * recording costs the same regardless of its length and no intermediate PCM file is needed.
+ *
+ * <p>While open, the writer keeps a {@link RecordingJournal} next to the file and checkpoints it
+ * according to its {@link SyncPolicy}, so an interrupted recording can be repaired by
+ * {@link RecordingRecovery}.
+ *
+ * <p>A file filled ahead of time by {@link #preallocate} can be taken over instead of starting
+ * from an empty one. Writes then land in space that is already allocated, so checkpoints do not
+ * have to update the file size and a full disk is noticed before recording starts.
+ */
+public final class WavWriter implements FileSink {
+
+    private static final int STAGING_BUFFER_SIZE = 64 * 1024;
+    private static final int PREALLOCATE_CHUNK = 1 << 20;
+
+    private final File file;
+    private final PcmFormat format;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final ByteBuffer staging = ByteBuffer.allocateDirect(STAGING_BUFFER_SIZE);
+    private final SyncPolicy syncPolicy;
+    private final RecordingJournal journal;
+    private final ByteArrayOutputStream trailingChunks = new ByteArrayOutputStream();
+    private long dataBytes;
+    private long syncedBytes;
+    private long lastSyncNanos;
+    private boolean closed;
+
+    public WavWriter(File file, PcmFormat format) throws IOException {
+        this(file, format, SyncPolicy.NONE);
+    }
+
+    public WavWriter(File file, PcmFormat format, SyncPolicy syncPolicy) throws IOException {
+        this(file, format, syncPolicy, null);
+    }
+
+    /**
+     * @param preallocated a file filled by {@link #preallocate}, moved to {@code file} (replacing
+     *                     it) and written in place; if null or missing, {@code file} starts empty
+     */
+    public WavWriter(File file, PcmFormat format, SyncPolicy syncPolicy, File preallocated) throws IOException {
+        boolean reuse = preallocated != null && preallocated.isFile();
+        // Not every file system lets a rename replace an existing file, so retry without it.
+        if (reuse && !preallocated.renameTo(file) && !(file.delete() && preallocated.renameTo(file))) {
+            throw new IOException("Could not move " + preallocated + " to " + file);
+        }
+        this.file = file;
+        this.format = format;
+        this.syncPolicy = syncPolicy;
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        this.channel = randomAccessFile.getChannel();
+        try {
+            if (!reuse) {
+                channel.truncate(0);
+            }
+            writeFully(ByteBuffer.wrap(WavHeader.create(format, 0)), 0);
+            // The journal exists for the whole recording so a crash is always detectable.
+            journal = RecordingJournal.create(file, format, WavHeader.SIZE, reuse);
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+        lastSyncNanos = System.nanoTime();
+    }
+
+    /**
+     * Creates {@code file} holding a header and {@code dataBytes} of zeros, forced to storage.
+     * Slow for long recordings; run it before recording starts, off the capture path.
+     */
+    public static void preallocate(File file, long dataBytes) throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            FileChannel target = out.getChannel();
+            target.truncate(0);
+            // Real zeros rather than a sparse length, so the space is actually reserved.
+            ByteBuffer zeros = ByteBuffer.allocateDirect(PREALLOCATE_CHUNK);
+            long end = WavHeader.SIZE + dataBytes;
+            for (long at = 0; at < end; ) {
+                zeros.clear();
+                zeros.limit((int) Math.min(PREALLOCATE_CHUNK, end - at));
+                while (zeros.hasRemaining()) {
+                    at += target.write(zeros, at);
+                }
+            }
+            target.force(true);
+        }
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("WavWriter is closed: " + file);
+        }
+        while (length > 0) {
+            int chunk = Math.min(length, staging.remaining());
+            staging.put(data, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+            if (!staging.hasRemaining()) {
+                flushStaging();
+            }
+        }
+    }
+
+    private void flushStaging() throws IOException {
+        staging.flip();
+        int count = staging.remaining();
+        writeFully(staging, WavHeader.SIZE + dataBytes);
+        dataBytes += count;
+        staging.clear();
+        long now = System.nanoTime();
+        if (syncPolicy.shouldSync(dataBytes - syncedBytes, now - lastSyncNanos)) {
+            sync(now);
+        }
+    }
+
+    /** Forces written audio to storage and records it as committed in the journal. */
+    private void sync(long now) throws IOException {
+        channel.force(false);
+        journal.checkpoint(dataBytes);
+        syncedBytes = dataBytes;
+        lastSyncNanos = now;
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /** Audio bytes accepted so far, including any still held in the staging buffer. */
+    @Override
+    public long getDataBytes() {
+        return dataBytes + staging.position();
+    }
+
+    @Override
+    public PcmFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Queues a RIFF chunk, such as {@link LoudnessMeter.Result#CHUNK_ID}, to be written after the
+     * audio when the file is closed.
+     */
+    public void addChunk(String id, byte[] payload) {
+        if (id.length() != 4) {
+            throw new IllegalArgumentException("Chunk id must be four characters: " + id);
+        }
+        for (int i = 0; i < 4; i++) {
+            trailingChunks.write(id.charAt(i));
+        }
+        ByteBuffer size = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, payload.length);
+        trailingChunks.write(size.array(), 0, 4);
+        trailingChunks.write(payload, 0, payload.length);
+        if ((payload.length & 1) != 0) {
+            trailingChunks.write(0);
+        }
+    }
+
+    /**
+     * Flushes buffered samples, pads odd-sized data, appends queued chunks, patches the RIFF/RF64
+     * sizes and removes the journal. If this fails the journal is kept so the recording can still be recovered.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flushStaging();
+            finalizeHeader(channel, format, dataBytes, trailingChunks.toByteArray());
+            if (syncPolicy.isEnabled()) {
+                channel.force(true);
+            }
+        } catch (IOException e) {
+            journal.close();
+            throw e;
+        } finally {
+            randomAccessFile.close();
+        }
+        journal.delete();
+    }
+
+    /** Writes the final header and pad byte for {@code dataBytes} of audio and trims the file. */
+    static void finalizeHeader(FileChannel channel, PcmFormat format, long dataBytes) throws IOException {
+        finalizeHeader(channel, format, dataBytes, new byte[0]);
+    }
+
+    /** Like {@link #finalizeHeader(FileChannel, PcmFormat, long)}, with chunks after the audio. */
+    static void finalizeHeader(FileChannel channel, PcmFormat format, long dataBytes, byte[] trailing)
+            throws IOException {
+        long end = WavHeader.SIZE + dataBytes;
+        if ((dataBytes & 1) != 0) {
+            ByteBuffer pad = ByteBuffer.wrap(new byte[1]);
+            while (pad.hasRemaining()) {
+                channel.write(pad, end);
+            }
+            end++;
+        }
+        ByteBuffer chunks = ByteBuffer.wrap(trailing);
+        while (chunks.hasRemaining()) {
+            channel.write(chunks, end + chunks.position());
+        }
+        end += trailing.length;
+        ByteBuffer header = ByteBuffer.wrap(WavHeader.create(format, dataBytes, trailing.length));
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        channel.truncate(end);
+    }
+}
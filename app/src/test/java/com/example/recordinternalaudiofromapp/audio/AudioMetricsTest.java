@@ -0,0 +1,113 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class AudioMetricsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void histogram_bucketsCoverEveryValueInOrder() {
+        for (long value : new long[]{0, 1, 7, 8, 9, 15, 16, 1000, 123456789L, Long.MAX_VALUE}) {
+            int bucket = Histogram.bucketOf(value);
+            assertTrue(Histogram.lowerBound(bucket) <= value);
+            if (bucket + 1 < Histogram.bucketOf(Long.MAX_VALUE)) {
+                assertTrue(Histogram.lowerBound(bucket + 1) > value);
+            }
+        }
+        long previous = -1;
+        for (int bucket = 0; bucket <= Histogram.bucketOf(Long.MAX_VALUE); bucket++) {
+            assertTrue(Histogram.lowerBound(bucket) > previous);
+            assertEquals(bucket, Histogram.bucketOf(Histogram.lowerBound(bucket)));
+            previous = Histogram.lowerBound(bucket);
+        }
+    }
+
+    @Test
+    public void histogram_percentilesWithinBucketError() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 100_000; i++) {
+            histogram.record(i);
+        }
+        Histogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(100_000, snapshot.getCount());
+        assertEquals(100_000, snapshot.getMax());
+        assertEquals(50_000.5, snapshot.getMean(), 1e-9);
+        for (double q : new double[]{0.5, 0.9, 0.99}) {
+            double expected = q * 100_000;
+            assertEquals(expected, snapshot.getPercentile(q), expected * 0.125);
+        }
+        assertEquals(100_000, snapshot.getPercentile(1.0), 100_000 * 0.125);
+        assertEquals(0, new Histogram().snapshot().getPercentile(0.5));
+    }
+
+    @Test
+    public void session_recordsCallbacksWritesAndTimeToFirstSample() throws Exception {
+        PcmFormat format = new PcmFormat(48000, 2, 16);
+        long frames = 48000L * 2;
+        SyntheticCaptureSource source = new SyntheticCaptureSource(format, 960, 440, 50, frames);
+        File file = folder.newFile("metrics.wav");
+        AudioMetrics metrics = new AudioMetrics();
+        metrics.markRequested();
+        RecordingSession session = new RecordingSession(source, new WavWriter(file, format),
+                RecordingSession.DEFAULT_RING_CAPACITY, metrics);
+
+        session.start();
+        source.awaitCompletion();
+        session.stop();
+        AudioMetrics.Snapshot snapshot = session.getMetrics().snapshot();
+
+        long bytes = frames * format.getFrameSize();
+        assertEquals(frames / 960, snapshot.callbacks);
+        assertEquals(bytes, snapshot.capturedBytes);
+        assertEquals(0, snapshot.droppedBlocks);
+        assertEquals(bytes, snapshot.writtenBytes);
+        assertEquals(session.getWriter().getBatchesWritten(), snapshot.writtenBatches);
+        assertEquals(snapshot.writtenBatches, snapshot.writeLatencyNanos.getCount());
+        assertEquals(snapshot.callbacks - 1, snapshot.callbackIntervalNanos.getCount());
+        assertEquals(snapshot.callbacks - 2, snapshot.callbackJitterNanos.getCount());
+        assertEquals(snapshot.callbacks, snapshot.bufferOccupancyBytes.getCount());
+        assertTrue(snapshot.timeToFirstSampleNanos >= 0);
+    }
+
+    @Test
+    public void droppedBlocks_areCounted() {
+        AudioMetrics metrics = new AudioMetrics();
+        metrics.onCaptured(100, 100, true);
+        metrics.onCaptured(100, 100, false);
+        metrics.onCaptured(0, 100, true);
+        AudioMetrics.Snapshot snapshot = metrics.snapshot();
+
+        assertEquals(3, snapshot.callbacks);
+        assertEquals(1, snapshot.droppedBlocks);
+        assertEquals(100, snapshot.droppedBytes);
+        assertEquals(-1, snapshot.timeToFirstSampleNanos);
+    }
+
+    @Test
+    public void writeTo_dumpsOneJsonLineNextToTheRecording() throws Exception {
+        AudioMetrics metrics = new AudioMetrics();
+        metrics.onCaptured(512, 512, true);
+        metrics.onBatchWritten(512, 25_000);
+        File recording = folder.newFile("take.flac");
+        File dump = AudioMetrics.fileFor(recording);
+        metrics.snapshot().writeTo(dump);
+
+        assertEquals(new File(folder.getRoot(), "take.flac.metrics"), dump);
+        String json = new String(Files.readAllBytes(dump.toPath()), StandardCharsets.UTF_8);
+        assertTrue(json.startsWith("{\"callbacks\":1,\"capturedBytes\":512,"));
+        assertTrue(json.endsWith("}\n"));
+        assertEquals(1, json.split("\n").length);
+        assertTrue(json.contains("\"writeLatencyUs\":{\"count\":1,\"mean\":25.0,"));
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class EffectsChainTest {
+
+    private static final PcmFormat STEREO = new PcmFormat(8000, 2, 16);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Stereo noise on a slowly drifting DC offset, different per channel. */
+    private File drifting(int frames) throws IOException {
+        Random random = new Random(1);
+        byte[] pcm = new byte[frames * 4];
+        for (int i = 0; i < frames * 2; i++) {
+            double offset = (i % 2 == 0 ? 3000 : -1500) + 2000 * Math.sin(i / 20000.0);
+            short sample = (short) Math.round(offset + 6000 * random.nextGaussian() / 3);
+            pcm[2 * i] = (byte) sample;
+            pcm[2 * i + 1] = (byte) (sample >> 8);
+        }
+        return write("drifting.wav", STEREO, pcm);
+    }
+
+    private File write(String name, PcmFormat format, byte[] pcm) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        try (WavWriter writer = new WavWriter(file, format)) {
+            writer.write(pcm, 0, pcm.length);
+        }
+        return file;
+    }
+
+    private static short[] samples(File wav) throws IOException {
+        byte[] bytes = Files.readAllBytes(wav.toPath());
+        short[] samples = new short[(bytes.length - WavHeader.SIZE) / 2];
+        ByteBuffer.wrap(bytes, WavHeader.SIZE, samples.length * 2).order(ByteOrder.LITTLE_ENDIAN)
+                .asShortBuffer().get(samples);
+        return samples;
+    }
+
+    private static EffectsChain cleanup(int chunkFrames) {
+        return new EffectsChain(chunkFrames, AudioEffects.removeDcOffset(), AudioEffects.trackDcOffset(1000),
+                AudioEffects.gain(-3), AudioEffects.normalize(-1), AudioEffects.fadeIn(800), AudioEffects.fadeOut(800));
+    }
+
+    @Test
+    public void parallelRun_isBitIdenticalToSequential() throws Exception {
+        File input = drifting(50_000);
+        File reference = new File(folder.getRoot(), "reference.wav");
+        cleanup(EffectsChain.DEFAULT_CHUNK_FRAMES).applySequential(input, reference);
+        byte[] expected = Files.readAllBytes(reference.toPath());
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            // Chunks both longer and shorter than the filter history.
+            for (int chunkFrames : new int[]{4096, 777, 250}) {
+                File output = new File(folder.getRoot(), "parallel" + chunkFrames + ".wav");
+                OfflineRenderer.Result result = cleanup(chunkFrames).apply(input, output, pool);
+                assertEquals(50_000, result.frames);
+                assertArrayEquals("chunk " + chunkFrames, expected, Files.readAllBytes(output.toPath()));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void removeDcOffset_centersEightBitVisualizerData() throws Exception {
+        PcmFormat format = new PcmFormat(8000, 1, 8);
+        byte[] pcm = new byte[8000];
+        for (int i = 0; i < pcm.length; i++) {
+            // Unsigned samples around 140 instead of 128.
+            pcm[i] = (byte) (140 + Math.round(50 * Math.sin(2 * Math.PI * 200 * i / 8000.0)));
+        }
+        File output = new File(folder.getRoot(), "centered.wav");
+        new EffectsChain(AudioEffects.removeDcOffset()).apply(write("offset.wav", format, pcm), output);
+
+        byte[] bytes = Files.readAllBytes(output.toPath());
+        long sum = 0;
+        for (int i = WavHeader.SIZE; i < bytes.length; i++) {
+            sum += bytes[i] & 0xFF;
+        }
+        assertEquals(128, (double) sum / pcm.length, 0.5);
+    }
+
+    @Test
+    public void normalize_reachesTargetPeak() throws Exception {
+        File output = new File(folder.getRoot(), "normalized.wav");
+        new EffectsChain(AudioEffects.normalize(-6)).apply(drifting(10_000), output);
+
+        int peak = 0;
+        for (short sample : samples(output)) {
+            peak = Math.max(peak, Math.abs(sample));
+        }
+        assertEquals(32768 * Math.pow(10, -6 / 20.0), peak, 2);
+    }
+
+    @Test
+    public void fades_rampFromAndToSilence() throws Exception {
+        byte[] pcm = new byte[4000 * 4];
+        for (int i = 0; i < pcm.length; i += 2) {
+            pcm[i + 1] = 0x40; // 16384
+        }
+        File output = new File(folder.getRoot(), "faded.wav");
+        new EffectsChain(100, AudioEffects.fadeIn(1000), AudioEffects.fadeOut(1000))
+                .apply(write("flat.wav", STEREO, pcm), output);
+
+        short[] samples = samples(output);
+        assertEquals(0, samples[0]);
+        assertEquals(8192, samples[500 * 2 + 1]);
+        assertEquals(16384, samples[2000 * 2]);
+        assertEquals(0, samples[samples.length - 1]);
+        assertEquals(16384 / 1000, samples[samples.length - 4]);
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FlacWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Tones plus a little noise, so every predictor type gets exercised. */
+    private static byte[] music(PcmFormat format, int frames, double noise, long seed) {
+        Random random = new Random(seed);
+        int bytesPerSample = format.getBytesPerSample();
+        double full = (1 << (format.getBitsPerSample() - 1)) - 1;
+        byte[] pcm = new byte[frames * format.getFrameSize()];
+        int position = 0;
+        for (int f = 0; f < frames; f++) {
+            for (int c = 0; c < format.getChannels(); c++) {
+                double t = (double) f / format.getSampleRate();
+                double value = 0.4 * Math.sin(2 * Math.PI * 440 * t + c) + 0.2 * Math.sin(2 * Math.PI * 1250 * t)
+                        + noise * random.nextGaussian();
+                int sample = (int) Math.max(-full - 1, Math.min(full, Math.round(value * full)));
+                if (bytesPerSample == 1) {
+                    pcm[position++] = (byte) (sample + 128);
+                } else {
+                    for (int b = 0; b < bytesPerSample; b++) {
+                        pcm[position++] = (byte) (sample >> (8 * b));
+                    }
+                }
+            }
+        }
+        return pcm;
+    }
+
+    /** Writes in uneven, frame-misaligned pieces, the way the writer thread hands over batches. */
+    private static void writeInPieces(AudioSink sink, byte[] pcm) throws IOException {
+        int[] pieces = {1, 7, 1000, 4093, 65536};
+        int offset = 0;
+        for (int i = 0; offset < pcm.length; i++) {
+            int length = Math.min(pieces[i % pieces.length], pcm.length - offset);
+            sink.write(pcm, offset, length);
+            offset += length;
+        }
+    }
+
+    private static byte[] decodeAll(PcmDecoder decoder) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[12345 - 12345 % decoder.getFormat().getFrameSize()];
+        int count;
+        while ((count = decoder.read(buffer, 0, buffer.length)) >= 0) {
+            out.write(buffer, 0, count);
+        }
+        decoder.close();
+        return out.toByteArray();
+    }
+
+    private byte[] roundTrip(PcmFormat format, byte[] pcm, int level) throws IOException {
+        File file = folder.newFile("level" + level + "-" + format.getBitsPerSample() + "-" + format.getChannels() + ".flac");
+        FlacWriter writer = new FlacWriter(file, format, level);
+        writeInPieces(writer, pcm);
+        writer.close();
+        assertEquals(pcm.length, writer.getDataBytes());
+        assertEquals(FlacWriter.HEADER_SIZE + writer.getEncodedBytes(), file.length());
+        try (FlacFileDecoder decoder = new FlacFileDecoder(file)) {
+            assertEquals(format, decoder.getFormat());
+            assertEquals(pcm.length / format.getFrameSize(), decoder.getDurationFrames());
+        }
+        return decodeAll(new FlacFileDecoder(file));
+    }
+
+    @Test
+    public void everyLevel_decodesBitExactlyAndMatchesWavPath() throws IOException {
+        PcmFormat format = new PcmFormat(48000, 2, 16);
+        byte[] pcm = music(format, 48000 + 123, 0.01, 1);
+        File wav = folder.newFile("reference.wav");
+        try (WavWriter writer = new WavWriter(wav, format)) {
+            writeInPieces(writer, pcm);
+        }
+        byte[] fromWav = decodeAll(new WavFileDecoder(wav));
+        for (int level = FlacWriter.MIN_LEVEL; level <= FlacWriter.MAX_LEVEL; level++) {
+            assertArrayEquals("Level " + level, fromWav, roundTrip(format, pcm, level));
+        }
+    }
+
+    @Test
+    public void compressesTonalAudioWellBelowWav() throws IOException {
+        PcmFormat format = new PcmFormat(44100, 2, 16);
+        byte[] pcm = music(format, 44100 * 2, 0.001, 2);
+        File fast = folder.newFile("fast.flac");
+        File best = folder.newFile("best.flac");
+        try (FlacWriter writer = new FlacWriter(fast, format, 0)) {
+            writer.write(pcm, 0, pcm.length);
+        }
+        try (FlacWriter writer = new FlacWriter(best, format, FlacWriter.MAX_LEVEL)) {
+            writer.write(pcm, 0, pcm.length);
+        }
+        assertTrue("Level 0 size " + fast.length(), fast.length() < pcm.length * 0.6);
+        assertTrue("Level 8 size " + best.length() + " vs level 0 " + fast.length(), best.length() < fast.length());
+    }
+
+    @Test
+    public void eightAnd24BitExtremes_roundTrip() throws IOException {
+        Random random = new Random(3);
+        PcmFormat eightBit = new PcmFormat(8000, 1, 8);
+        byte[] bytes = new byte[5000];
+        random.nextBytes(bytes);
+        bytes[0] = 0;
+        bytes[1] = (byte) 0xFF;
+        assertArrayEquals(bytes, roundTrip(eightBit, bytes, 5));
+
+        PcmFormat wide = new PcmFormat(96000, 2, 24);
+        byte[] loud = music(wide, 10000, 0.01, 4);
+        // Full-scale square wave segments force the widest side channel values.
+        for (int f = 0; f < 2000; f++) {
+            int left = (f / 50) % 2 == 0 ? 0x7FFFFF : -0x800000;
+            int right = -left - 1;
+            for (int b = 0; b < 3; b++) {
+                loud[f * 6 + b] = (byte) (left >> (8 * b));
+                loud[f * 6 + 3 + b] = (byte) (right >> (8 * b));
+            }
+        }
+        assertArrayEquals(loud, roundTrip(wide, loud, 8));
+    }
+
+    @Test
+    public void streamInfo_holdsSampleCountAndMd5() throws Exception {
+        PcmFormat format = new PcmFormat(22050, 1, 16);
+        byte[] pcm = music(format, 10000, 0.01, 5);
+        File file = folder.newFile("info.flac");
+        try (FlacWriter writer = new FlacWriter(file, format, 5)) {
+            writer.write(pcm, 0, pcm.length);
+        }
+        ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.BIG_ENDIAN);
+        assertEquals(0x664C6143, header.getInt(0));
+        long packed = header.getLong(18);
+        assertEquals(22050, packed >>> 44);
+        assertEquals(10000, packed & 0xFFFFFFFFFL);
+        byte[] md5 = Arrays.copyOfRange(header.array(), 26, 42);
+        assertArrayEquals(MessageDigest.getInstance("MD5").digest(pcm), md5);
+    }
+
+    @Test
+    public void tinyAndEmptyStreams() throws IOException {
+        PcmFormat format = new PcmFormat(48000, 2, 16);
+        byte[] three = music(format, 3, 0.01, 6);
+        assertArrayEquals(three, roundTrip(format, three, 5));
+
+        File empty = folder.newFile("empty.flac");
+        new FlacWriter(empty, format).close();
+        assertEquals(0, decodeAll(new FlacFileDecoder(empty)).length);
+
+        byte[] silence = new byte[4096 * 4 * 3];
+        File quiet = folder.newFile("silence.flac");
+        try (FlacWriter writer = new FlacWriter(quiet, format)) {
+            writer.write(silence, 0, silence.length);
+        }
+        assertTrue(quiet.length() < 100);
+        assertArrayEquals(silence, decodeAll(new FlacFileDecoder(quiet)));
+    }
+}
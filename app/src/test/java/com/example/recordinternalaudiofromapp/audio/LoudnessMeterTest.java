@@ -0,0 +1,201 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LoudnessMeterTest {
+
+    private static final int RATE = 48000;
+    private static final PcmFormat STEREO = PcmFormat.floatFormat(RATE, 2);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Feeds {@code seconds} of a stereo sine with the given peak level, continuing at {@code frame}. */
+    private static long sine(LoudnessMeter meter, double hz, double peakDb, double seconds, long frame) {
+        float amplitude = (float) Math.pow(10, peakDb / 20);
+        float[] block = new float[4800 * 2];
+        long end = frame + Math.round(seconds * RATE);
+        while (frame < end) {
+            int count = (int) Math.min(4800, end - frame);
+            for (int i = 0; i < count; i++) {
+                float value = amplitude * (float) Math.sin(2 * Math.PI * hz * (frame + i) / RATE);
+                block[2 * i] = value;
+                block[2 * i + 1] = value;
+            }
+            meter.addFrames(block, count);
+            frame += count;
+        }
+        return frame;
+    }
+
+    @Test
+    public void steadySine_readsItsLevel() {
+        // EBU Tech 3341 case 1: 1 kHz at -23 dBFS in both channels is -23 LUFS.
+        LoudnessMeter meter = new LoudnessMeter(STEREO);
+        sine(meter, 1000, -23, 20, 0);
+        assertEquals(-23, meter.getMomentaryLufs(), 0.1);
+        assertEquals(-23, meter.getShortTermLufs(), 0.1);
+        assertEquals(-23, meter.getIntegratedLufs(), 0.1);
+        assertEquals(-23, meter.getTruePeakDb(), 0.1);
+    }
+
+    @Test
+    public void relativeGate_ignoresQuietPassages() {
+        // EBU Tech 3341 case 3: 10 s at -36, 60 s at -23, 10 s at -36 dBFS gives -23 LUFS.
+        LoudnessMeter meter = new LoudnessMeter(STEREO);
+        long frame = sine(meter, 1000, -36, 10, 0);
+        frame = sine(meter, 1000, -23, 60, frame);
+        sine(meter, 1000, -36, 10, frame);
+        assertEquals(-23, meter.getIntegratedLufs(), 0.1);
+        assertEquals(-23, meter.getMaxShortTermLufs(), 0.1);
+        // Silence alone never passes the absolute gate.
+        LoudnessMeter silent = new LoudnessMeter(STEREO);
+        silent.addFrames(new float[RATE * 2], RATE);
+        assertEquals(Double.NEGATIVE_INFINITY, silent.getIntegratedLufs(), 0);
+    }
+
+    @Test
+    public void integrated_matchesReferenceGating() {
+        // Noise bursts at varying levels, metered alongside a reference that keeps every block.
+        PcmFormat mono = PcmFormat.floatFormat(RATE, 1);
+        LoudnessMeter meter = new LoudnessMeter(mono);
+        Reference reference = new Reference(RATE);
+        Random random = new Random(3);
+        float[] block = new float[RATE / 4];
+        for (int b = 0; b < 240; b++) {
+            double level = Math.pow(10, (-60 + 55 * random.nextDouble()) / 20);
+            for (int i = 0; i < block.length; i++) {
+                block[i] = (float) (level * random.nextGaussian() / 3);
+            }
+            meter.addFrames(block, block.length);
+            reference.add(block);
+        }
+        assertEquals(reference.integrated(), meter.getIntegratedLufs(), 0.02);
+    }
+
+    @Test
+    public void truePeak_findsInterSamplePeaks() {
+        // A quarter-rate sine sampled 45 degrees off its crests: samples peak 3 dB below the wave.
+        LoudnessMeter meter = new LoudnessMeter(STEREO);
+        float[] block = new float[RATE * 2];
+        for (int i = 0; i < RATE; i++) {
+            float value = 0.5f * (float) Math.sin(Math.PI / 2 * i + Math.PI / 4);
+            block[2 * i] = value;
+            block[2 * i + 1] = value;
+        }
+        meter.addFrames(block, RATE);
+        assertEquals(-6.02, meter.getTruePeakDb(), 0.3);
+    }
+
+    @Test
+    public void wavRecording_carriesItsLoudness() throws Exception {
+        PcmFormat format = new PcmFormat(RATE, 2, 16);
+        File file = new File(folder.getRoot(), "metered.wav");
+        byte[] pcm = new byte[RATE * 5 * 4];
+        for (int i = 0; i < RATE * 5; i++) {
+            short value = (short) (32767 * Math.pow(10, -20 / 20.0) * Math.sin(2 * Math.PI * 1000 * i / RATE));
+            for (int c = 0; c < 2; c++) {
+                pcm[4 * i + 2 * c] = (byte) value;
+                pcm[4 * i + 2 * c + 1] = (byte) (value >> 8);
+            }
+        }
+        LoudnessSink sink = new LoudnessSink(format, new WavWriter(file, format));
+        // Odd-sized writes split frames across calls.
+        for (int offset = 0; offset < pcm.length; offset += 999) {
+            sink.write(pcm, offset, Math.min(999, pcm.length - offset));
+        }
+        sink.close();
+
+        try (WavReader reader = new WavReader(file)) {
+            assertEquals(RATE * 5, reader.getDurationFrames());
+            LoudnessMeter.Result stored = LoudnessMeter.Result.fromChunk(reader.readChunk(LoudnessMeter.Result.CHUNK_ID));
+            assertEquals(-20, stored.integratedLufs, 0.1);
+            assertEquals((float) sink.getResult().truePeakDb, stored.truePeakDb, 0);
+            assertEquals(RATE * 5, stored.frames);
+            assertNull(reader.readChunk("bext"));
+        }
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        try (WavFileDecoder decoder = new WavFileDecoder(file)) {
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = decoder.read(buffer, 0, buffer.length)) >= 0) {
+                decoded.write(buffer, 0, count);
+            }
+        }
+        assertEquals(RATE * 5 * 4, decoded.size());
+        assertEquals(WavHeader.riffSize(RATE * 5 * 4, 8 + LoudnessMeter.Result.CHUNK_SIZE) + 8, file.length());
+        assertNull(LoudnessMeter.Result.fromChunk(ByteBuffer.allocate(4)));
+    }
+
+    /** Straightforward BS.1770-4: K-weighting, every 400 ms block kept, two-pass gating. */
+    private static final class Reference {
+        private final double[] b1 = new double[3], a1 = new double[3], b2 = {1, -2, 1}, a2 = new double[3];
+        private final double[] x1 = new double[2], y1 = new double[2], x2 = new double[2], y2 = new double[2];
+        private final List<Double> squares = new ArrayList<>();
+
+        Reference(int rate) {
+            double k = Math.tan(Math.PI * 1681.974450955533 / rate);
+            double q = 0.7071752369554196;
+            double vh = Math.pow(10, 3.999843853973347 / 20);
+            double vb = Math.pow(vh, 0.4996667741545416);
+            double a0 = 1 + k / q + k * k;
+            b1[0] = (vh + vb * k / q + k * k) / a0;
+            b1[1] = 2 * (k * k - vh) / a0;
+            b1[2] = (vh - vb * k / q + k * k) / a0;
+            a1[1] = 2 * (k * k - 1) / a0;
+            a1[2] = (1 - k / q + k * k) / a0;
+            k = Math.tan(Math.PI * 38.13547087602444 / rate);
+            q = 0.5003270373238773;
+            a0 = 1 + k / q + k * k;
+            a2[1] = 2 * (k * k - 1) / a0;
+            a2[2] = (1 - k / q + k * k) / a0;
+        }
+
+        private static double biquad(double[] b, double[] a, double[] x, double[] y, double in) {
+            double out = b[0] * in + b[1] * x[0] + b[2] * x[1] - a[1] * y[0] - a[2] * y[1];
+            x[1] = x[0];
+            x[0] = in;
+            y[1] = y[0];
+            y[0] = out;
+            return out;
+        }
+
+        void add(float[] samples) {
+            for (float sample : samples) {
+                double weighted = biquad(b2, a2, x2, y2, biquad(b1, a1, x1, y1, sample));
+                squares.add(weighted * weighted);
+            }
+        }
+
+        double integrated() {
+            int block = RATE * 4 / 10;
+            int step = RATE / 10;
+            List<Double> energies = new ArrayList<>();
+            for (int start = 0; start + block <= squares.size(); start += step) {
+                double sum = 0;
+                for (int i = start; i < start + block; i++) {
+                    sum += squares.get(i);
+                }
+                double energy = sum / block;
+                if (-0.691 + 10 * Math.log10(energy) >= -70) {
+                    energies.add(energy);
+                }
+            }
+            double mean = energies.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+            double gate = -0.691 + 10 * Math.log10(mean) - 10;
+            return -0.691 + 10 * Math.log10(energies.stream().mapToDouble(Double::doubleValue)
+                    .filter(e -> -0.691 + 10 * Math.log10(e) >= gate).average().orElse(0));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class OfflineRendererTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static File writeSource(File file, SyntheticCaptureSource generator, long frames) throws IOException {
+        PcmFormat format = generator.getFormat();
+        byte[] block = new byte[4096 * format.getFrameSize()];
+        try (WavWriter writer = new WavWriter(file, format)) {
+            for (long frame = 0; frame < frames; frame += 4096) {
+                int count = (int) Math.min(4096, frames - frame);
+                generator.fill(block, frame, count);
+                writer.write(block, 0, count * format.getFrameSize());
+            }
+        }
+        return file;
+    }
+
+    @Test
+    public void render_copiesDecodedPcmFasterThanRealtime() throws IOException {
+        PcmFormat format = new PcmFormat(44100, 2, 16);
+        long frames = 44100L * 60;
+        SyntheticCaptureSource generator = new SyntheticCaptureSource(format, 4096, 1000, 0, frames);
+        File source = writeSource(folder.newFile("source.wav"), generator, frames);
+        File output = folder.newFile("rendered.wav");
+
+        WavFileDecoder decoder = new WavFileDecoder(source);
+        assertEquals(format, decoder.getFormat());
+        assertEquals(frames, decoder.getDurationFrames());
+        OfflineRenderer.Result result = OfflineRenderer.render(decoder, new WavWriter(output, decoder.getFormat()));
+
+        assertEquals(frames, result.frames);
+        assertEquals(60.0, result.audioSeconds, 1e-9);
+        assertTrue(result.toString(), result.getRealtimeMultiple() > 1);
+        assertArrayEquals(Files.readAllBytes(source.toPath()), Files.readAllBytes(output.toPath()));
+    }
+
+    @Test
+    public void decoder_readsCanonicalHeaderAndSkipsUnknownChunks() throws IOException {
+        ByteBuffer wav = ByteBuffer.allocate(12 + 8 + 6 + 24 + 8 + 8).order(ByteOrder.LITTLE_ENDIAN);
+        wav.put("RIFF".getBytes()).putInt(wav.capacity() - 8).put("WAVE".getBytes());
+        wav.put("LIST".getBytes()).putInt(5).put(new byte[]{1, 2, 3, 4, 5, 0});
+        wav.put("fmt ".getBytes()).putInt(16).putShort((short) 1).putShort((short) 1)
+                .putInt(8000).putInt(16000).putShort((short) 2).putShort((short) 16);
+        wav.put("data".getBytes()).putInt(8).putShort((short) 1).putShort((short) -2)
+                .putShort((short) 3).putShort((short) -4);
+
+        try (WavFileDecoder decoder = new WavFileDecoder(new ByteArrayInputStream(wav.array()))) {
+            assertEquals(new PcmFormat(8000, 1, 16), decoder.getFormat());
+            byte[] samples = new byte[16];
+            assertEquals(8, decoder.read(samples, 0, samples.length));
+            assertArrayEquals(new byte[]{1, 0, -2, -1, 3, 0, -4, -1}, Arrays.copyOf(samples, 8));
+            assertEquals(-1, decoder.read(samples, 0, samples.length));
+        }
+    }
+}
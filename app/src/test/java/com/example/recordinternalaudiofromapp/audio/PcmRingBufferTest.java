@@ -0,0 +1,128 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PcmRingBufferTest {
+
+    private static byte patternByte(long position) {
+        return (byte) (position * 31 + (position >>> 8));
+    }
+
+    @Test
+    public void capacity_isRoundedUpToPowerOfTwo() {
+        assertEquals(1024, new PcmRingBuffer(1000).capacity());
+        assertEquals(4096, new PcmRingBuffer(4096).capacity());
+    }
+
+    @Test
+    public void write_dropsWholeBlockWhenFull() {
+        PcmRingBuffer ring = new PcmRingBuffer(64);
+        byte[] block = new byte[40];
+        assertTrue(ring.write(block, 0, block.length));
+        assertFalse(ring.write(block, 0, block.length));
+        assertEquals(1, ring.getOverrunCount());
+        assertEquals(40, ring.getDroppedBytes());
+        assertEquals(40, ring.available());
+        assertTrue(ring.write(block, 0, 24));
+        assertEquals(64, ring.getHighWaterMark());
+    }
+
+    @Test
+    public void readAndWrite_wrapAroundTheEnd() {
+        PcmRingBuffer ring = new PcmRingBuffer(16);
+        byte[] in = new byte[12];
+        byte[] out = new byte[12];
+        long position = 0;
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < in.length; i++) {
+                in[i] = patternByte(position + i);
+            }
+            assertTrue(ring.write(in, 0, in.length));
+            assertEquals(in.length, ring.read(out, 0, out.length));
+            assertArrayEquals(in, out);
+            position += in.length;
+        }
+        assertEquals(0, ring.read(out, 0, out.length));
+    }
+
+    @Test
+    public void heavyProducerLoad_consumerSeesAcceptedBytesInOrder() throws Exception {
+        final PcmRingBuffer ring = new PcmRingBuffer(1 << 14);
+        final long totalToAccept = 8L << 20;
+        Thread producer = new Thread(() -> {
+            Random random = new Random(42);
+            byte[] block = new byte[4096];
+            long accepted = 0;
+            while (accepted < totalToAccept) {
+                int length = 1 + random.nextInt(block.length);
+                for (int i = 0; i < length; i++) {
+                    block[i] = patternByte(accepted + i);
+                }
+                if (ring.write(block, 0, length)) {
+                    accepted += length;
+                }
+            }
+        });
+
+        producer.start();
+        byte[] batch = new byte[8192];
+        long consumed = 0;
+        while (producer.isAlive() || ring.available() > 0) {
+            int count = ring.read(batch, 0, batch.length);
+            for (int i = 0; i < count; i++) {
+                if (batch[i] != patternByte(consumed + i)) {
+                    fail("Corrupt byte at position " + (consumed + i));
+                }
+            }
+            consumed += count;
+        }
+        producer.join();
+
+        assertEquals(ring.getTotalWritten(), consumed);
+        assertTrue(consumed >= totalToAccept);
+        assertTrue(ring.getHighWaterMark() <= ring.capacity());
+    }
+
+    @Test
+    public void writerThread_drainsEverythingBeforeFinishing() throws IOException {
+        PcmRingBuffer ring = new PcmRingBuffer(1 << 16);
+        final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        PcmWriterThread writer = new PcmWriterThread(ring, new AudioSink() {
+            @Override
+            public void write(byte[] data, int offset, int length) {
+                sink.write(data, offset, length);
+            }
+
+            @Override
+            public void close() {
+            }
+        }, 1024);
+        writer.start();
+
+        byte[] block = new byte[1000];
+        long position = 0;
+        for (int n = 0; n < 500; n++) {
+            for (int i = 0; i < block.length; i++) {
+                block[i] = patternByte(position + i);
+            }
+            while (!ring.write(block, 0, block.length)) {
+                Thread.yield();
+            }
+            position += block.length;
+        }
+        writer.finish();
+
+        byte[] written = sink.toByteArray();
+        assertEquals(position, written.length);
+        assertEquals(position, writer.getBytesWritten());
+        for (int i = 0; i < written.length; i++) {
+            assertEquals(patternByte(i), written[i]);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PeakPyramidTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static float[] noise(int frames, int channels, long seed) {
+        Random random = new Random(seed);
+        float[] samples = new float[frames * channels];
+        for (int i = 0; i < samples.length; i++) {
+            // Louder towards the end so every column has a distinct envelope.
+            samples[i] = (float) (random.nextGaussian() * 0.2 * (i + 1) / samples.length);
+            samples[i] = Math.max(-1f, Math.min(1f, samples[i]));
+        }
+        return samples;
+    }
+
+    private static short[] bruteForce(float[] samples, int channels, long from, long to) {
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        double squares = 0;
+        for (long i = from * channels; i < to * channels; i++) {
+            min = Math.min(min, samples[(int) i]);
+            max = Math.max(max, samples[(int) i]);
+            squares += samples[(int) i] * samples[(int) i];
+        }
+        float rms = (float) Math.sqrt(squares / ((to - from) * channels));
+        return new short[]{PeakPyramidBuilder.quantize(min), PeakPyramidBuilder.quantize(max),
+                PeakPyramidBuilder.quantize(rms)};
+    }
+
+    @Test
+    public void everyLevel_matchesBruteForce() {
+        int channels = 2;
+        int frames = 100_000;
+        float[] samples = noise(frames, channels, 1);
+        PeakPyramidBuilder builder = new PeakPyramidBuilder(PcmFormat.floatFormat(48000, channels));
+        // Uneven blocks, as the capture callback delivers them.
+        float[] block = new float[777 * channels];
+        for (int frame = 0; frame < frames; frame += 777) {
+            int count = Math.min(777, frames - frame);
+            System.arraycopy(samples, frame * channels, block, 0, count * channels);
+            builder.addFrames(block, count);
+        }
+        builder.finish();
+
+        int levels = builder.getLevelCount();
+        assertEquals(1, builder.getEntryCount(levels - 1));
+        for (int level = 0; level < levels; level++) {
+            long span = PeakPyramidBuilder.framesPerEntry(level);
+            assertEquals((frames + span - 1) / span, builder.getEntryCount(level));
+            short[] entries = builder.getEntries(level);
+            for (int entry = 0; entry < builder.getEntryCount(level); entry++) {
+                long from = entry * span;
+                short[] expected = bruteForce(samples, channels, from, Math.min(frames, from + span));
+                assertEquals(expected[0], entries[3 * entry]);
+                assertEquals(expected[1], entries[3 * entry + 1]);
+                assertEquals(expected[2], entries[3 * entry + 2], 1);
+            }
+        }
+    }
+
+    @Test
+    public void sidecar_readsAnyZoomLevelFromTheMappedFile() throws Exception {
+        PcmFormat format = new PcmFormat(48000, 1, 16);
+        int frames = 48000 * 60;
+        File wav = folder.newFile("long.wav");
+        File peaks = PeakFile.fileFor(wav);
+        float[] samples = noise(frames, 1, 2);
+        byte[] pcm = new byte[frames * 2];
+        for (int i = 0; i < frames; i++) {
+            short value = (short) Math.round(samples[i] * 32767);
+            samples[i] = value / 32768f;
+            pcm[2 * i] = (byte) value;
+            pcm[2 * i + 1] = (byte) (value >> 8);
+        }
+        try (PeakSink sink = new PeakSink(format, peaks, new WavWriter(wav, format))) {
+            // Odd-sized writes split frames across calls.
+            for (int offset = 0; offset < pcm.length; offset += 4099) {
+                sink.write(pcm, offset, Math.min(4099, pcm.length - offset));
+            }
+        }
+
+        assertEquals(new File(folder.getRoot(), "long.wav.peaks"), peaks);
+        assertTrue(peaks.length() < pcm.length / 50);
+        try (PeakFile file = new PeakFile(peaks)) {
+            assertEquals(48000, file.getSampleRate());
+            assertEquals(frames, file.getTotalFrames());
+            int columns = 1000;
+            short[] min = new short[columns];
+            short[] max = new short[columns];
+            short[] rms = new short[columns];
+            for (long[] range : new long[][]{{0, frames}, {frames / 3, frames / 3 + 48000}, {1000, 1000 + 5 * columns}}) {
+                assertEquals(columns, file.read(range[0], range[1], columns, min, max, rms));
+                double framesPerColumn = (double) (range[1] - range[0]) / columns;
+                for (int column = 0; column < columns; column += 97) {
+                    long from = range[0] + (long) (column * framesPerColumn);
+                    long to = range[0] + (long) ((column + 1) * framesPerColumn);
+                    short[] exact = bruteForce(samples, 1, from, to);
+                    // Columns snap outwards to entry boundaries, so they can only be wider.
+                    assertTrue(min[column] <= exact[0]);
+                    assertTrue(max[column] >= exact[1]);
+                    assertTrue(rms[column] > 0);
+                }
+            }
+
+            // Past the end of the recording nothing is filled.
+            assertEquals(0, file.read(frames + 10, frames + 1000, 10, min, max, rms));
+        }
+    }
+
+    @Test
+    public void emptyAndTinyRecordings() throws Exception {
+        File empty = folder.newFile("empty.peaks");
+        new PeakPyramidBuilder(new PcmFormat(8000, 1, 8)).writeTo(empty);
+        try (PeakFile file = new PeakFile(empty)) {
+            assertEquals(0, file.getLevelCount());
+            assertEquals(0, file.read(0, 100, 10, new short[10], new short[10], new short[10]));
+        }
+
+        PeakPyramidBuilder tiny = new PeakPyramidBuilder(new PcmFormat(8000, 1, 8));
+        tiny.add(new byte[]{(byte) 0, (byte) 255, (byte) 128}, 0, 3);
+        File tinyFile = folder.newFile("tiny.peaks");
+        tiny.writeTo(tinyFile);
+        try (PeakFile file = new PeakFile(tinyFile)) {
+            assertEquals(1, file.getLevelCount());
+            short[] min = new short[1];
+            short[] max = new short[1];
+            assertEquals(1, file.read(0, 3, 1, min, max, new short[1]));
+            assertEquals(-32767, min[0]);
+            assertEquals(PeakPyramidBuilder.quantize(127 / 128f), max[0]);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws Exception {
+        File wav = folder.newFile("not.peaks");
+        new WavWriter(wav, new PcmFormat(8000, 1, 8)).close();
+        new PeakFile(wav).close();
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class PolyphaseResamplerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static float[] sine(int rate, double frequency, int frames) {
+        float[] samples = new float[frames];
+        for (int i = 0; i < frames; i++) {
+            samples[i] = (float) (0.5 * Math.sin(2 * Math.PI * frequency * i / rate));
+        }
+        return samples;
+    }
+
+    /** Resamples a whole signal in blocks of {@code block} frames, including the tail. */
+    private static float[] resample(PolyphaseResampler resampler, float[] input, int block) {
+        float[] output = new float[resampler.maxOutputFrames(input.length) + resampler.maxOutputFrames(0)];
+        float[] scratch = new float[resampler.maxOutputFrames(block)];
+        int written = 0;
+        for (int offset = 0; offset < input.length; offset += block) {
+            int produced = resampler.process(input, offset, Math.min(block, input.length - offset), scratch);
+            System.arraycopy(scratch, 0, output, written, produced);
+            written += produced;
+        }
+        int produced = resampler.flush(scratch);
+        System.arraycopy(scratch, 0, output, written, produced);
+        return Arrays.copyOf(output, written + produced);
+    }
+
+    @Test
+    public void upsample44100To48000_matchesIdealSine() {
+        PolyphaseResampler resampler = new PolyphaseResampler(44100, 48000, 1, PolyphaseResampler.Quality.HIGH, 1024);
+        float[] output = resample(resampler, sine(44100, 1000, 44100), 1024);
+
+        assertEquals(48000, output.length);
+        float[] expected = sine(48000, 1000, 48000);
+        double maxError = 0;
+        // Skip the edges, where the signal starts and stops abruptly.
+        for (int i = 100; i < output.length - 100; i++) {
+            maxError = Math.max(maxError, Math.abs(output[i] - expected[i]));
+        }
+        assertTrue("Max error " + maxError, maxError < 1e-3);
+    }
+
+    @Test
+    public void downsample48000To44100_keepsFrameCountAndPassband() {
+        PolyphaseResampler resampler = new PolyphaseResampler(48000, 44100, 1, PolyphaseResampler.Quality.BALANCED, 480);
+        float[] output = resample(resampler, sine(48000, 440, 48000), 480);
+
+        assertEquals(44100, output.length);
+        float[] expected = sine(44100, 440, 44100);
+        for (int i = 200; i < output.length - 200; i++) {
+            assertEquals("Frame " + i, expected[i], output[i], 5e-3);
+        }
+    }
+
+    @Test
+    public void output_doesNotDependOnBlockSize() {
+        float[] input = sine(22050, 3000, 5000);
+        float[] whole = resample(new PolyphaseResampler(22050, 48000, 1, PolyphaseResampler.Quality.FAST, 5000), input, 5000);
+        float[] pieces = resample(new PolyphaseResampler(22050, 48000, 1, PolyphaseResampler.Quality.FAST, 5000), input, 37);
+        assertArrayEquals(whole, pieces, 0);
+    }
+
+    @Test
+    public void stereoChannels_stayIndependent() {
+        PolyphaseResampler resampler = new PolyphaseResampler(32000, 48000, 2, PolyphaseResampler.Quality.BALANCED, 256);
+        float[] input = new float[2 * 3200];
+        for (int i = 0; i < 3200; i++) {
+            input[2 * i] = 0.25f;
+            input[2 * i + 1] = -0.5f;
+        }
+        float[] output = new float[2 * resampler.maxOutputFrames(256)];
+        int checked = 0;
+        for (int offset = 0; offset < 3200; offset += 256) {
+            int produced = resampler.process(input, 2 * offset, Math.min(256, 3200 - offset), output);
+            for (int i = 0; i < produced; i++) {
+                if (offset > 0) {
+                    assertEquals(0.25f, output[2 * i], 1e-4);
+                    assertEquals(-0.5f, output[2 * i + 1], 1e-4);
+                    checked++;
+                }
+            }
+        }
+        assertTrue(checked > 4000);
+        assertTrue(resampler.getNanosPerAudioSecond() > 0);
+    }
+
+    @Test
+    public void resamplingSink_writes48kWav() throws IOException {
+        File file = folder.newFile("resampled.wav");
+        PcmFormat in = new PcmFormat(44100, 1, 8);
+        PcmFormat out = new PcmFormat(48000, 2, 16);
+        byte[] block = new byte[441];
+        for (int i = 0; i < block.length; i++) {
+            block[i] = (byte) (128 + 64 * Math.sin(2 * Math.PI * i / 44.1));
+        }
+        try (ResamplingSink sink = new ResamplingSink(in, out, PolyphaseResampler.Quality.BALANCED, 1000, new WavWriter(file, out))) {
+            for (int i = 0; i < 100; i++) {
+                sink.write(block, 0, 200);
+                sink.write(block, 200, 241);
+            }
+        }
+        try (WavFileDecoder decoder = new WavFileDecoder(file)) {
+            assertEquals(out, decoder.getFormat());
+            assertEquals(48000, decoder.getDurationFrames());
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class RecorderManagerTest {
+
+    private static final PcmFormat FORMAT = new PcmFormat(48000, 2, 16);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Accepts writes slowly, like a saturated device. */
+    private static final class SlowSink implements AudioSink {
+        long bytes;
+
+        @Override
+        public void write(byte[] data, int offset, int length) {
+            bytes += length;
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /** Records {@code sessions} paced sources of {@code frames} each at once. */
+    private void record(RecorderManager manager, int sessions, long frames, List<File> files) throws Exception {
+        List<SyntheticCaptureSource> sources = new ArrayList<>();
+        List<RecorderManager.Session> running = new ArrayList<>();
+        for (int i = 0; i < sessions; i++) {
+            SyntheticCaptureSource source = new SyntheticCaptureSource(FORMAT, 960, 220 + 110 * i, 50, frames);
+            sources.add(source);
+            running.add(manager.start(source, "track", RecorderManager.Backpressure.DROP));
+        }
+        for (int i = 0; i < sessions; i++) {
+            sources.get(i).awaitCompletion();
+            RecorderManager.Session session = running.get(i);
+            session.stop();
+            assertEquals(0, session.getRingBuffer().getOverrunCount());
+            assertEquals(frames * FORMAT.getFrameSize(), session.getMetrics().snapshot().writtenBytes);
+            files.add(session.getFile());
+        }
+    }
+
+    @Test
+    public void concurrentSessions_eachGetTheirOwnCompleteFile() throws Exception {
+        RecorderManager manager = new RecorderManager(folder.getRoot(), 2);
+        List<File> files = new ArrayList<>();
+        // Throughput is measured by RecorderManagerBenchmark; this only checks correctness.
+        long frames = 48000L / 2;
+        record(manager, 1, frames, files);
+        record(manager, 6, frames, files);
+        manager.shutdown();
+
+        assertEquals(7 * frames * FORMAT.getFrameSize(), manager.getBytesWritten());
+        Set<File> unique = new HashSet<>(files);
+        assertEquals(7, unique.size());
+        assertTrue(unique.contains(new File(folder.getRoot(), "track-001.wav")));
+        assertTrue(unique.contains(new File(folder.getRoot(), "track-007.wav")));
+        for (int i = 0; i < files.size(); i++) {
+            try (WavReader reader = new WavReader(files.get(i))) {
+                assertEquals(frames, reader.getDurationFrames());
+            }
+            assertFalse(RecordingJournal.fileFor(files.get(i)).exists());
+        }
+        // Every file holds its own session's tone.
+        SyntheticCaptureSource third = new SyntheticCaptureSource(FORMAT, 960, 220 + 110 * 2, 0, 0);
+        try (WavReader reader = new WavReader(files.get(3))) {
+            byte[] frame = new byte[4];
+            for (long at = 0; at < frames; at += 4999) {
+                reader.read(at, frame, 0, 1);
+                assertEquals(third.sampleAt(at, 0), (short) ((frame[0] & 0xFF) | frame[1] << 8));
+            }
+        }
+    }
+
+    @Test
+    public void slowSession_onlyBacksUpItself() throws Exception {
+        RecorderManager manager = new RecorderManager(folder.getRoot(), 1, 4096, SyncPolicy.NONE);
+        // Fills its 16 KB ring far faster than the sink drains it.
+        SyntheticCaptureSource flood = new SyntheticCaptureSource(FORMAT, 1024, 440, 0, 48000);
+        RecorderManager.Session slow = manager.start(flood, new SlowSink(), null,
+                RecorderManager.Backpressure.DROP, 16 * 1024);
+        SyntheticCaptureSource paced = new SyntheticCaptureSource(FORMAT, 480, 440, 10, 48000);
+        RecorderManager.Session normal = manager.start(paced, "paced", RecorderManager.Backpressure.DROP);
+        paced.awaitCompletion();
+        flood.awaitCompletion();
+        normal.stop();
+        slow.stop();
+        manager.shutdown();
+
+        assertTrue(slow.getRingBuffer().getOverrunCount() > 0);
+        assertEquals(0, normal.getRingBuffer().getOverrunCount());
+        assertEquals(48000L * 4, normal.getMetrics().snapshot().writtenBytes);
+    }
+
+    @Test
+    public void blockingBackpressure_losesNothing() throws Exception {
+        RecorderManager manager = new RecorderManager(folder.getRoot(), 1, 4096, SyncPolicy.NONE);
+        SlowSink sink = new SlowSink();
+        // Unpaced, with a ring that holds only a few blocks: the source has to wait for the writer.
+        SyntheticCaptureSource source = new SyntheticCaptureSource(FORMAT, 1024, 440, 0, 1024 * 20);
+        RecorderManager.Session session = manager.start(source, sink, null,
+                RecorderManager.Backpressure.BLOCK, 8192);
+        source.awaitCompletion();
+        session.stop();
+        manager.shutdown();
+
+        assertEquals(0, session.getRingBuffer().getOverrunCount());
+        assertEquals(1024 * 20 * 4, sink.bytes);
+        assertTrue(manager.getSessions().isEmpty());
+    }
+
+    @Test
+    public void failingSink_isReportedAndTheWriterKeepsServingOthers() throws Exception {
+        RecorderManager manager = new RecorderManager(folder.getRoot(), 1, 4096, SyncPolicy.NONE);
+        AudioSink broken = new AudioSink() {
+            @Override
+            public void write(byte[] data, int offset, int length) {
+                throw new IllegalStateException("broken");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        SyntheticCaptureSource first = new SyntheticCaptureSource(FORMAT, 480, 440, 0, 4800);
+        RecorderManager.Session failing = manager.start(first, broken, null,
+                RecorderManager.Backpressure.BLOCK, 8192);
+        SyntheticCaptureSource second = new SyntheticCaptureSource(FORMAT, 480, 440, 0, 4800);
+        RecorderManager.Session healthy = manager.start(second, "healthy", RecorderManager.Backpressure.BLOCK);
+        first.awaitCompletion();
+        second.awaitCompletion();
+        healthy.stop();
+        try {
+            failing.stop();
+            fail("The sink's failure must be reported");
+        } catch (IOException expected) {
+            assertTrue(expected.getCause() instanceof IllegalStateException);
+        }
+        manager.shutdown();
+
+        assertEquals(4800L * 4, healthy.getMetrics().snapshot().writtenBytes);
+    }
+
+    @Test
+    public void reserveFile_skipsExistingNames() throws IOException {
+        File directory = folder.getRoot();
+        assertTrue(new File(directory, "take-001.wav").createNewFile());
+        assertEquals(new File(directory, "take-002.wav"), RecorderManager.reserveFile(directory, "take", ".wav"));
+        assertEquals(new File(directory, "take-003.wav"), RecorderManager.reserveFile(directory, "take", ".wav"));
+        assertEquals(new File(directory, "take-001.flac"), RecorderManager.reserveFile(directory, "take", ".flac"));
+    }
+
+    @Test
+    public void shutdown_stopsRunningSessionsAndRejectsNewOnes() throws Exception {
+        RecorderManager manager = new RecorderManager(folder.getRoot(), 2);
+        RecorderManager.Session session = manager.start(
+                new SyntheticCaptureSource(FORMAT, 480, 440, 20, -1), "open", RecorderManager.Backpressure.DROP);
+        Thread.sleep(50);
+        manager.shutdown();
+        manager.shutdown();
+
+        assertTrue(manager.getSessions().isEmpty());
+        assertFalse(RecordingJournal.fileFor(session.getFile()).exists());
+        try (WavReader reader = new WavReader(session.getFile())) {
+            assertTrue(reader.getDurationFrames() > 0);
+        }
+        try {
+            manager.start(new SyntheticCaptureSource(FORMAT, 480, 440, 0, 0), "late", RecorderManager.Backpressure.DROP);
+            fail("Start after shutdown must be rejected");
+        } catch (IllegalStateException expected) {
+            // The file reserved for it is removed again.
+        }
+        assertFalse(new File(folder.getRoot(), "late-001.wav").exists());
+        assertFalse(RecordingJournal.fileFor(new File(folder.getRoot(), "late-001.wav")).exists());
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RecordingCatalogTest {
+
+    private static final PcmFormat FORMAT = new PcmFormat(48000, 2, 16);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static RecordingCatalog.Entry entry(String name, long frames) {
+        return new RecordingCatalog.Entry(name, FORMAT, frames, frames * 4 + WavHeader.SIZE, 1_700_000_000_000L + frames,
+                new LoudnessMeter.Result(-14.25, -9.5, -11.75, -1.5, frames));
+    }
+
+    private File writeWav(String name, int frames, boolean withLoudness) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        try (WavWriter writer = new WavWriter(file, FORMAT)) {
+            byte[] block = new byte[frames * 4];
+            new SyntheticCaptureSource(FORMAT, frames, 440, 0, frames).fill(block, 0, frames);
+            writer.write(block, 0, block.length);
+            if (withLoudness) {
+                writer.addChunk(LoudnessMeter.Result.CHUNK_ID,
+                        new LoudnessMeter.Result(-20, -15, -17, -3, frames).toChunk());
+            }
+        }
+        return file;
+    }
+
+    @Test
+    public void entries_surviveReopening() throws IOException {
+        RecordingCatalog catalog = new RecordingCatalog(folder.getRoot());
+        assertEquals(0, catalog.size());
+        catalog.add(entry("a.wav", 1000));
+        catalog.add(entry("b.wav", 2000));
+        catalog.add(entry("a.wav", 3000));
+        catalog.remove("b.wav");
+        catalog.remove("missing.wav");
+
+        RecordingCatalog reopened = new RecordingCatalog(folder.getRoot());
+        List<RecordingCatalog.Entry> entries = reopened.getEntries();
+        assertEquals(1, entries.size());
+        RecordingCatalog.Entry a = entries.get(0);
+        assertEquals("a.wav", a.name);
+        assertEquals(FORMAT, a.format);
+        assertEquals(3000, a.frames);
+        assertEquals(3000 * 4 + WavHeader.SIZE, a.sizeBytes);
+        assertEquals(1_700_000_000_000L + 3000, a.lastModifiedMillis);
+        assertEquals(-14.25, a.loudness.integratedLufs, 0);
+        assertEquals(-1.5, a.loudness.truePeakDb, 0);
+        assertEquals(62, a.getDurationMillis());
+        assertNull(reopened.get("b.wav"));
+        assertFalse(reopened.wasRebuilt());
+    }
+
+    @Test
+    public void missingCatalog_isRebuiltFromTheDirectory() throws IOException {
+        writeWav("one.wav", 4800, true);
+        writeWav("two.wav", 9600, false);
+        // Still being written: not a finished recording yet.
+        File open = new File(folder.getRoot(), "open.wav");
+        WavWriter writer = new WavWriter(open, FORMAT, SyncPolicy.everyMegabytes(1));
+        writer.write(new byte[400], 0, 400);
+        assertTrue(new File(folder.getRoot(), "notes.txt").createNewFile());
+
+        RecordingCatalog catalog = new RecordingCatalog(folder.getRoot());
+        List<RecordingCatalog.Entry> entries = catalog.getEntries();
+        assertTrue(catalog.wasRebuilt());
+        assertEquals(2, entries.size());
+        assertEquals("one.wav", entries.get(0).name);
+        assertEquals(4800, entries.get(0).frames);
+        assertEquals(-20, entries.get(0).loudness.integratedLufs, 0);
+        assertEquals(9600, entries.get(1).frames);
+        assertNull(entries.get(1).loudness);
+        assertTrue(catalog.getFile().exists());
+
+        writer.close();
+        assertEquals(100, catalog.update(open).frames);
+        assertTrue(open.delete());
+        assertNull(catalog.update(open));
+        assertEquals(2, new RecordingCatalog(folder.getRoot()).size());
+    }
+
+    @Test
+    public void tornLastRecord_isDroppedAndOverwritten() throws IOException {
+        RecordingCatalog catalog = new RecordingCatalog(folder.getRoot());
+        catalog.add(entry("a.wav", 1000));
+        catalog.add(entry("b.wav", 2000));
+        // A crash halfway through the second append.
+        try (RandomAccessFile file = new RandomAccessFile(catalog.getFile(), "rw")) {
+            file.setLength(RecordingCatalog.HEADER_SIZE + RecordingCatalog.RECORD_SIZE + 50);
+        }
+
+        RecordingCatalog reopened = new RecordingCatalog(folder.getRoot());
+        assertEquals(1, reopened.size());
+        assertFalse(reopened.wasRebuilt());
+        reopened.add(entry("c.wav", 3000));
+        assertEquals(RecordingCatalog.HEADER_SIZE + 2 * RecordingCatalog.RECORD_SIZE, catalog.getFile().length());
+        assertEquals(2, new RecordingCatalog(folder.getRoot()).size());
+    }
+
+    @Test
+    public void damagedRecord_rebuildsFromTheDirectory() throws IOException {
+        writeWav("kept.wav", 480, true);
+        RecordingCatalog catalog = new RecordingCatalog(folder.getRoot());
+        catalog.add(entry("a.wav", 1000));
+        catalog.add(entry("b.wav", 2000));
+        try (RandomAccessFile file = new RandomAccessFile(catalog.getFile(), "rw")) {
+            file.seek(RecordingCatalog.HEADER_SIZE + 20);
+            file.write(0x7F);
+        }
+
+        RecordingCatalog reopened = new RecordingCatalog(folder.getRoot());
+        List<RecordingCatalog.Entry> entries = reopened.getEntries();
+        assertTrue(reopened.wasRebuilt());
+        assertEquals(1, entries.size());
+        assertEquals("kept.wav", entries.get(0).name);
+    }
+
+    @Test
+    public void supersededRecords_areCompactedAway() throws IOException {
+        RecordingCatalog catalog = new RecordingCatalog(folder.getRoot());
+        for (int i = 0; i < 200; i++) {
+            catalog.add(entry("take.wav", i + 1));
+        }
+        // Far fewer than 200 records: compaction ran along the way.
+        assertTrue(catalog.getFile().length() <= RecordingCatalog.HEADER_SIZE + 65L * RecordingCatalog.RECORD_SIZE);
+        // An interrupted compaction leaves only a temporary file, which is ignored.
+        assertTrue(new File(folder.getRoot(), RecordingCatalog.FILE_NAME + ".tmp").createNewFile());
+
+        RecordingCatalog reopened = new RecordingCatalog(folder.getRoot());
+        assertEquals(200, reopened.get("take.wav").frames);
+        assertEquals(1, reopened.size());
+        assertFalse(new File(folder.getRoot(), RecordingCatalog.FILE_NAME + ".tmp").exists());
+        reopened.compact();
+        assertEquals(RecordingCatalog.HEADER_SIZE + RecordingCatalog.RECORD_SIZE, catalog.getFile().length());
+    }
+
+    @Test
+    public void tenThousandEntries_roundTrip() throws IOException {
+        RecordingCatalog catalog = new RecordingCatalog(folder.getRoot());
+        List<RecordingCatalog.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            entries.add(entry(String.format("recording_%05d.wav", i), 48000L * (i + 1)));
+        }
+        catalog.addAll(entries);
+        assertEquals(RecordingCatalog.HEADER_SIZE + 10_000L * RecordingCatalog.RECORD_SIZE, catalog.getFile().length());
+
+        // Load time is measured by RecordingCatalogBenchmark.
+        RecordingCatalog reopened = new RecordingCatalog(folder.getRoot());
+        assertEquals(10_000, reopened.size());
+        assertFalse(reopened.wasRebuilt());
+        assertEquals("recording_00000.wav", reopened.getEntries().get(0).name);
+        assertEquals(48000L * 10_000, reopened.get("recording_09999.wav").frames);
+    }
+}
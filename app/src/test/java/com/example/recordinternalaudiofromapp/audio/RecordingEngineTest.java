@@ -0,0 +1,216 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RecordingEngineTest {
+
+    private static final PcmFormat FORMAT = new PcmFormat(48000, 2, 16);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final class Events implements RecordingEngine.Listener {
+        final List<RecordingEngine.State> states = Collections.synchronizedList(new ArrayList<>());
+        final BlockingQueue<String> notices = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onStateChanged(RecordingEngine.State state) {
+            states.add(state);
+        }
+
+        @Override
+        public void onNotice(String message, Throwable error) {
+            notices.add(error == null ? message : "ERROR " + message);
+        }
+    }
+
+    @Test
+    public void singleFile_recordsMetersAndReports() throws Exception {
+        File directory = folder.getRoot();
+        Events events = new Events();
+        RecordingEngine engine = new RecordingEngine(directory, events);
+        SyntheticCaptureSource source = new SyntheticCaptureSource(FORMAT, 480, 1000, 0, 48000 * 3);
+        engine.start(source, new RecordingEngine.Options("song").withCleanUp(true), new AudioMetrics());
+        assertEquals(RecordingEngine.State.RECORDING, engine.getState());
+        assertNotNull(engine.getLoudnessMeter());
+        assertFalse(engine.isReplayAvailable());
+        source.awaitCompletion();
+
+        RecordingEngine.Report report = engine.stop();
+        assertNull(engine.stop());
+        assertTrue(report.success);
+        assertEquals(new File(directory, "song.wav"), report.file);
+        assertEquals(48000 * 3, report.frames);
+        assertNotNull(report.loudness);
+        assertNull(report.alignment);
+        assertEquals(48000L * 3 * 4, report.metrics.writtenBytes);
+        assertFalse(report.warmStart);
+        assertEquals(List.of(RecordingEngine.State.PREPARED, RecordingEngine.State.RECORDING,
+                RecordingEngine.State.STOPPING, RecordingEngine.State.IDLE), events.states);
+        assertTrue(events.notices.poll(30, TimeUnit.SECONDS).startsWith("Cleaned-up copy saved to song_clean.wav"));
+
+        engine.release();
+        assertTrue(engine.awaitReleased(30, TimeUnit.SECONDS));
+        try (WavReader reader = new WavReader(report.file)) {
+            assertEquals(48000 * 3, reader.getDurationFrames());
+        }
+        assertTrue(PeakFile.fileFor(report.file).exists());
+        assertTrue(AudioMetrics.fileFor(report.file).exists());
+        assertTrue(new File(directory, "song_clean.wav").exists());
+        RecordingCatalog catalog = new RecordingCatalog(directory);
+        assertEquals(48000 * 3, catalog.get("song.wav").frames);
+        assertNotNull(catalog.get("song.wav").loudness);
+        assertEquals(48000 * 3, catalog.get("song_clean.wav").frames);
+        assertFalse(catalog.wasRebuilt());
+    }
+
+    @Test
+    public void replay_savesWhileRecordingAndLeavesNoFileBehind() throws Exception {
+        Events events = new Events();
+        RecordingEngine engine = new RecordingEngine(folder.getRoot(), events);
+        PcmFormat mono = new PcmFormat(44100, 1, 8);
+        SyntheticCaptureSource source = new SyntheticCaptureSource(mono, 1024, 440, 0, 44100 * 5);
+        engine.start(source, new RecordingEngine.Options("song").withMode(RecordingEngine.Mode.REPLAY),
+                new AudioMetrics());
+        assertTrue(engine.isReplayAvailable());
+        source.awaitCompletion();
+        engine.saveReplay();
+        // The writer thread may still be draining the ring, so the saved length is not checked.
+        assertTrue(events.notices.poll(30, TimeUnit.SECONDS).startsWith("Saved last "));
+
+        RecordingEngine.Report report = engine.stop();
+        assertNull(report.file);
+        assertEquals(48000 * 5, report.frames);
+        assertNotNull(report.pipeline);
+        engine.saveReplay();
+        assertEquals("Replay buffer is not running.", events.notices.poll(30, TimeUnit.SECONDS));
+        engine.release();
+        assertTrue(engine.awaitReleased(30, TimeUnit.SECONDS));
+        assertFalse(new File(folder.getRoot(), "song.wav").exists());
+    }
+
+    @Test
+    public void emptyRecording_isDeleted() throws Exception {
+        RecordingEngine engine = new RecordingEngine(folder.getRoot(), new Events());
+        // An earlier take of the same name, which the empty one replaces.
+        engine.getCatalog().add(new RecordingCatalog.Entry("empty.wav", FORMAT, 10, 84, 0, null));
+        engine.start(new SyntheticCaptureSource(FORMAT, 480, 440, 0, 0), new RecordingEngine.Options("empty"),
+                new AudioMetrics());
+        RecordingEngine.Report report = engine.stop();
+        assertTrue(report.success);
+        assertNull(report.file);
+        engine.release();
+        assertTrue(engine.awaitReleased(30, TimeUnit.SECONDS));
+        assertFalse(new File(folder.getRoot(), "empty.wav").exists());
+        assertFalse(PeakFile.fileFor(new File(folder.getRoot(), "empty.wav")).exists());
+        assertEquals(0, engine.getCatalog().size());
+    }
+
+    @Test
+    public void warmStart_takesOverStandbyFileWithoutTouchingTheLastTake() throws Exception {
+        File directory = folder.getRoot();
+        File previous = new File(directory, "song.wav");
+        Files.write(previous.toPath(), new byte[] {1, 2, 3});
+        RecordingEngine engine = new RecordingEngine(directory, new Events());
+        RecordingEngine.Options options = new RecordingEngine.Options("song");
+        SyntheticCaptureSource source = new SyntheticCaptureSource(FORMAT, 480, 440, 0, 48000);
+        engine.prepare(source, options, 2000);
+
+        assertEquals(RecordingEngine.State.PREPARED, engine.getState());
+        File standby = RecordingEngine.standbyFileFor(directory, "song");
+        assertEquals(WavHeader.SIZE + 48000L * 2 * 4, standby.length());
+        assertEquals(3, previous.length());
+        try {
+            engine.prepare(new SyntheticCaptureSource(FORMAT, 480, 440, 0, 0), options, 0);
+            fail("Second prepare must be rejected");
+        } catch (IllegalStateException expected) {
+            // The prepared session is unaffected.
+        }
+
+        AudioMetrics metrics = new AudioMetrics();
+        metrics.markRequested(System.nanoTime());
+        engine.start(metrics);
+        source.awaitCompletion();
+        RecordingEngine.Report report = engine.stop();
+        assertTrue(report.success);
+        assertEquals(48000, report.frames);
+        assertTrue(report.warmStart);
+        assertTrue(report.getTimeToFirstSampleMillis() >= 0);
+        assertFalse(standby.exists());
+        // The unused preallocated tail is trimmed when the header is patched.
+        assertTrue(previous.length() < WavHeader.SIZE + 48000L * 2 * 4);
+        try (WavReader reader = new WavReader(previous)) {
+            assertEquals(48000, reader.getDurationFrames());
+        }
+        engine.release();
+        assertTrue(engine.awaitReleased(30, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void cancel_removesStandbyFileAndKeepsTheLastTake() throws Exception {
+        File directory = folder.getRoot();
+        File previous = new File(directory, "song.wav");
+        Files.write(previous.toPath(), new byte[] {1, 2, 3});
+        Events events = new Events();
+        RecordingEngine engine = new RecordingEngine(directory, events);
+        assertFalse(engine.cancel());
+        engine.prepare(new SyntheticCaptureSource(FORMAT, 480, 440, 0, 0), new RecordingEngine.Options("song"), 1000);
+        assertNull(engine.stop());
+        assertTrue(engine.cancel());
+
+        assertEquals(RecordingEngine.State.IDLE, engine.getState());
+        assertFalse(RecordingEngine.standbyFileFor(directory, "song").exists());
+        assertEquals(3, previous.length());
+        assertEquals(List.of(RecordingEngine.State.PREPARED, RecordingEngine.State.IDLE), events.states);
+
+        // A standby file left by a killed process is cleaned up with the interrupted recordings.
+        WavWriter.preallocate(RecordingEngine.standbyFileFor(directory, "song"), 1000);
+        assertTrue(engine.recoverInterruptedRecordings().isEmpty());
+        assertFalse(RecordingEngine.standbyFileFor(directory, "song").exists());
+        engine.release();
+        assertTrue(engine.awaitReleased(30, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void backToBackSessions_underLoad() throws Exception {
+        // Paced capture at 20x realtime, started and stopped over and over on one engine.
+        Events events = new Events();
+        RecordingEngine engine = new RecordingEngine(folder.getRoot(), events);
+        RecordingEngine.Options options = new RecordingEngine.Options("load")
+                .withMode(RecordingEngine.Mode.SEGMENTED).withMetrics(false);
+        for (int i = 0; i < 10; i++) {
+            SyntheticCaptureSource source = new SyntheticCaptureSource(FORMAT, 480, 440, 20, -1);
+            engine.start(source, options, new AudioMetrics());
+            try {
+                engine.start(new SyntheticCaptureSource(FORMAT, 480, 440, 0, 0), options, new AudioMetrics());
+                fail("Second start must be rejected");
+            } catch (IllegalStateException expected) {
+                // The running session is unaffected.
+            }
+            Thread.sleep(50);
+            RecordingEngine.Report report = engine.stop();
+            assertTrue(report.success);
+            assertEquals(0, report.metrics.droppedBlocks);
+            assertTrue(report.frames > 0);
+            assertEquals(1, report.segments);
+            assertEquals(SegmentedSink.manifestFor(folder.getRoot(), "load"), report.file);
+        }
+        assertEquals(40, events.states.size());
+        engine.release();
+        assertTrue(engine.awaitReleased(30, TimeUnit.SECONDS));
+        assertTrue(events.notices.isEmpty());
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RecordingRecoveryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final PcmFormat FORMAT = new PcmFormat(48000, 2, 16);
+
+    @Test
+    public void journal_roundTripsCheckpoint() throws IOException {
+        File recording = folder.newFile("a.wav");
+        RecordingJournal journal = RecordingJournal.create(recording, FORMAT, WavHeader.SIZE);
+        journal.checkpoint(123456);
+        journal.close();
+
+        RecordingJournal.Checkpoint checkpoint = RecordingJournal.read(RecordingJournal.fileFor(recording));
+        assertNotNull(checkpoint);
+        assertEquals(FORMAT, checkpoint.format);
+        assertEquals(WavHeader.SIZE, checkpoint.headerSize);
+        assertEquals(123456, checkpoint.committedBytes);
+    }
+
+    @Test
+    public void journal_rejectsTornRecord() throws IOException {
+        File recording = folder.newFile("b.wav");
+        RecordingJournal journal = RecordingJournal.create(recording, FORMAT, WavHeader.SIZE);
+        journal.checkpoint(42);
+        journal.close();
+        File journalFile = RecordingJournal.fileFor(recording);
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            file.seek(20);
+            file.write(0x7F);
+        }
+        assertNull(RecordingJournal.read(journalFile));
+    }
+
+    @Test
+    public void closedWriter_leavesNoJournal() throws IOException {
+        File recording = folder.newFile("c.wav");
+        try (WavWriter writer = new WavWriter(recording, FORMAT, SyncPolicy.everyMegabytes(1))) {
+            writer.write(new byte[4000], 0, 4000);
+            assertTrue(RecordingJournal.fileFor(recording).exists());
+        }
+        assertFalse(RecordingJournal.fileFor(recording).exists());
+        assertTrue(RecordingRecovery.recoverAll(folder.getRoot()).isEmpty());
+    }
+
+    @Test
+    public void recoverAll_repairsAbandonedRecording() throws IOException {
+        File recording = folder.newFile("crashed.wav");
+        // Never closed: simulates the process dying mid-recording.
+        WavWriter writer = new WavWriter(recording, FORMAT, SyncPolicy.of(64 * 1024, 1, TimeUnit.SECONDS));
+        byte[] block = new byte[10_000];
+        for (int i = 0; i < block.length; i++) {
+            block[i] = (byte) (i * 7);
+        }
+        for (int i = 0; i < 50; i++) {
+            writer.write(block, 0, block.length);
+        }
+        // A torn trailing frame from a partial write.
+        writer.write(block, 0, 3);
+        // Push the staging buffer to the file without finalizing, as the writer thread would.
+        writer.write(new byte[64 * 1024], 0, 64 * 1024);
+        long onDisk = recording.length() - WavHeader.SIZE;
+        long expected = onDisk - onDisk % FORMAT.getFrameSize();
+
+        List<RecordingRecovery.Result> results = RecordingRecovery.recoverAll(folder.getRoot());
+
+        assertEquals(1, results.size());
+        assertEquals(expected, results.get(0).recoveredBytes);
+        assertTrue(results.get(0).committedBytes > 0);
+        assertFalse(RecordingJournal.fileFor(recording).exists());
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(recording.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(WavHeader.SIZE + expected, bytes.capacity());
+        assertEquals(expected, bytes.getInt(76));
+        assertEquals(bytes.capacity() - 8, bytes.getInt(4));
+        assertEquals(block[1], bytes.get(WavHeader.SIZE + 1));
+    }
+
+    @Test
+    public void preallocatedRecording_recoversCheckpointedAudioOnly() throws IOException {
+        File recording = folder.newFile("warm.wav");
+        File standby = new File(folder.getRoot(), "warm.wav.standby");
+        WavWriter.preallocate(standby, 1_000_000);
+        assertEquals(WavHeader.SIZE + 1_000_000, standby.length());
+
+        // Never closed; checkpoints every 64 KB. The zeros past the last checkpoint are not audio.
+        WavWriter writer = new WavWriter(recording, FORMAT, SyncPolicy.of(64 * 1024, 1, TimeUnit.HOURS), standby);
+        assertFalse(standby.exists());
+        writer.write(new byte[200_000], 0, 200_000);
+        assertEquals(WavHeader.SIZE + 1_000_000, recording.length());
+        RecordingJournal.Checkpoint checkpoint = RecordingJournal.read(RecordingJournal.fileFor(recording));
+        assertTrue(checkpoint.preallocated);
+
+        List<RecordingRecovery.Result> results = RecordingRecovery.recoverAll(folder.getRoot());
+        assertEquals(1, results.size());
+        assertEquals(checkpoint.committedBytes, results.get(0).recoveredBytes);
+        assertEquals(3 * 65536, results.get(0).recoveredBytes);
+        assertEquals(WavHeader.SIZE + 3 * 65536, recording.length());
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class RecordingSessionTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void syntheticSource_everySampleArrivesIntactAndInOrder() throws Exception {
+        PcmFormat format = new PcmFormat(48000, 2, 16);
+        // Less audio than the ring holds, so nothing can be dropped however long the writer stalls.
+        long frames = 48000L * 5;
+        assertTrue(frames * format.getFrameSize() <= RecordingSession.DEFAULT_RING_CAPACITY);
+        SyntheticCaptureSource source = new SyntheticCaptureSource(format, 960, 440, 50, frames);
+        File file = folder.newFile("session.wav");
+        RecordingSession session = new RecordingSession(source, new WavWriter(file, format));
+
+        session.start();
+        source.awaitCompletion();
+        session.stop();
+
+        assertEquals(0, session.getRingBuffer().getOverrunCount());
+        assertEquals(frames * format.getFrameSize(), session.getWriter().getBytesWritten());
+
+        ByteBuffer wav = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(WavHeader.SIZE + frames * format.getFrameSize(), wav.capacity());
+        for (long frame = 0; frame < frames; frame++) {
+            for (int channel = 0; channel < 2; channel++) {
+                int offset = (int) (WavHeader.SIZE + frame * 4 + channel * 2);
+                assertEquals(source.sampleAt(frame, channel), wav.getShort(offset));
+            }
+        }
+    }
+
+    @Test
+    public void failingSink_isReportedByStop() throws Exception {
+        PcmFormat format = new PcmFormat(48000, 2, 16);
+        SyntheticCaptureSource source = new SyntheticCaptureSource(format, 480, 440, 0, 4800);
+        AudioSink broken = new AudioSink() {
+            @Override
+            public void write(byte[] data, int offset, int length) {
+                throw new IllegalStateException("broken");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        RecordingSession session = new RecordingSession(source, broken);
+        session.start();
+        source.awaitCompletion();
+        try {
+            session.stop();
+            fail("The sink's failure must be reported");
+        } catch (IOException expected) {
+            assertTrue(expected.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void stop_closesSinkEvenIfNothingWasCaptured() throws IOException {
+        PcmFormat format = new PcmFormat(8000, 1, 8);
+        SyntheticCaptureSource source = new SyntheticCaptureSource(format, 100, 440, 1, 0);
+        File file = folder.newFile("empty.wav");
+        RecordingSession session = new RecordingSession(source, new WavWriter(file, format));
+        session.start();
+        session.stop();
+        session.stop();
+
+        assertEquals(WavHeader.SIZE, file.length());
+        assertFalse(RecordingJournal.fileFor(file).exists());
+    }
+}
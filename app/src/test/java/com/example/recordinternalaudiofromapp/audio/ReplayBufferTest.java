@@ -0,0 +1,126 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class ReplayBufferTest {
+
+    private static final PcmFormat FORMAT = new PcmFormat(8000, 1, 16);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Frames numbered by their position in the stream, as 16-bit samples. */
+    private static byte[] counting(long firstFrame, int frames) {
+        byte[] pcm = new byte[frames * 2];
+        for (int i = 0; i < frames; i++) {
+            short value = (short) (firstFrame + i);
+            pcm[2 * i] = (byte) value;
+            pcm[2 * i + 1] = (byte) (value >> 8);
+        }
+        return pcm;
+    }
+
+    private static short[] samples(File wav) throws Exception {
+        byte[] bytes = Files.readAllBytes(wav.toPath());
+        ByteBuffer data = ByteBuffer.wrap(bytes, WavHeader.SIZE, bytes.length - WavHeader.SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        short[] samples = new short[data.remaining() / 2];
+        data.asShortBuffer().get(samples);
+        return samples;
+    }
+
+    @Test
+    public void memory_isFixedByFormatAndDuration() {
+        ReplayBuffer buffer = new ReplayBuffer(new PcmFormat(48000, 2, 16), 30);
+        assertEquals(32 * 48000 * 4, buffer.getCapacityBytes());
+        assertEquals(buffer.getCapacityBytes(), ReplayBuffer.bytesFor(new PcmFormat(48000, 2, 16), 30, 2));
+        assertEquals(30 * 48000, buffer.getWindowFrames());
+        assertEquals(0, buffer.getBufferedFrames());
+    }
+
+    @Test
+    public void save_keepsOnlyTheLastWindow() throws Exception {
+        ReplayBuffer buffer = new ReplayBuffer(FORMAT, 3, 1);
+        // Odd-sized writes split frames and wrap the buffer many times.
+        byte[] stream = counting(0, 8000 * 10);
+        for (int offset = 0; offset < stream.length; offset += 1001) {
+            buffer.write(stream, offset, Math.min(1001, stream.length - offset));
+        }
+        long frames = stream.length / 2;
+
+        File file = folder.newFile("replay.wav");
+        ReplayBuffer.SaveResult result = buffer.saveTo(file);
+        assertEquals(8000 * 3, result.frames);
+        assertEquals(0, result.lostFrames);
+        short[] saved = samples(file);
+        assertEquals(8000 * 3, saved.length);
+        for (int i = 0; i < saved.length; i++) {
+            assertEquals((short) (frames - saved.length + i), saved[i]);
+        }
+    }
+
+    @Test
+    public void save_beforeTheWindowFills_keepsEverything() throws Exception {
+        ReplayBuffer buffer = new ReplayBuffer(FORMAT, 3);
+        buffer.write(counting(0, 100), 0, 200);
+        buffer.write(new byte[1], 0, 1); // Half a frame is left out.
+        File file = folder.newFile("short.wav");
+
+        assertEquals(100, buffer.saveTo(file).frames);
+        short[] saved = samples(file);
+        assertEquals(100, saved.length);
+        assertEquals(99, saved[99]);
+    }
+
+    @Test
+    public void save_whileCaptureContinues_isContiguous() throws Exception {
+        ReplayBuffer buffer = new ReplayBuffer(FORMAT, 2, 2);
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread producer = new Thread(() -> {
+            long frame = 0;
+            byte[] block = new byte[160 * 2];
+            while (running.get()) {
+                for (int i = 0; i < 160; i++, frame++) {
+                    block[2 * i] = (byte) frame;
+                    block[2 * i + 1] = (byte) (frame >> 8);
+                }
+                buffer.write(block, 0, block.length);
+                Thread.yield();
+            }
+        });
+        producer.start();
+        try {
+            while (buffer.getBufferedFrames() < buffer.getWindowFrames()) {
+                Thread.sleep(1);
+            }
+            for (int save = 0; save < 5; save++) {
+                File file = folder.newFile("live" + save + ".wav");
+                ReplayBuffer.SaveResult result = buffer.saveTo(file);
+                assertEquals(buffer.getWindowFrames(), result.frames + result.lostFrames);
+                short[] saved = samples(file);
+                assertEquals(result.frames, saved.length);
+                int jumps = 0;
+                for (int i = 1; i < saved.length; i++) {
+                    if ((short) (saved[i - 1] + 1) != saved[i]) {
+                        jumps++;
+                    }
+                }
+                // A save the producer did not lap is one contiguous run.
+                assertTrue(jumps == 0 || result.lostFrames > 0);
+            }
+        } finally {
+            running.set(false);
+            producer.join();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class SampleConverterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final class MemorySink implements AudioSink {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        @Override
+        public void write(byte[] data, int offset, int length) {
+            bytes.write(data, offset, length);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    public void unsigned8BitMono_widensToSigned16BitStereo() {
+        PcmFormat in = new PcmFormat(44100, 1, 8);
+        PcmFormat out = new PcmFormat(44100, 2, 16);
+        SampleConverter converter = new SampleConverter(in, out, 16);
+        byte[] src = {(byte) 0x80, (byte) 0xFF, 0x00, (byte) 0xC0};
+        byte[] dst = new byte[4 * 4];
+        converter.convert(src, 0, dst, 0, 4);
+
+        ByteBuffer samples = ByteBuffer.wrap(dst).order(ByteOrder.LITTLE_ENDIAN);
+        short[] expected = {0, 0, 32512, 32512, -32768, -32768, 16384, 16384};
+        for (short value : expected) {
+            assertEquals(value, samples.getShort());
+        }
+    }
+
+    @Test
+    public void stereoToMono_averagesChannels() {
+        PcmFormat in = new PcmFormat(48000, 2, 16);
+        PcmFormat out = new PcmFormat(48000, 1, 16);
+        ByteBuffer src = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        src.putShort((short) 1000).putShort((short) 3000).putShort((short) -2000).putShort((short) 0);
+        byte[] dst = new byte[4];
+        new SampleConverter(in, out, 2, false).convert(src.array(), 0, dst, 0, 2);
+
+        ByteBuffer samples = ByteBuffer.wrap(dst).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(2000, samples.getShort());
+        assertEquals(-1000, samples.getShort());
+    }
+
+    @Test
+    public void narrowingWithDither_staysWithinOneLsb() {
+        PcmFormat in = new PcmFormat(48000, 1, 16);
+        PcmFormat out = new PcmFormat(48000, 1, 8);
+        assertTrue(SampleConverter.isNarrowing(in, out));
+        SampleConverter converter = new SampleConverter(in, out, 1000);
+        ByteBuffer src = ByteBuffer.allocate(2000).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < 1000; i++) {
+            src.putShort((short) (i * 61 - 30000));
+        }
+        byte[] dst = new byte[1000];
+        converter.convert(src.array(), 0, dst, 0, 1000);
+
+        boolean anyDithered = false;
+        for (int i = 0; i < 1000; i++) {
+            double exact = (i * 61 - 30000) / 256.0;
+            int actual = (dst[i] & 0xFF) - 128;
+            assertTrue("Sample " + i, Math.abs(actual - exact) <= 1.5);
+            anyDithered |= actual != Math.round(exact);
+        }
+        assertTrue(anyDithered);
+    }
+
+    @Test
+    public void floatRoundTrip_isExactFor16BitInput() {
+        PcmFormat pcm = new PcmFormat(48000, 2, 16);
+        PcmFormat floats = PcmFormat.floatFormat(48000, 2);
+        assertFalse(SampleConverter.isNarrowing(floats, new PcmFormat(48000, 2, 32)));
+        byte[] src = new byte[4 * 256];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = (byte) (i * 37);
+        }
+        byte[] asFloat = new byte[8 * 256];
+        byte[] back = new byte[src.length];
+        new SampleConverter(pcm, floats, 256).convert(src, 0, asFloat, 0, 256);
+        new SampleConverter(floats, pcm, 256, false).convert(asFloat, 0, back, 0, 256);
+        assertArrayEquals(src, back);
+    }
+
+    @Test
+    public void convertingSink_carriesPartialFramesAcrossWrites() throws IOException {
+        PcmFormat in = new PcmFormat(8000, 1, 24);
+        PcmFormat out = new PcmFormat(8000, 1, 24);
+        MemorySink memory = new MemorySink();
+        ConvertingSink sink = new ConvertingSink(new SampleConverter(in, out, 4, false), memory);
+        byte[] src = new byte[3 * 10];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = (byte) (i % 3 == 2 ? 0x10 : i);
+        }
+        sink.write(src, 0, 4);
+        sink.write(src, 4, 1);
+        sink.write(src, 5, 25);
+        sink.close();
+        assertArrayEquals(src, memory.bytes.toByteArray());
+    }
+
+    @Test
+    public void floatWav_usesFormatTag3() throws IOException {
+        File file = folder.newFile("float.wav");
+        PcmFormat in = new PcmFormat(48000, 1, 8);
+        PcmFormat out = PcmFormat.floatFormat(48000, 2);
+        try (ConvertingSink sink = new ConvertingSink(in, out, new WavWriter(file, out))) {
+            sink.write(new byte[]{(byte) 0xC0, 0x40}, 0, 2);
+        }
+        ByteBuffer wav = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(3, wav.getShort(56));
+        assertEquals(32, wav.getShort(70));
+        assertEquals(0.5f, wav.getFloat(WavHeader.SIZE), 0);
+        assertEquals(0.5f, wav.getFloat(WavHeader.SIZE + 4), 0);
+        assertEquals(-0.5f, wav.getFloat(WavHeader.SIZE + 8), 0);
+        try (WavFileDecoder decoder = new WavFileDecoder(file)) {
+            assertEquals(out, decoder.getFormat());
+        }
+    }
+}
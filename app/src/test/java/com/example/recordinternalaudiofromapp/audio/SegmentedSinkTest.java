@@ -0,0 +1,172 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SegmentedSinkTest {
+
+    private static final PcmFormat FORMAT = new PcmFormat(8000, 2, 16);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] noise(int frames, long seed) {
+        byte[] pcm = new byte[frames * FORMAT.getFrameSize()];
+        new Random(seed).nextBytes(pcm);
+        return pcm;
+    }
+
+    private static byte[] decodeAll(PcmDecoder decoder) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        try (PcmDecoder input = decoder) {
+            int count;
+            while ((count = input.read(buffer, 0, buffer.length)) >= 0) {
+                out.write(buffer, 0, count);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private String manifest(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void segments_concatenateToTheExactStream() throws Exception {
+        byte[] pcm = noise(3500, 1);
+        File manifest = SegmentedSink.manifestFor(folder.getRoot(), "take");
+        SegmentedSink sink = new SegmentedSink(FORMAT, 1000,
+                index -> new WavWriter(new File(folder.getRoot(), "take_" + index + ".wav"), FORMAT), manifest);
+        // Odd-sized writes split frames across calls and across segment boundaries.
+        for (int offset = 0; offset < pcm.length; offset += 1234) {
+            sink.write(pcm, offset, Math.min(1234, pcm.length - offset));
+        }
+        sink.close();
+
+        assertEquals(4, sink.getSegmentCount());
+        assertEquals(3500, sink.getTotalFrames());
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        int[] expectedFrames = {1000, 1000, 1000, 500};
+        for (int i = 0; i < 4; i++) {
+            byte[] segment = decodeAll(new WavFileDecoder(new File(folder.getRoot(), "take_" + i + ".wav")));
+            assertEquals(expectedFrames[i] * FORMAT.getFrameSize(), segment.length);
+            joined.write(segment);
+        }
+        assertArrayEquals(pcm, joined.toByteArray());
+
+        String json = manifest(manifest);
+        assertTrue(json, json.startsWith("{\"sampleRate\":8000,\"channels\":2,\"bitsPerSample\":16,\"float\":false,"
+                + "\"finished\":true,\"segments\":[{\"index\":0,\"file\":\"take_0.wav\",\"startFrame\":0,"
+                + "\"frames\":1000,\"state\":\"complete\"}"));
+        assertTrue(json, json.contains("{\"index\":3,\"file\":\"take_3.wav\",\"startFrame\":3000,\"frames\":500,"
+                + "\"state\":\"complete\"}]}"));
+        assertFalse(new File(folder.getRoot(), "take.manifest.tmp").exists());
+    }
+
+    @Test
+    public void flacSegments_areEachValidFiles() throws Exception {
+        byte[] pcm = noise(10_000, 2);
+        File manifest = SegmentedSink.manifestFor(folder.getRoot(), "flac");
+        try (SegmentedSink sink = new SegmentedSink(FORMAT, 4096,
+                index -> new FlacWriter(new File(folder.getRoot(), "flac_" + index + ".flac"), FORMAT), manifest)) {
+            sink.write(pcm, 0, pcm.length);
+        }
+
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        for (int i = 0; i < 3; i++) {
+            FlacFileDecoder decoder = new FlacFileDecoder(new File(folder.getRoot(), "flac_" + i + ".flac"));
+            assertEquals(i < 2 ? 4096 : 10_000 - 2 * 4096, decoder.getDurationFrames());
+            joined.write(decodeAll(decoder));
+        }
+        assertArrayEquals(pcm, joined.toByteArray());
+    }
+
+    @Test
+    public void captureContinues_whileFullSegmentsFinalize() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        File manifest = SegmentedSink.manifestFor(folder.getRoot(), "slow");
+        SegmentedSink sink = new SegmentedSink(FORMAT, 100, index -> {
+            File file = new File(folder.getRoot(), "slow_" + index + ".wav");
+            WavWriter writer = new WavWriter(file, FORMAT);
+            return new FileSink() {
+                @Override
+                public File getFile() {
+                    return file;
+                }
+
+                @Override
+                public PcmFormat getFormat() {
+                    return FORMAT;
+                }
+
+                @Override
+                public long getDataBytes() {
+                    return writer.getDataBytes();
+                }
+
+                @Override
+                public void write(byte[] data, int offset, int length) throws IOException {
+                    writer.write(data, offset, length);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    writer.close();
+                }
+            };
+        }, manifest);
+
+        byte[] pcm = noise(250, 3);
+        sink.write(pcm, 0, pcm.length);
+        // Two segments are stuck finalizing, yet the third is already being written.
+        String json = manifest(manifest);
+        assertTrue(json, json.contains("\"finished\":false"));
+        assertTrue(json, json.contains("\"index\":0,\"file\":\"slow_0.wav\",\"startFrame\":0,\"frames\":100,\"state\":\"finalizing\""));
+        assertTrue(json, json.contains("\"index\":2,\"file\":\"slow_2.wav\",\"startFrame\":200,\"frames\":-1,\"state\":\"open\""));
+
+        release.countDown();
+        sink.close();
+        json = manifest(manifest);
+        assertFalse(json, json.contains("finalizing"));
+        assertEquals(3, json.split("\"complete\"").length - 1);
+        byte[] last = decodeAll(new WavFileDecoder(new File(folder.getRoot(), "slow_2.wav")));
+        assertArrayEquals(Arrays.copyOfRange(pcm, 200 * 4, 250 * 4), last);
+    }
+
+    @Test
+    public void framesFor_usesTheTighterLimit() {
+        PcmFormat format = new PcmFormat(48000, 2, 16);
+        assertEquals(48000 * 600, SegmentedSink.framesFor(format, 600_000, 0));
+        assertEquals(1000, SegmentedSink.framesFor(format, 600_000, 4000));
+        assertEquals(48000, SegmentedSink.framesFor(format, 1000, 512L << 20));
+    }
+
+    @Test
+    public void nothingWritten_leavesAnEmptyManifest() throws Exception {
+        File manifest = SegmentedSink.manifestFor(folder.getRoot(), "empty");
+        new SegmentedSink(FORMAT, 100, index -> {
+            throw new AssertionError("No segment should be opened");
+        }, manifest).close();
+
+        assertTrue(manifest(manifest).endsWith("\"finished\":true,\"segments\":[]}\n"));
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SilenceGatingTest {
+
+    private static final PcmFormat FORMAT = new PcmFormat(48000, 1, 16);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** 16-bit mono: a 440 Hz tone at {@code toneDb}, plus white noise at {@code noiseDb}. */
+    private static byte[] signal(int frames, double toneDb, double noiseDb, long seed) {
+        Random random = new Random(seed);
+        double tone = Math.pow(10, toneDb / 20) * Math.sqrt(2) * 32767;
+        double noise = Math.pow(10, noiseDb / 20) * 32767;
+        byte[] pcm = new byte[frames * 2];
+        for (int i = 0; i < frames; i++) {
+            double value = tone * Math.sin(2 * Math.PI * 440 * i / 48000.0) + noise * random.nextGaussian();
+            short sample = (short) Math.max(-32768, Math.min(32767, Math.round(value)));
+            pcm[2 * i] = (byte) sample;
+            pcm[2 * i + 1] = (byte) (sample >> 8);
+        }
+        return pcm;
+    }
+
+    private static boolean run(ActivityDetector detector, byte[] pcm) {
+        boolean active = false;
+        for (int offset = 0; offset < pcm.length; offset += 960 * 2) {
+            active = detector.process(pcm, offset, Math.min(960, (pcm.length - offset) / 2));
+        }
+        return active;
+    }
+
+    @Test
+    public void detector_opensOnSignalAndClosesAfterHangover() {
+        ActivityDetector detector = new ActivityDetector(FORMAT);
+        assertFalse(run(detector, new byte[48000 * 2]));
+        assertTrue(run(detector, signal(4800, -20, -200, 1)));
+        assertEquals(-20, detector.getLastRmsDb(), 0.5);
+
+        // Quiet for less than the hangover: still active.
+        assertTrue(run(detector, new byte[(48000 / 5) * 2]));
+        assertFalse(run(detector, new byte[(48000 / 5) * 2]));
+    }
+
+    @Test
+    public void detector_hysteresisKeepsQuietToneButDropsHiss() {
+        ActivityDetector detector = new ActivityDetector(FORMAT);
+        // A tone between the close and open levels neither opens nor, once open, closes the gate.
+        assertFalse(run(detector, signal(48000, -50, -200, 2)));
+        assertTrue(run(detector, signal(4800, -20, -200, 3)));
+        assertTrue(run(detector, signal(48000, -50, -200, 4)));
+
+        // Hiss at the same level crosses zero constantly and counts as quiet.
+        assertFalse(run(detector, signal(48000, -200, -50, 5)));
+        assertTrue(detector.getLastZeroCrossingRate() > ActivityDetector.DEFAULT_NOISE_ZERO_CROSSING_RATE);
+    }
+
+    @Test
+    public void gatedRecording_restoresToTheOriginalBytes() throws Exception {
+        byte[] tone = signal(48000 * 2, -12, -200, 6);
+        byte[] original = new byte[tone.length * 2 + 48000 * 2 * 5 + 4];
+        System.arraycopy(tone, 0, original, 0, tone.length);
+        System.arraycopy(tone, 0, original, tone.length + 48000 * 2 * 5, tone.length);
+        original[original.length - 3] = 1; // Two frames past the last full block.
+
+        File gated = folder.newFile("gated.wav");
+        File indexFile = SegmentIndex.fileFor(gated);
+        try (SilenceGatingSink sink = new SilenceGatingSink(FORMAT, indexFile, new WavWriter(gated, FORMAT))) {
+            for (int offset = 0; offset < original.length; offset += 3001) {
+                sink.write(original, offset, Math.min(3001, original.length - offset));
+            }
+        }
+
+        SegmentIndex index = SegmentIndex.read(indexFile);
+        assertEquals(original.length / 2, index.getOriginalFrames());
+        assertEquals(1, index.getGapCount());
+        // Hangover plus the kept second of silence, rounded to 20 ms blocks.
+        long kept = 48000 + 48000 * 3 / 10;
+        assertEquals(tone.length / 2 + kept, index.getGapOriginalStart(0), 960);
+        assertEquals(index.getGapOriginalStart(0), index.getGapOutputStart(0));
+        assertEquals(48000 * 5 - kept, index.getGapLength(0), 960);
+        assertEquals(WavHeader.SIZE + index.getOutputFrames() * 2, gated.length());
+
+        long gapEnd = index.getGapOriginalStart(0) + index.getGapLength(0);
+        assertEquals(gapEnd, index.toOriginalFrame(index.getGapOutputStart(0)));
+        assertEquals(10, index.toOriginalFrame(10));
+        assertEquals(index.getGapOutputStart(0), index.toOutputFrame(gapEnd - 1));
+        assertEquals(index.getGapOutputStart(0) + 5, index.toOutputFrame(gapEnd + 5));
+
+        File restored = folder.newFile("restored.wav");
+        OfflineRenderer.Result result = SilenceRestoringDecoder.exportWav(gated, index, restored);
+        assertEquals(original.length / 2, result.frames);
+        byte[] restoredBytes = Files.readAllBytes(restored.toPath());
+        assertArrayEquals(original, Arrays.copyOfRange(restoredBytes, WavHeader.SIZE, restoredBytes.length));
+    }
+
+    @Test
+    public void continuousAudio_isNotGated() throws Exception {
+        File file = folder.newFile("music.wav");
+        byte[] pcm = signal(48000 * 3, -20, -60, 7);
+        SilenceGatingSink sink = new SilenceGatingSink(FORMAT, null, new WavWriter(file, FORMAT));
+        sink.write(pcm, 0, pcm.length);
+        sink.close();
+
+        assertEquals(0, sink.getIndex().getGapCount());
+        assertEquals(WavHeader.SIZE + pcm.length, file.length());
+    }
+}
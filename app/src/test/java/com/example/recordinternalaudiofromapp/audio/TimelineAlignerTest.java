@@ -0,0 +1,176 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TimelineAlignerTest {
+
+    private static final int RATE = 8000;
+    private static final PcmFormat MONO = new PcmFormat(RATE, 1, 16);
+
+    /** Every frame's value depends only on its position on the timeline. */
+    private static short valueAt(long frame) {
+        return (short) (frame * 7 % 20000 - 10000);
+    }
+
+    private static short sample(byte[] pcm, int frame) {
+        return (short) ((pcm[2 * frame] & 0xFF) | pcm[2 * frame + 1] << 8);
+    }
+
+    private static byte[] block(long start, int frames) {
+        byte[] data = new byte[frames * 2];
+        for (int i = 0; i < frames; i++) {
+            short value = valueAt(start + i);
+            data[2 * i] = (byte) value;
+            data[2 * i + 1] = (byte) (value >> 8);
+        }
+        return data;
+    }
+
+    private static long nanos(long frame) {
+        return frame * 1_000_000_000L / RATE;
+    }
+
+    private static final class Collector implements CaptureSource.Listener {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        @Override
+        public void onCaptured(byte[] data, int offset, int length) {
+            out.write(data, offset, length);
+        }
+    }
+
+    @Test
+    public void jitteredContiguousStream_passesThroughUnchanged() {
+        Collector collector = new Collector();
+        TimelineAligner aligner = new TimelineAligner(MONO, collector);
+        Random random = new Random(1);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int b = 0; b < 500; b++) {
+            byte[] data = block(b * 160L, 160);
+            expected.write(data, 0, data.length);
+            long jitter = TimeUnit.MICROSECONDS.toNanos(random.nextInt(4000) - 2000);
+            aligner.add(data, 0, data.length, nanos(b * 160L) + 1_000_000_000L + jitter);
+        }
+        assertArrayEquals(expected.toByteArray(), collector.out.toByteArray());
+        TimelineAligner.Stats stats = aligner.getStats();
+        assertEquals(0, stats.gaps);
+        assertEquals(0, stats.overlaps);
+        assertEquals(500 * 160, stats.outputFrames);
+        assertTrue(stats.maxDriftFrames <= RATE * 4 / 1000);
+        assertTrue(stats.meanDriftFrames > 0);
+    }
+
+    @Test
+    public void snapshots_landAtTheirTimestamps() {
+        // 256-frame snapshots every 800 frames, as the Visualizer delivers them.
+        Collector collector = new Collector();
+        TimelineAligner aligner = new TimelineAligner(MONO, collector);
+        int blocks = 50;
+        for (int b = 0; b < blocks; b++) {
+            aligner.add(block(b * 800L, 256), 0, 512, nanos(b * 800L));
+        }
+        byte[] out = collector.out.toByteArray();
+        assertEquals(((blocks - 1) * 800 + 256) * 2, out.length);
+        for (int b = 0; b < blocks; b++) {
+            for (int i = 0; i < 256; i++) {
+                assertEquals(valueAt(b * 800L + i), sample(out, b * 800 + i));
+            }
+        }
+        TimelineAligner.Stats stats = aligner.getStats();
+        assertEquals(blocks - 1, stats.gaps);
+        assertEquals((blocks - 1) * 544L, stats.gapFrames);
+        assertEquals(544, stats.maxGapFrames);
+        assertEquals(544, stats.lastDriftFrames);
+    }
+
+    @Test
+    public void overlappingBlocks_dropDuplicates() {
+        Collector collector = new Collector();
+        TimelineAligner aligner = new TimelineAligner(MONO, collector);
+        for (int b = 0; b < 40; b++) {
+            aligner.add(block(b * 300L, 400), 0, 800, nanos(b * 300L));
+        }
+        // The same snapshot delivered twice adds nothing.
+        aligner.add(block(39 * 300L, 400), 0, 800, nanos(39 * 300L));
+        assertArrayEquals(block(0, 39 * 300 + 400), collector.out.toByteArray());
+        TimelineAligner.Stats stats = aligner.getStats();
+        assertEquals(0, stats.gaps);
+        assertEquals(40, stats.overlaps);
+        assertEquals(39 * 100 + 400, stats.droppedFrames);
+        assertEquals(-400, stats.lastDriftFrames);
+    }
+
+    @Test
+    public void shortGapsAreInterpolated_longGapsAreSilent() {
+        Collector collector = new Collector();
+        TimelineAligner aligner = new TimelineAligner(MONO, collector, 0, 100);
+        byte[] first = {(byte) 1000, (byte) (1000 >> 8)};
+        byte[] second = {(byte) 2100, (byte) (2100 >> 8)};
+        aligner.add(first, 0, 2, 0);
+        aligner.add(second, 0, 2, nanos(11));
+        aligner.add(second, 0, 2, nanos(11 + RATE));
+        byte[] out = collector.out.toByteArray();
+        assertEquals(12 + RATE, out.length / 2);
+        for (int i = 1; i <= 10; i++) {
+            assertEquals(1000 + 100 * i, sample(out, i), 1);
+        }
+        assertEquals(2100, sample(out, 11));
+        for (int i = 12; i < 11 + RATE; i++) {
+            assertEquals(0, sample(out, i));
+        }
+        assertEquals(2100, sample(out, 11 + RATE));
+        assertEquals(2, aligner.getStats().gaps);
+    }
+
+    @Test
+    public void sameInput_sameOutput() {
+        byte[][] outputs = new byte[2][];
+        String[] stats = new String[2];
+        for (int run = 0; run < 2; run++) {
+            Collector collector = new Collector();
+            TimelineAligner aligner = new TimelineAligner(MONO, collector);
+            Random random = new Random(42);
+            long frame = 0;
+            for (int b = 0; b < 300; b++) {
+                int frames = 100 + random.nextInt(300);
+                long jitter = TimeUnit.MICROSECONDS.toNanos(random.nextInt(40_000) - 20_000);
+                aligner.add(block(frame, frames), 0, frames * 2, nanos(frame) + jitter);
+                frame += frames + random.nextInt(200) - 50;
+            }
+            outputs[run] = collector.out.toByteArray();
+            stats[run] = aligner.getStats().toString();
+        }
+        assertArrayEquals(outputs[0], outputs[1]);
+        assertEquals(stats[0], stats[1]);
+    }
+
+    @Test
+    public void playbackClock_refinesMillisecondPositions() {
+        long[] now = {5_000_000_000L};
+        long[] mediaStart = {now[0] - 3_000_000_000L};
+        // The player reports whole milliseconds, truncated.
+        PlaybackClock clock = new PlaybackClock(() -> (now[0] - mediaStart[0]) / 1_000_000,
+                () -> now[0], TimeUnit.MILLISECONDS.toNanos(10));
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            now[0] += 1_000_000 + random.nextInt(20_000_000);
+            long error = clock.getPositionNanos() - (now[0] - mediaStart[0]);
+            if (i > 100) {
+                assertTrue("error " + error, Math.abs(error) < 1_000_000);
+            }
+        }
+        assertEquals(0, clock.getJumpCount());
+
+        // A seek forward by ten seconds is picked up at the next poll.
+        mediaStart[0] -= 10_000_000_000L;
+        now[0] += TimeUnit.MILLISECONDS.toNanos(10);
+        assertEquals(now[0] - mediaStart[0], clock.getPositionNanos(), 1_000_000);
+        assertEquals(1, clock.getJumpCount());
+    }
+}
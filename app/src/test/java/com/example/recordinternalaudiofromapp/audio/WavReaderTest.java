@@ -0,0 +1,157 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class WavReaderTest {
+
+    private static final PcmFormat FORMAT = new PcmFormat(8000, 2, 16);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] noise(int frames, long seed) {
+        byte[] pcm = new byte[frames * FORMAT.getFrameSize()];
+        new Random(seed).nextBytes(pcm);
+        return pcm;
+    }
+
+    private File writeWav(String name, byte[] pcm) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        try (WavWriter writer = new WavWriter(file, FORMAT)) {
+            writer.write(pcm, 0, pcm.length);
+        }
+        return file;
+    }
+
+    private static byte[] readAll(PcmDecoder decoder) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[999];
+        int count;
+        while ((count = decoder.read(buffer, 0, buffer.length)) >= 0) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void readsWavWriterOutput() throws Exception {
+        byte[] pcm = noise(5000, 1);
+        try (WavReader reader = new WavReader(writeWav("plain.wav", pcm))) {
+            assertEquals(FORMAT, reader.getFormat());
+            assertFalse(reader.isRf64());
+            assertEquals(WavHeader.SIZE, reader.getDataOffset());
+            assertEquals(5000, reader.getDurationFrames());
+            assertArrayEquals(pcm, readAll(reader));
+        }
+    }
+
+    @Test
+    public void rf64AndUnknownChunks_areParsed() throws Exception {
+        byte[] pcm = noise(300, 2);
+        // An RF64 header whose ds64 carries the real size, followed by a LIST chunk of odd length.
+        ByteBuffer header = ByteBuffer.wrap(WavHeader.create(FORMAT, 3L << 30)).order(ByteOrder.LITTLE_ENDIAN);
+        header.putLong(28, pcm.length);
+        byte[] list = {'L', 'I', 'S', 'T', 3, 0, 0, 0, 'a', 'b', 'c', 0};
+        File file = new File(folder.getRoot(), "rf64.wav");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(header.array(), 0, WavHeader.SIZE - 8);
+            out.write(list);
+            out.write(header.array(), WavHeader.SIZE - 8, 8);
+            out.write(pcm);
+            out.write(new byte[100]); // Trailing metadata must not count as audio.
+        }
+
+        try (WavReader reader = new WavReader(file)) {
+            assertTrue(reader.isRf64());
+            assertEquals(WavHeader.SIZE + list.length, reader.getDataOffset());
+            assertEquals(300, reader.getDurationFrames());
+            assertArrayEquals(pcm, readAll(reader));
+        }
+    }
+
+    @Test
+    public void truncatedFile_usesTheAudioThatIsThere() throws Exception {
+        byte[] pcm = noise(1000, 3);
+        File file = writeWav("crashed.wav", pcm);
+        // A crashed session leaves a stale size and a half-written last frame.
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[3]);
+        }
+        ByteBuffer size = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, 0);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.getChannel().write(size, WavHeader.SIZE - 4);
+        }
+
+        try (WavReader reader = new WavReader(file)) {
+            assertEquals(1000, reader.getDurationFrames());
+        }
+    }
+
+    @Test
+    public void randomReads_crossWindowBoundaries() throws Exception {
+        byte[] pcm = noise(4000, 4);
+        // A 1001-byte window is trimmed to 250 whole frames and crossed many times.
+        try (WavReader reader = new WavReader(writeWav("windows.wav", pcm), 1001)) {
+            byte[] dst = new byte[700 * 4];
+            Random random = new Random(5);
+            for (int i = 0; i < 50; i++) {
+                long start = random.nextInt(4000);
+                int frames = reader.read(start, dst, 0, 700);
+                assertEquals(Math.min(700, 4000 - start), frames);
+                assertArrayEquals(Arrays.copyOfRange(pcm, (int) start * 4, (int) (start + frames) * 4),
+                        Arrays.copyOf(dst, frames * 4));
+            }
+            assertEquals(-1, reader.read(4000, dst, 0, 1));
+
+            ByteBuffer slice = reader.slice(240, 100);
+            assertEquals(10 * 4, slice.remaining()); // Ends at the 250-frame window boundary.
+            assertEquals(ByteBuffer.wrap(pcm, 240 * 4, 40), slice);
+        }
+    }
+
+    @Test
+    public void seek_isSampleAccurate() throws Exception {
+        byte[] pcm = noise(2000, 6);
+        try (WavReader reader = new WavReader(writeWav("seek.wav", pcm))) {
+            reader.seek(1234);
+            assertEquals(1234, reader.getPosition());
+            assertArrayEquals(Arrays.copyOfRange(pcm, 1234 * 4, pcm.length), readAll(reader));
+            reader.seek(5000);
+            assertEquals(2000, reader.getPosition());
+            assertEquals(-1, reader.read(new byte[4], 0, 4));
+        }
+    }
+
+    @Test
+    public void exportClip_isByteExact() throws Exception {
+        byte[] pcm = noise(8000, 7);
+        File clip = new File(folder.getRoot(), "clip.wav");
+        try (WavReader reader = new WavReader(writeWav("source.wav", pcm))) {
+            assertEquals(1500, reader.exportClip(2500, 1500, clip));
+            assertEquals(500, reader.exportClip(7500, 1500, new File(folder.getRoot(), "tail.wav")));
+        }
+
+        byte[] bytes = Files.readAllBytes(clip.toPath());
+        assertArrayEquals(WavHeader.create(FORMAT, 1500 * 4), Arrays.copyOf(bytes, WavHeader.SIZE));
+        assertArrayEquals(Arrays.copyOfRange(pcm, 2500 * 4, 4000 * 4),
+                Arrays.copyOfRange(bytes, WavHeader.SIZE, bytes.length));
+        try (WavFileDecoder decoder = new WavFileDecoder(clip)) {
+            assertEquals(1500, decoder.getDurationFrames());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class WavWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String tag(ByteBuffer buffer, int offset) {
+        return new String(new byte[]{buffer.get(offset), buffer.get(offset + 1),
+                buffer.get(offset + 2), buffer.get(offset + 3)}, StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void close_patchesSizesAndKeepsSamples() throws IOException {
+        File file = folder.newFile("out.wav");
+        PcmFormat format = new PcmFormat(44100, 2, 16);
+        byte[] samples = new byte[200_000];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (byte) i;
+        }
+        try (WavWriter writer = new WavWriter(file, format)) {
+            for (int offset = 0; offset < samples.length; offset += 1000) {
+                writer.write(samples, offset, 1000);
+            }
+        }
+
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        ByteBuffer header = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(WavHeader.SIZE + samples.length, bytes.length);
+        assertEquals("RIFF", tag(header, 0));
+        assertEquals(bytes.length - 8, header.getInt(4));
+        assertEquals("WAVE", tag(header, 8));
+        assertEquals("JUNK", tag(header, 12));
+        assertEquals("fmt ", tag(header, 48));
+        assertEquals(1, header.getShort(56));
+        assertEquals(2, header.getShort(58));
+        assertEquals(44100, header.getInt(60));
+        assertEquals(44100 * 4, header.getInt(64));
+        assertEquals(4, header.getShort(68));
+        assertEquals(16, header.getShort(70));
+        assertEquals("data", tag(header, 72));
+        assertEquals(samples.length, header.getInt(76));
+        for (int i = 0; i < samples.length; i++) {
+            assertEquals(samples[i], bytes[WavHeader.SIZE + i]);
+        }
+    }
+
+    @Test
+    public void close_padsOddDataChunk() throws IOException {
+        File file = folder.newFile("odd.wav");
+        try (WavWriter writer = new WavWriter(file, new PcmFormat(8000, 1, 8))) {
+            writer.write(new byte[]{1, 2, 3}, 0, 3);
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(WavHeader.SIZE + 4, bytes.capacity());
+        assertEquals(3, bytes.getInt(76));
+        assertEquals(bytes.capacity() - 8, bytes.getInt(4));
+    }
+
+    @Test
+    public void header_switchesToRf64AboveTwoGigabytes() {
+        PcmFormat format = new PcmFormat(48000, 2, 16);
+        long dataBytes = 5_000_000_000L;
+        ByteBuffer header = ByteBuffer.wrap(WavHeader.create(format, dataBytes)).order(ByteOrder.LITTLE_ENDIAN);
+
+        assertEquals("RF64", tag(header, 0));
+        assertEquals(-1, header.getInt(4));
+        assertEquals("ds64", tag(header, 12));
+        assertEquals(28, header.getInt(16));
+        assertEquals(WavHeader.SIZE - 8 + dataBytes, header.getLong(20));
+        assertEquals(dataBytes, header.getLong(28));
+        assertEquals(dataBytes / 4, header.getLong(36));
+        assertEquals("data", tag(header, 72));
+        assertEquals(-1, header.getInt(76));
+
+        assertFalse(WavHeader.needsRf64(1_000_000_000L));
+        assertTrue(WavHeader.needsRf64(Integer.MAX_VALUE));
+    }
+}
@@ -0,0 +1,32 @@
+// JMH benchmarks for the pure-Java recording pipeline in :app (com.example.recordinternalaudiofromapp.audio).
+// Run with ./gradlew :audio-bench:jmh; results land in build/results/jmh/results.json so runs from
+// different releases can be diffed. Narrow the run with -PjmhIncludes=<regex>.
+plugins {
+    java
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+// The audio package has no Android dependencies, so it compiles as plain Java straight from :app.
+sourceSets {
+    main {
+        java {
+            setSrcDirs(listOf("../app/src/main/java"))
+            include("com/example/recordinternalaudiofromapp/audio/**")
+        }
+    }
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("results/jmh/results.json"))
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    project.findProperty("jmhIncludes")?.let { includes.set(listOf(it.toString())) }
+}
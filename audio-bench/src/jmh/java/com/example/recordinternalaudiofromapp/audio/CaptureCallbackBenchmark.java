@@ -0,0 +1,126 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-callback cost of the work done for one Visualizer capture block. Visualizer capture sizes
+ * range over powers of two, typically 128 to 1024 ({@code getCaptureSizeRange()[1]}); blocks are
+ * 8-bit mono at 44.1 kHz.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CaptureCallbackBenchmark {
+
+    @Param({"128", "1024"})
+    public int captureSize;
+
+    private final PcmFormat captureFormat = new PcmFormat(44100, 1, 8);
+    private byte[] block;
+    private byte[] drain;
+    private PcmRingBuffer ringBuffer;
+    private SampleConverter widen;
+    private byte[] widened;
+    private ResamplingSink resampler;
+    private ActivityDetector detector;
+    private LoudnessMeter meter;
+    private File file;
+    private WavWriter wavWriter;
+
+    /** Discards everything, so only the stage under test is measured. */
+    private static final class NullSink implements AudioSink {
+        @Override
+        public void write(byte[] data, int offset, int length) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        block = new byte[captureSize];
+        for (int i = 0; i < block.length; i++) {
+            block[i] = (byte) (128 + 100 * Math.sin(i * 0.05));
+        }
+        ringBuffer = new PcmRingBuffer(RecordingSession.DEFAULT_RING_CAPACITY);
+        drain = new byte[PcmWriterThread.DEFAULT_BATCH_SIZE];
+        widen = new SampleConverter(captureFormat, captureFormat.withEncoding(16, false), captureSize);
+        widened = new byte[captureSize * 2];
+        resampler = new ResamplingSink(captureFormat, new PcmFormat(48000, 1, 16),
+                PolyphaseResampler.Quality.BALANCED, new NullSink());
+        detector = new ActivityDetector(captureFormat);
+        meter = new LoudnessMeter(captureFormat);
+        file = File.createTempFile("bench-capture", ".wav");
+    }
+
+    /** A fresh file per iteration keeps the WAV from growing without bound. */
+    @Setup(Level.Iteration)
+    public void openWriter() throws IOException {
+        wavWriter = new WavWriter(file, captureFormat);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeWriter() throws IOException {
+        wavWriter.close();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        resampler.close();
+        file.delete();
+    }
+
+    /** What the capture callback does now: copy into the ring buffer (drained here when half full). */
+    @Benchmark
+    public boolean ringBufferWrite() {
+        if (ringBuffer.available() > ringBuffer.capacity() / 2) {
+            while (ringBuffer.read(drain, 0, drain.length) > 0) {
+                // Stand-in for the writer thread.
+            }
+        }
+        return ringBuffer.write(block, 0, block.length);
+    }
+
+    /** Writing straight to the file from the callback, as before the ring buffer existed. */
+    @Benchmark
+    public void synchronousWavWrite() throws IOException {
+        wavWriter.write(block, 0, block.length);
+    }
+
+    @Benchmark
+    public byte[] widenTo16Bit() {
+        widen.convert(block, 0, widened, 0, captureSize);
+        return widened;
+    }
+
+    @Benchmark
+    public boolean detectActivity() {
+        return detector.process(block, 0, captureSize);
+    }
+
+    @Benchmark
+    public double meterLoudness() {
+        meter.add(block, 0, block.length);
+        return meter.getMomentaryLufs();
+    }
+
+    @Benchmark
+    public void resampleTo48k() throws IOException {
+        resampler.write(block, 0, block.length);
+    }
+}
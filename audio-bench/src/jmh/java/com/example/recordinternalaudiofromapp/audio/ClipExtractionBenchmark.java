@@ -0,0 +1,84 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pulls a five-second clip from near the end of a long (sparse) recording: {@link WavReader}
+ * maps straight to the clip and hands it to {@code transferTo}, while the streaming path decodes
+ * everything before it the way exports worked without random access.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ClipExtractionBenchmark {
+
+    private static final PcmFormat FORMAT = new PcmFormat(48000, 2, 16);
+    private static final long CLIP_FRAMES = 5 * 48000;
+
+    @Param({"256", "1536"})
+    public int sourceMegabytes;
+
+    private File source;
+    private File clip;
+    private long clipStart;
+
+    @Setup
+    public void setUp() throws IOException {
+        source = File.createTempFile("bench-source", ".wav");
+        clip = File.createTempFile("bench-clip", ".wav");
+        long dataBytes = (long) sourceMegabytes << 20;
+        try (RandomAccessFile file = new RandomAccessFile(source, "rw")) {
+            file.write(WavHeader.create(FORMAT, dataBytes));
+            file.setLength(WavHeader.SIZE + dataBytes);
+        }
+        clipStart = dataBytes / FORMAT.getFrameSize() - 2 * CLIP_FRAMES;
+    }
+
+    @TearDown
+    public void tearDown() {
+        source.delete();
+        clip.delete();
+    }
+
+    @Benchmark
+    public long mappedTransfer() throws IOException {
+        try (WavReader reader = new WavReader(source)) {
+            return reader.exportClip(clipStart, CLIP_FRAMES, clip);
+        }
+    }
+
+    @Benchmark
+    public long streamingCopy() throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long skip = clipStart * FORMAT.getFrameSize();
+        long remaining = CLIP_FRAMES * FORMAT.getFrameSize();
+        try (WavFileDecoder decoder = new WavFileDecoder(source);
+             WavWriter writer = new WavWriter(clip, FORMAT, SyncPolicy.NONE)) {
+            while (remaining > 0) {
+                int count = decoder.read(buffer, 0, buffer.length);
+                if (count < 0) {
+                    break;
+                }
+                int offset = (int) Math.min(count, skip);
+                skip -= offset;
+                int length = (int) Math.min(count - offset, remaining);
+                writer.write(buffer, offset, length);
+                remaining -= length;
+            }
+            return writer.getDataBytes();
+        }
+    }
+}
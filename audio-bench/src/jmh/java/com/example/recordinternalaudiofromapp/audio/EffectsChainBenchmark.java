@@ -0,0 +1,72 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The clean-up chain (DC removal, drift tracking, normalization, fades) over five minutes of
+ * 48 kHz stereo, sequentially and on fork/join pools of increasing size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EffectsChainBenchmark {
+
+    private static final PcmFormat FORMAT = new PcmFormat(48000, 2, 16);
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private File input;
+    private File output;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp() throws IOException {
+        input = File.createTempFile("bench-effects-in", ".wav");
+        output = File.createTempFile("bench-effects-out", ".wav");
+        byte[] block = new byte[FORMAT.getSampleRate() * FORMAT.getFrameSize()];
+        new Random(1).nextBytes(block);
+        try (WavWriter writer = new WavWriter(input, FORMAT, SyncPolicy.NONE)) {
+            for (int second = 0; second < 300; second++) {
+                writer.write(block, 0, block.length);
+            }
+        }
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+        input.delete();
+        output.delete();
+    }
+
+    private static EffectsChain chain() {
+        return new EffectsChain(AudioEffects.removeDcOffset(), AudioEffects.trackDcOffset(4800),
+                AudioEffects.normalize(-1), AudioEffects.fadeIn(480), AudioEffects.fadeOut(480));
+    }
+
+    @Benchmark
+    public long parallel() throws IOException {
+        return chain().apply(input, output, pool).frames;
+    }
+
+    @Benchmark
+    public long sequential() throws IOException {
+        return chain().applySequential(input, output).frames;
+    }
+}
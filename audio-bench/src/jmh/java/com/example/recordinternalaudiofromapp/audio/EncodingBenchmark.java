@@ -0,0 +1,103 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion and encoding stages for one 4096-frame block of 48 kHz stereo: sample format
+ * conversion, resampling at each quality preset and FLAC frame encoding at several levels.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EncodingBenchmark {
+
+    private static final int FRAMES = 4096;
+
+    @State(Scope.Thread)
+    public static class Resampler {
+        @Param({"FAST", "BALANCED", "HIGH"})
+        public PolyphaseResampler.Quality quality;
+
+        PolyphaseResampler resampler;
+        float[] output;
+
+        @Setup
+        public void setUp() {
+            resampler = new PolyphaseResampler(44100, 48000, 2, quality, FRAMES);
+            output = new float[2 * resampler.maxOutputFrames(FRAMES)];
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Flac {
+        @Param({"0", "5", "8"})
+        public int level;
+
+        FlacFrameEncoder encoder;
+
+        @Setup
+        public void setUp() {
+            encoder = new FlacFrameEncoder(new PcmFormat(48000, 2, 16), level);
+        }
+    }
+
+    private final PcmFormat pcm16 = new PcmFormat(48000, 2, 16);
+    private byte[] pcm;
+    private float[] floats;
+    private int[][] channels;
+    private byte[] converted;
+    private SampleConverter toFloat;
+    private SampleConverter to24Bit;
+    private long frameNumber;
+
+    @Setup
+    public void setUp() {
+        pcm = new byte[FRAMES * pcm16.getFrameSize()];
+        floats = new float[FRAMES * 2];
+        channels = new int[2][FRAMES];
+        for (int i = 0; i < FRAMES; i++) {
+            for (int c = 0; c < 2; c++) {
+                int sample = (int) (12000 * Math.sin(2 * Math.PI * 440 * i / 48000.0 + c)
+                        + 3000 * Math.sin(2 * Math.PI * 3100 * i / 48000.0));
+                channels[c][i] = sample;
+                floats[2 * i + c] = sample / 32768f;
+                pcm[4 * i + 2 * c] = (byte) sample;
+                pcm[4 * i + 2 * c + 1] = (byte) (sample >> 8);
+            }
+        }
+        converted = new byte[FRAMES * 2 * 4];
+        toFloat = new SampleConverter(pcm16, PcmFormat.floatFormat(48000, 2), FRAMES);
+        to24Bit = new SampleConverter(PcmFormat.floatFormat(48000, 2), pcm16.withEncoding(24, false), FRAMES);
+    }
+
+    @Benchmark
+    public byte[] convert16BitToFloat() {
+        toFloat.convert(pcm, 0, converted, 0, FRAMES);
+        return converted;
+    }
+
+    @Benchmark
+    public byte[] convertFloatTo24Bit() {
+        to24Bit.convert(floats, converted, 0, FRAMES);
+        return converted;
+    }
+
+    @Benchmark
+    public int resample44100To48000(Resampler state) {
+        return state.resampler.process(floats, 0, FRAMES, state.output);
+    }
+
+    @Benchmark
+    public int encodeFlacFrame(Flac state) {
+        return state.encoder.encode(channels, FRAMES, frameNumber++);
+    }
+}
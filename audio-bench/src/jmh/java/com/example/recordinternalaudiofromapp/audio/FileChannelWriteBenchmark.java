@@ -0,0 +1,107 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Raw file write paths for one chunk of PCM: a heap {@code ByteBuffer} wrapped per write, a reused
+ * direct {@code ByteBuffer} (as {@link WavWriter} stages through), and a buffered stream. Files
+ * wrap around every 64 MB so disk usage stays bounded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FileChannelWriteBenchmark {
+
+    private static final long WRAP_BYTES = 64L << 20;
+
+    @Param({"1024", "65536"})
+    public int chunkSize;
+
+    private byte[] chunk;
+    private ByteBuffer direct;
+    private File channelFile;
+    private File streamFile;
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private OutputStream stream;
+    private long streamBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        chunk = new byte[chunkSize];
+        direct = ByteBuffer.allocateDirect(chunkSize);
+        channelFile = File.createTempFile("bench-channel", ".pcm");
+        streamFile = File.createTempFile("bench-stream", ".pcm");
+    }
+
+    @Setup(Level.Iteration)
+    public void open() throws IOException {
+        randomAccessFile = new RandomAccessFile(channelFile, "rw");
+        channel = randomAccessFile.getChannel();
+        stream = new BufferedOutputStream(new FileOutputStream(streamFile), 64 * 1024);
+        streamBytes = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void close() throws IOException {
+        randomAccessFile.close();
+        stream.close();
+    }
+
+    @TearDown
+    public void tearDown() {
+        channelFile.delete();
+        streamFile.delete();
+    }
+
+    private void wrapChannel() throws IOException {
+        if (channel.position() >= WRAP_BYTES) {
+            channel.position(0);
+        }
+    }
+
+    @Benchmark
+    public int heapByteBuffer() throws IOException {
+        wrapChannel();
+        return channel.write(ByteBuffer.wrap(chunk));
+    }
+
+    @Benchmark
+    public int directByteBuffer() throws IOException {
+        wrapChannel();
+        direct.clear();
+        direct.put(chunk);
+        direct.flip();
+        return channel.write(direct);
+    }
+
+    @Benchmark
+    public void bufferedStream() throws IOException {
+        if (streamBytes >= WRAP_BYTES) {
+            stream.close();
+            stream = new BufferedOutputStream(new FileOutputStream(streamFile), 64 * 1024);
+            streamBytes = 0;
+        }
+        stream.write(chunk);
+        streamBytes += chunkSize;
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to record {@link #SESSION_BYTES} into each of {@code sessions} WAV files at once through
+ * a {@link RecorderManager}. The sources block instead of dropping, so they run as fast as the
+ * pool and the storage allow; aggregate throughput is {@code sessions * SESSION_BYTES / score}.
+ * It rises with the session count until the writer pool or the device is saturated.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RecorderManagerBenchmark {
+
+    private static final long SESSION_BYTES = 16L << 20;
+    private static final PcmFormat FORMAT = new PcmFormat(48000, 2, 16);
+
+    @Param({"1", "2", "4", "8"})
+    public int sessions;
+
+    @Param({"2", "4"})
+    public int writerThreads;
+
+    private File directory;
+    private RecorderManager manager;
+
+    /** Delivers one prefilled block over and over, so generating audio costs nothing. */
+    private static final class BlockSource extends BaseCaptureSource {
+        private final byte[] block = new byte[3840];
+        private final long totalBytes;
+        private volatile boolean running;
+        private Thread thread;
+
+        BlockSource(long totalBytes) {
+            this.totalBytes = totalBytes;
+            for (int i = 0; i < block.length; i++) {
+                block[i] = (byte) (i * 31);
+            }
+        }
+
+        @Override
+        public PcmFormat getFormat() {
+            return FORMAT;
+        }
+
+        @Override
+        public boolean isContinuous() {
+            return true;
+        }
+
+        @Override
+        protected void onStart() {
+            running = true;
+            thread = new Thread(() -> {
+                for (long sent = 0; running && sent < totalBytes; sent += block.length) {
+                    deliver(block, 0, block.length);
+                }
+            }, "BlockSource");
+            thread.start();
+        }
+
+        void awaitCompletion() throws InterruptedException {
+            thread.join();
+        }
+
+        @Override
+        protected void onStop() {
+            running = false;
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("bench-recorder").toFile();
+        manager = new RecorderManager(directory, writerThreads, PcmWriterThread.DEFAULT_BATCH_SIZE, SyncPolicy.NONE);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        manager.shutdown();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public long recordConcurrently() throws IOException, InterruptedException {
+        BlockSource[] sources = new BlockSource[sessions];
+        RecorderManager.Session[] running = new RecorderManager.Session[sessions];
+        for (int i = 0; i < sessions; i++) {
+            sources[i] = new BlockSource(SESSION_BYTES);
+            running[i] = manager.start(sources[i], "bench", RecorderManager.Backpressure.BLOCK);
+        }
+        long written = 0;
+        for (int i = 0; i < sessions; i++) {
+            sources[i].awaitCompletion();
+            running[i].stop();
+            written += running[i].getMetrics().snapshot().writtenBytes;
+            // Keeps disk usage bounded across iterations.
+            running[i].getFile().delete();
+        }
+        return written;
+    }
+}
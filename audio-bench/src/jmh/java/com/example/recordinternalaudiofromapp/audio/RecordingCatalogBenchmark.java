@@ -0,0 +1,66 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to open a {@link RecordingCatalog} of {@code entries} recordings from disk and list it, which
+ * is what the library screen waits for on a cold start. The catalog is written once in setup, so
+ * only loading is measured; it should stay in the low milliseconds at 10,000 entries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RecordingCatalogBenchmark {
+
+    private static final PcmFormat FORMAT = new PcmFormat(48000, 2, 16);
+
+    @Param({"1000", "10000"})
+    public int entries;
+
+    private File directory;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("bench-catalog").toFile();
+        List<RecordingCatalog.Entry> list = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            long frames = 48000L * (i + 1);
+            list.add(new RecordingCatalog.Entry(String.format(Locale.US, "recording_%05d.wav", i), FORMAT, frames,
+                    frames * FORMAT.getFrameSize() + WavHeader.SIZE, 1_700_000_000_000L + i,
+                    new LoudnessMeter.Result(-14, -9, -11, -1, frames)));
+        }
+        new RecordingCatalog(directory).addAll(list);
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public int load() throws IOException {
+        return new RecordingCatalog(directory).size();
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.recordinternalaudiofromapp.audio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of producing and finalizing WAV headers: building the header bytes, patching it in place
+ * when a recording stops, and, as a baseline, the old approach of copying a finished PCM file
+ * into a new WAV file behind a header.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WavHeaderBenchmark {
+
+    private static final int RECORDING_BYTES = 1 << 20;
+
+    /** Header sizes either side of the RF64 switch. */
+    @State(Scope.Thread)
+    public static class HeaderSize {
+        @Param({"4096", "5000000000"})
+        public long dataBytes;
+    }
+
+    private final PcmFormat format = new PcmFormat(48000, 2, 16);
+    private File pcmFile;
+    private File wavFile;
+    private File patchedFile;
+    private RandomAccessFile patched;
+    private FileChannel patchedChannel;
+
+    @Setup
+    public void setUp() throws IOException {
+        pcmFile = File.createTempFile("bench", ".pcm");
+        wavFile = File.createTempFile("bench", ".wav");
+        patchedFile = File.createTempFile("bench-patched", ".wav");
+        try (OutputStream out = new FileOutputStream(pcmFile)) {
+            out.write(new byte[RECORDING_BYTES]);
+        }
+        patched = new RandomAccessFile(patchedFile, "rw");
+        patched.setLength(WavHeader.SIZE + RECORDING_BYTES);
+        patchedChannel = patched.getChannel();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        patched.close();
+        pcmFile.delete();
+        wavFile.delete();
+        patchedFile.delete();
+    }
+
+    @Benchmark
+    public byte[] createHeader(HeaderSize size) {
+        return WavHeader.create(format, size.dataBytes);
+    }
+
+    /** What {@link WavWriter#close()} does: rewrite the header of an already-written file. */
+    @Benchmark
+    public void finalizeInPlace() throws IOException {
+        WavWriter.finalizeHeader(patchedChannel, format, RECORDING_BYTES);
+    }
+
+    /** The former addWavHeader approach: copy a raw PCM file into a new WAV file. */
+    @Benchmark
+    public void copyPcmBehindHeader() throws IOException {
+        byte[] buffer = new byte[8192];
+        try (InputStream in = new BufferedInputStream(new FileInputStream(pcmFile));
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(wavFile))) {
+            out.write(WavHeader.create(format, pcmFile.length()));
+            int count;
+            while ((count = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, count);
+            }
+        }
+    }
+}
@@ -21,3 +21,4 @@ dependencyResolutionManagement {
 
 rootProject.name = "Record internal audio from app"
 include(":app")
+include(":audio-bench")